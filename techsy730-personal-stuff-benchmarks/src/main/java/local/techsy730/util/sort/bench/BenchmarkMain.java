@@ -0,0 +1,86 @@
+package local.techsy730.util.sort.bench;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.ProfilerConfig;
+
+/**
+ * Runs the benchmarks the same way {@code org.openjdk.jmh.Main} would, except that the GC profiler is always on
+ * (so allocation per operation is reported next to the times), and the results are always written out as JSON
+ * (to {@code jmh-result.json} unless given otherwise), so runs from before and after a change can be compared side by side.
+ * <p>
+ * Any of the usual JMH command line options can be given, and they take precedence over these defaults.
+ * The options that only ask for help or a listing ({@code -h}, {@code -l}, {@code -lp}, {@code -lprof} and {@code -lrf})
+ * are handled the same way JMH's own main handles them, without running anything.
+ *
+ * @author C. Sean Young
+ *
+ */
+public final class BenchmarkMain
+{
+    private BenchmarkMain()
+    {
+    }
+
+    public static void main(String... args) throws RunnerException, IOException
+    {
+        final CommandLineOptions cmdOptions;
+        try
+        {
+            cmdOptions = new CommandLineOptions(args);
+        }
+        catch(CommandLineOptionException e)
+        {
+            System.err.println("Error parsing command line:");
+            System.err.println(" " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        //Same order as org.openjdk.jmh.Main; none of these should start the (many hour long) full run
+        if(cmdOptions.shouldHelp())
+        {
+            cmdOptions.showHelp();
+            return;
+        }
+        if(cmdOptions.shouldList())
+        {
+            new Runner(cmdOptions).list();
+            return;
+        }
+        if(cmdOptions.shouldListWithParams())
+        {
+            new Runner(cmdOptions).listWithParams(cmdOptions);
+            return;
+        }
+        if(cmdOptions.shouldListProfilers())
+        {
+            cmdOptions.listProfilers();
+            return;
+        }
+        if(cmdOptions.shouldListResultFormats())
+        {
+            cmdOptions.listResultFormats();
+            return;
+        }
+        final OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(cmdOptions);
+        //Anything set on the builder wins out over the parent, so only fill in what the command line left unset
+        if(!cmdOptions.getResultFormat().hasValue())
+            builder.resultFormat(ResultFormatType.JSON);
+        boolean haveGCProfiler = false;
+        for(ProfilerConfig profiler : cmdOptions.getProfilers())
+            haveGCProfiler |= profiler.getKlass().equals(GCProfiler.class.getCanonicalName()) || profiler.getKlass().equals("gc");
+        if(!haveGCProfiler)
+            builder.addProfiler(GCProfiler.class);
+        final Options options = builder.build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,186 @@
+package local.techsy730.util.sort.bench;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * The kinds of input the string sorter benchmarks are run over.
+ * <p>
+ * Every corpus is generated from a seed with its own {@link Random}, so the same
+ * (corpus, size, seed) always gives exactly the same strings, run to run and machine to machine.
+ * That way a change to one of the sorters' tuning constants can be judged against the same input it was judged on before.
+ *
+ * @author C. Sean Young
+ *
+ */
+public enum Corpus
+{
+    /** Printable ASCII strings of 5 to 30 characters, with nearly no shared prefixes past the first character or two. */
+    RANDOM_ASCII
+    {
+        @Override
+        String[] generate(Random rand, int size)
+        {
+            final String[] arr = new String[size];
+            for(int i = 0; i < size; ++i)
+                arr[i] = randomString(rand, 5 + rand.nextInt(26), ' ', '~');
+            return arr;
+        }
+    },
+    /** URL like strings; a handful of schemes and hosts, so long runs of shared prefixes, followed by paths from a small vocabulary. */
+    URL
+    {
+        private final String[] hosts = {"www.example.com", "www.example.org", "cdn.example.com", "api.example.com",
+            "images.example.net", "en.example.org", "static.example.com", "mail.example.com"};
+        private final String[] segments = {"index", "images", "static", "api", "v1", "v2", "users", "search",
+            "products", "category", "docs", "assets", "css", "js", "blog", "2013", "2014", "archive", "tags", "about"};
+
+        @Override
+        String[] generate(Random rand, int size)
+        {
+            final String[] arr = new String[size];
+            final StringBuilder sb = new StringBuilder(96);
+            for(int i = 0; i < size; ++i)
+            {
+                sb.setLength(0);
+                sb.append(rand.nextInt(4) == 0 ? "http://" : "https://");
+                sb.append(hosts[rand.nextInt(hosts.length)]);
+                for(int depth = 1 + rand.nextInt(4); depth > 0; --depth)
+                    sb.append('/').append(segments[rand.nextInt(segments.length)]);
+                if(rand.nextBoolean())
+                    sb.append("?id=").append(rand.nextInt(1000000));
+                arr[i] = sb.toString();
+            }
+            return arr;
+        }
+    },
+    /** Strings that share one of a few 40 to 60 character prefixes, and then differ over a short random suffix. */
+    LONG_SHARED_PREFIX
+    {
+        @Override
+        String[] generate(Random rand, int size)
+        {
+            final String[] prefixes = new String[4];
+            for(int i = 0; i < prefixes.length; ++i)
+                prefixes[i] = randomString(rand, 40 + rand.nextInt(21), 'a', 'z');
+            final String[] arr = new String[size];
+            for(int i = 0; i < size; ++i)
+                arr[i] = prefixes[rand.nextInt(prefixes.length)] + randomString(rand, 5 + rand.nextInt(11), 'a', 'z');
+            return arr;
+        }
+    },
+    /** Drawn from a pool of only about size / 100 distinct strings, so each value shows up about 100 times. */
+    DUPLICATE_HEAVY
+    {
+        @Override
+        String[] generate(Random rand, int size)
+        {
+            final String[] pool = new String[Math.max(1, size / 100)];
+            for(int i = 0; i < pool.length; ++i)
+                pool[i] = randomString(rand, 5 + rand.nextInt(16), 'a', 'z');
+            final String[] arr = new String[size];
+            for(int i = 0; i < size; ++i)
+                //Separate objects, as real duplicates (read from a file, say) are rarely the same object
+                arr[i] = new String(pool[rand.nextInt(pool.length)]);
+            return arr;
+        }
+    },
+    /** {@link #RANDOM_ASCII}, already in sorted order. */
+    SORTED
+    {
+        @Override
+        String[] generate(Random rand, int size)
+        {
+            final String[] arr = RANDOM_ASCII.generate(rand, size);
+            Arrays.sort(arr);
+            return arr;
+        }
+    },
+    /** {@link #RANDOM_ASCII}, in reverse sorted order. */
+    REVERSE_SORTED
+    {
+        @Override
+        String[] generate(Random rand, int size)
+        {
+            final String[] arr = RANDOM_ASCII.generate(rand, size);
+            Arrays.sort(arr, Collections.reverseOrder());
+            return arr;
+        }
+    },
+    /**
+     * A mix of non-ASCII text; Latin-1 accented letters, Cyrillic, CJK ideographs, and characters outside the
+     * basic multilingual plane (as surrogate pairs), so the character counts span a very wide range.
+     */
+    NON_ASCII
+    {
+        @Override
+        String[] generate(Random rand, int size)
+        {
+            final String[] arr = new String[size];
+            final StringBuilder sb = new StringBuilder(32);
+            for(int i = 0; i < size; ++i)
+            {
+                sb.setLength(0);
+                for(int len = 3 + rand.nextInt(14); len > 0; --len)
+                {
+                    switch(rand.nextInt(4))
+                    {
+                        case 0: sb.append((char)(0xC0 + rand.nextInt(0x40))); break; //Latin-1 supplement letters
+                        case 1: sb.append((char)(0x0410 + rand.nextInt(0x40))); break; //Cyrillic
+                        case 2: sb.append((char)(0x4E00 + rand.nextInt(0x5200))); break; //CJK unified ideographs
+                        default: sb.appendCodePoint(0x1F300 + rand.nextInt(0x300)); break; //Pictographs, outside the BMP
+                    }
+                }
+                arr[i] = sb.toString();
+            }
+            return arr;
+        }
+    },
+    /**
+     * DNA like keys; 20 to 40 characters over just A, C, G and T, so each character only tells apart a few strings.
+     * (Added after the others, so the seeds the others are generated from stay the same.)
+     */
+    GENOMIC
+    {
+        private final char[] bases = {'A', 'C', 'G', 'T'};
+
+        @Override
+        String[] generate(Random rand, int size)
+        {
+            final String[] arr = new String[size];
+            for(int i = 0; i < size; ++i)
+            {
+                final char[] chars = new char[20 + rand.nextInt(21)];
+                for(int j = 0; j < chars.length; ++j)
+                    chars[j] = bases[rand.nextInt(bases.length)];
+                arr[i] = new String(chars);
+            }
+            return arr;
+        }
+    };
+
+    /**
+     * Generates size strings of this kind.
+     *
+     * @param size how many strings to generate
+     * @param seed the seed to generate them from; the same seed always gives the same strings
+     * @return a new array of the generated strings
+     */
+    public final String[] generate(int size, long seed)
+    {
+        //Mix in which corpus this is, so different corpora with the same seed don't start off from the same random stream
+        return generate(new Random(seed * 31 + ordinal()), size);
+    }
+
+    abstract String[] generate(Random rand, int size);
+
+    static final String randomString(Random rand, int len, char min, char max)
+    {
+        final char[] chars = new char[len];
+        final int range = max - min + 1;
+        for(int i = 0; i < len; ++i)
+            chars[i] = (char)(min + rand.nextInt(range));
+        return new String(chars);
+    }
+}
@@ -0,0 +1,84 @@
+package local.techsy730.util.sort.bench;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import local.techsy730.util.sort.MSDStringSorter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times {@link MSDStringSorter#parallelSortPartially(int, String[], int, int, ForkJoinPool, int)} with pools of 1 up to 32 threads,
+ * to see how close to linearly it scales with the number of cores. Pool sizes past the number of cores of the machine
+ * it runs on only show the overhead of the extra tasks.
+ * <p>
+ * As with {@link StringSortBenchmark}, each operation sorts a fresh copy of the input, generated once per trial from the {@code seed} parameter.
+ *
+ * @author C. Sean Young
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 3, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ParallelSortBenchmark
+{
+    @Param({"URL", "RANDOM_ASCII", "GENOMIC"})
+    public Corpus corpus;
+
+    @Param({"1000000", "10000000"})
+    public int size;
+
+    @Param({"1", "2", "4", "8", "16", "32"})
+    public int threads;
+
+    @Param("20130702")
+    public long seed;
+
+    private String[] input;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void generate()
+    {
+        input = corpus.generate(size, seed);
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown()
+    {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public String[] parallelSort()
+    {
+        final String[] arr = input.clone();
+        MSDStringSorter.parallelSortPartially(Integer.MAX_VALUE, arr, 0, arr.length, pool, MSDStringSorter.DEFAULT_PARALLEL_SEQUENTIAL_CUTOFF);
+        return arr;
+    }
+
+    //The single threaded sort, to compare a pool of 1 against
+    @Benchmark
+    public String[] sequentialSort()
+    {
+        final String[] arr = input.clone();
+        MSDStringSorter.sort(arr);
+        return arr;
+    }
+}
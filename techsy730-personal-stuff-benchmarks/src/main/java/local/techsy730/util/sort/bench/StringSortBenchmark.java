@@ -0,0 +1,191 @@
+package local.techsy730.util.sort.bench;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import local.techsy730.util.sort.BurstStringSorter;
+import local.techsy730.util.sort.MSDStringSorter;
+import local.techsy730.util.sort.MSDStringSorterWithCopyAvoidance;
+import local.techsy730.util.sort.MultikeyQuickSorter;
+import local.techsy730.util.sort.PackedPrefixStringSorter;
+import local.techsy730.util.sort.StringSorts;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the MSD string sorters, {@link MultikeyQuickSorter} (and {@link StringSorts}, which picks between them), {@link BurstStringSorter}
+ * and {@link PackedPrefixStringSorter} against {@link Arrays#sort(Object[])} over each {@link Corpus}, at sizes from 10^2 to 10^7.
+ * <p>
+ * Each operation sorts a fresh copy of the generated input, as sorting the same array again would just be timing
+ * an already sorted input. The copy is part of every operation, so {@link #baselineClone()} times the copy alone,
+ * to be subtracted out when the copy is a noticeable part of the total (only really the case for the smallest sizes).
+ * {@link #msdSelectTop1000()} and {@link #msdNthElementMedian()} time selecting with {@link MSDStringSorter} instead of sorting,
+ * {@link #msdDistinct()} and {@link #msdThenEqualsDistinct()} time sorting and dropping duplicates,
+ * and {@link #msdMergeBatch()} times merging the last tenth of the input (up to 1000 strings) into the rest of it, already sorted.
+ * <p>
+ * The input is generated once per trial, from the {@code seed} parameter, so every run (and every fork) sorts exactly the same strings.
+ *
+ * @author C. Sean Young
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+//A fixed size heap, so the 10^7 sizes don't end up timing heap resizing, and all of the sizes see the same heap
+@Fork(value = 3, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class StringSortBenchmark
+{
+    @Param
+    public Corpus corpus;
+
+    @Param({"100", "1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param("20130702")
+    public long seed;
+
+    private String[] input;
+
+    //For msdMergeBatch; the input, but for its last batch of strings, sorted, and that batch
+    private String[] sortedBase;
+    private String[] batch;
+
+    @Setup(Level.Trial)
+    public void generate()
+    {
+        input = corpus.generate(size, seed);
+        final int batchLen = Math.min(1000, size / 10);
+        sortedBase = Arrays.copyOf(input, size - batchLen);
+        Arrays.sort(sortedBase);
+        batch = Arrays.copyOfRange(input, size - batchLen, size);
+    }
+
+    @Benchmark
+    public String[] baselineClone()
+    {
+        return input.clone();
+    }
+
+    @Benchmark
+    public String[] msd()
+    {
+        final String[] arr = input.clone();
+        MSDStringSorter.sort(arr);
+        return arr;
+    }
+
+    //Only the first page's worth of the sorted strings, as for pagination; compare with msd for what selecting saves over sorting
+    @Benchmark
+    public String[] msdSelectTop1000()
+    {
+        final String[] arr = input.clone();
+        MSDStringSorter.selectTopK(arr, Math.min(1000, size));
+        return arr;
+    }
+
+    @Benchmark
+    public String msdNthElementMedian()
+    {
+        final String[] arr = input.clone();
+        return MSDStringSorter.nthElement(arr, size / 2);
+    }
+
+    //Finding the duplicates during the sort, against finding them after it with equals
+    @Benchmark
+    public int msdDistinct()
+    {
+        final String[] arr = input.clone();
+        return MSDStringSorter.sortDistinct(arr);
+    }
+
+    @Benchmark
+    public int msdThenEqualsDistinct()
+    {
+        final String[] arr = input.clone();
+        MSDStringSorter.sort(arr);
+        int distinct = arr.length == 0 ? 0 : 1;
+        for(int i = 1; i < arr.length; ++i)
+        {
+            if(!arr[i].equals(arr[distinct - 1]))
+                arr[distinct++] = arr[i];
+        }
+        return distinct;
+    }
+
+    //Compare with msd, for what merging a batch into an already sorted array saves over sorting it all again
+    @Benchmark
+    public String[] msdMergeBatch()
+    {
+        return MSDStringSorter.mergeSorted(sortedBase, batch.clone());
+    }
+
+    @Benchmark
+    public String[] msdInPlace()
+    {
+        final String[] arr = input.clone();
+        MSDStringSorter.sortInPlace(arr);
+        return arr;
+    }
+
+    @Benchmark
+    public String[] msdWithCopyAvoidance()
+    {
+        final String[] arr = input.clone();
+        MSDStringSorterWithCopyAvoidance.sort(arr);
+        return arr;
+    }
+
+    @Benchmark
+    public String[] burstsort()
+    {
+        final String[] arr = input.clone();
+        BurstStringSorter.sort(arr);
+        return arr;
+    }
+
+    @Benchmark
+    public String[] packedPrefix()
+    {
+        final String[] arr = input.clone();
+        PackedPrefixStringSorter.sort(arr);
+        return arr;
+    }
+
+    @Benchmark
+    public String[] multikeyQuicksort()
+    {
+        final String[] arr = input.clone();
+        MultikeyQuickSorter.sort(arr);
+        return arr;
+    }
+
+    //Includes the time StringSorts takes to sample the input and pick a sort
+    @Benchmark
+    public String[] stringSorts()
+    {
+        final String[] arr = input.clone();
+        StringSorts.sort(arr);
+        return arr;
+    }
+
+    @Benchmark
+    public String[] arraysSort()
+    {
+        final String[] arr = input.clone();
+        Arrays.sort(arr);
+        return arr;
+    }
+}
@@ -0,0 +1,273 @@
+package local.techsy730.util.sort;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * A class providing methods to sort strings with Sinha and Zobel's burstsort, a cache conscious take on MSD radix sort for very large inputs.
+ * <p>
+ * {@link MSDStringSorter} goes over the whole range once per character index (and more for its shared prefix skips), and for large inputs
+ * every one of those passes reads each string, and the characters behind it, from wherever they happen to be in memory.
+ * Once the input is much larger than the cache, nearly each of those reads is a cache miss.
+ * Burstsort instead puts each string, one at a time, into a trie of small buckets, following the trie by the string's characters
+ * until it gets to a bucket. Buckets that fill up are burst into a new trie node, splitting them on their next character.
+ * The trie itself is small enough to stay in cache, so each string is read from memory about once while being put in the trie
+ * (and once more for each burst it goes through). Then the buckets are written back out in order,
+ * each one being finished off by {@link MSDStringSorter} right after being written out, while it (and its strings) are still in cache.
+ * <p>
+ * This only pays off once the input is much larger than the cache; for smaller inputs, the trie is just overhead,
+ * and {@link MSDStringSorter} is the better choice. Inputs no larger than one bucket are passed straight to it.
+ * The sort is not stable, and as the buckets are sorted by {@link MSDStringSorter}, it has the same trouble with {@code '\0'} characters.
+ *
+ * @author C. Sean Young
+ *
+ */
+public final class BurstStringSorter
+{
+    //Buckets are burst once they are full and hold this many strings.
+    //Small enough that a bucket and its strings stay in cache while they are sorted, and large enough to keep the trie small.
+    //Must be INITIAL_BUCKET_SIZE times a power of 2, as buckets double in size as they fill up.
+    //For this value, HIGHER numbers mean MORE hesitant to trigger the optimization
+    private static final int BURST_LIMIT = 1 << 11;
+    private static final int INITIAL_BUCKET_SIZE = 1 << 4;
+
+    //Characters below this get a child of their own in every trie node; the rest share one bucket per node, which is never burst.
+    //Wider nodes would be mostly empty for most text, and the trie would no longer fit in cache.
+    private static final int NODE_WIDTH = 0x100;
+    //Where each string goes in a node; the strings that end at the node's depth, one slot for each character below NODE_WIDTH, and then the rest
+    private static final int ENDED_SLOT = 0;
+    private static final int WIDE_SLOT = NODE_WIDTH + 1;
+    private static final int SLOTS = NODE_WIDTH + 2;
+
+    private final MSDStringSorter.Context leafSorter;
+    private final int minCharsToSort;
+    private final Node root = new Node(0, 0, null);
+
+    private BurstStringSorter(int minCharsToSort, SorterTuning tuning)
+    {
+        this.leafSorter = new MSDStringSorter.Context(tuning);
+        this.minCharsToSort = minCharsToSort;
+    }
+
+    public static final void sort(String[] arr)
+    {
+        sort(arr, 0, arr.length);
+    }
+
+    public static final void sort(String[] arr, int fromIndex, int toIndex)
+    {
+        sortPartially(Integer.MAX_VALUE, arr, fromIndex, toIndex);
+    }
+
+    public static final void sortPartially(int minCharsToSort, String[] arr)
+    {
+        sortPartially(minCharsToSort, arr, 0, arr.length);
+    }
+
+    public static final void sortPartially(int minCharsToSort, String[] arr, int fromIndex, int toIndex)
+    {
+        sortPartially(minCharsToSort, arr, fromIndex, toIndex, SorterTuning.getDefault());
+    }
+
+    public static final void sort(String[] arr, SorterTuning tuning)
+    {
+        sortPartially(Integer.MAX_VALUE, arr, 0, arr.length, tuning);
+    }
+
+    /**
+     * Sorts the given range on at least its first {@code minCharsToSort} characters,
+     * with the buckets being finished off by {@link MSDStringSorter} with the given cutoffs.
+     *
+     * @param minCharsToSort the minimum number of characters from the start of each string to sort on
+     * @param arr the array to sort
+     * @param fromIndex the index of the first element to sort (inclusive)
+     * @param toIndex the index of the last element to sort (exclusive)
+     * @param tuning the cutoffs to use
+     */
+    public static void sortPartially(int minCharsToSort, String[] arr, int fromIndex, int toIndex, SorterTuning tuning)
+    {
+        if(tuning == null) throw new NullPointerException("tuning");
+        checkBounds(arr.length, fromIndex, toIndex);
+        if(toIndex - fromIndex <= BURST_LIMIT || minCharsToSort <= 1)
+        {
+            //One bucket's worth (or nothing past the first character to split on), so the trie would be nothing but overhead
+            MSDStringSorter.sortPartially(minCharsToSort, arr, fromIndex, toIndex, tuning);
+            return;
+        }
+        final BurstStringSorter sorter = new BurstStringSorter(minCharsToSort, tuning);
+        for(int i = fromIndex; i < toIndex; ++i)
+            sorter.insert(arr[i]);
+        final int end = sorter.writeOut(arr, fromIndex);
+        assert end == toIndex;
+    }
+
+    //A node of the trie, splitting its strings on their character at depth.
+    //Every string under a node shares its first skipFrom characters, as that is how the trie got to it.
+    //When a bucket is burst, the strings in it often share more than that (like URLs sharing a host),
+    //so the new node skips straight past what they share; the node's depth is past those characters, and prefixSource is one of the strings that shares them.
+    //Strings put under the node later that don't share them go in the before or after bucket, depending on how they compare to them,
+    //so that the node never needs to be split.
+    private static final class Node
+    {
+        final int depth;
+        final int skipFrom;
+        final String prefixSource;
+        final Node[] children = new Node[SLOTS];
+        final String[][] buckets = new String[SLOTS + 2][];
+        final int[] sizes = new int[SLOTS + 2];
+
+        Node(int depth, int skipFrom, String prefixSource)
+        {
+            this.depth = depth;
+            this.skipFrom = skipFrom;
+            this.prefixSource = prefixSource;
+        }
+    }
+
+    //The before and after buckets are kept with the others, past the slots for the children
+    private static final int BEFORE_BUCKET = SLOTS;
+    private static final int AFTER_BUCKET = SLOTS + 1;
+
+    private static final int slotOf(final String s, final int depth)
+    {
+        if(depth >= s.length()) return ENDED_SLOT;
+        final char c = s.charAt(depth);
+        return c < NODE_WIDTH ? c + 1 : WIDE_SLOT;
+    }
+
+    private final void insert(final String s)
+    {
+        Node node = root;
+        while(true)
+        {
+            final int slot = slotOf(s, node.depth);
+            final Node child = node.children[slot];
+            if(child != null)
+            {
+                if(child.depth > child.skipFrom)
+                {
+                    //Make sure the string shares the characters the child skips
+                    final String prefixSource = child.prefixSource;
+                    final int mismatch = mismatchBefore(prefixSource, s, child.skipFrom, child.depth);
+                    if(mismatch < child.depth)
+                    {
+                        append(child, mismatch == s.length() || s.charAt(mismatch) < prefixSource.charAt(mismatch) ? BEFORE_BUCKET : AFTER_BUCKET, s);
+                        return;
+                    }
+                }
+                node = child;
+                continue;
+            }
+            final String[] bucket = node.buckets[slot];
+            final int size = node.sizes[slot];
+            if(bucket != null && size >= BURST_LIMIT && size == bucket.length &&
+                slot != ENDED_SLOT && slot != WIDE_SLOT && node.depth + 1 < minCharsToSort)
+            {
+                final Node burst = burst(node, slot);
+                if(burst != null)
+                {
+                    node = burst;
+                    continue;
+                }
+            }
+            append(node, slot, s);
+            return;
+        }
+    }
+
+    private static final void append(final Node node, final int slot, final String s)
+    {
+        String[] bucket = node.buckets[slot];
+        final int size = node.sizes[slot];
+        if(bucket == null)
+            bucket = node.buckets[slot] = new String[INITIAL_BUCKET_SIZE];
+        else if(size == bucket.length)
+            bucket = node.buckets[slot] = Arrays.copyOf(bucket, size * 2);
+        bucket[size] = s;
+        node.sizes[slot] = size + 1;
+    }
+
+    //Replaces the bucket with a new node, with the bucket's strings split among its buckets on their first character they don't all share.
+    //Returns null, leaving the bucket as it is, if they all share at least minCharsToSort characters, so splitting them would do nothing.
+    private final Node burst(final Node parent, final int slot)
+    {
+        final String[] bucket = parent.buckets[slot];
+        final int size = parent.sizes[slot];
+        final int skipFrom = parent.depth + 1;
+        final int depth = skipFrom + MSDStringSorter.findSharedPrefixLen(bucket, 0, size, skipFrom, Integer.MAX_VALUE);
+        if(depth >= minCharsToSort) return null;
+        final Node node = new Node(depth, skipFrom, bucket[0]);
+        for(int i = 0; i < size; ++i)
+            append(node, slotOf(bucket[i], depth), bucket[i]);
+        parent.buckets[slot] = null;
+        parent.sizes[slot] = 0;
+        parent.children[slot] = node;
+        return node;
+    }
+
+    //The first index in [from, end) where the two strings differ, or where s2 ends; end if there is no such index
+    //s1 must be at least end characters long
+    private static final int mismatchBefore(final String s1, final String s2, final int from, final int end)
+    {
+        return StringMismatch.mismatch(s1, s2, from, end);
+    }
+
+    //Writes out the strings in the trie in order, starting at pos, and returns the index just past the last one written.
+    //Each bucket is sorted as soon as it is written out, while it is still in cache, and let go of.
+    //Thanks to how long strings can get, the trie can get deep, so our own stack is kept instead of recursing.
+    private final int writeOut(final String[] arr, int pos)
+    {
+        final ArrayDeque<Node> nodes = new ArrayDeque<Node>();
+        //The next slot to write out of each node on the stack
+        int[] nextSlots = new int[16];
+        nodes.push(root);
+        nextSlots[0] = 0;
+        while(!nodes.isEmpty())
+        {
+            final Node node = nodes.peek();
+            final int level = nodes.size() - 1;
+            final int slot = nextSlots[level];
+            if(slot == SLOTS)
+            {
+                pos = writeOutBucket(node, AFTER_BUCKET, node.skipFrom, arr, pos);
+                nodes.pop();
+                continue;
+            }
+            nextSlots[level] = slot + 1;
+            final Node child = node.children[slot];
+            if(child != null)
+            {
+                pos = writeOutBucket(child, BEFORE_BUCKET, child.skipFrom, arr, pos);
+                nodes.push(child);
+                if(level + 1 == nextSlots.length)
+                    nextSlots = Arrays.copyOf(nextSlots, nextSlots.length * 2);
+                nextSlots[level + 1] = 0;
+                continue;
+            }
+            //The strings that ended here are all equal, and the ones in any other bucket but the wide one share the character at depth too
+            final int sharedChars = slot == ENDED_SLOT ? Integer.MAX_VALUE : (slot == WIDE_SLOT ? node.depth : node.depth + 1);
+            pos = writeOutBucket(node, slot, sharedChars, arr, pos);
+        }
+        return pos;
+    }
+
+    private final int writeOutBucket(final Node node, final int slot, final int sharedChars, final String[] arr, final int pos)
+    {
+        final int size = node.sizes[slot];
+        if(size == 0) return pos;
+        System.arraycopy(node.buckets[slot], 0, arr, pos, size);
+        node.buckets[slot] = null;
+        if(size > 1 && sharedChars < minCharsToSort)
+            leafSorter.sortPartiallyFrom(sharedChars, minCharsToSort, arr, pos, pos + size);
+        return pos + size;
+    }
+
+    private static final void checkBounds(int length, int fromIndex, int toIndex)
+    {
+        if(fromIndex < 0) throw new ArrayIndexOutOfBoundsException(fromIndex + " < 0");
+        if(toIndex > length) throw new ArrayIndexOutOfBoundsException(toIndex + " > " + length);
+        if(fromIndex > toIndex)
+            throw new IllegalArgumentException("start position: " + fromIndex +
+                " > end position: " + toIndex);
+    }
+}
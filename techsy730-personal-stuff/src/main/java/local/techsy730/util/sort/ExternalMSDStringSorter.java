@@ -0,0 +1,518 @@
+package local.techsy730.util.sort;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Sorts more strings than fit in memory, writing them out in sorted order, one per line.
+ * <p>
+ * The input is read in runs that fit in the given memory budget. Each run is sorted with {@link MSDStringSorter}
+ * and spilled to a temporary file, with each string stored as the length of the prefix it shares with the string before it
+ * and then only the rest of it, so runs with lots of shared prefixes (which is where MSD radix sort shines anyways) take up little space.
+ * The runs are then merged, at most {@link #getMaxMergeFanIn()} at a time (in several passes, if there are more runs than that),
+ * into the output. If the whole input fits in one run, nothing is spilled at all.
+ * <p>
+ * The merge is aware of shared prefixes as well. For each run it tracks how long of a prefix the run's next string shares with the last
+ * string written out. The string sharing the longest prefix is always the smallest, so most of the time no characters need
+ * to be compared at all, and when some do, the comparison starts after the shared prefix instead of rescanning it.
+ * The shared prefix of the string after the one written out comes straight from the run file.
+ * <p>
+ * Instances hold no state between sorts, so one can be used for any number of sorts, including from several threads at once.
+ *
+ * @author C. Sean Young
+ *
+ */
+public final class ExternalMSDStringSorter
+{
+    //Rough guess of the heap used by each string held in a run, not counting its characters:
+    //the String object and the header of its char array, its slot in the run array, and its slot in the sorter's working copy
+    private static final int ESTIMATED_OVERHEAD_PER_STRING = 64;
+
+    public static final int DEFAULT_MAX_MERGE_FAN_IN = 64;
+
+    //Size of the buffer for each file; the merge has one for every run it is merging
+    private static final int IO_BUFFER_SIZE = 1 << 16;
+
+    private final long memoryBudget;
+    private final File tempDir;
+    private final int maxMergeFanIn;
+
+    /**
+     * @param memoryBudget roughly how much heap, in bytes, the strings of a single run may take up
+     * @param tempDir where to put the run files, or null for the system default temporary directory
+     */
+    public ExternalMSDStringSorter(long memoryBudget, File tempDir)
+    {
+        this(memoryBudget, tempDir, DEFAULT_MAX_MERGE_FAN_IN);
+    }
+
+    /**
+     * @param memoryBudget roughly how much heap, in bytes, the strings of a single run may take up
+     * @param tempDir where to put the run files, or null for the system default temporary directory
+     * @param maxMergeFanIn the most runs to merge at once; must be at least 2
+     */
+    public ExternalMSDStringSorter(long memoryBudget, File tempDir, int maxMergeFanIn)
+    {
+        if(memoryBudget <= 0)
+            throw new IllegalArgumentException("memory budget: " + memoryBudget + " <= 0");
+        if(maxMergeFanIn < 2)
+            throw new IllegalArgumentException("max merge fan in: " + maxMergeFanIn + " < 2");
+        this.memoryBudget = memoryBudget;
+        this.tempDir = tempDir;
+        this.maxMergeFanIn = maxMergeFanIn;
+    }
+
+    public long getMemoryBudget()
+    {
+        return memoryBudget;
+    }
+
+    public File getTempDir()
+    {
+        return tempDir;
+    }
+
+    public int getMaxMergeFanIn()
+    {
+        return maxMergeFanIn;
+    }
+
+    public void sort(Iterator<String> in, Writer out) throws IOException
+    {
+        sortPartially(Integer.MAX_VALUE, in, out);
+    }
+
+    /**
+     * Sorts the lines of the given reader.
+     * Lines are split the same way {@link BufferedReader#readLine()} splits them, and so do not include the line terminators.
+     *
+     * @param in the lines to sort; it is not closed
+     * @param out where to write the sorted lines to, each followed by a {@code '\n'}; it is flushed, but not closed
+     * @throws IOException if reading, writing, or spilling fails
+     */
+    public void sort(Reader in, Writer out) throws IOException
+    {
+        sortPartially(Integer.MAX_VALUE, in, out);
+    }
+
+    public void sortPartially(int minCharsToSort, Reader in, Writer out) throws IOException
+    {
+        final LineIterator lines = new LineIterator(in instanceof BufferedReader ? (BufferedReader)in : new BufferedReader(in, IO_BUFFER_SIZE));
+        try
+        {
+            sortPartially(minCharsToSort, lines, out);
+        }
+        catch(ReadFailure e)
+        {
+            //Thrown by our own iterator, as Iterator.next can't throw checked exceptions
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Sorts the given strings on at least their first {@code minCharsToSort} characters,
+     * the same way {@link MSDStringSorter#sortPartially(int, String[])} would if they all fit in memory.
+     *
+     * @param minCharsToSort the minimum number of characters from the start of each string to sort on
+     * @param in the strings to sort
+     * @param out where to write the sorted strings to, each followed by a {@code '\n'}; it is flushed, but not closed
+     * @throws IOException if writing or spilling fails
+     */
+    public void sortPartially(int minCharsToSort, Iterator<String> in, Writer out) throws IOException
+    {
+        final MSDStringSorter.Context context = new MSDStringSorter.Context();
+        final List<File> runs = new ArrayList<File>();
+        try
+        {
+            String[] run = new String[1024];
+            while(true)
+            {
+                int runSize = 0;
+                long runBytes = 0;
+                while(runBytes < memoryBudget && in.hasNext())
+                {
+                    final String s = in.next();
+                    if(runSize == run.length)
+                        run = Arrays.copyOf(run, runSize + (runSize >> 1));
+                    run[runSize++] = s;
+                    runBytes += ESTIMATED_OVERHEAD_PER_STRING + 2L * s.length();
+                }
+                context.sortPartially(minCharsToSort, run, 0, runSize);
+                final boolean more = in.hasNext();
+                if(runs.isEmpty() && !more)
+                {
+                    //Everything fit in one run, so no need to go through the disk at all
+                    for(int i = 0; i < runSize; ++i)
+                    {
+                        out.write(run[i]);
+                        out.write('\n');
+                    }
+                    out.flush();
+                    return;
+                }
+                runs.add(spillRun(run, runSize));
+                //Don't hold onto this run while reading in the next one
+                Arrays.fill(run, 0, runSize, null);
+                if(!more) break;
+            }
+            //The run array and the sorter's scratch could be rather big, and are no longer needed
+            run = null;
+            context.trim();
+            mergeAll(runs, minCharsToSort, out);
+            out.flush();
+        }
+        finally
+        {
+            for(File f : runs)
+                f.delete();
+        }
+    }
+
+    private File spillRun(final String[] run, final int runSize) throws IOException
+    {
+        final File f = File.createTempFile("msdsort", ".run", tempDir);
+        f.deleteOnExit();
+        final RunWriter writer = new RunWriter(f);
+        try
+        {
+            String last = "";
+            for(int i = 0; i < runSize; ++i)
+            {
+                final String s = run[i];
+                final int shared = sharedPrefixLen(last, s);
+                writer.write(s, shared);
+                last = s;
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+        return f;
+    }
+
+    //Merges the runs down until there are few enough to merge straight into the output. Deletes run files as they are used up.
+    private void mergeAll(final List<File> runs, final int maxIndex, final Writer out) throws IOException
+    {
+        while(runs.size() > maxMergeFanIn)
+        {
+            //Merge the oldest runs first, so each pass goes over every string about once
+            final List<File> group = new ArrayList<File>(runs.subList(0, maxMergeFanIn));
+            final File merged = File.createTempFile("msdsort", ".run", tempDir);
+            merged.deleteOnExit();
+            runs.add(merged);
+            final RunWriter writer = new RunWriter(merged);
+            try
+            {
+                merge(group, maxIndex, writer, null);
+            }
+            finally
+            {
+                writer.close();
+            }
+            for(File f : group)
+                f.delete();
+            runs.subList(0, maxMergeFanIn).clear();
+        }
+        merge(runs, maxIndex, null, out);
+    }
+
+    //Exactly one of to and out should be non-null
+    private static void merge(final List<File> runs, final int maxIndex, final RunWriter to, final Writer out) throws IOException
+    {
+        RunReader[] heads = new RunReader[runs.size()];
+        int headCount = 0;
+        try
+        {
+            for(File f : runs)
+            {
+                final RunReader reader = new RunReader(f);
+                heads[headCount++] = reader;
+                //lcp is zero for every run to start, which is right, as there is no last string yet
+                if(!reader.next(maxIndex))
+                {
+                    reader.close();
+                    heads[--headCount] = null;
+                }
+            }
+            while(headCount > 0)
+            {
+                // Find the smallest string among the heads of the runs.
+                // Every head is at least the last string written, so the one that shares the longest prefix with it is the smallest.
+                // Only heads that share the same length of prefix need their characters compared, and only past that prefix.
+                int best = 0;
+                RunReader bestReader = heads[0];
+                for(int i = 1; i < headCount; ++i)
+                {
+                    final RunReader h = heads[i];
+                    if(h.lcp > bestReader.lcp ||
+                        (h.lcp == bestReader.lcp && compareFrom(h.buf, h.len, bestReader.buf, bestReader.len, h.lcp, maxIndex) < 0))
+                    {
+                        best = i;
+                        bestReader = h;
+                    }
+                }
+                final int bestLcp = bestReader.lcp;
+                if(to != null)
+                    to.write(bestReader.buf, bestReader.len, bestLcp);
+                else
+                {
+                    out.write(bestReader.buf, 0, bestReader.len);
+                    out.write('\n');
+                }
+                // The string just written is the new last string, so update the shared prefixes.
+                // A head that shares less with the old last string than the one written shares exactly that much with it as well,
+                // so only the ones that tied need anything looked at, and then only past the prefix they already share.
+                for(int i = 0; i < headCount; ++i)
+                {
+                    final RunReader h = heads[i];
+                    if(i != best && h.lcp == bestLcp)
+                        h.lcp = mismatch(h.buf, h.len, bestReader.buf, bestReader.len, bestLcp, maxIndex);
+                }
+                // The next string of the same run already has how much it shares with the string just written stored with it
+                if(!bestReader.next(maxIndex))
+                {
+                    bestReader.close();
+                    //Keep the runs in order, so equal strings come out in the order of their runs
+                    System.arraycopy(heads, best + 1, heads, best, headCount - best - 1);
+                    heads[--headCount] = null;
+                }
+            }
+        }
+        finally
+        {
+            for(int i = 0; i < headCount; ++i)
+                heads[i].close();
+        }
+    }
+
+    private static int sharedPrefixLen(final String a, final String b)
+    {
+        return StringMismatch.mismatch(a, b, 0, Integer.MAX_VALUE);
+    }
+
+    //The first index at least from where a and b differ, with both cut off at maxIndex
+    private static int mismatch(final char[] a, final int aLen, final char[] b, final int bLen, final int from, final int maxIndex)
+    {
+        return StringMismatch.mismatch(a, aLen, b, bLen, from, maxIndex);
+    }
+
+    //Compares the characters in [from, maxIndex) of each string
+    private static int compareFrom(final char[] a, final int aLen, final char[] b, final int bLen, final int from, final int maxIndex)
+    {
+        final int i = mismatch(a, aLen, b, bLen, from, maxIndex);
+        final int aEnd = Math.min(aLen, maxIndex);
+        final int bEnd = Math.min(bLen, maxIndex);
+        if(i < aEnd && i < bEnd)
+            return a[i] - b[i];
+        return aEnd - bEnd;
+    }
+
+    // The run format is, for each string:
+    // the length of the prefix it shares with the string before it, as a varint
+    // the number of characters after that prefix, as a varint
+    // those characters, each encoded the same way DataOutput.writeUTF encodes them (1 to 3 bytes each, surrogates encoded separately)
+
+    private static final class RunWriter
+    {
+        private final OutputStream out;
+
+        RunWriter(File f) throws IOException
+        {
+            out = new BufferedOutputStream(new FileOutputStream(f), IO_BUFFER_SIZE);
+        }
+
+        void write(final String s, final int shared) throws IOException
+        {
+            final int len = s.length();
+            writeVarInt(shared);
+            writeVarInt(len - shared);
+            for(int i = shared; i < len; ++i)
+                writeChar(s.charAt(i));
+        }
+
+        void write(final char[] s, final int len, final int shared) throws IOException
+        {
+            writeVarInt(shared);
+            writeVarInt(len - shared);
+            for(int i = shared; i < len; ++i)
+                writeChar(s[i]);
+        }
+
+        private void writeVarInt(int v) throws IOException
+        {
+            while((v & ~0x7F) != 0)
+            {
+                out.write((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            out.write(v);
+        }
+
+        private void writeChar(final char c) throws IOException
+        {
+            if(c != 0 && c < 0x80)
+                out.write(c);
+            else if(c < 0x800)
+            {
+                out.write(0xC0 | (c >> 6));
+                out.write(0x80 | (c & 0x3F));
+            }
+            else
+            {
+                out.write(0xE0 | (c >> 12));
+                out.write(0x80 | ((c >> 6) & 0x3F));
+                out.write(0x80 | (c & 0x3F));
+            }
+        }
+
+        void close() throws IOException
+        {
+            out.close();
+        }
+    }
+
+    private static final class RunReader
+    {
+        private final InputStream in;
+        //The current string of this run is the first len characters of buf
+        char[] buf = new char[64];
+        int len;
+        //How long of a prefix the current string shares with the last string written out by the merge, cut off at the max index
+        int lcp;
+
+        RunReader(File f) throws IOException
+        {
+            in = new BufferedInputStream(new FileInputStream(f), IO_BUFFER_SIZE);
+        }
+
+        //Moves on to the next string of the run, returning false if there are none left
+        boolean next(final int maxIndex) throws IOException
+        {
+            final int first = in.read();
+            if(first == -1) return false;
+            final int shared = readVarInt(first);
+            final int newLen = shared + readVarInt(in.read());
+            if(newLen > buf.length)
+                buf = Arrays.copyOf(buf, Math.max(newLen, buf.length + (buf.length >> 1)));
+            for(int i = shared; i < newLen; ++i)
+                buf[i] = readChar();
+            len = newLen;
+            //The previous string of this run is the one that was just written out, so what it shares with that is already known
+            lcp = Math.min(shared, maxIndex);
+            return true;
+        }
+
+        private int readVarInt(int b) throws IOException
+        {
+            int v = 0;
+            int shift = 0;
+            while(true)
+            {
+                if(b == -1) throw new EOFException();
+                v |= (b & 0x7F) << shift;
+                if((b & 0x80) == 0) return v;
+                shift += 7;
+                b = in.read();
+            }
+        }
+
+        private char readChar() throws IOException
+        {
+            final int b = in.read();
+            if(b == -1) throw new EOFException();
+            if(b < 0x80)
+                return (char)b;
+            if(b < 0xE0)
+            {
+                final int b2 = in.read();
+                if(b2 == -1) throw new EOFException();
+                return (char)(((b & 0x1F) << 6) | (b2 & 0x3F));
+            }
+            final int b2 = in.read();
+            final int b3 = in.read();
+            if(b3 == -1) throw new EOFException();
+            return (char)(((b & 0x0F) << 12) | ((b2 & 0x3F) << 6) | (b3 & 0x3F));
+        }
+
+        void close() throws IOException
+        {
+            in.close();
+        }
+    }
+
+    //Carries an IOException out of LineIterator
+    private static final class ReadFailure extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        ReadFailure(IOException cause)
+        {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause()
+        {
+            return (IOException)super.getCause();
+        }
+    }
+
+    private static final class LineIterator implements Iterator<String>
+    {
+        private final BufferedReader in;
+        private String next;
+
+        LineIterator(BufferedReader in)
+        {
+            this.in = in;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            if(next == null)
+            {
+                try
+                {
+                    next = in.readLine();
+                }
+                catch(IOException e)
+                {
+                    throw new ReadFailure(e);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public String next()
+        {
+            if(!hasNext()) throw new NoSuchElementException();
+            final String toReturn = next;
+            next = null;
+            return toReturn;
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
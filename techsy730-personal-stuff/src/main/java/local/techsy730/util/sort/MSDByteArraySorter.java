@@ -0,0 +1,291 @@
+package local.techsy730.util.sort;
+
+import java.util.Arrays;
+
+// NOTE Throughout the various comments, n is used as the total number of keys to sort,
+// and m is the maximum number of bytes remaining any one key has left to be sorted on
+
+/**
+ * A class providing methods to sort byte arrays according to the most significant "digit" radix sort,
+ * where each byte acts as the "digit".
+ * <p>
+ * Keys are ordered lexicographically with each byte treated as unsigned (so {@code 0x80} and up sort after {@code 0x7F}),
+ * with a key that is a prefix of another sorting first.
+ * For UTF-8 encoded keys this is the same as ordering by code point, so keys that arrive as UTF-8 can be sorted
+ * as they are, without decoding each of them to a {@link String} first.
+ * (Note that this is <i>not</i> the same as the order {@link String#compareTo(String)} gives for strings with characters outside
+ *  the basic multilingual plane, as that compares UTF-16 code units.)
+ * <p>
+ * This works the same way {@link MSDStringSorter} does, with the same fallbacks for small ranges and skipping of shared prefixes,
+ * but as the alphabet is only ever 256 "digits" (plus the end of a key), the character counts fit in a fixed table
+ * instead of a table that is grown as larger characters are seen.
+ *
+ * @author C. Sean Young
+ *
+ */
+public final class MSDByteArraySorter
+{
+    // XXX Empirically determine a good estimate for these constants, based on common usage cases
+    //Ranges at most this long are finished off with a binary insertion sort over all of the remaining bytes.
+    //Comparing byte arrays is cheaper than comparing strings (no char to code unit checks, and nothing to bounds check through String),
+    //so this can be a bit higher than in MSDStringSorter.
+    //For this value, SMALLER numbers mean MORE hesitant to trigger the optimization
+    private static final int MAX_INSERTION_SORT = 24;
+
+    //The bucket for keys that end before the current index; always sorts first, and never needs to be looked at again
+    private static final int END_OF_KEY = 0;
+    //One bucket for the end of a key, and then one for each possible byte
+    private static final int BUCKET_COUNT = 256 + 1;
+
+    private MSDByteArraySorter()
+    {
+    }
+
+    public static final void sort(byte[][] arr)
+    {
+        sort(arr, 0, arr.length);
+    }
+
+    public static final void sort(byte[][] arr, int fromIndex, int toIndex)
+    {
+        sortPartially(Integer.MAX_VALUE, arr, fromIndex, toIndex);
+    }
+
+    public static final void sortPartially(int minBytesToSort, byte[][] arr)
+    {
+        sortPartially(minBytesToSort, arr, 0, arr.length);
+    }
+
+    /**
+     * Sorts the given range of keys on at least their first {@code minBytesToSort} bytes.
+     * Keys that are equal over that many bytes may end up in any order relative to each other.
+     *
+     * @param minBytesToSort the minimum number of bytes from the start of each key to sort on
+     * @param arr the array to sort
+     * @param fromIndex the index of the first element to sort (inclusive)
+     * @param toIndex the index of the last element to sort (exclusive)
+     */
+    public static void sortPartially(int minBytesToSort, byte[][] arr, int fromIndex, int toIndex)
+    {
+        if(checkBounds(arr.length, fromIndex, toIndex)) return;
+        if(minBytesToSort <= 0) return;
+        if(toIndex - fromIndex <= MAX_INSERTION_SORT)
+        {
+            binaryInsertionSort(arr, fromIndex, toIndex, 0, minBytesToSort);
+            return;
+        }
+        new MSDByteArraySorter().sortRange(arr, fromIndex, toIndex, minBytesToSort);
+    }
+
+    /**
+     * Compares two keys in the order the methods of this class sort them in;
+     * lexicographically, with each byte treated as unsigned, and with a key that is a prefix of another being less than it.
+     *
+     * @param a the first key to compare
+     * @param b the second key to compare
+     * @return a negative number, zero, or a positive number as a is less than, equal to, or greater than b
+     */
+    public static int compare(byte[] a, byte[] b)
+    {
+        return compareFrom(a, b, 0, Integer.MAX_VALUE);
+    }
+
+    //Thanks to how long keys can get, we cannot use recursion. As such, we must maintain our own stack of
+    //(start, end, index) triples for the ranges left to sort
+    private int[] stack = new int[3 * 16];
+    private int stackSize = 0;
+
+    //Fixed size, and all zeros between passes
+    private final int[] counts = new int[BUCKET_COUNT];
+    private final int[] bucketStarts = new int[BUCKET_COUNT + 1];
+    private final int[] bucketNext = new int[BUCKET_COUNT];
+    //The bucket of each key in the range being bucket sorted, so the scatter doesn't have to go back to the keys for them
+    private short[] keyCache;
+    private byte[][] wc;
+
+    private void sortRange(final byte[][] arr, final int fromIndex, final int toIndex, final int maxIndex)
+    {
+        final int len = toIndex - fromIndex;
+        wc = new byte[len][];
+        keyCache = new short[len];
+        push(fromIndex, toIndex, 0);
+        while(stackSize != 0)
+        {
+            stackSize -= 3;
+            // "Recurse"
+            processPart(arr, fromIndex, stack[stackSize], stack[stackSize + 1], stack[stackSize + 2], maxIndex);
+        }
+    }
+
+    private void push(final int start, final int end, final int index)
+    {
+        if(stackSize == stack.length)
+            stack = Arrays.copyOf(stack, stackSize << 1);
+        stack[stackSize] = start;
+        stack[stackSize + 1] = end;
+        stack[stackSize + 2] = index;
+        stackSize += 3;
+    }
+
+    //wcOffset is the index in arr that wc[0] stands in for
+    private void processPart(final byte[][] arr, final int wcOffset, final int start, final int end, int index, final int maxIndex)
+    {
+        final int len = end - start;
+        //Skip if we went past the "end" of the byte range we want to sort
+        if(index >= maxIndex) return;
+        if(len <= MAX_INSERTION_SORT)
+        {
+            binaryInsertionSort(arr, start, end, index, maxIndex);
+            return;
+        }
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        final int[] counts = this.counts;
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        final short[] keyCache = this.keyCache;
+
+        // Count how often each byte appears, remembering each key's bucket so the scatter doesn't have to come back for it
+        int minBucket = BUCKET_COUNT;
+        int maxBucket = -1;
+        for(int i = start, k = 0; i < end; ++i, ++k)
+        {
+            final int b = bucketOf(arr[i], index);
+            keyCache[k] = (short)b;
+            ++counts[b];
+            minBucket = b < minBucket ? b : minBucket;
+            maxBucket = b > maxBucket ? b : maxBucket;
+        }
+
+        if(minBucket == maxBucket)
+        {
+            counts[minBucket] = 0;
+            //Every key has ended, so they are all equal
+            if(minBucket == END_OF_KEY) return;
+            // Common case, all the bytes at this level were the same, just
+            // immediately move on, skipping any further bytes they all share as well
+            push(start, end, index + 1 + findSharedPrefixLen(arr, start, end, index + 1, maxIndex));
+            return;
+        }
+
+        // Compute index where each "section" will start
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        final int[] bucketStarts = this.bucketStarts;
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        final int[] bucketNext = this.bucketNext;
+        {
+            int currentIndex = 0;
+            for(int b = minBucket; b <= maxBucket; ++b)
+            {
+                bucketStarts[b] = currentIndex;
+                bucketNext[b] = currentIndex;
+                currentIndex += counts[b];
+                counts[b] = 0;
+            }
+            bucketStarts[maxBucket + 1] = currentIndex;
+        }
+
+        // Now, copy over to the "working copy" array the keys into the right places, then back again
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        final byte[][] wc = this.wc;
+        final int wcStart = start - wcOffset;
+        for(int i = start, k = 0; i < end; ++i, ++k)
+        {
+            wc[(bucketNext[keyCache[k]]++) + wcStart] = arr[i];
+        }
+        System.arraycopy(wc, wcStart, arr, start, len);
+
+        // Now, sort each bucket on the next byte
+        // Keys in the END_OF_KEY bucket are all equal, so that bucket (if any) is skipped
+        ++index;
+        for(int b = minBucket == END_OF_KEY ? END_OF_KEY + 1 : minBucket; b <= maxBucket; ++b)
+        {
+            final int regionStart = bucketStarts[b] + start;
+            final int regionEnd = bucketStarts[b + 1] + start;
+            final int newSize = regionEnd - regionStart;
+            if(newSize <= 1) continue; //Don't even bother with a push if our size is zero or one
+            if(newSize <= MAX_INSERTION_SORT)
+                binaryInsertionSort(arr, regionStart, regionEnd, index, maxIndex);
+            else
+                push(regionStart, regionEnd, index);
+        }
+    }
+
+    private static final int bucketOf(final byte[] key, final int index)
+    {
+        return index < key.length ? (key[index] & 0xFF) + 1 : END_OF_KEY;
+    }
+
+    //Assumes every key in the range has the same byte at index - 1 (so none of them have ended before index)
+    private static final int findSharedPrefixLen(final byte[][] arr, final int fromIndex, final int toIndex,
+        final int index, final int maxIndex)
+    {
+        // It doesn't really matter which element we choose, it will give the same result, and the same average running time
+        final byte[] toTestAgainst = arr[fromIndex];
+        final int len = Math.min(maxIndex, toTestAgainst.length);
+        final int lastIndex = toIndex - 1;
+        for(int i = index; i < len; ++i)
+        {
+            final int current = bucketOf(toTestAgainst, i);
+            //First off, check the last key of this block, as if there are mismatches, that is a very likely place to find one of them
+            if(bucketOf(arr[lastIndex], i) != current)
+                return i - index;
+            //Then, check the rest
+            for(int j = fromIndex + 1; j < lastIndex; ++j)
+            {
+                if(bucketOf(arr[j], i) != current)
+                    return i - index;
+            }
+        }
+        // If we made it all the way through, the whole key matched (or we hit the max index)
+        return len > index ? len - index : 0;
+    }
+
+    //Compares the bytes in [index, maxIndex) of each key
+    private static final int compareFrom(final byte[] a, final byte[] b, final int index, final int maxIndex)
+    {
+        final int aLen = Math.min(a.length, maxIndex);
+        final int bLen = Math.min(b.length, maxIndex);
+        final int len = Math.min(aLen, bLen);
+        for(int i = index; i < len; ++i)
+        {
+            final int diff = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if(diff != 0) return diff;
+        }
+        return aLen - bLen;
+    }
+
+    //Stable, as each element is moved back to just after the last element that is not greater than it.
+    private static final void binaryInsertionSort(final byte[][] arr, final int fromIndex, final int toIndex,
+        final int index, final int maxIndex)
+    {
+        for(int i = fromIndex + 1; i < toIndex; ++i)
+        {
+            final byte[] pivot = arr[i];
+            //Already in place, common for partially sorted input
+            if(compareFrom(arr[i - 1], pivot, index, maxIndex) <= 0) continue;
+            //We already know arr[i - 1] > pivot, so no need to search it
+            int left = fromIndex;
+            int right = i - 1;
+            while(left < right)
+            {
+                final int mid = (left + right) >>> 1;
+                if(compareFrom(pivot, arr[mid], index, maxIndex) < 0)
+                    right = mid;
+                else
+                    left = mid + 1;
+            }
+            System.arraycopy(arr, left, arr, left + 1, i - left);
+            arr[left] = pivot;
+        }
+    }
+
+    private static final boolean checkBounds(int length, int fromIndex, int toIndex)
+    {
+        if(fromIndex < 0) throw new ArrayIndexOutOfBoundsException(fromIndex + " < 0");
+        if(toIndex > length) throw new ArrayIndexOutOfBoundsException(toIndex + " > " + length);
+        if(fromIndex > toIndex)
+            throw new IllegalArgumentException("start position: " + fromIndex +
+                " > end position: " + toIndex);
+        if(toIndex - fromIndex <= 1) return true; // Trivial case, flag to skip
+        return false;
+    }
+}
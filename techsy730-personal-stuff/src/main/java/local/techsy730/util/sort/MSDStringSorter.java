@@ -2,11 +2,17 @@ package local.techsy730.util.sort;
 
 import java.util.Deque;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import local.techsy730.function.Function1;
+
+import com.google.common.collect.Interner;
 
 // TODO DOCUMENTATION!
 // TODO Tuning so it can be on par with Arrays.sort even in not "optimal" cases where MSD radix sort shines 
 // XXX See if something can be done about "midstring" null characters ('\0') without harming performance much
-// TODO Parallel versions of these methods, as this is a trivially parallelizable sort
 // NOTE Throughout the various comments, especially run-time asymptotic behavior anaylsis, usually
 // n is used as the total number of strings to sort, and m is the maximum number of characters remaining any one string has left to be sorted on
 
@@ -33,6 +39,7 @@ import java.util.Arrays;
  *     ANSI only when estimating density, as that will give a more useful number to predict performance of these methods)<br>
  * Unless at least three of these are will usually be true for your inputs, you are better off using {@link Arrays#sort(Object[])},
  * as that will likely yield better average running times due to lower overhead overcoming any savings the MSD radix sort algorithm can provide.<br>
+ * If your inputs vary too much to tell ahead of time, {@link StringSorts#sort(String[])} samples each input and makes this choice for it.<br>
  * <p>
  * It is important to note that for Sun's/Oracle's Java, starting at Java 7, {@link Arrays#sort(Object[])} is adaptive,
  * which means for nearly sorted inputs, Arrays.sort(Object[]) will yield nearly linear times, and still have a smaller overhead than 
@@ -43,76 +50,50 @@ import java.util.Arrays;
  */
 public final class MSDStringSorter
 {
-    // XXX Empirically determine a good estimate for these constants, based on common usage cases
-    //XXX This should be 16 or so on Java 7, but 7 on Java 6
-    //NOTE Keep in mind that when this triggers, *up to* all of the remaining characters will be looked at for each comparison
-    //Thus, setting this too high negates the advantages of MSD sort.
-    //This number was chosen based on some extremely rough "back of the envelope" theoretical calculations and verified loosely
-    //to be decent with very non-rigourous tests.
-    //The advantage is that once a chunk gets sorted by this, that chunk will never have to be looked at again.
-    //For this value, SMALLER numbers mean MORE hesitant to trigger the optimization
-    //XXX May be a tad high, but not by much 
-    private static final int MAX_INSERTION_SORT = 16;
-    //Set to MAX_INSERTION_SORT to effectively disable this optimization
-    //NOTE Keep in mind, if the Arrays.sort only on the current index is used
-    //then we have to loop through that segment AGAIN to find the next layer of "chunks".
-    //Thus, this needs to be kept somewhat low.
-    //But not too low, as MSD sorting does involve a lot of overhead
-    //For these two values, SMALLER numbers mean MORE hesitant to trigger the optimization
-    //XXX These seem a bit high in the 50-60 range...    
-    private static final int MAX_ARRAYS_INDEX_SORT = 51;
-    private static final int MAX_ARRAYS_FULL_SORT = 59;
-    
-    @SuppressWarnings("unused") //One of these cases will always be marked as "dead"
-    private static final int ARRAYS_SORT_CHECK = (MAX_ARRAYS_FULL_SORT > MAX_ARRAYS_INDEX_SORT) ? MAX_ARRAYS_FULL_SORT : MAX_ARRAYS_INDEX_SORT;
-    
-    //This causes a few extra loops to be run, and makes other loops gain extra operations, thus keep it somewhat low
-    //However, the savings from a correctly computed max length can be rather large, so thus you don't need to be too conservative with it.
-    //XXX These values seem a bit high
-    private static final int _MAX_UPDATE_MAX_LENGTH_COMPUTE = (int)(ARRAYS_SORT_CHECK * 2.2);
-    private static final int _MAX_MAX_UPDATE_MAX_LENGTH = 120;
-    @SuppressWarnings("unused") //One of these cases will always be marked as "dead"
-    private static final int MAX_UPDATE_MAX_LENGTH = _MAX_UPDATE_MAX_LENGTH_COMPUTE > _MAX_MAX_UPDATE_MAX_LENGTH ? _MAX_MAX_UPDATE_MAX_LENGTH : _MAX_UPDATE_MAX_LENGTH_COMPUTE;
+    //The cutoffs for when to stop bucket sorting and comparison sort instead (and the like) are in SorterTuning,
+    //so they can be calibrated for the machine the sort runs on.
     
     //Set this to the minimum that there isn't a specific n-way sort method for.
     private static final int MIN_BLOCK_LEN_TO_MERGE = 4;
     
-    //Blocks of size less than this we don't binary search over to find the guess for the end character. It is usually not worth it in these cases.
+    //If this is false, then bucket sort will be used even if length < maxArraysIndexSort but not close enough to the end to trigger a full sort
+    //(Except for length < maxInsertionSort, which will always fully sort)
+    private static final boolean DO_NON_FULL_ARRAYS_SORT = true;
+    
+    //Buckets at most this long are finished off on the thread that found them by the parallel sorts.
+    //Anything larger gets forked off as its own task.
     //For this value, HIGHER numbers mean MORE hesitant to trigger the optimization
-    //XXX This seems a tad high for the common case of only 2 or 3 characters, even though it may be good for another common case of 9 or 10 characters 
-    private static final int MIN_BINARY_SEARCH = 28;
+    //XXX Empirically determine a good estimate for this; fork/join tasks are cheap, but not free
+    public static final int DEFAULT_PARALLEL_SEQUENTIAL_CUTOFF = 1 << 13;
     
-    //If this is false, then bucket sort will be used even if length < MAX_ARRAYS_INDEX_SORT but not close enough to the end to trigger a full sort
-    //(Except for length < MAX_INSERTION_SORT, which will always fully sort)
-    private static final boolean DO_NON_FULL_ARRAYS_SORT = true;
-
-    // For these two values, SMALLER numbers mean MORE hesitant to trigger the optimization
-    //Merging is a rather expensive operation, just to save a few method calls. Thus, be conservative with this number.
-    //XXX This seems a tad low, but not by much
-    private static final int MAX_REMAINING_BEFORE_MERGING_RANGES = 2;
-    //Be conservative with this number, as not only will it trigger more aggressive merges, but also cause a non-insertion call to
-    //arrays sort to look at all of the remaining characters, which could get expensive.
-    //XXX This seems a tad low, but not by much
-    private static final int MAX_REMAINING_BEFORE_FULL_ARRAYS_SORT = 4;
+    //Ranges at least this long have their character counting, scattering, and shared prefix scanning split among the pool's threads.
+    //Without this, the first few levels (which are over nearly the whole input) would be done on one thread, which caps the speed up.
+    private static final int MIN_PARALLEL_BUCKET_PASS = 1 << 16;
+    //The smallest piece of a parallel bucket pass that will be given to one thread
+    private static final int MIN_PARALLEL_BUCKET_PASS_CHUNK = 1 << 12;
     
-    //If there "seems" to be more characters than this value after the request max index to sort,
-    //then instead of trying to sort the "rest of" the string, the various, normal "total sorting" fallbacks
-    //(like insertion sort) will instead use a comparator that only using a substring.
-    //For this value, LOWER numbers mean MORE hesitant to trigger the optimization
-    private static final int MAX_DIFF_BETWEEN_MAX_INDEX_GUESS_AND_REAL_MAX = 30;
+    //Ranges at least this long are bucket sorted on 2 or 3 characters per pass, when the characters there come from a small enough alphabet
+    //(see compactedBucketSort). Smaller ranges would spend more time clearing and walking the larger count table than they would save.
+    //For this value, HIGHER numbers mean MORE hesitant to trigger the optimization
+    private static final int MIN_COMPACTED_PASS = 1 << 12;
+    //The most buckets a compacted pass may have, which is (alphabet size + 1)^(characters per pass).
+    //This allows 3 characters per pass for alphabets of up to 24 characters (lowercase identifiers, DNA, hex), and 2 for up to 127 (printable ASCII).
+    //For this value, SMALLER numbers mean MORE hesitant to trigger the optimization
+    private static final int MAX_COMPACTED_BUCKETS = 1 << 14;
     
-    /*
-    static
+    private MSDStringSorter(Deque<SortState> stack, SorterTuning tuning)
     {
-        assert MAX_INSERTION_SORT <= MAX_ARRAYS_SORT;
+        this.stack = stack;
+        this.tuning = tuning;
     }
-*/
     
-    private MSDStringSorter(Deque<SortState> stack, String[] arr, String[] wc)
+    private MSDStringSorter(Deque<SortState> stack, SorterTuning tuning, String[] arr, String[] wc, int wcOffset)
     {
         this.stack = stack;
+        this.tuning = tuning;
         this.arr = arr;
         this.wc = wc;
+        this.wcOffset = wcOffset;
     }
 
     public static final void sort(String[] arr)
@@ -130,27 +111,161 @@ public final class MSDStringSorter
         sortPartially(minCharsToSort, arr, 0, arr.length);
     }
     
-    public static void sortPartially(int minCharsToSort, String[] arr, int fromIndex, int toIndex)
+    public static final void sortPartially(int minCharsToSort, String[] arr, int fromIndex, int toIndex)
     {
-        // XXX For large strings (greater than about 80 characters), dumping to char[] using toCharArray() is faster
+        sortPartially(minCharsToSort, arr, fromIndex, toIndex, SorterTuning.getDefault());
+    }
+    
+    public static final void sort(String[] arr, SorterTuning tuning)
+    {
+        sortPartially(Integer.MAX_VALUE, arr, 0, arr.length, tuning);
+    }
+    
+    /**
+     * Sorts the given range on at least its first {@code minCharsToSort} characters, with the given cutoffs
+     * for when to stop bucket sorting and switch to a comparison sort.
+     * All of the other sorting methods of this class use {@link SorterTuning#getDefault()}.
+     * 
+     * @param minCharsToSort the minimum number of characters from the start of each string to sort on
+     * @param arr the array to sort
+     * @param fromIndex the index of the first element to sort (inclusive)
+     * @param toIndex the index of the last element to sort (exclusive)
+     * @param tuning the cutoffs to use
+     */
+    public static void sortPartially(int minCharsToSort, String[] arr, int fromIndex, int toIndex, SorterTuning tuning)
+    {
+        if(tuning == null) throw new NullPointerException("tuning");
         if(checkBounds(arr.length, fromIndex, toIndex)) return;
-        final int len = toIndex - fromIndex;
-        if(len == 2)
-        {
-            sortTwoItems(arr, fromIndex, fromIndex + 1, 0);
-            return;
-        }
-        if(len == 3)
-        {
-            sortThreeItems(arr, fromIndex, fromIndex + 1, fromIndex + 2, 0);
-            return;
-        }
-        if(len <= MAX_ARRAYS_FULL_SORT)
-        {
-            Arrays.sort(arr, fromIndex, toIndex);
-            return;
-        }
-        String[] wc = new String[arr.length];
+        newSorter(toIndex - fromIndex, tuning).sortRange(minCharsToSort, arr, fromIndex, toIndex);
+    }
+    
+    /**
+     * Same as {@link #sortPartially(int, String[], int, int, SorterTuning)}, but if the listener is not {@code null},
+     * it is told what went on in the sort once it is done.
+     * 
+     * @param minCharsToSort the minimum number of characters from the start of each string to sort on
+     * @param arr the array to sort
+     * @param fromIndex the index of the first element to sort (inclusive)
+     * @param toIndex the index of the last element to sort (exclusive)
+     * @param tuning the cutoffs to use
+     * @param listener what to tell what went on in the sort, or {@code null} to not keep track of it at all
+     */
+    public static void sortPartially(int minCharsToSort, String[] arr, int fromIndex, int toIndex, SorterTuning tuning, SortStatsListener listener)
+    {
+        if(listener == null)
+            sortPartially(minCharsToSort, arr, fromIndex, toIndex, tuning);
+        else
+            listener.sortFinished(sortPartiallyWithStats(minCharsToSort, arr, fromIndex, toIndex, tuning));
+    }
+    
+    public static final SortStats sortWithStats(String[] arr)
+    {
+        return sortPartiallyWithStats(Integer.MAX_VALUE, arr, 0, arr.length, SorterTuning.getDefault());
+    }
+    
+    /**
+     * Same as {@link #sortPartially(int, String[], int, int, SorterTuning)}, keeping track of what went on in the sort as it goes.
+     * 
+     * @param minCharsToSort the minimum number of characters from the start of each string to sort on
+     * @param arr the array to sort
+     * @param fromIndex the index of the first element to sort (inclusive)
+     * @param toIndex the index of the last element to sort (exclusive)
+     * @param tuning the cutoffs to use
+     * @return what went on in the sort
+     */
+    public static SortStats sortPartiallyWithStats(int minCharsToSort, String[] arr, int fromIndex, int toIndex, SorterTuning tuning)
+    {
+        if(tuning == null) throw new NullPointerException("tuning");
+        final boolean trivial = checkBounds(arr.length, fromIndex, toIndex);
+        final SortStats stats = new SortStats(toIndex - fromIndex);
+        if(trivial) return stats;
+        final MSDStringSorter sorter = newSorter(toIndex - fromIndex, tuning);
+        sorter.stats = stats;
+        sorter.sortRange(minCharsToSort, arr, fromIndex, toIndex);
+        return stats;
+    }
+    
+    public static final void sortStable(String[] arr)
+    {
+        sortStable(arr, 0, arr.length);
+    }
+    
+    public static final void sortStable(String[] arr, int fromIndex, int toIndex)
+    {
+        sortPartiallyStable(Integer.MAX_VALUE, arr, fromIndex, toIndex);
+    }
+    
+    public static final void sortPartiallyStable(int minCharsToSort, String[] arr)
+    {
+        sortPartiallyStable(minCharsToSort, arr, 0, arr.length);
+    }
+    
+    /**
+     * Sorts the given range on exactly its first {@code minCharsToSort} characters, keeping strings that are equal over those characters
+     * in the same order relative to each other as they were before the sort.
+     * <p>
+     * Unlike {@link #sortPartially(int, String[], int, int)}, which is free to sort on more characters than asked for when that is cheaper,
+     * this never looks past the first {@code minCharsToSort} characters. This makes it possible to sort on several keys
+     * without a comparator: sort on the secondary key first, then stably sort on the primary key.
+     * <p>
+     * The bucket passes of this sort are always stable, so this only differs from {@link #sortPartially(int, String[], int, int)}
+     * in which comparisons the small range fallbacks use. A full stable sort ({@link #sortStable(String[])}) sorts exactly the same as {@link #sort(String[])}.
+     * 
+     * @param minCharsToSort the number of characters from the start of each string to sort on
+     * @param arr the array to sort
+     * @param fromIndex the index of the first element to sort (inclusive)
+     * @param toIndex the index of the last element to sort (exclusive)
+     */
+    public static void sortPartiallyStable(int minCharsToSort, String[] arr, int fromIndex, int toIndex)
+    {
+        if(checkBounds(arr.length, fromIndex, toIndex)) return;
+        final MSDStringSorter sorter = newSorter(toIndex - fromIndex);
+        sorter.stable = true;
+        sorter.sortRange(minCharsToSort, arr, fromIndex, toIndex);
+    }
+    
+    public static final void sortInPlace(String[] arr)
+    {
+        sortInPlace(arr, 0, arr.length);
+    }
+    
+    public static final void sortInPlace(String[] arr, int fromIndex, int toIndex)
+    {
+        sortPartiallyInPlace(Integer.MAX_VALUE, arr, fromIndex, toIndex);
+    }
+    
+    /**
+     * Sorts the given range on at least its first {@code minCharsToSort} characters, as {@link #sortPartially(int, String[], int, int)} does,
+     * but without a working copy of the range.
+     * <p>
+     * The other sorts scatter each range into a working copy as large as the range, by the character being sorted on, and copy it back.
+     * This instead moves each string straight to where it belongs within the range (as an American flag sort does),
+     * so the only extra space needed is as large as the alphabet (and the stack of ranges left to sort), not the range.
+     * That matters for arrays so large that another array of their length would not fit in the heap.
+     * The price is going back to each string for its character a second time each pass, and not getting to sort several characters per pass
+     * (as that needs scratch space as large as the range), making this about 2 to 3 times slower.
+     * 
+     * @param minCharsToSort the minimum number of characters from the start of each string to sort on
+     * @param arr the array to sort
+     * @param fromIndex the index of the first element to sort (inclusive)
+     * @param toIndex the index of the last element to sort (exclusive)
+     */
+    public static void sortPartiallyInPlace(int minCharsToSort, String[] arr, int fromIndex, int toIndex)
+    {
+        if(checkBounds(arr.length, fromIndex, toIndex)) return;
+        final MSDStringSorter sorter = newSorter(toIndex - fromIndex);
+        sorter.inPlace = true;
+        sorter.sortRange(minCharsToSort, arr, fromIndex, toIndex);
+    }
+    
+    //Makes the thing that will hold our sort progress for a sort of len strings
+    private static MSDStringSorter newSorter(int len)
+    {
+        return newSorter(len, SorterTuning.getDefault());
+    }
+    
+    private static MSDStringSorter newSorter(int len, SorterTuning tuning)
+    {
         // Thanks to how large strings can get, we cannot use recursion. As such, we must
         // maintain our own stack to maintain current state
         // XXX Empirically determine a good estimate for preallocation, based on common usage cases
@@ -158,191 +273,988 @@ public final class MSDStringSorter
         @SuppressWarnings("unused") //This is to keep a 1.7 compiler from complaining about the reduntant type specification
         Deque<SortState> stack = new java.util.ArrayDeque<SortState>(
             Math.max(15, (int)(1.5 * com.google.common.math.IntMath.log2(len, java.math.RoundingMode.UP))));
-        stack.addFirst(new SortState(fromIndex, toIndex, 0, minCharsToSort));
-        //The thing that will hold our sort progress
-        new MSDStringSorter(stack, arr, wc).doSort();
+        return new MSDStringSorter(stack, tuning);
     }
-
-    private final Deque<SortState> stack;
-    private final String[] arr;
-    private final String[] wc;
-    private SortState tempHolder;
-    private SortState mergeHolder = null;
-    private boolean mergeHasMoreThanOne = false;
-    private int maxIndexTempTrack = -1;
     
-    private int maxCharValueSeen = DEFAULT_CHAR_STORAGE_PRE_ALLOC;
+    public static final int[] sortIndices(String[] keys)
+    {
+        return sortIndices(keys, 0, keys.length);
+    }
     
     /**
-     * A wrapper method, returning '\0' instead of throwing an exception for out of bounds. Cleanly handles the case of
-     * mismatching string lengths.
+     * Finds the order the given range of keys would be in if it were sorted, without moving the keys themselves.
+     * <p>
+     * The keys are copied into a scratch array, which is then sorted the same way {@link #sort(String[], int, int)} would sort it,
+     * with an array of indexes moved in lockstep with it.
      * 
-     * @param s
-     * @param index
-     * @return
-     * @see CharSequence#charAt(int)
+     * @param keys the keys to find the sorted order of
+     * @param fromIndex the index of the first key to sort (inclusive)
+     * @param toIndex the index of the last key to sort (exclusive)
+     * @return the indexes (into keys) of the keys of the range in sorted order, with the indexes of equal keys in increasing order;
+     *         that is, {@code keys[result[0]]} is the smallest key of the range, {@code keys[result[1]]} the next smallest, and so on
      */
-    // FIXME #1 bottleneck when inlining does not occur
-    //Any JIT compiler worth its salt will be able to inline these charAt calls
-    static final char charAt(String s, int index)
+    public static int[] sortIndices(String[] keys, int fromIndex, int toIndex)
     {
-        // Any self respecting JIT should be able to inline these two methods to their
-        // respective array calls, and then be able to inline this method itself.
-        return index < s.length() ? s.charAt(index) : '\0';
+        final boolean trivial = checkBounds(keys.length, fromIndex, toIndex);
+        final int len = toIndex - fromIndex;
+        final int[] perm = new int[len];
+        for(int i = 0; i < len; ++i)
+            perm[i] = i + fromIndex;
+        if(trivial) return perm;
+        final String[] scratch = Arrays.copyOfRange(keys, fromIndex, toIndex);
+        newSorter(len).sortRange(Integer.MAX_VALUE, scratch, perm, 0, len);
+        return perm;
+    }
+    
+    public static final void sortWithLcp(String[] arr, int[] lcpOut)
+    {
+        sortWithLcp(arr, 0, arr.length, lcpOut);
+    }
+    
+    /**
+     * Sorts the given range, and fills in the length of the longest prefix each string shares with the string before it, once sorted.
+     * <p>
+     * The sort already finds these on its way; every place a range gets split by a character is where the strings on either side of the split
+     * stop sharing a prefix. So this costs little over just sorting, compared to going back over the sorted strings to find them.
+     * Small ranges are sorted with an insertion sort that uses the shared prefixes found so far to avoid comparing characters already known to be equal.
+     * 
+     * @param arr the array to sort
+     * @param fromIndex the index of the first element to sort (inclusive)
+     * @param toIndex the index of the last element to sort (exclusive)
+     * @param lcpOut where to put the shared prefix lengths; for each i in the range, {@code lcpOut[i]} is set to the length
+     *        of the longest prefix {@code arr[i - 1]} and {@code arr[i]} share, except for {@code lcpOut[fromIndex]}, which is set to 0.
+     *        Only the indices of the range are written, so it must be at least toIndex long.
+     */
+    public static void sortWithLcp(String[] arr, int fromIndex, int toIndex, int[] lcpOut)
+    {
+        final boolean trivial = checkBounds(arr.length, fromIndex, toIndex);
+        if(lcpOut.length < toIndex)
+            throw new IllegalArgumentException("LCP array length: " + lcpOut.length + " < end position: " + toIndex);
+        if(trivial)
+        {
+            if(fromIndex < toIndex) lcpOut[fromIndex] = 0;
+            return;
+        }
+        newSorter(toIndex - fromIndex).sortRangeWithLcp(arr, lcpOut, 0, fromIndex, toIndex);
     }
 
-    //These really should try to "chip in" data to build a shared prefix tree,
-    //which is a good way to speed up MSD string sort, and greatley speed up finding and skipping shared prefixes.
-    static final int compareSubtrStartingAt(final String s1, final String s2, final int index)
+    public static final int sortDistinct(String[] arr)
     {
-        final int len1 = s1.length();
-        final int len2 = s2.length();
-        if(len1 <= index)
+        return sortDistinct(arr, 0, arr.length);
+    }
+
+    /**
+     * Sorts the given range, and moves one of each distinct string in it, in order, to the start of the range.
+     * <p>
+     * This is done as {@link #sortWithLcp(String[], int, int, int[])} does, and a string is equal to the one before it exactly when
+     * the prefix they share is the whole string, and they are the same length. The radix passes already find that,
+     * as each group of equal strings ends up together in the bucket of strings that ended, so only the lengths need to be looked at afterwards,
+     * instead of comparing each string to the one before it with {@link String#equals(Object)}.
+     * <p>
+     * Unlike the sorts of this class, this gets strings with {@code '\0'} characters in them right. The sort takes those to end the string,
+     * so it can take different strings to be equal, and leave them out of order. It notes when that happens (from the lengths of the strings
+     * it took to be equal), and then the range is sorted again with {@link Arrays#sort(Object[], int, int)},
+     * and each string is compared to the one before it with {@link String#equals(Object)} after all.
+     *
+     * @param arr the array to sort
+     * @param fromIndex the index of the first element to sort (inclusive)
+     * @param toIndex the index of the last element to sort (exclusive)
+     * @return how many distinct strings the range has; they are in {@code [fromIndex, fromIndex + result)},
+     *         and the rest of the range is left holding the duplicates, in no particular order
+     */
+    public static int sortDistinct(String[] arr, int fromIndex, int toIndex)
+    {
+        if(checkBounds(arr.length, fromIndex, toIndex)) return toIndex - fromIndex;
+        //Only as large as the range, standing in for it from fromIndex on
+        final int[] lcp = new int[toIndex - fromIndex];
+        final MSDStringSorter sorter = newSorter(toIndex - fromIndex);
+        sorter.sortRangeWithLcp(arr, lcp, fromIndex, fromIndex, toIndex);
+        return sorter.nulCharTies ?
+            compactDistinctByComparing(arr, null, fromIndex, toIndex) :
+            compactDistinct(arr, lcp, fromIndex, null, fromIndex, toIndex);
+    }
+
+    public static final int sortAndCount(String[] arr, int[] countsOut)
+    {
+        return sortAndCount(arr, 0, arr.length, countsOut);
+    }
+
+    /**
+     * Sorts the given range, moves one of each distinct string in it, in order, to the start of the range,
+     * and fills in how many times each of them was in the range.
+     * <p>
+     * As with {@link #sortDistinct(String[], int, int)}, the equal strings are found by the sort itself,
+     * and strings with {@code '\0'} characters in them are gotten right the same way.
+     * The shared prefix lengths are kept in countsOut while sorting, so no more space is needed.
+     *
+     * @param arr the array to sort
+     * @param fromIndex the index of the first element to sort (inclusive)
+     * @param toIndex the index of the last element to sort (exclusive)
+     * @param countsOut where to put the counts; for each i in {@code [fromIndex, fromIndex + result)}, {@code countsOut[i]} is set to
+     *        how many times {@code arr[i]} was in the range. The rest of the range in it is left with no particular values.
+     *        Only the indices of the range are written, so it must be at least toIndex long.
+     * @return how many distinct strings the range has; they are in {@code [fromIndex, fromIndex + result)},
+     *         and the rest of the range is left holding the duplicates, in no particular order
+     */
+    public static int sortAndCount(String[] arr, int fromIndex, int toIndex, int[] countsOut)
+    {
+        final boolean trivial = checkBounds(arr.length, fromIndex, toIndex);
+        if(countsOut.length < toIndex)
+            throw new IllegalArgumentException("Counts array length: " + countsOut.length + " < end position: " + toIndex);
+        if(trivial)
         {
-            return len2 <= index ? 0 : -1;
+            if(fromIndex < toIndex) countsOut[fromIndex] = 1;
+            return toIndex - fromIndex;
         }
-        if(len2 <= index) return 1;
-        
-        //Pretty much ripped from String#compareTo(String)
-        int lim = Math.min(len1, len2);
-    
-        int k = index;
-        while (k < lim)
+        final MSDStringSorter sorter = newSorter(toIndex - fromIndex);
+        sorter.sortRangeWithLcp(arr, countsOut, 0, fromIndex, toIndex);
+        return sorter.nulCharTies ?
+            compactDistinctByComparing(arr, countsOut, fromIndex, toIndex) :
+            compactDistinct(arr, countsOut, 0, countsOut, fromIndex, toIndex);
+    }
+
+    //Moves the first of each run of equal strings in the sorted range to the front, going by the shared prefix lengths the sort left in lcp,
+    //and returns how many there were. The lengths have to match as well, as the sort takes a '\0' to be the end of the string,
+    //so "a" can be given as sharing all of itself with an "a\0" before it. The sort must not have noted any nulCharTies;
+    //if it did, the range may be out of order, and compactDistinctByComparing is needed instead. Each is swapped with the duplicate in its way, so the range stays a permutation of what it was.
+    //lcp[i - lcpOffset] is what arr[i] shares with the string before it.
+    //If counts isn't null, it gets the length of each run; it can be the same array as lcp (with an lcpOffset of 0),
+    //as each count is written no later than where the last lcp read was, and never read again.
+    private static final int compactDistinct(final String[] arr, final int[] lcp, final int lcpOffset, final int[] counts,
+        final int fromIndex, final int toIndex)
+    {
+        int distinctEnd = fromIndex + 1;
+        if(counts != null) counts[fromIndex] = 1;
+        for(int i = fromIndex + 1; i < toIndex; ++i)
         {
-            //Any JIT compiler worth its salt will be able to inline these charAt calls
-            char c1 = s1.charAt(k);
-            char c2 = s2.charAt(k);
-            if (c1 != c2)
+            final String s = arr[i];
+            final int sLen = s.length();
+            //The last distinct string is equal to the one that was before this one once sorted, as the swaps move the duplicates around behind it
+            if(lcp[i - lcpOffset] == sLen && arr[distinctEnd - 1].length() == sLen)
+            {
+                if(counts != null) ++counts[distinctEnd - 1];
+                continue;
+            }
+            if(distinctEnd != i)
             {
-                return c1 - c2;
+                arr[i] = arr[distinctEnd];
+                arr[distinctEnd] = s;
             }
-            k++;
+            if(counts != null) counts[distinctEnd] = 1;
+            ++distinctEnd;
         }
-        //Even if the count doesn't start from the beginning, it doesn't matter, as cutting off the same number of characters still preserves ordering
-        return len1 - len2;
+        return distinctEnd - fromIndex;
     }
-    
-    static final int compareSubtr(final String s1, final String s2, final int index, final int maxIndex)
+
+    //compactDistinct for when the sort noted nulCharTies, so it may have left the range out of order.
+    //The range is just sorted again the usual way, and each string compared to the last distinct one.
+    private static final int compactDistinctByComparing(final String[] arr, final int[] counts, final int fromIndex, final int toIndex)
     {
-        assert maxIndex > index;
-        final int len1 = s1.length();
-        final int len2 = s2.length();
-        if(len1 <= index)
-        {
-            return len2 <= index ? 0 : -1;
-        }
-        if(len2 <= index) return 1;
-        
-        //Pretty much ripped from String#compareTo(String)
-        int lim = Math.min(len1, len2);
-        lim = Math.min(lim, maxIndex);
-    
-        int k = index;
-        while (k < lim)
+        Arrays.sort(arr, fromIndex, toIndex);
+        int distinctEnd = fromIndex + 1;
+        if(counts != null) counts[fromIndex] = 1;
+        for(int i = fromIndex + 1; i < toIndex; ++i)
         {
-            //Any JIT compiler worth its salt will be able to inline these charAt calls
-            char c1 = s1.charAt(k);
-            char c2 = s2.charAt(k);
-            if (c1 != c2)
+            final String s = arr[i];
+            if(s.equals(arr[distinctEnd - 1]))
             {
-                return c1 - c2;
+                if(counts != null) ++counts[distinctEnd - 1];
+                continue;
             }
-            k++;
+            if(distinctEnd != i)
+            {
+                arr[i] = arr[distinctEnd];
+                arr[distinctEnd] = s;
+            }
+            if(counts != null) counts[distinctEnd] = 1;
+            ++distinctEnd;
         }
-        //Even if the count doesn't start from the beginning, it doesn't matter, as cutting off the same number of characters still preserves ordering
-        return k == maxIndex ? 0 : len1 - len2;
+        return distinctEnd - fromIndex;
     }
 
-    private final void doSort()
+    public static final void sortAndCanonicalize(String[] arr)
     {
-        // TODO Parallel versions of this method, as this is trivially parallelizable (each part is independent of each other)
-        SortState current;
-        while((current = stack.pollFirst()) != null)
+        sortAndCanonicalize(arr, 0, arr.length, null);
+    }
+
+    public static final void sortAndCanonicalize(String[] arr, Interner<String> interner)
+    {
+        sortAndCanonicalize(arr, 0, arr.length, interner);
+    }
+
+    /**
+     * Sorts the given range, and then has every string in it that is equal to another be the very same instance,
+     * so that a long lived sorted array keeps only one instance of each distinct string alive, instead of one for every time it was in the array.
+     * <p>
+     * The groups of equal strings are found as {@link #sortDistinct(String[], int, int)} finds them, by the sort itself.
+     * Without an interner, each group is replaced with the first string of the group. With one, each group is replaced with
+     * what the interner gives for the first string of the group, so strings equal to ones already kept elsewhere can share those instances too.
+     * Either way, the interner is only called once per distinct string, rather than once for every string.
+     * As with {@link #sortDistinct(String[], int, int)}, strings with {@code '\0'} characters in them are gotten right,
+     * by sorting again with {@link Arrays#sort(Object[], int, int)} and comparing with {@link String#equals(Object)} if the sort got any wrong.
+     *
+     * @param arr the array to sort
+     * @param fromIndex the index of the first element to sort (inclusive)
+     * @param toIndex the index of the last element to sort (exclusive)
+     * @param interner gives the instance to use for each distinct string, or null to use the first of each group of equal strings
+     */
+    public static void sortAndCanonicalize(String[] arr, int fromIndex, int toIndex, Interner<String> interner)
+    {
+        if(checkBounds(arr.length, fromIndex, toIndex))
         {
-            // "Recurse"
-            processPart(current);
+            if(interner != null && fromIndex < toIndex) arr[fromIndex] = interner.intern(arr[fromIndex]);
+            return;
+        }
+        //Only as large as the range, standing in for it from fromIndex on
+        final int[] lcp = new int[toIndex - fromIndex];
+        final MSDStringSorter sorter = newSorter(toIndex - fromIndex);
+        sorter.sortRangeWithLcp(arr, lcp, fromIndex, fromIndex, toIndex);
+        if(sorter.nulCharTies)
+        {
+            canonicalizeByComparing(arr, fromIndex, toIndex, interner);
+            return;
+        }
+        //As in compactDistinct, a string is equal to the one before it exactly when they share the whole string, and are the same length
+        //(the canonical string the one before it was replaced with is equal to it, so it has the same length)
+        String canonical = interner == null ? arr[fromIndex] : interner.intern(arr[fromIndex]);
+        arr[fromIndex] = canonical;
+        for(int i = fromIndex + 1; i < toIndex; ++i)
+        {
+            final String s = arr[i];
+            final int sLen = s.length();
+            if(lcp[i - fromIndex] != sLen || canonical.length() != sLen)
+                canonical = interner == null ? s : interner.intern(s);
+            arr[i] = canonical;
         }
-        return; // This redundant return is only so we can set a breakpoint here.
     }
 
-    private void processPart(SortState currentState)
+    //sortAndCanonicalize for when the sort noted nulCharTies, so it may have left the range out of order.
+    //Nothing has been replaced yet, so the range is just sorted again the usual way, and each string compared to the one before it.
+    private static final void canonicalizeByComparing(final String[] arr, final int fromIndex, final int toIndex, final Interner<String> interner)
     {
-        final int start = currentState.start;
-        final int end = currentState.end;
-        final int index = currentState.index;
-        int maxIndex = currentState.maxIndex;
-        // If there are no characters in this block, just return now
-        if(maxIndex <= 0) return;
-        //Skip if we went past the "end" of the character range we want to sort 
-        if(index >= maxIndex) return;
-        boolean needMaxIndexUpdate = maxIndex == Integer.MAX_VALUE || end - start <= MAX_UPDATE_MAX_LENGTH;
-        // First, sort on the current character
-        int[] buckets = doSortOnPart(start, end, index, maxIndex, needMaxIndexUpdate);
-        if(buckets == FULLY_SORTED) return;
-        if(maxIndexTempTrack != -1)
+        Arrays.sort(arr, fromIndex, toIndex);
+        String canonical = interner == null ? arr[fromIndex] : interner.intern(arr[fromIndex]);
+        arr[fromIndex] = canonical;
+        for(int i = fromIndex + 1; i < toIndex; ++i)
         {
-            maxIndex = Math.min(maxIndexTempTrack, maxIndex);
-            needMaxIndexUpdate = end - start < MAX_UPDATE_MAX_LENGTH;
+            final String s = arr[i];
+            if(!s.equals(canonical))
+                canonical = interner == null ? s : interner.intern(s);
+            arr[i] = canonical;
         }
+    }
 
-        // Now, find sub-blocks of the same characters
-
-        char curChar = charAt(arr[start], index);
-        if(index < maxIndex)  // Skip the next index if we have reached the max, as that
-                             // signals that all strings in this sub-block don't need to
-                             // be sorted anymore, as there is no data in the next index
+    /**
+     * Merges the given batch of strings into the given sorted base, giving a new sorted array holding both.
+     * The batch is sorted along the way. See {@link #mergeSorted(String[], int, String[], int, int)}.
+     * 
+     * @param base the sorted strings to merge into; not changed
+     * @param batch the strings to merge in, in any order
+     * @return a new array, holding the strings of both in order
+     */
+    public static String[] mergeSorted(String[] base, String[] batch)
+    {
+        if(batch.length > Integer.MAX_VALUE - base.length)
+            throw new IllegalArgumentException("Merged length: " + ((long)base.length + batch.length) + " > " + Integer.MAX_VALUE);
+        final String[] merged = Arrays.copyOf(base, base.length + batch.length);
+        mergeSorted(merged, base.length, batch, 0, batch.length);
+        return merged;
+    }
+    
+    public static final int mergeSorted(String[] arr, int baseLen, String[] batch)
+    {
+        return mergeSorted(arr, baseLen, batch, 0, batch.length);
+    }
+    
+    /**
+     * Merges the given range of a batch of strings into the sorted strings at the start of arr, using the room past them,
+     * for when a large sorted array keeps getting small batches added to it, and sorting all of it again each time would be a waste.
+     * <p>
+     * Only the batch is sorted (in place, with the shared prefix lengths of {@link #sortWithLcp(String[], int, int, int[])}).
+     * Then it is merged in from the largest strings down, so each base string is moved at most once, and those before where the smallest
+     * batch string goes are never moved at all. Each batch string's place is found by galloping down from where the string after it went,
+     * then binary searching between the last two base strings galloped past. The binary search never compares the characters the string
+     * is known to share with both of those, and what the batch string after it shared with the base string above it carries over
+     * (up to what the two batch strings share). So the comparisons grow with the batch size times the log of the base size, not the base size;
+     * the base strings after the smallest batch string still have to be moved up, but that is one {@link System#arraycopy} per batch string at most.
+     * Base strings equal to a batch string stay before it.
+     * 
+     * @param arr holds the sorted base in {@code [0, baseLen)}, followed by room for the batch
+     * @param baseLen how many sorted strings there are at the start of arr
+     * @param batch the strings to merge in; the range is sorted along the way
+     * @param fromIndex the index of the first batch string to merge (inclusive)
+     * @param toIndex the index of the last batch string to merge (exclusive)
+     * @return how many sorted strings there are now at the start of arr; {@code baseLen + (toIndex - fromIndex)}
+     * @throws IllegalArgumentException if arr doesn't have room for the batch past the base
+     */
+    public static int mergeSorted(String[] arr, int baseLen, String[] batch, int fromIndex, int toIndex)
+    {
+        checkBounds(arr.length, 0, baseLen);
+        final boolean trivial = checkBounds(batch.length, fromIndex, toIndex);
+        final int batchLen = toIndex - fromIndex;
+        if(batchLen > arr.length - baseLen)
+            throw new IllegalArgumentException("Room past the base: " + (arr.length - baseLen) + " < batch length: " + batchLen);
+        if(batchLen == 0) return baseLen;
+        //Only as large as the batch range, standing in for it from fromIndex on
+        final int[] batchLcp = new int[batchLen];
+        if(!trivial)
+            newSorter(batchLen).sortRangeWithLcp(batch, batchLcp, fromIndex, fromIndex, toIndex);
+        mergeFromBack(arr, baseLen, batch, batchLcp, fromIndex, toIndex);
+        return baseLen + batchLen;
+    }
+    
+    private static final void mergeFromBack(final String[] arr, final int baseLen, final String[] batch, final int[] batchLcp,
+        final int fromIndex, final int toIndex)
+    {
+        int out = baseLen + (toIndex - fromIndex);
+        //The base strings from hi on are larger than every batch string left, and have already been moved up
+        int hi = baseLen;
+        //How many characters the last batch string merged is known to share with the base string that was at hi (0 if hi is the end of the base)
+        int hiShared = 0;
+        for(int j = toIndex - 1; j >= fromIndex; --j)
         {
-            if(curChar == charAt(arr[end - 1], index))
-            //Inlined from
-            //processSingleCharBlock(int start, int end, int index, int maxIndex, SortState currentState)
+            final String key = batch[j];
+            //No larger than the batch string after it, so it shares at least as much with the base string at hi as both of those share with each other
+            int top = hi;
+            int topShared = j + 1 < toIndex ? Math.min(hiShared, batchLcp[j + 1 - fromIndex]) : 0;
+            //Gallop down for a base string no larger than key; nothing is known about what key shares with those yet
+            int bottom = -1;
+            int bottomShared = 0;
+            for(int probe = hi - 1, step = 1; probe >= 0; probe -= step, step <<= 1)
             {
-                if(curChar != '\0')
+                final String s = arr[probe];
+                final int shared = mismatch(key, s, 0);
+                if(compareAtMismatch(key, s, shared) >= 0)
                 {
-                    // Common case, all the characters at this level were the same, just
-                    // immediately move on
-                    final int sharedPrefixLen = findSharedPrefixLen(arr, start, end, index + 1, maxIndex);
-                    // Shared prefix length might be zero if all of them are them are shorter
-                    // than the current index
-                    stack.addFirst(currentState.setState(start, end, index + sharedPrefixLen + 1, maxIndex));
+                    bottom = probe;
+                    bottomShared = shared;
+                    break;
                 }
+                top = probe;
+                topShared = shared;
             }
-            else
+            //Every base string between bottom and top shares the characters both of them share with key, so only compare past those
+            //(neither bound being a string, at the ends of the base, shares nothing)
+            while(top - bottom > 1)
             {
-                assert buckets != FULLY_SORTED;
-                assert buckets.length != 1;
-                if(buckets == INDEX_SORTED_NO_BUCKETS)
-                    splitByCharGroupsNoBucketIndexes(start, end, index, maxIndex, curChar, currentState, needMaxIndexUpdate);
+                final int mid = (bottom + top) >>> 1;
+                final String s = arr[mid];
+                final int shared = mismatch(key, s, Math.min(bottomShared, topShared));
+                if(compareAtMismatch(key, s, shared) >= 0)
+                {
+                    bottom = mid;
+                    bottomShared = shared;
+                }
                 else
-                    splitByCharGroupsWithBucketIndexes(start, end, index, maxIndex, buckets, currentState, needMaxIndexUpdate);
+                {
+                    top = mid;
+                    topShared = shared;
+                }
+            }
+            final int moved = hi - top;
+            if(moved > 0)
+            {
+                System.arraycopy(arr, top, arr, out - moved, moved);
+                out -= moved;
             }
+            arr[--out] = key;
+            hi = top;
+            hiShared = topShared;
         }
+        assert out == hi;
     }
     
-    //This version is used when no character start indexes are available
-    private void splitByCharGroupsNoBucketIndexes(final int start,
-        final int end, final int index, final int maxIndex, final char curChar, SortState currentState, final boolean updateMaxSize)
+    public static final <T> void sort(T[] items, Function1<String, T> keyExtractor)
     {
-        //SortState is given not for the start, end, etc, but rather to update the max seen character, and for merging of ranges
-        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance 
-        final String[] arr = this.arr;
-        tempHolder = currentState;
-        int lastNewIndex = start;
-        
-        // Once we start getting near the end of the strings, go ahead and be willing to have larger merges
-        // Warning: Whatever range this may be, it MUST be small enough such that merged
-        // range WILL fall under a complete sort, not a current index only sort
-        final int remainingCharsToProcess = maxIndex - index;
-        final boolean shouldMerge = remainingCharsToProcess < MAX_REMAINING_BEFORE_MERGING_RANGES;
-        final int maxMergedRangeSize = remainingCharsToProcess < MAX_REMAINING_BEFORE_FULL_ARRAYS_SORT ? MAX_ARRAYS_FULL_SORT : MAX_INSERTION_SORT;
-        //It's an odd use for this variable given its name, but the first use of this variable is whether to even try to do the binary search thing
-        //All subsequent uses of it follow usage implied by its name.
-        boolean atStartOfBlock = end - start >= MIN_BINARY_SEARCH;
-        char curChar2 = curChar;
-        if(atStartOfBlock) //Skip the longer form of the loop if we are not binary searching
-        {
-            final java.util.Comparator<String> comp = new NaturalCharComparatorAtIndex(index);
-            int newStart = start;
-            {   //Make sure to update the version of this inside the loop as well
+        sort(items, 0, items.length, keyExtractor);
+    }
+    
+    /**
+     * Sorts the given range of items by the string key of each.
+     * <p>
+     * The key of each item is extracted exactly once, into a scratch array, which is then sorted with an array of indexes moved in lockstep with it.
+     * Once that is done, the items are moved into place all at once, so each item is only ever moved once.
+     * Items with equal keys keep their relative order.
+     * 
+     * @param items the items to sort
+     * @param fromIndex the index of the first item to sort (inclusive)
+     * @param toIndex the index of the last item to sort (exclusive)
+     * @param keyExtractor gives the key of each item; must not give null
+     * @throws NullPointerException if the key extractor gives null for any item in the range; the items are then left as they were.
+     *  (A range of fewer than two items has nothing to sort, so no keys are extracted for it at all.)
+     */
+    public static <T> void sort(T[] items, int fromIndex, int toIndex, Function1<String, T> keyExtractor)
+    {
+        if(checkBounds(items.length, fromIndex, toIndex)) return;
+        final int len = toIndex - fromIndex;
+        final String[] keys = new String[len];
+        final int[] perm = new int[len];
+        for(int i = 0; i < len; ++i)
+        {
+            final String key = keyExtractor.call(items[i + fromIndex]);
+            if(key == null) throw new NullPointerException("Key of the item at " + (i + fromIndex));
+            keys[i] = key;
+            perm[i] = i;
+        }
+        newSorter(len).sortRange(Integer.MAX_VALUE, keys, perm, 0, len);
+        final T[] original = Arrays.copyOfRange(items, fromIndex, toIndex);
+        for(int i = 0; i < len; ++i)
+            items[i + fromIndex] = original[perm[i]];
+    }
+    
+    public static final void selectTopK(String[] arr, int k)
+    {
+        selectTopK(arr, 0, arr.length, k);
+    }
+    
+    /**
+     * Puts the k smallest strings of the given range, in order, at the start of the range, leaving the rest of the range in no particular order.
+     * <p>
+     * This is to {@link #sort(String[], int, int)} what quickselect is to quicksort; each range gets split by its characters as it would be for a sort,
+     * but only the ranges holding some of the first k positions are split any further. The rest, which can't hold any of the k smallest strings,
+     * are left where they are. So when k is much smaller than the range (say, the first page of a large result set), most of the sort is skipped.
+     * 
+     * @param arr the array to select from
+     * @param fromIndex the index of the first element to select from (inclusive)
+     * @param toIndex the index of the last element to select from (exclusive)
+     * @param k how many of the smallest strings to put in order at the start of the range
+     * @throws IllegalArgumentException if k is negative, or larger than the range
+     */
+    public static void selectTopK(String[] arr, int fromIndex, int toIndex, int k)
+    {
+        final boolean trivial = checkBounds(arr.length, fromIndex, toIndex);
+        if(k < 0 || k > toIndex - fromIndex)
+            throw new IllegalArgumentException("k: " + k + " is not in [0, " + (toIndex - fromIndex) + "]");
+        if(trivial || k == 0) return;
+        newSorter(toIndex - fromIndex).selectRange(arr, fromIndex, toIndex, fromIndex, fromIndex + k);
+    }
+    
+    public static final String nthElement(String[] arr, int n)
+    {
+        return nthElement(arr, 0, arr.length, n);
+    }
+    
+    /**
+     * Puts the string that would be at index n if the given range were sorted at index n, with no larger string before it,
+     * and no smaller string after it, leaving the rest of the range in no particular order.
+     * <p>
+     * As with {@link #selectTopK(String[], int, int, int)}, only the ranges holding index n are split any further.
+     * 
+     * @param arr the array to select from
+     * @param fromIndex the index of the first element to select from (inclusive)
+     * @param toIndex the index of the last element to select from (exclusive)
+     * @param n the index (into arr, not the range) to put the string of
+     * @return the string put at index n
+     * @throws ArrayIndexOutOfBoundsException if n is not in the range
+     */
+    public static String nthElement(String[] arr, int fromIndex, int toIndex, int n)
+    {
+        final boolean trivial = checkBounds(arr.length, fromIndex, toIndex);
+        if(n < fromIndex || n >= toIndex)
+            throw new ArrayIndexOutOfBoundsException("n: " + n + " is not in [" + fromIndex + ", " + toIndex + ")");
+        if(!trivial)
+            newSorter(toIndex - fromIndex).selectRange(arr, fromIndex, toIndex, n, n + 1);
+        return arr[n];
+    }
+    
+    //Assumes the bounds were already checked
+    //Sorts only as much of the range as it takes for [selectFrom, selectTo) to hold what it would if the range were sorted
+    private void selectRange(String[] arr, int fromIndex, int toIndex, int selectFrom, int selectTo)
+    {
+        this.selectFrom = selectFrom;
+        this.selectTo = selectTo;
+        try
+        {
+            sortRange(Integer.MAX_VALUE, arr, fromIndex, toIndex);
+        }
+        finally
+        {
+            this.selectFrom = 0;
+            this.selectTo = Integer.MAX_VALUE;
+        }
+    }
+    
+    //Assumes the bounds were already checked
+    private void sortRange(int minCharsToSort, String[] arr, int fromIndex, int toIndex)
+    {
+        sortRange(minCharsToSort, arr, null, fromIndex, toIndex);
+    }
+    
+    //Assumes the bounds were already checked
+    //If perm is not null, every move made to arr is made to perm as well
+    private void sortRange(int minCharsToSort, String[] arr, int[] perm, int fromIndex, int toIndex)
+    {
+        sortRange(minCharsToSort, arr, perm, null, fromIndex, toIndex, 0);
+    }
+    
+    //Assumes the bounds were already checked
+    //A full sort, filling in lcp[i - lcpOffset] with what arr[i] shares with the string before it, for each i in the range
+    private void sortRangeWithLcp(String[] arr, int[] lcp, int lcpOffset, int fromIndex, int toIndex)
+    {
+        this.lcpOffset = lcpOffset;
+        sortRange(Integer.MAX_VALUE, arr, null, lcp, fromIndex, toIndex, 0);
+    }
+    
+    //As above, but for a range where every string is already known to share their first charIndex characters,
+    //so the sort can start from there. If lcp is not null, this must have come from sortRangeWithLcp.
+    private void sortRange(int minCharsToSort, String[] arr, int[] perm, int[] lcp, int fromIndex, int toIndex, int charIndex)
+    {
+        // XXX For large strings (greater than about 80 characters), dumping to char[] using toCharArray() is faster
+        final int len = toIndex - fromIndex;
+        //Nothing to sort on, so for a stable sort, nothing can move
+        if(stable && minCharsToSort <= 0) return;
+        if(lcp != null)
+        {
+            assert minCharsToSort == Integer.MAX_VALUE && perm == null && charIndex == 0;
+            lcp[fromIndex - lcpOffset] = 0;
+            nulCharTies = false;
+            if(len <= tuning.maxArraysFullSort)
+            {
+                if(stats != null) ++stats.insertionSorts;
+                lcpInsertionSort(arr, lcp, lcpOffset, fromIndex, toIndex, 0);
+                return;
+            }
+        }
+        if(len == 2)
+        {
+            if(stats != null) ++stats.twoItemSorts;
+            sortTwoItems(arr, perm, fromIndex, fromIndex + 1, charIndex, comparisonLimit(minCharsToSort));
+            return;
+        }
+        if(len == 3)
+        {
+            if(stats != null) ++stats.threeItemSorts;
+            sortThreeItems(arr, perm, fromIndex, fromIndex + 1, fromIndex + 2, charIndex, comparisonLimit(minCharsToSort));
+            return;
+        }
+        if(len <= tuning.maxArraysFullSort)
+        {
+            if(stats != null) ++stats.comparatorSorts;
+            binaryInsertionSort(arr, perm, fromIndex, toIndex,
+                stable ? compareAllRemaining(charIndex, minCharsToSort) : suffixComparator.at(charIndex));
+            return;
+        }
+        this.arr = arr;
+        this.perm = perm;
+        this.lcp = lcp;
+        //Only the range being sorted ever gets scattered, so the working copy only needs to be as large as that range
+        if(!inPlace)
+        {
+            if(wc == null || wc.length < len)
+                wc = new String[len];
+            if(perm != null && (wcPerm == null || wcPerm.length < len))
+                wcPerm = new int[len];
+        }
+        wcOffset = fromIndex;
+        //Those need scratch space as large as the range
+        tryCompactedPasses = !inPlace;
+        try
+        {
+            push(obtainState(fromIndex, toIndex, charIndex, minCharsToSort));
+            doSort();
+        }
+        finally
+        {
+            //Don't hold onto the array being sorted
+            this.arr = null;
+            this.perm = null;
+            this.lcp = null;
+            //If a sort was interrupted by an exception, don't let what is left of it leak into the next sort
+            stack.clear();
+            mergeHolder = null;
+            mergeHasMoreThanOne = false;
+        }
+    }
+    
+    public static final void parallelSort(String[] arr)
+    {
+        parallelSort(arr, 0, arr.length);
+    }
+    
+    public static final void parallelSort(String[] arr, int fromIndex, int toIndex)
+    {
+        parallelSortPartially(Integer.MAX_VALUE, arr, fromIndex, toIndex);
+    }
+    
+    public static final void parallelSortPartially(int minCharsToSort, String[] arr)
+    {
+        parallelSortPartially(minCharsToSort, arr, 0, arr.length);
+    }
+    
+    public static final void parallelSortPartially(int minCharsToSort, String[] arr, int fromIndex, int toIndex)
+    {
+        parallelSortPartially(minCharsToSort, arr, fromIndex, toIndex, DefaultPoolHolder.POOL, DEFAULT_PARALLEL_SEQUENTIAL_CUTOFF);
+    }
+    
+    /**
+     * Sorts the given range the same way {@link #sortPartially(int, String[], int, int)} does, but spreads the work over the threads of the given pool.
+     * <p>
+     * Each bucket is independent of every other bucket once the character it was split on has been sorted on,
+     * so any bucket larger than {@code sequentialCutoff} becomes its own fork/join task with its own sort stack and character range tracking.
+     * All tasks share the one working copy array, as each only ever touches the slice of it matching its own bucket.
+     * Very large ranges (like the first few levels over the whole input) also have their character counting and scattering split among the threads.
+     * 
+     * @param minCharsToSort the minimum number of characters from the start of each string to sort on
+     * @param arr the array to sort
+     * @param fromIndex the index of the first element to sort (inclusive)
+     * @param toIndex the index of the last element to sort (exclusive)
+     * @param pool the pool to run the sort in
+     * @param sequentialCutoff buckets at most this long are sorted on a single thread; must be positive
+     */
+    public static void parallelSortPartially(int minCharsToSort, String[] arr, int fromIndex, int toIndex,
+        ForkJoinPool pool, int sequentialCutoff)
+    {
+        if(sequentialCutoff < 1)
+            throw new IllegalArgumentException("sequential cutoff: " + sequentialCutoff + " < 1");
+        if(checkBounds(arr.length, fromIndex, toIndex)) return;
+        if(toIndex - fromIndex <= sequentialCutoff || pool.getParallelism() <= 1)
+        {
+            sortPartially(minCharsToSort, arr, fromIndex, toIndex);
+            return;
+        }
+        String[] wc = new String[toIndex - fromIndex];
+        pool.invoke(new ParallelSortTask(arr, wc, fromIndex, fromIndex, toIndex, 0, minCharsToSort, sequentialCutoff, DEFAULT_CHAR_STORAGE_PRE_ALLOC,
+            SorterTuning.getDefault()));
+    }
+    
+    //Java 7 has no common pool, so keep our own. Lazily created, so that users that never sort in parallel never start any threads.
+    private static final class DefaultPoolHolder
+    {
+        static final ForkJoinPool POOL = new ForkJoinPool();
+    }
+
+    private final Deque<SortState> stack;
+    private final SorterTuning tuning;
+    private String[] arr;
+    private String[] wc;
+    //Index in arr that wc[0] stands in for
+    private int wcOffset;
+    //If not null, the permutation that is moved in lockstep with arr (and its working copy), for sorts that report where each string came from
+    private int[] perm;
+    private int[] wcPerm;
+    //If not null, filled in as the sort goes with the length of the prefix each string shares with the one before it
+    private int[] lcp;
+    //Index in arr that lcp[0] stands in for
+    private int lcpOffset;
+    //Set when the sort took strings to be equal that may not be, as it takes a '\0' to be the end of the string (see setEqualRangeLcp).
+    //The sort can leave those out of order, and the shared prefix lengths around them can be wrong.
+    private boolean nulCharTies;
+    private SortState tempHolder;
+    private SortState mergeHolder = null;
+    private boolean mergeHasMoreThanOne = false;
+    private int maxIndexTempTrack = -1;
+    
+    private int maxCharValueSeen = DEFAULT_CHAR_STORAGE_PRE_ALLOC;
+    //Only greater than one for sorters run as part of a parallel sort; ranges at least MIN_PARALLEL_BUCKET_PASS long are then split this many ways
+    private int parallelism = 1;
+    //If set, strings that are equal over the characters being sorted on keep their relative order, even for partial sorts
+    private boolean stable = false;
+    //If set, the bucket passes move the strings within the range they are sorting instead of through wc, so the only scratch space
+    //is as large as the alphabet, not the range, at the cost of some speed (and stability). See americanFlagBucketSort
+    private boolean inPlace = false;
+    //If not null, what goes on in the sort is counted here as it goes; with it null, each place that counts is just the null check
+    private SortStats stats;
+    
+    //Scratch space kept between bucket sort passes (and between sorts, for a Context), so each pass doesn't have to allocate its own.
+    //charCountBuffer must be all zeros between passes.
+    private int[] charCountBuffer = new int[DEFAULT_CHAR_STORAGE_PRE_ALLOC];
+    private int[] indexes = new int[DEFAULT_CHAR_STORAGE_PRE_ALLOC];
+    //This is what is handed back from bucketSort as the start of each bucket, so it must not be touched until the next pass
+    private int[] indexesOrig = new int[DEFAULT_CHAR_STORAGE_PRE_ALLOC];
+    //The number of valid entries of the last array of buckets returned by bucketSort
+    private int bucketCount;
+    //The character of the first bucket of the last array of buckets returned by bucketSort
+    private int bucketMinChar;
+    
+    //Per character scratch for bucketSort, kept the same length as charCountBuffer.
+    //Unlike the counts, these don't need to be cleared between passes, as each entry is overwritten the first time its character is seen.
+    //The longest string seen with each character
+    private int[] charMaxLenBuffer = new int[DEFAULT_CHAR_STORAGE_PRE_ALLOC];
+    //The character after each character, or MIXED_NEXT_CHARS if the strings with that character don't all agree on the next one 
+    private int[] charNextCharBuffer = new int[DEFAULT_CHAR_STORAGE_PRE_ALLOC];
+    //Scratch for sparseBucketSort; the order the strings of the range go in (and the order after the first of its two passes),
+    //and the counts of each byte of the characters
+    private int[] sparseOrder = EMPTY_COMPACTED_KEY_CACHE;
+    private int[] sparseOrderBuffer = EMPTY_COMPACTED_KEY_CACHE;
+    private final int[] sparseByteCounts = new int[2 * SPARSE_HIGH_BYTE_COUNTS];
+    //Whether the per character scratch above describes the last array of buckets returned by bucketSort.
+    //Only good until the next bucketSort, so it has to be used right away, but that is exactly when the buckets get split
+    private boolean haveBucketHints;
+    //The character at the current index of each string in the range being bucket sorted, so the scatter doesn't have to go back to the strings for them
+    private char[] keyCache = EMPTY_KEY_CACHE;
+    //The same for compactedBucketSort; first the (Latin-1) characters it reads, packed a byte each, and then the bucket each string goes in,
+    //along with the length of each string, and the count and longest string of each bucket
+    private int[] compactedKeyCache = EMPTY_COMPACTED_KEY_CACHE;
+    private int[] compactedLenCache = EMPTY_COMPACTED_KEY_CACHE;
+    private int[] compactedCounts = EMPTY_COMPACTED_KEY_CACHE;
+    private int[] compactedMaxLens = EMPTY_COMPACTED_KEY_CACHE;
+    //The rank of each Latin-1 character among those seen by the current compacted pass, with the end of the string always being 0.
+    //All zeros between passes.
+    private final int[] compactedRanks = new int[0x100];
+    //Cleared once a compacted pass finds too wide an alphabet, as the rest of that sort is likely to as well, and each try costs a pass
+    private boolean tryCompactedPasses;
+    //Only ranges overlapping [selectFrom, selectTo) are ever pushed, so for selectTopK and nthElement, the rest are left as they are once split off.
+    //Everything is wanted for a sort.
+    private int selectFrom = 0;
+    private int selectTo = Integer.MAX_VALUE;
+    
+    //SortStates that are no longer in use, so we don't have to keep allocating new ones
+    private SortState[] freeStates = new SortState[16];
+    private int freeStateCount = 0;
+    
+    //The comparators are mutable, so the same ones can be repointed at whatever index is needed instead of allocating new ones
+    private final NaturalCharComparatorAtIndex charComparator = new NaturalCharComparatorAtIndex(0);
+    private final NaturalSuffixComparator suffixComparator = new NaturalSuffixComparator(0);
+    private final NaturalSubstringComparator substringComparator = new NaturalSubstringComparator(0, 1);
+    
+    /**
+     * A wrapper method, returning '\0' instead of throwing an exception for out of bounds. Cleanly handles the case of
+     * mismatching string lengths.
+     * 
+     * @param s
+     * @param index
+     * @return
+     * @see CharSequence#charAt(int)
+     */
+    // FIXME #1 bottleneck when inlining does not occur
+    //Any JIT compiler worth its salt will be able to inline these charAt calls
+    static final char charAt(String s, int index)
+    {
+        // Any self respecting JIT should be able to inline these two methods to their
+        // respective array calls, and then be able to inline this method itself.
+        return index < s.length() ? s.charAt(index) : '\0';
+    }
+
+    //These really should try to "chip in" data to build a shared prefix tree,
+    //which is a good way to speed up MSD string sort, and greatley speed up finding and skipping shared prefixes.
+    static final int compareSubtrStartingAt(final String s1, final String s2, final int index)
+    {
+        final int len1 = s1.length();
+        final int len2 = s2.length();
+        if(len1 <= index)
+        {
+            return len2 <= index ? 0 : -1;
+        }
+        if(len2 <= index) return 1;
+        
+        //Pretty much ripped from String#compareTo(String), with the search for the first differing character done by StringMismatch
+        final int lim = Math.min(len1, len2);
+        final int k = StringMismatch.mismatch(s1, s2, index, lim);
+        if(k < lim) return s1.charAt(k) - s2.charAt(k);
+        //Even if the count doesn't start from the beginning, it doesn't matter, as cutting off the same number of characters still preserves ordering
+        return len1 - len2;
+    }
+    
+    //Compares the characters in [index, maxIndex) of each string, with a maxIndex of Integer.MAX_VALUE meaning the rest of each string
+    static final int compareRemaining(final String s1, final String s2, final int index, final int maxIndex)
+    {
+        if(maxIndex == Integer.MAX_VALUE) return compareSubtrStartingAt(s1, s2, index);
+        return index >= maxIndex ? 0 : compareSubtr(s1, s2, index, maxIndex);
+    }
+    
+    static final int compareSubtr(final String s1, final String s2, final int index, final int maxIndex)
+    {
+        assert maxIndex > index;
+        final int len1 = s1.length();
+        final int len2 = s2.length();
+        if(len1 <= index)
+        {
+            return len2 <= index ? 0 : -1;
+        }
+        if(len2 <= index) return 1;
+        
+        //Pretty much ripped from String#compareTo(String), with the search for the first differing character done by StringMismatch
+        final int lim = Math.min(Math.min(len1, len2), maxIndex);
+        final int k = StringMismatch.mismatch(s1, s2, index, lim);
+        if(k < lim) return s1.charAt(k) - s2.charAt(k);
+        //Even if the count doesn't start from the beginning, it doesn't matter, as cutting off the same number of characters still preserves ordering
+        return k == maxIndex ? 0 : len1 - len2;
+    }
+
+    private final void doSort()
+    {
+        SortState current;
+        while((current = stack.pollFirst()) != null)
+        {
+            // "Recurse"
+            processPartAndRecycle(current);
+        }
+        return; // This redundant return is only so we can set a breakpoint here.
+    }
+    
+    private final void processPartAndRecycle(SortState current)
+    {
+        current.onStack = false;
+        processPart(current);
+        //processPart will often reuse the state it was given for one of the sub-blocks; only recycle it if it didn't
+        if(!current.onStack) releaseState(current);
+    }
+    
+    private final void push(SortState state)
+    {
+        //Not wanted, so never sorted any further. If it is the state being processed, it gets recycled as it isn't on the stack
+        if(state.end <= selectFrom || state.start >= selectTo) return;
+        state.onStack = true;
+        stack.addFirst(state);
+        if(stats != null && stack.size() > stats.maxStackDepth) stats.maxStackDepth = stack.size();
+    }
+    
+    private final SortState obtainState(final int start, final int end, final int index, final int maxIndex)
+    {
+        return freeStateCount == 0 ?
+            new SortState(start, end, index, maxIndex) :
+            freeStates[--freeStateCount].setState(start, end, index, maxIndex);
+    }
+    
+    private final void releaseState(SortState state)
+    {
+        if(freeStateCount == freeStates.length)
+            freeStates = Arrays.copyOf(freeStates, freeStateCount << 1);
+        freeStates[freeStateCount++] = state;
+    }
+
+    private void processPart(SortState currentState)
+    {
+        final int start = currentState.start;
+        final int end = currentState.end;
+        final int index = currentState.index;
+        int maxIndex = currentState.maxIndex;
+        // If there are no characters in this block, just return now
+        // Skip if we went past the "end" of the character range we want to sort
+        if(maxIndex <= 0 || index >= maxIndex)
+        {
+            if(lcp != null) setEqualRangeLcp(start, end, index);
+            return;
+        }
+        if(tryCompactedPasses && end - start >= MIN_COMPACTED_PASS && maxIndex - index >= 2 &&
+            parallelism == 1 && compactedBucketSort(start, end, index, maxIndex))
+        {
+            if(stats != null) ++stats.bucketPasses;
+            return;
+        }
+        boolean needMaxIndexUpdate = maxIndex == Integer.MAX_VALUE || end - start <= tuning.maxUpdateMaxLength;
+        // First, sort on the current character
+        int[] buckets = doSortOnPart(start, end, index, maxIndex, needMaxIndexUpdate);
+        if(buckets == FULLY_SORTED) return;
+        if(maxIndexTempTrack != -1)
+        {
+            maxIndex = Math.min(maxIndexTempTrack, maxIndex);
+            needMaxIndexUpdate = end - start < tuning.maxUpdateMaxLength;
+        }
+
+        // Now, find sub-blocks of the same characters
+
+        char curChar = charAt(arr[start], index);
+        if(index < maxIndex)  // Skip the next index if we have reached the max, as that
+                             // signals that all strings in this sub-block don't need to
+                             // be sorted anymore, as there is no data in the next index
+        {
+            if(curChar == charAt(arr[end - 1], index))
+            //Inlined from
+            //processSingleCharBlock(int start, int end, int index, int maxIndex, SortState currentState)
+            {
+                if(curChar != '\0')
+                {
+                    // Common case, all the characters at this level were the same, just
+                    // immediately move on
+                    final int sharedPrefixLen = (parallelism > 1 && end - start >= MIN_PARALLEL_BUCKET_PASS) ?
+                        parallelFindSharedPrefixLen(start, end, index + 1, maxIndex) :
+                        findSharedPrefixLen(arr, start, end, index + 1, maxIndex);
+                    // Shared prefix length might be zero if all of them are them are shorter
+                    // than the current index
+                    push(currentState.setState(start, end, index + sharedPrefixLen + 1, maxIndex));
+                }
+                else if(lcp != null)
+                {
+                    //All of these strings ended before this index, so they are all equal
+                    setEqualRangeLcp(start, end, index);
+                }
+            }
+            else
+            {
+                assert buckets != FULLY_SORTED;
+                assert bucketCount != 1;
+                if(lcp != null) setSplitLcp(start, end, index, buckets);
+                if(buckets == INDEX_SORTED_NO_BUCKETS)
+                    splitByCharGroupsNoBucketIndexes(start, end, index, maxIndex, curChar, currentState, needMaxIndexUpdate);
+                else
+                    splitByCharGroupsWithBucketIndexes(start, end, index, maxIndex, buckets, currentState, needMaxIndexUpdate);
+            }
+        }
+        else if(lcp != null)
+        {
+            //All of these strings ended before this index, so they are all equal
+            setEqualRangeLcp(start, end, index);
+        }
+    }
+    
+    //The strings in [start, end) are all equal over their first index characters, and none of them are any longer than that.
+    //Unless some of them have a '\0' in them, which the sort takes to be the end of the string; then they can be different lengths,
+    //or longer than index, and need not be equal at all. nulCharTies notes when that happens, as the lengths are read here anyways.
+    private final void setEqualRangeLcp(final int start, final int end, final int index)
+    {
+        final int firstLen = arr[start].length();
+        boolean ties = firstLen > index;
+        for(int i = start + 1; i < end; ++i)
+        {
+            final int sLen = arr[i].length();
+            lcp[i - lcpOffset] = Math.min(index, sLen);
+            ties |= sLen != firstLen;
+        }
+        if(ties) nulCharTies = true;
+    }
+    
+    //[start, end) was just sorted on the character at index, which it has more than one of, and shares every character before that
+    //So, wherever the character at index changes is where the shared prefix ends
+    private final void setSplitLcp(final int start, final int end, final int index, final int[] buckets)
+    {
+        //With a wide range of characters, most buckets are empty, so going over the strings themselves can be much cheaper
+        if(buckets == INDEX_SORTED_NO_BUCKETS || bucketCount > end - start)
+        {
+            char prevChar = charAt(arr[start], index);
+            for(int i = start + 1; i < end; ++i)
+            {
+                final char c = charAt(arr[i], index);
+                if(c != prevChar)
+                {
+                    lcp[i - lcpOffset] = index;
+                    prevChar = c;
+                }
+            }
+        }
+        else
+        {
+            //The first and last buckets are never empty, so an empty bucket in between just marks the start of the next non-empty one
+            for(int i = 1; i < bucketCount; ++i)
+                lcp[buckets[i] + start - lcpOffset] = index;
+        }
+    }
+    
+    //This version is used when no character start indexes are available
+    private void splitByCharGroupsNoBucketIndexes(final int start,
+        final int end, final int index, final int maxIndex, final char curChar, SortState currentState, final boolean updateMaxSize)
+    {
+        //SortState is given not for the start, end, etc, but rather to update the max seen character, and for merging of ranges
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance 
+        final String[] arr = this.arr;
+        tempHolder = currentState;
+        int lastNewIndex = start;
+        
+        // Once we start getting near the end of the strings, go ahead and be willing to have larger merges
+        // Warning: Whatever range this may be, it MUST be small enough such that merged
+        // range WILL fall under a complete sort, not a current index only sort
+        final int remainingCharsToProcess = maxIndex - index;
+        final boolean shouldMerge = remainingCharsToProcess < tuning.maxRemainingBeforeMergingRanges;
+        final int maxMergedRangeSize = remainingCharsToProcess < tuning.maxRemainingBeforeFullArraysSort ? tuning.maxArraysFullSort : tuning.maxInsertionSort;
+        //It's an odd use for this variable given its name, but the first use of this variable is whether to even try to do the binary search thing
+        //All subsequent uses of it follow usage implied by its name.
+        boolean atStartOfBlock = end - start >= tuning.minBinarySearch;
+        char curChar2 = curChar;
+        if(atStartOfBlock) //Skip the longer form of the loop if we are not binary searching
+        {
+            final java.util.Comparator<String> comp = charComparator.at(index);
+            int newStart = start;
+            {   //Make sure to update the version of this inside the loop as well
                 //Before doing a binary search, check the next string (if any) so we don't waste time on blocks of size 1
                 if(start == end - 1 || (start < end - 1 && charAt(arr[start + 1], index) != curChar2))
                 {
@@ -435,24 +1347,37 @@ public final class MSDStringSorter
         // Warning: Whatever range this may be, it MUST be small enough such that merged
         // range WILL fall under a complete sort, not a current index only sort
         final int remainingCharsToProcess = maxIndex - index;
-        final boolean shouldMerge = remainingCharsToProcess < MAX_REMAINING_BEFORE_MERGING_RANGES;
-        final int maxMergedRangeSize = remainingCharsToProcess < MAX_REMAINING_BEFORE_FULL_ARRAYS_SORT ? MAX_ARRAYS_FULL_SORT : MAX_INSERTION_SORT;
+        final boolean shouldMerge = remainingCharsToProcess < tuning.maxRemainingBeforeMergingRanges;
+        final int maxMergedRangeSize = remainingCharsToProcess < tuning.maxRemainingBeforeFullArraysSort ? tuning.maxArraysFullSort : tuning.maxInsertionSort;
         // curChar MUST be the min char seen
-        for(int i = 0; i < buckets.length - 1; ++i)
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance 
+        final int bucketCount = this.bucketCount;
+        final boolean useHints = haveBucketHints;
+        for(int i = 0; i < bucketCount - 1; ++i)
         {
             final int regionStart = buckets[i] + start;
             final int regionEnd = buckets[i + 1] + start;
             final int newSize = regionEnd - regionStart;
             if(newSize > 1) //Don't even bother with a method call if our size is zero or one
-                doRecurse(regionStart, regionEnd, newSize, index, maxIndex, charAt(arr[regionStart], index), updateMaxSize, shouldMerge, maxMergedRangeSize);
+            {
+                if(useHints)
+                    doRecurseWithBucketHints(i, regionStart, regionEnd, newSize, index, maxIndex, null, shouldMerge, maxMergedRangeSize);
+                else
+                    doRecurse(regionStart, regionEnd, newSize, index, maxIndex, charAt(arr[regionStart], index), updateMaxSize, shouldMerge, maxMergedRangeSize);
+            }
         }
     
         // The for loop may miss one block, the final one. If so, add it now
-        final int regionStart = buckets[buckets.length - 1] + start;
+        final int regionStart = buckets[bucketCount - 1] + start;
         final int regionEnd = end;
         final int newSize = regionEnd - regionStart;
         if(newSize > 1)
-            doRecurseFinalIteration(regionStart, regionEnd, newSize, index, maxIndex, charAt(arr[regionStart], index), currentState, updateMaxSize, shouldMerge, maxMergedRangeSize);
+        {
+            if(useHints)
+                doRecurseWithBucketHints(bucketCount - 1, regionStart, regionEnd, newSize, index, maxIndex, currentState, shouldMerge, maxMergedRangeSize);
+            else
+                doRecurseFinalIteration(regionStart, regionEnd, newSize, index, maxIndex, charAt(arr[regionStart], index), currentState, updateMaxSize, shouldMerge, maxMergedRangeSize);
+        }
         
         //End block, thus no more to merge
         //Thus, flush out any pending merges
@@ -467,6 +1392,14 @@ public final class MSDStringSorter
         if(curChar == '\0')
         {
             //Block for null character block, which is a sign that we are at the end of these strings, so just skip this block
+            if(lcp != null) setEqualRangeLcp(regionStart, regionEnd, index);
+            return;
+        }
+        if(stats != null) stats.bucket(newSize);
+        if(lcp != null && newSize <= 3)
+        {
+            if(stats != null) ++stats.insertionSorts;
+            lcpInsertionSort(arr, lcp, lcpOffset, regionStart, regionEnd, index + 1);
             return;
         }
         // From where we first saw this character to here, where the current pos is
@@ -475,12 +1408,14 @@ public final class MSDStringSorter
         {
             case 2:
             {
-                sortTwoItems(arr, regionStart, regionStart + 1, index + 1);
+                if(stats != null) ++stats.twoItemSorts;
+                sortTwoItems(arr, perm, regionStart, regionStart + 1, index + 1, comparisonLimit(maxIndex));
                 break;
             }
             case 3:
             {
-                sortThreeItems(arr, regionStart, regionStart + 1, regionStart + 2, index + 1);
+                if(stats != null) ++stats.threeItemSorts;
+                sortThreeItems(arr, perm, regionStart, regionStart + 1, regionStart + 2, index + 1, comparisonLimit(maxIndex));
                 break;
             }
             default:
@@ -499,6 +1434,14 @@ public final class MSDStringSorter
         if(curChar == '\0')
         {
             //Block for null character block, which is a sign that we are at the end of these strings, so just skip this block
+            if(lcp != null) setEqualRangeLcp(regionStart, regionEnd, index);
+            return;
+        }
+        if(stats != null) stats.bucket(newSize);
+        if(lcp != null && newSize <= 3)
+        {
+            if(stats != null) ++stats.insertionSorts;
+            lcpInsertionSort(arr, lcp, lcpOffset, regionStart, regionEnd, index + 1);
             return;
         }
         // From where we first saw this character to here, where the current pos is
@@ -507,12 +1450,14 @@ public final class MSDStringSorter
         {
             case 2:
             {
-                sortTwoItems(arr, regionStart, regionStart + 1, index + 1);
+                if(stats != null) ++stats.twoItemSorts;
+                sortTwoItems(arr, perm, regionStart, regionStart + 1, index + 1, comparisonLimit(maxIndex));
                 break;
             }
             case 3:
             {
-                sortThreeItems(arr, regionStart, regionStart + 1, regionStart + 2, index + 1);
+                if(stats != null) ++stats.threeItemSorts;
+                sortThreeItems(arr, perm, regionStart, regionStart + 1, regionStart + 2, index + 1, comparisonLimit(maxIndex));
                 break;
             }
             default:
@@ -523,6 +1468,38 @@ public final class MSDStringSorter
         }
     }
 
+    //Uses what bucketSort found out about a bucket while it had each string at hand, instead of going back over the bucket to find it again.
+    //finalIterationState is the state to reuse for the last bucket, or null for any other bucket
+    private final void doRecurseWithBucketHints(final int bucket, final int regionStart, final int regionEnd, final int newSize,
+        final int index, final int maxIndex, final SortState finalIterationState, final boolean shouldMerge, final int maxMergedRangeSize)
+    {
+        final char curChar = (char)(bucketMinChar + bucket);
+        //Only non-empty buckets get here, so the scratch for this character is from this pass, not some earlier one
+        final int maxIndexBlock = Math.min(charMaxLenBuffer[curChar], maxIndex);
+        final int nextChar = charNextCharBuffer[curChar];
+        //Blocks of 2 or 3 are sorted right away, which is cheaper than anything the hint could save
+        if(newSize > 3 && nextChar != MIXED_NEXT_CHARS && curChar != '\0')
+        {
+            //Every string in this block ends right after this character, so they are all equal
+            if(nextChar == '\0')
+            {
+                if(lcp != null) setEqualRangeLcp(regionStart, regionEnd, index + 1);
+                return;
+            }
+            //Every string in this block has the same next character as well, so skip straight past it, saving a whole pass over this block.
+            //This block can't be merged with its neighbors though, as the merged block would skip that character as well.
+            if(finalIterationState == null)
+                doRecurse(regionStart, regionEnd, newSize, index + 1, maxIndexBlock, (char)nextChar, false, false, maxMergedRangeSize);
+            else
+                doRecurseFinalIteration(regionStart, regionEnd, newSize, index + 1, maxIndexBlock, (char)nextChar, finalIterationState, false, false, maxMergedRangeSize);
+            return;
+        }
+        if(finalIterationState == null)
+            doRecurse(regionStart, regionEnd, newSize, index, maxIndexBlock, curChar, false, shouldMerge, maxMergedRangeSize);
+        else
+            doRecurseFinalIteration(regionStart, regionEnd, newSize, index, maxIndexBlock, curChar, finalIterationState, false, shouldMerge, maxMergedRangeSize);
+    }
+
     private final int conditionalFindMaxIndexBlock(final int regionStart, final int regionEnd,
         final int newSize, final int maxIndex, final boolean updateMaxSize,
         final int maxMergedRangeSize)
@@ -551,7 +1528,7 @@ public final class MSDStringSorter
             final int index, final int maxIndexBlock, final boolean shouldMerge,
             final int maxMergedRangeSize)
     {
-        trackMergeAndAdd(regionStart, regionEnd, newSize, index, maxIndexBlock, shouldMerge, maxMergedRangeSize, new SortState());
+        trackMergeAndAdd(regionStart, regionEnd, newSize, index, maxIndexBlock, shouldMerge, maxMergedRangeSize, obtainState(regionStart, regionEnd, index, maxIndexBlock));
     }
     
     private final void
@@ -562,21 +1539,21 @@ public final class MSDStringSorter
         // If this is a tiny block, try to see if we can accumulate with the next block
         if(shouldMerge)
         {
-            if(newSize < MAX_INSERTION_SORT && newSize >= MIN_BLOCK_LEN_TO_MERGE)
+            if(newSize < tuning.maxInsertionSort && newSize >= MIN_BLOCK_LEN_TO_MERGE)
             {
                 assert mergeHolder != toUseState;
                 //We might get a clash between the temp state holder and the state to reuse
                 //Must check for that
                 SortState newState =
                     toUseState == tempHolder ?
-                        new SortState(regionStart, regionEnd, index, maxIndexBlock) :
+                        obtainState(regionStart, regionEnd, index, maxIndexBlock) :
                         toUseState.setState(regionStart, regionEnd, index, maxIndexBlock);
                 SortState newMerged = tempHolder.setState(newState).mergeWith(mergeHolder);
                 if(newMerged == null || newMerged.length() >= maxMergedRangeSize)
                 {
                     // We have grown too big, or hit a non-adjacent region, dump the
                     // merged so far (minus this block)
-                    stack.addFirst(advanceIndexIfNeeded(mergeHolder, !mergeHasMoreThanOne));
+                    push(advanceIndexIfNeeded(mergeHolder, !mergeHasMoreThanOne));
                     // And then start a new merge range (starting with this block)
                     mergeHasMoreThanOne = false;
                     mergeHolder = newState;
@@ -587,22 +1564,26 @@ public final class MSDStringSorter
                     {
                         mergeHolder.setState(newMerged);
                         mergeHasMoreThanOne = true;
+                        if(stats != null) ++stats.rangeMerges;
+                        //This block is now part of the merged range, so its own state is no longer needed
+                        releaseState(newState);
                     }
                     else
                     {
-                        mergeHolder = toUseState.setState(newMerged);
+                        //Nothing was merged, so newMerged is just a copy of newState
+                        mergeHolder = newState;
                     }
                 }
             }
             else
             {
                 flushMergedIfNeeded();
-                stack.addFirst(toUseState.setState(regionStart, regionEnd, index + 1, maxIndexBlock));
+                push(toUseState.setState(regionStart, regionEnd, index + 1, maxIndexBlock));
             }
         }
         else
         {
-            stack.addFirst(toUseState.setState(regionStart, regionEnd, index + 1, maxIndexBlock));
+            push(toUseState.setState(regionStart, regionEnd, index + 1, maxIndexBlock));
         }
     }
 
@@ -610,7 +1591,7 @@ public final class MSDStringSorter
     {
         if(mergeHolder != null)
         {
-            stack.addFirst(advanceIndexIfNeeded(mergeHolder, !mergeHasMoreThanOne));
+            push(advanceIndexIfNeeded(mergeHolder, !mergeHasMoreThanOne));
             mergeHasMoreThanOne = false;
             mergeHolder = null;
         }
@@ -641,66 +1622,100 @@ public final class MSDStringSorter
     {
         final int len = toIndex - fromIndex;
         maxIndexTempTrack = -1;
+        //Same cases that would be fully sorted below, but keeping track of the shared prefixes while at it
+        if(lcp != null && len > 1 &&
+            (len <= tuning.maxInsertionSort || (len <= tuning.maxArraysFullSort && maxIndex - charIndex <= tuning.maxRemainingBeforeFullArraysSort)))
+        {
+            if(stats != null) ++stats.insertionSorts;
+            lcpInsertionSort(arr, lcp, lcpOffset, fromIndex, toIndex, charIndex);
+            return FULLY_SORTED;
+        }
         switch(len) 
         {
             case 0: case 1:
                 return FULLY_SORTED;
             case 2:
             {
-                sortTwoItems(arr, fromIndex, fromIndex + 1, charIndex);
+                if(stats != null) ++stats.twoItemSorts;
+                sortTwoItems(arr, perm, fromIndex, fromIndex + 1, charIndex, comparisonLimit(maxIndex));
                 return FULLY_SORTED;
             }
             case 3:
             {
-                sortThreeItems(arr, fromIndex, fromIndex + 1, fromIndex + 2, charIndex);
+                if(stats != null) ++stats.threeItemSorts;
+                sortThreeItems(arr, perm, fromIndex, fromIndex + 1, fromIndex + 2, charIndex, comparisonLimit(maxIndex));
                 return FULLY_SORTED;
             }
             case 4: //Even though we don't have a specific sort for 4 items, this is a common enough case to have a jump for
             {
-                insertionSort(arr, fromIndex, toIndex, charIndex, maxIndex);
+                if(stats != null) ++stats.insertionSorts;
+                insertionSort(arr, perm, fromIndex, toIndex, charIndex, maxIndex);
                 return FULLY_SORTED;
             }
             default:
             {
                 if(len < 0)
                     return FULLY_SORTED;
-                if(len <= MAX_INSERTION_SORT)
+                if(len <= tuning.maxInsertionSort)
                 {
-                    insertionSort(arr, fromIndex, toIndex, charIndex, maxIndex);
+                    if(stats != null) ++stats.insertionSorts;
+                    insertionSort(arr, perm, fromIndex, toIndex, charIndex, maxIndex);
                     return FULLY_SORTED;
                 }
-                if(len <= ARRAYS_SORT_CHECK)
+                if(len <= tuning.maxArraysFullSort || len <= tuning.maxArraysIndexSort)
                 {
-                    if(maxIndex - charIndex <= MAX_REMAINING_BEFORE_FULL_ARRAYS_SORT && len <= MAX_ARRAYS_FULL_SORT)
+                    if(maxIndex - charIndex <= tuning.maxRemainingBeforeFullArraysSort && len <= tuning.maxArraysFullSort)
                     {
                         final java.util.Comparator<String> comp = getRemainingCharSortComparator(arr, fromIndex, toIndex, charIndex, maxIndex);
-                        Arrays.sort(arr, fromIndex, toIndex, comp);
+                        if(stats != null) ++stats.comparatorSorts;
+                        binaryInsertionSort(arr, perm, fromIndex, toIndex, comp);
                         return FULLY_SORTED;
                     }
                     if(DO_NON_FULL_ARRAYS_SORT)
                     {
-                        if(len <= MAX_ARRAYS_INDEX_SORT)
+                        if(len <= tuning.maxArraysIndexSort)
                         {
-                            Arrays.sort(arr, fromIndex, toIndex, new NaturalCharComparatorAtIndex(charIndex));
+                            if(stats != null) ++stats.comparatorSorts;
+                            binaryInsertionSort(arr, perm, fromIndex, toIndex, charComparator.at(charIndex));
                             return INDEX_SORTED_NO_BUCKETS;
                         }
                     }
                 }
             }
         }
+        if(stats != null) ++stats.bucketPasses;
         return bucketSort(fromIndex, toIndex, charIndex, tryTrackMaxIndex);
     }
 
-    private static final java.util.Comparator<String> getRemainingCharSortComparator(final String[] arr, final int fromIndex,
+    private final java.util.Comparator<String> getRemainingCharSortComparator(final String[] arr, final int fromIndex,
         final int toIndex, final int charIndex, final int maxIndex)
     {
         //This is to try to avoid sorting on a bunch of characters past the number the user asked for
+        if(stable) return compareAllRemaining(charIndex, maxIndex);
         final int maxIndexRealGuess = Math.max(Math.max(arr[fromIndex].length(), arr[toIndex - 1].length()), arr[(toIndex + fromIndex) >> 1].length());
-        return maxIndexRealGuess - maxIndex > MAX_DIFF_BETWEEN_MAX_INDEX_GUESS_AND_REAL_MAX ?
-            new NaturalSubstringComparator(charIndex, maxIndex) :
-            new NaturalSuffixComparator(charIndex);
+        return maxIndexRealGuess - maxIndex > tuning.maxDiffBetweenMaxIndexGuessAndRealMax ?
+            substringComparator.at(charIndex, maxIndex) :
+            suffixComparator.at(charIndex);
     }
 
+    //For the stable sorts, characters past the max index must not be looked at, as strings that only differ past it must keep their order.
+    //Otherwise, looking at them is harmless, and sometimes cheaper.
+    private final int comparisonLimit(final int maxIndex)
+    {
+        return stable ? maxIndex : Integer.MAX_VALUE;
+    }
+    
+    private final java.util.Comparator<String> compareAllRemaining(final int charIndex, final int maxIndex)
+    {
+        return maxIndex == Integer.MAX_VALUE ? suffixComparator.at(charIndex) : substringComparator.at(charIndex, maxIndex);
+    }
+
+    private static final char[] EMPTY_KEY_CACHE = new char[0];
+    private static final int[] EMPTY_COMPACTED_KEY_CACHE = new int[0];
+    
+    //Not a valid char, so it can't be mistaken for one
+    private static final int MIXED_NEXT_CHARS = -1;
+
     // A couple of "conditional flag arrays" as a hack to allow a sort of
     // "true, false, or data" type return
     private static final int[] FULLY_SORTED = new int[0];
@@ -710,92 +1725,110 @@ public final class MSDStringSorter
     // XXX Add some way to do this in the "middle" of a sort, so we don't loop through the array potentially twice
     // Basically, the comparators need to "chip in" some data to aid building a shared prefix tree,
     // which can greatly speed up this method.  
-    private static final int findSharedPrefixLen(final String[] arr, final int fromIndex, final int toIndex,
+    static final int findSharedPrefixLen(final String[] arr, final int fromIndex, final int toIndex,
         final int charIndex, final int maxIndex)
     {
         // It doesn't really matter which element we choose, it will give the same result, and the same average running time
         final String toTestAgainst = arr[fromIndex];
 
-        final int len = Math.min(maxIndex, toTestAgainst.length());
+        int sharedPrefixEnd = Math.min(maxIndex, toTestAgainst.length());
         // If we want the shared prefix starting past the end, clearly there is no shared
         // prefix starting here
-        if(charIndex >= len) return 0;
-        //Is there a faster way to do this than a O(n*m) algorithm?
-        for(int i = charIndex; i < len; ++i)
-        {
-            final char currentChar = toTestAgainst.charAt(i);
-            final int lastIndex = toIndex - 1; 
-            //First off, check the char of the last string of this block, as if there are mismatches, that is a very likely place to find one of them
-            if(charAt(arr[lastIndex], i) != currentChar)
-                return i - charIndex;
-            //Then, check the rest
-            for(int j = fromIndex + 1; j < lastIndex; ++j)
-            {
-                if(charAt(arr[j], i) != currentChar)
-                    return i - charIndex;
-            }
-        }
-        // If we made it all the way through, the whole string matched
-        return len - charIndex;
+        if(charIndex >= sharedPrefixEnd) return 0;
+        //Going string by string rather than character by character, so each string (and its characters) is only gone to once,
+        //instead of once per shared character; for long shared prefixes, that was a pass over the whole range per character.
+        //First off, check the last string of this block, as if there are mismatches, that is a very likely place to find one of them
+        sharedPrefixEnd = mismatchBefore(toTestAgainst, arr[toIndex - 1], charIndex, sharedPrefixEnd);
+        //Then, check the rest
+        for(int j = fromIndex + 1; j < toIndex - 1 && sharedPrefixEnd > charIndex; ++j)
+            sharedPrefixEnd = mismatchBefore(toTestAgainst, arr[j], charIndex, sharedPrefixEnd);
+        return sharedPrefixEnd - charIndex;
+    }
+    
+    //The first index in [from, end) where the two strings differ, or where s2 ends; end if there is no such index
+    //s1 must be at least end characters long
+    private static final int mismatchBefore(final String s1, final String s2, final int from, final int end)
+    {
+        return StringMismatch.mismatch(s1, s2, from, end);
     }
 
-    private final static void sortTwoItems(final String[] arr, 
-        final int index1, final int index2, final int charIndex)
+    //For these, if perm is not null, every move made to arr is made to perm as well
+    //For these, maxIndex is as for compareRemaining
+    private final static void sortTwoItems(final String[] arr, final int[] perm,
+        final int index1, final int index2, final int charIndex, final int maxIndex)
     {
         assert index1 < index2;
-        if(compareSubtrStartingAt(arr[index1], arr[index2], charIndex) > 0) {
+        if(compareRemaining(arr[index1], arr[index2], charIndex, maxIndex) > 0) {
             String temp = arr[index1];
             arr[index1] = arr[index2];
             arr[index2] = temp;
+            if(perm != null) swap(perm, index1, index2);
         }
     }
     
     //Adapted from The Art of Computer Programming
     //It's hard to see, but this sort is stable
-    private final static void sortThreeItems(final String[] arr, 
-        final int index1, final int index2, final int index3, final int charIndex)
+    private final static void sortThreeItems(final String[] arr, final int[] perm,
+        final int index1, final int index2, final int index3, final int charIndex, final int maxIndex)
     {
         assert index1 < index2;
         assert index2 < index3;
-        if(compareSubtrStartingAt(arr[index2], arr[index1], charIndex) < 0)
+        if(compareRemaining(arr[index2], arr[index1], charIndex, maxIndex) < 0)
         {
             String temp = arr[index1];
-            if(compareSubtrStartingAt(arr[index3], arr[index2], charIndex) < 0)
+            if(compareRemaining(arr[index3], arr[index2], charIndex, maxIndex) < 0)
             {
                 arr[index1] = arr[index3];
                 arr[index3] = temp;
+                if(perm != null) swap(perm, index1, index3);
             }
             else
             {
-                //compareSubtrStartingAt(arr[index3], arr[index1], charIndex) < 0
-                if(compareSubtrStartingAt(arr[index3], temp, charIndex) < 0)
+                //compareRemaining(arr[index3], arr[index1], charIndex, maxIndex) < 0
+                if(compareRemaining(arr[index3], temp, charIndex, maxIndex) < 0)
                 {
                     arr[index1] = arr[index2];
                     arr[index2] = arr[index3];
                     arr[index3] = temp;
+                    if(perm != null)
+                    {
+                        final int tempPerm = perm[index1];
+                        perm[index1] = perm[index2];
+                        perm[index2] = perm[index3];
+                        perm[index3] = tempPerm;
+                    }
                 }
                 else
                 {
                     arr[index1] = arr[index2];
                     arr[index2] = temp;
+                    if(perm != null) swap(perm, index1, index2);
                 }
             }
         }
         else
         {
-            if(compareSubtrStartingAt(arr[index3], arr[index2], charIndex) < 0)
+            if(compareRemaining(arr[index3], arr[index2], charIndex, maxIndex) < 0)
             {
                 String temp = arr[index3];
                 arr[index3] = arr[index2];
-                //compareSubtrStartingAt(original arr[index3], arr[index1], charIndex) < 0
-                if(compareSubtrStartingAt(temp, arr[index1], charIndex) < 0)
+                //compareRemaining(original arr[index3], arr[index1], charIndex, maxIndex) < 0
+                if(compareRemaining(temp, arr[index1], charIndex, maxIndex) < 0)
                 {
                     arr[index2] = arr[index1];
                     arr[index1] = temp;
+                    if(perm != null)
+                    {
+                        final int tempPerm = perm[index3];
+                        perm[index3] = perm[index2];
+                        perm[index2] = perm[index1];
+                        perm[index1] = tempPerm;
+                    }
                 }
                 else
                 {
                     arr[index2] = temp;
+                    if(perm != null) swap(perm, index2, index3);
                 }
             }
         }
@@ -803,27 +1836,153 @@ public final class MSDStringSorter
     
     //TODO add a sortFourItems method
     
+    private static final void swap(final int[] arr, final int index1, final int index2)
+    {
+        final int temp = arr[index1];
+        arr[index1] = arr[index2];
+        arr[index2] = temp;
+    }
+    
 
-    private static final void
-        insertionSort(final String[] arr, final int fromIndex, final int toIndex, final int charIndex, final int maxIndex)
+    private final void
+        insertionSort(final String[] arr, final int[] perm, final int fromIndex, final int toIndex, final int charIndex, final int maxIndex)
     {
         final java.util.Comparator<String> comp = getRemainingCharSortComparator(arr, fromIndex, toIndex, charIndex, maxIndex);
-        // The java.util.Arrays.sort has just a much, MUCH nicer insertion sort it uses
-        // under the covers
-        Arrays.sort(arr, fromIndex, toIndex, comp);
-        // XXX Do a binary search when moving entries back into the correct place, but
-        // take care to preserve stability
+        binaryInsertionSort(arr, perm, fromIndex, toIndex, comp);
         /*
          * for(int i = fromIndex; i < toIndex; ++i) for(int j = i; j > fromIndex && compareSubtrStartingAt(arr[j],
          * arr[j-1], charIndex) < 0; --j) exchange(arr, j, j-1);
          */
     }
     
+    //The same binary insertion sort java.util.Arrays.sort uses under the covers for small ranges,
+    //but Arrays.sort allocates a merge buffer for ranges of 32 or more, even though all of our fallback ranges are small enough for this to be just as fast.
+    //Stable, as each element is moved back to just after the last element that is not greater than it.
+    //If perm is not null, every move made to arr is made to perm as well
+    static final void binaryInsertionSort(final String[] arr, final int[] perm, final int fromIndex, final int toIndex,
+        final java.util.Comparator<String> comp)
+    {
+        for(int i = fromIndex + 1; i < toIndex; ++i)
+        {
+            final String pivot = arr[i];
+            //Already in place, common for partially sorted input
+            if(comp.compare(arr[i - 1], pivot) <= 0) continue;
+            //We already know arr[i - 1] > pivot, so no need to search it
+            int left = fromIndex;
+            int right = i - 1;
+            while(left < right)
+            {
+                final int mid = (left + right) >>> 1;
+                if(comp.compare(pivot, arr[mid]) < 0)
+                    right = mid;
+                else
+                    left = mid + 1;
+            }
+            System.arraycopy(arr, left, arr, left + 1, i - left);
+            arr[left] = pivot;
+            if(perm != null)
+            {
+                final int pivotPerm = perm[i];
+                System.arraycopy(perm, left, perm, left + 1, i - left);
+                perm[left] = pivotPerm;
+            }
+        }
+    }
+    
+    //Insertion sort that keeps lcp[i - lcpOffset] as the length of the prefix arr[i - 1] and arr[i] share as it goes (for i past fromIndex),
+    //and uses that to never compare characters already known to be shared.
+    //Each string is inserted by walking forward from the start of the range, tracking how much it shares with the string it has gotten to.
+    //If the next string shares more than that with the current one, then it is smaller than the string being inserted as well,
+    //and if it shares less, it is larger; only when they share exactly as much do characters need to be compared, and then only past that.
+    //Every string in the range must share their first charIndex characters. Stable.
+    private static final void lcpInsertionSort(final String[] arr, final int[] lcp, final int lcpOffset, final int fromIndex, final int toIndex, final int charIndex)
+    {
+        for(int i = fromIndex + 1; i < toIndex; ++i)
+        {
+            final String toInsert = arr[i];
+            int j = fromIndex;
+            //How much toInsert shares with arr[j]
+            int shared = mismatch(toInsert, arr[j], charIndex);
+            int pos;
+            int sharedWithNext;
+            if(compareAtMismatch(toInsert, arr[j], shared) < 0)
+            {
+                pos = fromIndex;
+                sharedWithNext = shared;
+            }
+            else
+            {
+                while(true)
+                {
+                    if(j + 1 == i)
+                    {
+                        pos = i;
+                        sharedWithNext = -1;
+                        break;
+                    }
+                    final int nextShared = lcp[j + 1 - lcpOffset];
+                    if(nextShared > shared)
+                    {
+                        ++j;
+                        continue;
+                    }
+                    if(nextShared < shared)
+                    {
+                        pos = j + 1;
+                        sharedWithNext = nextShared;
+                        break;
+                    }
+                    final int newShared = mismatch(toInsert, arr[j + 1], shared);
+                    if(compareAtMismatch(toInsert, arr[j + 1], newShared) < 0)
+                    {
+                        pos = j + 1;
+                        sharedWithNext = newShared;
+                        break;
+                    }
+                    ++j;
+                    shared = newShared;
+                }
+            }
+            if(pos == i)
+            {
+                lcp[i - lcpOffset] = shared;
+                continue;
+            }
+            System.arraycopy(arr, pos, arr, pos + 1, i - pos);
+            arr[pos] = toInsert;
+            System.arraycopy(lcp, pos + 1 - lcpOffset, lcp, pos + 2 - lcpOffset, i - pos - 1);
+            if(pos != fromIndex) lcp[pos - lcpOffset] = shared;
+            lcp[pos + 1 - lcpOffset] = sharedWithNext;
+        }
+    }
+    
+    //The first index, starting at from, where the two strings differ (or one of them ends)
+    private static final int mismatch(final String s1, final String s2, final int from)
+    {
+        return StringMismatch.mismatch(s1, s2, from, Integer.MAX_VALUE);
+    }
+    
+    //Compares two strings, given the first index where they differ (or one of them ends)
+    private static final int compareAtMismatch(final String s1, final String s2, final int mismatch)
+    {
+        if(mismatch < s1.length() && mismatch < s2.length())
+            return s1.charAt(mismatch) - s2.charAt(mismatch);
+        return s1.length() - s2.length();
+    }
+    
     // Default size should hold the standard ANSI charset
     private static final int DEFAULT_CHAR_STORAGE_PRE_ALLOC = 0x7F + 1;
     
     private static final int CHAR_STORAGE_PRE_ALLOC_ANSI = 0xFF + 1;
     
+    //Past the ANSI range, a bucket sort pass whose characters span more than this many times the number of strings in the range
+    //counts them sparsely (see sparseBucketSort), rather than growing and walking count tables as large as that span.
+    //CJK text spans tens of thousands of characters, which would otherwise be walked (and cleared) for every bucket of it sorted, no matter how small.
+    //For this value, SMALLER numbers mean MORE hesitant to trigger the optimization
+    private static final int MAX_DENSE_SPAN_PER_STRING = 4;
+    //Where the counts of the high bytes start in sparseByteCounts, after the counts of the low bytes
+    private static final int SPARSE_HIGH_BYTE_COUNTS = 0xFF + 2;
+    
     //Big enough to hold most of the fancy "script" characters used in Chinese, Japanese, etc.
     private static final int MAX_CHAR_STORAGE_PRE_ALLOC = 0x2FA1F + 1; 
     
@@ -833,133 +1992,766 @@ public final class MSDStringSorter
         //Never shrink below DEFAULT_CHAR_STORAGE_PRE_ALLOC
         if(old >= DEFAULT_CHAR_STORAGE_PRE_ALLOC)
         {
-            if(old == toReturn)
+            if(old == toReturn)
+            {
+                return old;
+            }
+            if(toReturn < DEFAULT_CHAR_STORAGE_PRE_ALLOC)
+            {
+                toReturn = DEFAULT_CHAR_STORAGE_PRE_ALLOC;
+                //If old was already DEFAULT_CHAR_STORAGE_PRE_ALLOC, then don't bother with a recomputation
+                if(old == toReturn)
+                {
+                    return old;
+                }
+            }
+            else if(old < toReturn)
+            {
+                //If our old size over sized, then shrink down a bit
+                //Equivalent to 1 - 1/4 + 1/16 = 3/4 + 1/16 = 12/16 + 1/16 = 13/16 = 81.25%
+                int newOld = old - (old >> 2) + (old >> 4);
+                toReturn = toReturn > newOld ? toReturn : newOld;
+            }
+        }
+        if(toReturn <= DEFAULT_CHAR_STORAGE_PRE_ALLOC)
+            return DEFAULT_CHAR_STORAGE_PRE_ALLOC;
+        if(toReturn <= CHAR_STORAGE_PRE_ALLOC_ANSI)
+            return CHAR_STORAGE_PRE_ALLOC_ANSI;
+        return toReturn > MAX_CHAR_STORAGE_PRE_ALLOC ? MAX_CHAR_STORAGE_PRE_ALLOC : toReturn;
+    }
+
+    //This is where the "magic" happens
+    //O(2n + 2c), but only the first n actually goes to the strings themselves;
+    //the second n only reads the character cached for each string by the first.
+    //(c in this case is the number of distinct characters at the index in the given range;
+    // in the absolute worst case of c == n (no repeated characters), this would bring this up to O(2n + 2n) == O(4n))
+    private int[] bucketSort(final int fromIndex, final int toIndex,
+        final int charIndex, final boolean trackMaxLen)
+    {
+        final int len = toIndex - fromIndex;
+        if(parallelism > 1 && len >= MIN_PARALLEL_BUCKET_PASS)
+            return parallelBucketSort(fromIndex, toIndex, charIndex, trackMaxLen);
+        if(inPlace)
+            return americanFlagBucketSort(fromIndex, toIndex, charIndex, trackMaxLen);
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance 
+        final String[] arr = this.arr;
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        final String[] wc = this.wc;
+        final int oldMaxValueSeen = maxCharValueSeen;
+        // These will grow as needed, and are kept for the next pass (and sort) once they have
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        int[] charCountBuffer = this.charCountBuffer;
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        int[] charMaxLenBuffer = this.charMaxLenBuffer;
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        int[] charNextCharBuffer = this.charNextCharBuffer;
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        char[] keyCache = this.keyCache;
+        if(keyCache.length < len)
+            this.keyCache = keyCache = new char[len];
+
+        int minCharSeen = Integer.MAX_VALUE;
+        int maxCharSeen = Integer.MIN_VALUE;
+        int maxSeenSize = 0;
+        final int nextCharIndex = charIndex + 1;
+
+        // Count how often each character appears.
+        // While we have each string at hand, also remember its character so the scatter doesn't have to come back for it,
+        // and gather what we can about each bucket for the next level down
+        for(int i = fromIndex, k = 0; i < toIndex; ++i, ++k)
+        {
+            final String s = arr[i];
+            final int sLen = s.length();
+            //Inlined from charAt(String, int), as we need the length anyways
+            final char c = charIndex < sLen ? s.charAt(charIndex) : '\0';
+            final char next = nextCharIndex < sLen ? s.charAt(nextCharIndex) : '\0';
+            keyCache[k] = c;
+            minCharSeen = c < minCharSeen ? c :  minCharSeen;
+            if(c > maxCharSeen)
+            {
+                maxCharSeen = c;
+                if(charCountBuffer.length <= c)
+                {
+                    if(c >= CHAR_STORAGE_PRE_ALLOC_ANSI && c >= len * MAX_DENSE_SPAN_PER_STRING)
+                    {
+                        //Far too wide for this few strings, so rather than grow the count tables, count them sparsely instead.
+                        //Leave the count buffer zeroed, undoing only the counts made so far
+                        for(int j = 0; j < k; ++j)
+                            charCountBuffer[keyCache[j]] = 0;
+                        this.charCountBuffer = charCountBuffer;
+                        this.charMaxLenBuffer = charMaxLenBuffer;
+                        this.charNextCharBuffer = charNextCharBuffer;
+                        return sparseBucketSort(fromIndex, toIndex, charIndex, trackMaxLen, k, maxSeenSize);
+                    }
+                    final int newSize = c + (charCountBuffer.length >> 3) + 1;
+                    if(stats != null) ++stats.countTableGrowths;
+                    charCountBuffer = Arrays.copyOf(charCountBuffer, newSize);
+                    charMaxLenBuffer = Arrays.copyOf(charMaxLenBuffer, newSize);
+                    charNextCharBuffer = Arrays.copyOf(charNextCharBuffer, newSize);
+                }
+            }
+            if(charCountBuffer[c]++ == 0)
+            {
+                charMaxLenBuffer[c] = sLen;
+                charNextCharBuffer[c] = next;
+            }
+            else
+            {
+                if(sLen > charMaxLenBuffer[c]) charMaxLenBuffer[c] = sLen;
+                if(charNextCharBuffer[c] != next) charNextCharBuffer[c] = MIXED_NEXT_CHARS;
+            }
+            if(sLen > maxSeenSize) maxSeenSize = sLen;
+        }
+        maxIndexTempTrack = trackMaxLen ? maxSeenSize : -1;
+        this.charCountBuffer = charCountBuffer;
+        this.charMaxLenBuffer = charMaxLenBuffer;
+        this.charNextCharBuffer = charNextCharBuffer;
+        
+        maxCharValueSeen = getNewUpdateSize(oldMaxValueSeen, maxCharSeen);
+        
+        if(minCharSeen == maxCharSeen)
+        {
+            charCountBuffer[minCharSeen] = 0;
+            // Only one char seen, that is a sign to just skip this sub-block, and move on
+            return INDEX_SORTED_NO_BUCKETS;
+        }
+
+        // Compute index where each "section" will start
+        final int numBuckets = (maxCharSeen - minCharSeen) + 1;
+        if(numBuckets > CHAR_STORAGE_PRE_ALLOC_ANSI && numBuckets > len * MAX_DENSE_SPAN_PER_STRING)
+        {
+            //The count tables were already large enough (from some earlier pass), but walking that many buckets for this few strings isn't worth it
+            for(int k = 0; k < len; ++k)
+                charCountBuffer[keyCache[k]] = 0;
+            return sparseBucketSort(fromIndex, toIndex, charIndex, trackMaxLen, len, maxSeenSize);
+        }
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        int[] indexes = this.indexes;
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        int[] indexesOrig = this.indexesOrig;
+        if(indexes.length < numBuckets)
+        {
+            this.indexes = indexes = new int[numBuckets];
+            this.indexesOrig = indexesOrig = new int[numBuckets];
+        }
+
+        {
+            int currentIndex = 0;
+            for(int i = minCharSeen; i <= maxCharSeen; ++i)
+            {
+                indexesOrig[i - minCharSeen] = currentIndex;
+                currentIndex += charCountBuffer[i];
+            }
+        }
+        //Leave the count buffer zeroed for the next pass; only the part we used can be non-zero
+        Arrays.fill(charCountBuffer, minCharSeen, maxCharSeen + 1, 0);
+        System.arraycopy(indexesOrig, 0, indexes, 0, numBuckets);
+        bucketCount = numBuckets;
+        bucketMinChar = minCharSeen;
+        haveBucketHints = true;
+
+        // XXX This can possibly be done faster with some sort of detection for when a large block of substrings
+        // are already in the correct place given the current letter, and skipping those
+        
+        // Now, copy over to the "working copy" array the strings into the right places
+        final int wcStart = fromIndex - wcOffset;
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        final int[] perm = this.perm;
+        if(perm == null)
+        {
+            for(int i = fromIndex, k = 0; i < toIndex; ++i, ++k)
+            {
+                // Copy to where the section is currently at, while incrementing that
+                // section's index
+                wc[(indexes[keyCache[k] - minCharSeen]++) + wcStart] = arr[i];
+            }
+        }
+        else
+        {
+            @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+            final int[] wcPerm = this.wcPerm;
+            for(int i = fromIndex, k = 0; i < toIndex; ++i, ++k)
+            {
+                final int dest = (indexes[keyCache[k] - minCharSeen]++) + wcStart;
+                wc[dest] = arr[i];
+                wcPerm[dest] = perm[i];
+            }
+            System.arraycopy(wcPerm, wcStart, perm, fromIndex, len);
+        }
+
+        // See MSDStringSorterWithCopyAvoidance for a version that swaps the working copy and the real array each iteration instead.
+        // The number of iterations is not fixed, or even consistent among all subsets of the array to be sorted,
+        // so that version has to track which array has the final data for each segment
+        
+        // Copy back over into the real array
+        System.arraycopy(wc, wcStart, arr, fromIndex, len);
+        if(stats != null)
+        {
+            stats.stringsScattered += len;
+            stats.stringsCopied += len;
+        }
+        return indexesOrig;
+    }
+
+    //Same as bucketSort, but for the in place sorts; the strings are moved straight to their buckets within the range (as an American flag sort does),
+    //instead of being scattered to wc and copied back, and without keeping each string's character in keyCache.
+    //So the only scratch space needed is the per character scratch, which is only as large as the alphabet, not the range.
+    //The price is going back to each string for its character again while moving them, and the buckets no longer keeping their strings' order.
+    private int[] americanFlagBucketSort(final int fromIndex, final int toIndex, final int charIndex, final boolean trackMaxLen)
+    {
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance 
+        final String[] arr = this.arr;
+        final int len = toIndex - fromIndex;
+        final int oldMaxValueSeen = maxCharValueSeen;
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        int[] charCountBuffer = this.charCountBuffer;
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        int[] charMaxLenBuffer = this.charMaxLenBuffer;
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        int[] charNextCharBuffer = this.charNextCharBuffer;
+
+        int minCharSeen = Integer.MAX_VALUE;
+        int maxCharSeen = Integer.MIN_VALUE;
+        int maxSeenSize = 0;
+        final int nextCharIndex = charIndex + 1;
+
+        // Count how often each character appears, gathering what we can about each bucket for the next level down, as bucketSort does
+        for(int i = fromIndex; i < toIndex; ++i)
+        {
+            final String s = arr[i];
+            final int sLen = s.length();
+            //Inlined from charAt(String, int), as we need the length anyways
+            final char c = charIndex < sLen ? s.charAt(charIndex) : '\0';
+            final char next = nextCharIndex < sLen ? s.charAt(nextCharIndex) : '\0';
+            minCharSeen = c < minCharSeen ? c :  minCharSeen;
+            if(c > maxCharSeen)
+            {
+                maxCharSeen = c;
+                if(charCountBuffer.length <= c)
+                {
+                    if(c >= CHAR_STORAGE_PRE_ALLOC_ANSI && c >= len * MAX_DENSE_SPAN_PER_STRING)
+                    {
+                        //Far too wide for this few strings, as for bucketSort, but the counts made so far have to be undone by going back to the strings
+                        for(int j = fromIndex; j < i; ++j)
+                            charCountBuffer[charAt(arr[j], charIndex)] = 0;
+                        this.charCountBuffer = charCountBuffer;
+                        this.charMaxLenBuffer = charMaxLenBuffer;
+                        this.charNextCharBuffer = charNextCharBuffer;
+                        return sortWideRangeInPlace(fromIndex, toIndex, charIndex);
+                    }
+                    final int newSize = c + (charCountBuffer.length >> 3) + 1;
+                    if(stats != null) ++stats.countTableGrowths;
+                    charCountBuffer = Arrays.copyOf(charCountBuffer, newSize);
+                    charMaxLenBuffer = Arrays.copyOf(charMaxLenBuffer, newSize);
+                    charNextCharBuffer = Arrays.copyOf(charNextCharBuffer, newSize);
+                }
+            }
+            if(charCountBuffer[c]++ == 0)
+            {
+                charMaxLenBuffer[c] = sLen;
+                charNextCharBuffer[c] = next;
+            }
+            else
+            {
+                if(sLen > charMaxLenBuffer[c]) charMaxLenBuffer[c] = sLen;
+                if(charNextCharBuffer[c] != next) charNextCharBuffer[c] = MIXED_NEXT_CHARS;
+            }
+            if(sLen > maxSeenSize) maxSeenSize = sLen;
+        }
+        maxIndexTempTrack = trackMaxLen ? maxSeenSize : -1;
+        this.charCountBuffer = charCountBuffer;
+        this.charMaxLenBuffer = charMaxLenBuffer;
+        this.charNextCharBuffer = charNextCharBuffer;
+        
+        maxCharValueSeen = getNewUpdateSize(oldMaxValueSeen, maxCharSeen);
+        
+        if(minCharSeen == maxCharSeen)
+        {
+            charCountBuffer[minCharSeen] = 0;
+            // Only one char seen, that is a sign to just skip this sub-block, and move on
+            return INDEX_SORTED_NO_BUCKETS;
+        }
+
+        // Compute index where each "section" will start
+        final int numBuckets = (maxCharSeen - minCharSeen) + 1;
+        if(numBuckets > CHAR_STORAGE_PRE_ALLOC_ANSI && numBuckets > len * MAX_DENSE_SPAN_PER_STRING)
+        {
+            Arrays.fill(charCountBuffer, minCharSeen, maxCharSeen + 1, 0);
+            return sortWideRangeInPlace(fromIndex, toIndex, charIndex);
+        }
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        int[] indexes = this.indexes;
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        int[] indexesOrig = this.indexesOrig;
+        if(indexes.length < numBuckets)
+        {
+            this.indexes = indexes = new int[numBuckets];
+            this.indexesOrig = indexesOrig = new int[numBuckets];
+        }
+
+        {
+            int currentIndex = fromIndex;
+            for(int i = minCharSeen; i <= maxCharSeen; ++i)
+            {
+                //Where the next string of each bucket goes, relative to arr this time
+                indexes[i - minCharSeen] = currentIndex;
+                indexesOrig[i - minCharSeen] = currentIndex - fromIndex;
+                currentIndex += charCountBuffer[i];
+            }
+        }
+        //Leave the count buffer zeroed for the next pass; only the part we used can be non-zero
+        Arrays.fill(charCountBuffer, minCharSeen, maxCharSeen + 1, 0);
+        bucketCount = numBuckets;
+        bucketMinChar = minCharSeen;
+        haveBucketHints = true;
+
+        // Now, go through each bucket, and move every string in it that doesn't belong there to where it does,
+        // taking the string there to where it belongs in turn, until a string that belongs in the bucket being gone through turns up.
+        // Strings already in the right bucket are skipped over, rather than swapped with themselves
+        assert perm == null : "The in place sorts don't move a permutation along with the strings";
+        for(int b = 0; b < numBuckets; ++b)
+        {
+            final int bucketEnd = b + 1 < numBuckets ? indexesOrig[b + 1] + fromIndex : toIndex;
+            for(int pos = indexes[b]; pos < bucketEnd; ++pos)
+            {
+                String s = arr[pos];
+                int dest = charAt(s, charIndex) - minCharSeen;
+                if(dest == b) continue;
+                do
+                {
+                    final int to = indexes[dest]++;
+                    final String displaced = arr[to];
+                    final int displacedDest = charAt(displaced, charIndex) - minCharSeen;
+                    if(displacedDest == dest) continue;
+                    arr[to] = s;
+                    s = displaced;
+                    dest = displacedDest;
+                }
+                while(dest != b);
+                arr[pos] = s;
+            }
+            //Anything before the next string position of the later buckets is already where it belongs, so this one is done
+            indexes[b] = bucketEnd;
+        }
+        if(stats != null) stats.stringsScattered += len;
+        return indexesOrig;
+    }
+
+    //For the in place sorts, in place of sparseBucketSort, which needs scratch space as large as the range.
+    //Ranges this wide for how few strings they have are at most a fraction of the alphabet long, so a comparison sort's scratch space
+    //is still no larger than the alphabet. Sorting on the rest of each string is always allowed, as the in place sorts aren't stable.
+    private int[] sortWideRangeInPlace(final int fromIndex, final int toIndex, final int charIndex)
+    {
+        if(stats != null) ++stats.comparatorSorts;
+        Arrays.sort(arr, fromIndex, toIndex, suffixComparator.at(charIndex));
+        return FULLY_SORTED;
+    }
+
+    //Bucket sorts the range on the characters at charIndex and the one or two after it all at once, for ranges whose characters there
+    //come from a small alphabet (identifiers, URLs, and the like). The characters seen are ranked densely, with the end of the string as 0,
+    //and the ranks of each string's characters make up the number of its bucket, so there are (alphabet size + 1)^(characters per pass) buckets
+    //instead of the (largest character seen)^(characters per pass) there would be without the ranks.
+    //Sorting on 2 or 3 characters per pass means a half or a third of the passes over the strings, the pushes, and the count table clears.
+    //If the alphabet is too large for even 2 characters per pass, this still sorts on the one character, as the characters have already been read.
+    //Only Latin-1 characters are ranked. Returns false, leaving the range as it was, as soon as it sees any other character,
+    //in which case the range should be bucket sorted the usual way.
+    //Otherwise, every bucket still needing to be sorted has been either sorted or pushed.
+    private boolean compactedBucketSort(final int fromIndex, final int toIndex, final int charIndex, final int maxIndex)
+    {
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        final String[] arr = this.arr;
+        final int len = toIndex - fromIndex;
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        int[] compactedKeyCache = this.compactedKeyCache;
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        int[] compactedLenCache = this.compactedLenCache;
+        if(compactedKeyCache.length < len)
+        {
+            this.compactedKeyCache = compactedKeyCache = new int[len];
+            this.compactedLenCache = compactedLenCache = new int[len];
+        }
+        final int charsRead = Math.min(3, maxIndex - charIndex);
+        //Marks which characters were seen, to be turned into their ranks afterwards
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        final int[] compactedRanks = this.compactedRanks;
+        for(int i = fromIndex, k = 0; i < toIndex; ++i, ++k)
+        {
+            final String s = arr[i];
+            final int sLen = s.length();
+            final int end = Math.min(sLen, charIndex + charsRead);
+            int key = 0;
+            for(int j = charIndex; j < end; ++j)
+            {
+                final char c = s.charAt(j);
+                if(c > 0xFF)
+                {
+                    Arrays.fill(compactedRanks, 0);
+                    tryCompactedPasses = false;
+                    return false;
+                }
+                compactedRanks[c] = 1;
+                key = (key << Byte.SIZE) | c;
+            }
+            //Pad out strings ending before then with the end of the string, so every key is charsRead characters long
+            compactedKeyCache[k] = key << (Byte.SIZE * (charIndex + charsRead - Math.max(end, charIndex)));
+            compactedLenCache[k] = sLen;
+        }
+        //The end of the string (and '\0', which is taken to be the same, as everywhere else in this class) is always 0
+        compactedRanks[0] = 0;
+        int radix = 1;
+        for(int c = 1; c <= 0xFF; ++c)
+        {
+            if(compactedRanks[c] != 0)
+                compactedRanks[c] = radix++;
+        }
+        final int charsPerPass;
+        if(charsRead == 3 && radix * radix * radix <= MAX_COMPACTED_BUCKETS)
+            charsPerPass = 3;
+        else if(radix * radix <= MAX_COMPACTED_BUCKETS)
+            charsPerPass = 2;
+        else
+        {
+            charsPerPass = 1;
+            //The next ranges down are likely to have as wide an alphabet, so leave them to the usual way, which doesn't need the extra caches
+            tryCompactedPasses = false;
+        }
+        final int numBuckets = charsPerPass == 3 ? radix * radix * radix : (charsPerPass == 2 ? radix * radix : radix);
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        int[] compactedCounts = this.compactedCounts;
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        int[] compactedMaxLens = this.compactedMaxLens;
+        if(compactedCounts.length < numBuckets + 1)
+        {
+            //Large enough for any pass, so this only happens once
+            this.compactedCounts = compactedCounts = new int[MAX_COMPACTED_BUCKETS + 1];
+            this.compactedMaxLens = compactedMaxLens = new int[MAX_COMPACTED_BUCKETS];
+        }
+
+        //Turn each key into its bucket, and count them, along with the longest string in each bucket, as bucketSort does
+        final int unusedShift = Byte.SIZE * (charsRead - charsPerPass);
+        for(int k = 0; k < len; ++k)
+        {
+            final int key = compactedKeyCache[k] >>> unusedShift;
+            final int bucket;
+            switch(charsPerPass)
+            {
+                case 3: bucket = (compactedRanks[key >>> 16] * radix + compactedRanks[(key >>> 8) & 0xFF]) * radix + compactedRanks[key & 0xFF]; break;
+                case 2: bucket = compactedRanks[key >>> 8] * radix + compactedRanks[key & 0xFF]; break;
+                default: bucket = compactedRanks[key]; break;
+            }
+            compactedKeyCache[k] = bucket;
+            final int sLen = compactedLenCache[k];
+            if(compactedCounts[bucket + 1]++ == 0 || sLen > compactedMaxLens[bucket])
+                compactedMaxLens[bucket] = sLen;
+        }
+        Arrays.fill(compactedRanks, 0);
+        final int nextCharIndex = charIndex + charsPerPass;
+        {
+            //If every string went in the same bucket, there is nothing to scatter, and they likely share a longer prefix (like URLs do),
+            //so skip past all of it, just as the usual way does
+            final int bucket = compactedKeyCache[0];
+            if(compactedCounts[bucket + 1] == len)
+            {
+                compactedCounts[bucket + 1] = 0;
+                final int maxIndexBlock = Math.min(compactedMaxLens[bucket], maxIndex);
+                if(bucket % radix != 0 && nextCharIndex < maxIndexBlock)
+                    push(obtainState(fromIndex, toIndex, nextCharIndex + findSharedPrefixLen(arr, fromIndex, toIndex, nextCharIndex, maxIndexBlock), maxIndexBlock));
+                else if(lcp != null)
+                    setEqualRangeLcp(fromIndex, toIndex, nextCharIndex);
+                return true;
+            }
+        }
+        for(int b = 0; b < numBuckets; ++b)
+            compactedCounts[b + 1] += compactedCounts[b];
+
+        //Now scatter to the working copy, and copy back, as bucketSort does
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        final String[] wc = this.wc;
+        final int wcStart = fromIndex - wcOffset;
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        final int[] perm = this.perm;
+        if(perm == null)
+        {
+            for(int i = fromIndex, k = 0; i < toIndex; ++i, ++k)
+                wc[(compactedCounts[compactedKeyCache[k]]++) + wcStart] = arr[i];
+        }
+        else
+        {
+            @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+            final int[] wcPerm = this.wcPerm;
+            for(int i = fromIndex, k = 0; i < toIndex; ++i, ++k)
             {
-                return old;
+                final int dest = (compactedCounts[compactedKeyCache[k]]++) + wcStart;
+                wc[dest] = arr[i];
+                wcPerm[dest] = perm[i];
             }
-            if(toReturn < DEFAULT_CHAR_STORAGE_PRE_ALLOC)
+            System.arraycopy(wcPerm, wcStart, perm, fromIndex, len);
+        }
+        System.arraycopy(wc, wcStart, arr, fromIndex, len);
+        if(stats != null)
+        {
+            stats.stringsScattered += len;
+            stats.stringsCopied += len;
+        }
+
+        //After the scatter, each count is where the next bucket starts, so walking them gives each bucket's range
+        int bucketStart = fromIndex;
+        int prevBucket = -1;
+        for(int b = 0; b < numBuckets; ++b)
+        {
+            final int bucketEnd = compactedCounts[b] + fromIndex;
+            compactedCounts[b] = 0;
+            final int size = bucketEnd - bucketStart;
+            if(lcp != null && size > 0)
             {
-                toReturn = DEFAULT_CHAR_STORAGE_PRE_ALLOC;
-                //If old was already DEFAULT_CHAR_STORAGE_PRE_ALLOC, then don't bother with a recomputation
-                if(old == toReturn)
-                {
-                    return old;
-                }
+                //The strings on either side of where one bucket ends and the next begins share the characters both buckets' numbers share
+                if(prevBucket >= 0)
+                    lcp[bucketStart - lcpOffset] = charIndex + sharedCompactedChars(prevBucket, b, radix, charsPerPass);
+                prevBucket = b;
             }
-            else if(old < toReturn)
+            //Buckets ending in the end of the string hold strings that are all equal, as do buckets with no strings longer than the characters sorted on
+            if(size > 1 && b % radix != 0 && nextCharIndex < Math.min(compactedMaxLens[b], maxIndex))
             {
-                //If our old size over sized, then shrink down a bit
-                //Equivalent to 1 - 1/4 + 1/16 = 3/4 + 1/16 = 12/16 + 1/16 = 13/16 = 81.25%
-                int newOld = old - (old >> 2) + (old >> 4);
-                toReturn = toReturn > newOld ? toReturn : newOld;
+                final int maxIndexBlock = Math.min(compactedMaxLens[b], maxIndex);
+                if(lcp != null && size <= 3)
+                {
+                    if(stats != null)
+                    {
+                        stats.bucket(size);
+                        ++stats.insertionSorts;
+                    }
+                    lcpInsertionSort(arr, lcp, lcpOffset, bucketStart, bucketEnd, nextCharIndex);
+                }
+                else
+                {
+                    if(stats != null)
+                    {
+                        stats.bucket(size);
+                        if(size == 2) ++stats.twoItemSorts;
+                        else if(size == 3) ++stats.threeItemSorts;
+                    }
+                    if(size == 2)
+                        sortTwoItems(arr, perm, bucketStart, bucketStart + 1, nextCharIndex, comparisonLimit(maxIndexBlock));
+                    else if(size == 3)
+                        sortThreeItems(arr, perm, bucketStart, bucketStart + 1, bucketStart + 2, nextCharIndex, comparisonLimit(maxIndexBlock));
+                    else
+                        push(obtainState(bucketStart, bucketEnd, nextCharIndex, maxIndexBlock));
+                }
             }
+            else if(lcp != null && size > 1)
+                setEqualRangeLcp(bucketStart, bucketEnd, nextCharIndex);
+            bucketStart = bucketEnd;
         }
-        if(toReturn <= DEFAULT_CHAR_STORAGE_PRE_ALLOC)
-            return DEFAULT_CHAR_STORAGE_PRE_ALLOC;
-        if(toReturn <= CHAR_STORAGE_PRE_ALLOC_ANSI)
-            return CHAR_STORAGE_PRE_ALLOC_ANSI;
-        return toReturn > MAX_CHAR_STORAGE_PRE_ALLOC ? MAX_CHAR_STORAGE_PRE_ALLOC : toReturn;
+        compactedCounts[numBuckets] = 0;
+        return true;
     }
 
-    //This is where the "magic" happens
-    //XXX O(3n + 2c), ugly :(
-    //(c in this case is the number of distinct characters at the index in the given range;
-    // in the absolute worst case of c == n (no repeated characters), this would bring this up to O(3n + 2n) == O(5n))
-    private int[] bucketSort(final int fromIndex, final int toIndex,
-        final int charIndex, final boolean trackMaxLen)
+    //How many of their characters (ranks, most significant first) the two buckets of a compacted pass have in common before they differ.
+    //A rank of 0 (the end of the string) is only ever followed by more of them, so the buckets must differ before both get to one.
+    private static final int sharedCompactedChars(int bucket1, int bucket2, final int radix, final int charsPerPass)
     {
-        final int len = toIndex - fromIndex;
-        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance 
+        int shared = charsPerPass;
+        //Dropping the least significant ranks until what is left is the same
+        while(bucket1 != bucket2)
+        {
+            bucket1 /= radix;
+            bucket2 /= radix;
+            --shared;
+        }
+        return shared;
+    }
+
+    //Same as bucketSort, for ranges whose characters span far more than the number of strings in them (CJK text, surrogates, and the like).
+    //Instead of counting each character in a table as large as that span, the strings are ordered by their characters with two counting passes
+    //over the bytes of the characters (least significant first, as for an LSD radix sort), so the scratch space is only as large as the range.
+    //The buckets returned are only the non-empty ones, so there are no hints for them.
+    //keyCache already holds the characters of the first alreadyRead strings of the range, and maxSeenSize the longest of them.
+    private int[] sparseBucketSort(final int fromIndex, final int toIndex, final int charIndex, final boolean trackMaxLen,
+        final int alreadyRead, int maxSeenSize)
+    {
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
         final String[] arr = this.arr;
         @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
-        final String[] wc = this.wc;
-        final int oldMaxValueSeen = maxCharValueSeen;
-        // This will grow as needed
-        int[] charCountBuffer = new int[oldMaxValueSeen];
+        final char[] keyCache = this.keyCache;
+        final int len = toIndex - fromIndex;
+        for(int i = fromIndex + alreadyRead, k = alreadyRead; i < toIndex; ++i, ++k)
+        {
+            final String s = arr[i];
+            final int sLen = s.length();
+            keyCache[k] = charIndex < sLen ? s.charAt(charIndex) : '\0';
+            if(sLen > maxSeenSize) maxSeenSize = sLen;
+        }
+        maxIndexTempTrack = trackMaxLen ? maxSeenSize : -1;
+        haveBucketHints = false;
 
-        int minCharSeen = Integer.MAX_VALUE;
-        int maxCharSeen = Integer.MIN_VALUE;
-        int maxSeenSize = 0;
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        int[] sparseOrder = this.sparseOrder;
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        int[] sparseOrderBuffer = this.sparseOrderBuffer;
+        if(sparseOrder.length < len)
+        {
+            this.sparseOrder = sparseOrder = new int[len];
+            this.sparseOrderBuffer = sparseOrderBuffer = new int[len];
+        }
+        //The counts for the low bytes, and then the high bytes, each offset by one so they turn into where each byte's strings start
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        final int[] byteCounts = this.sparseByteCounts;
+        Arrays.fill(byteCounts, 0);
+        for(int k = 0; k < len; ++k)
+        {
+            final char c = keyCache[k];
+            ++byteCounts[(c & 0xFF) + 1];
+            ++byteCounts[(c >>> Byte.SIZE) + SPARSE_HIGH_BYTE_COUNTS + 1];
+        }
+        for(int b = 0; b < SPARSE_HIGH_BYTE_COUNTS - 1; ++b)
+        {
+            byteCounts[b + 1] += byteCounts[b];
+            byteCounts[b + SPARSE_HIGH_BYTE_COUNTS + 1] += byteCounts[b + SPARSE_HIGH_BYTE_COUNTS];
+        }
+        //Both passes keep the order of the strings with the same byte, so after the high byte pass, they are in order of their whole characters
+        for(int k = 0; k < len; ++k)
+            sparseOrderBuffer[byteCounts[keyCache[k] & 0xFF]++] = k;
+        for(int j = 0; j < len; ++j)
+        {
+            final int k = sparseOrderBuffer[j];
+            sparseOrder[byteCounts[(keyCache[k] >>> Byte.SIZE) + SPARSE_HIGH_BYTE_COUNTS]++] = k;
+        }
 
-        if(trackMaxLen)
+        // Now, copy over to the "working copy" array the strings into the right places, and find where each character's strings start
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        final String[] wc = this.wc;
+        final int wcStart = fromIndex - wcOffset;
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        final int[] perm = this.perm;
+        if(perm == null)
         {
-            // Count how often each character appears
-            for(int i = fromIndex; i < toIndex; ++i)
+            for(int pos = 0; pos < len; ++pos)
+                wc[pos + wcStart] = arr[sparseOrder[pos] + fromIndex];
+        }
+        else
+        {
+            @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+            final int[] wcPerm = this.wcPerm;
+            for(int pos = 0; pos < len; ++pos)
             {
-                final char c = charAt(arr[i], charIndex);
-                minCharSeen = c < minCharSeen ? c :  minCharSeen;
-                if(c > maxCharSeen)
-                {
-                    maxCharSeen = c;
-                    charCountBuffer = (charCountBuffer.length < c) ?
-                        Arrays.copyOf(charCountBuffer, c + (charCountBuffer.length >> 3) + 1) :
-                        charCountBuffer;
-                }
-                ++charCountBuffer[c];
-                if(arr[i].length() > maxSeenSize) maxSeenSize = arr[i].length();
+                wc[pos + wcStart] = arr[sparseOrder[pos] + fromIndex];
+                wcPerm[pos + wcStart] = perm[sparseOrder[pos] + fromIndex];
             }
-            maxIndexTempTrack = maxSeenSize;
+            System.arraycopy(wcPerm, wcStart, perm, fromIndex, len);
         }
-        else
+        System.arraycopy(wc, wcStart, arr, fromIndex, len);
+        if(stats != null)
+        {
+            stats.stringsScattered += len;
+            stats.stringsCopied += len;
+        }
+
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        int[] indexesOrig = this.indexesOrig;
+        if(indexesOrig.length < len)
+        {
+            //Kept the same length as indexes, as bucketSort expects
+            this.indexes = new int[len];
+            this.indexesOrig = indexesOrig = new int[len];
+        }
+        char prevChar = keyCache[sparseOrder[0]];
+        int numBuckets = 1;
+        indexesOrig[0] = 0;
+        for(int pos = 1; pos < len; ++pos)
         {
-            // Count how often each character appears
-            for(int i = fromIndex; i < toIndex; ++i)
+            final char c = keyCache[sparseOrder[pos]];
+            if(c != prevChar)
             {
-                final char c = charAt(arr[i], charIndex);
-                minCharSeen = c < minCharSeen ? c :  minCharSeen;
-                if(c > maxCharSeen)
-                {
-                    maxCharSeen = c;
-                    charCountBuffer = (charCountBuffer.length < c) ?
-                        Arrays.copyOf(charCountBuffer, c + (charCountBuffer.length >> 3) + 1) :
-                        charCountBuffer;
-                }
-                ++charCountBuffer[c];
+                indexesOrig[numBuckets++] = pos;
+                prevChar = c;
             }
-            maxIndexTempTrack = -1;
         }
+        if(numBuckets == 1)
+            return INDEX_SORTED_NO_BUCKETS;
+        bucketCount = numBuckets;
+        bucketMinChar = keyCache[sparseOrder[0]];
+        return indexesOrig;
+    }
+
+    //Same as bucketSort, but with each pass over the range split among the threads of the pool this sorter is running in.
+    //Each chunk counts its own characters, then gets its own starting point inside each bucket,
+    //which lets every chunk scatter into the working copy without coordinating with the others.
+    private int[] parallelBucketSort(final int fromIndex, final int toIndex,
+        final int charIndex, final boolean trackMaxLen)
+    {
+        final ParallelBucketPassChunk[] chunks =
+            ParallelBucketPassChunk.split(arr, wc, wcOffset, fromIndex, toIndex, charIndex, parallelism, maxCharValueSeen);
+        ParallelBucketPassChunk.runPhase(chunks, trackMaxLen ? ParallelBucketPassChunk.COUNT_AND_MAX_LEN : ParallelBucketPassChunk.COUNT);
         
-        maxCharValueSeen = getNewUpdateSize(oldMaxValueSeen, maxCharSeen);
+        int minCharSeen = Integer.MAX_VALUE;
+        int maxCharSeen = Integer.MIN_VALUE;
+        int maxSeenSize = 0;
+        for(ParallelBucketPassChunk chunk : chunks)
+        {
+            minCharSeen = chunk.minCharSeen < minCharSeen ? chunk.minCharSeen : minCharSeen;
+            maxCharSeen = chunk.maxCharSeen > maxCharSeen ? chunk.maxCharSeen : maxCharSeen;
+            maxSeenSize = chunk.maxSeenSize > maxSeenSize ? chunk.maxSeenSize : maxSeenSize;
+        }
+        maxIndexTempTrack = trackMaxLen ? maxSeenSize : -1;
+        maxCharValueSeen = getNewUpdateSize(maxCharValueSeen, maxCharSeen);
         
         if(minCharSeen == maxCharSeen)
         {
             // Only one char seen, that is a sign to just skip this sub-block, and move on
             return INDEX_SORTED_NO_BUCKETS;
         }
-
-        // Compute index where each "section" will start
+        
+        // Compute index where each "section" will start,
+        // and turn each chunk's counts into where that chunk will start writing inside each section
         int[] indexes = new int[(maxCharSeen - minCharSeen) + 1];
-
         {
             int currentIndex = 0;
             for(int i = minCharSeen; i <= maxCharSeen; ++i)
             {
                 indexes[i - minCharSeen] = currentIndex;
-                currentIndex += charCountBuffer[i];
+                for(ParallelBucketPassChunk chunk : chunks)
+                {
+                    final int[] counts = chunk.charCountBuffer;
+                    //A chunk that never saw this character never has to write it
+                    if(i < counts.length)
+                    {
+                        final int count = counts[i];
+                        counts[i] = currentIndex + fromIndex - wcOffset;
+                        currentIndex += count;
+                    }
+                }
             }
         }
-
-        int[] indexesOrig = indexes.clone();
-
-        // XXX This can possibly be done faster with some sort of detection for when a large block of substrings
-        // are already in the correct place given the current letter, and skipping those
         
-        // Now, copy over to the "working copy" array the strings into the right places
-        for(int i = fromIndex; i < toIndex; ++i)
+        ParallelBucketPassChunk.runPhase(chunks, ParallelBucketPassChunk.SCATTER);
+        //Every chunk must be done scattering before any of them can copy back, as any chunk can write to anywhere in the range
+        ParallelBucketPassChunk.runPhase(chunks, ParallelBucketPassChunk.COPY_BACK);
+        bucketCount = indexes.length;
+        bucketMinChar = minCharSeen;
+        haveBucketHints = false;
+        return indexes;
+    }
+    
+    private int parallelFindSharedPrefixLen(final int fromIndex, final int toIndex,
+        final int charIndex, final int maxIndex)
+    {
+        final String toTestAgainst = arr[fromIndex];
+        final int len = Math.min(maxIndex, toTestAgainst.length());
+        if(charIndex >= len) return 0;
+        final ParallelBucketPassChunk[] chunks =
+            ParallelBucketPassChunk.split(arr, wc, wcOffset, fromIndex, toIndex, charIndex, parallelism, 0);
+        for(ParallelBucketPassChunk chunk : chunks)
         {
-            char c = charAt(arr[i], charIndex);
-            // Copy to where the section is currently at, while incrementing that
-            // section's index
-            wc[(indexes[c - minCharSeen]++) + fromIndex] = arr[i];
+            chunk.toTestAgainst = toTestAgainst;
+            chunk.maxSeenSize = len;
         }
-
-        // XXX Find a way to do that thing where you swap the working copy and the real array each iteration
-        // This is tricky though, as the number of iterations is not fixed, or even consistent among all
-        // subsets of the array to be sorted, thus making it tricky to track which array has the final data for each segment
-        
-        // Copy back over into the real array
-        System.arraycopy(wc, fromIndex, arr, fromIndex, len);
-        return indexesOrig;
+        ParallelBucketPassChunk.runPhase(chunks, ParallelBucketPassChunk.SHARED_PREFIX);
+        int sharedPrefixEnd = len;
+        for(ParallelBucketPassChunk chunk : chunks)
+        {
+            sharedPrefixEnd = chunk.maxSeenSize < sharedPrefixEnd ? chunk.maxSeenSize : sharedPrefixEnd;
+        }
+        return sharedPrefixEnd - charIndex;
     }
 
     private static final boolean checkBounds(int length, int fromIndex, int toIndex)
@@ -981,12 +2773,18 @@ public final class MSDStringSorter
      */
     private static final class NaturalCharComparatorAtIndex implements java.util.Comparator<String>
     {
-        final int index;
+        int index;
 
         NaturalCharComparatorAtIndex(int index)
         {
             this.index = index;
         }
+        
+        NaturalCharComparatorAtIndex at(final int index)
+        {
+            this.index = index;
+            return this;
+        }
 
         @Override
         // FIXME #3 bottleneck
@@ -997,14 +2795,20 @@ public final class MSDStringSorter
         }
     }
 
-    private static final class NaturalSuffixComparator implements java.util.Comparator<String>
+    static final class NaturalSuffixComparator implements java.util.Comparator<String>
     {
-        final int index;
+        int index;
 
         NaturalSuffixComparator(final int index)
         {
             this.index = index;
         }
+        
+        NaturalSuffixComparator at(final int index)
+        {
+            this.index = index;
+            return this;
+        }
 
         @Override
         public int compare(final String s1, final String s2)
@@ -1015,14 +2819,21 @@ public final class MSDStringSorter
     
     private static final class NaturalSubstringComparator implements java.util.Comparator<String>
     {
-        final int index;
-        final int maxIndex;
+        int index;
+        int maxIndex;
 
         NaturalSubstringComparator(final int index, final int maxIndex)
         {
             this.index = index;
             this.maxIndex = maxIndex;
         }
+        
+        NaturalSubstringComparator at(final int index, final int maxIndex)
+        {
+            this.index = index;
+            this.maxIndex = maxIndex;
+            return this;
+        }
 
         @Override
         public int compare(final String s1, final String s2)
@@ -1053,6 +2864,8 @@ public final class MSDStringSorter
         int index;
         int maxIndex;
         //If this extra field turns out to be too much overhead, then this should shift to a global sort state type thing
+        //Whether this state is on the stack (or about to be), and thus must not be recycled
+        boolean onStack;
         
         public SortState(){} //Don't really care what the initial values are in this case
 
@@ -1151,6 +2964,307 @@ public final class MSDStringSorter
 
     }
 
+    /**
+     * Holds onto the scratch space the sorts need, so that repeated sorts do not have to allocate it each time.
+     * <p>
+     * The static sorting methods of {@link MSDStringSorter} allocate a working copy of the range to sort, a stack of sort states,
+     * and various counting buffers on every call. For code that sorts many arrays over and over, that adds up to a lot of garbage.
+     * A context keeps all of these around between sorts (growing them as needed to fit the largest sort so far),
+     * so once it has grown to fit, sorting with it allocates nothing.
+     * <p>
+     * The sorts done by a context are exactly the same as the matching static methods of {@link MSDStringSorter}.
+     * <p>
+     * A context is not thread safe. Use one per thread (for example, through a {@link ThreadLocal}).
+     * 
+     * @author C. Sean Young
+     *
+     */
+    public static final class Context
+    {
+        private final MSDStringSorter sorter;
+        
+        /**
+         * Makes a context that sorts with whatever {@link SorterTuning#getDefault()} is at the time it is made.
+         */
+        public Context()
+        {
+            this(SorterTuning.getDefault());
+        }
+        
+        public Context(SorterTuning tuning)
+        {
+            if(tuning == null) throw new NullPointerException("tuning");
+            sorter = new MSDStringSorter(new java.util.ArrayDeque<SortState>(), tuning);
+        }
+        
+        public void sort(String[] arr)
+        {
+            sort(arr, 0, arr.length);
+        }
+        
+        public void sort(String[] arr, int fromIndex, int toIndex)
+        {
+            sortPartially(Integer.MAX_VALUE, arr, fromIndex, toIndex);
+        }
+        
+        public void sortPartially(int minCharsToSort, String[] arr)
+        {
+            sortPartially(minCharsToSort, arr, 0, arr.length);
+        }
+        
+        public void sortPartially(int minCharsToSort, String[] arr, int fromIndex, int toIndex)
+        {
+            sortPartiallyFrom(0, minCharsToSort, arr, fromIndex, toIndex);
+        }
+        
+        //For sorts that already know every string in the range shares their first charIndex characters
+        void sortPartiallyFrom(int charIndex, int minCharsToSort, String[] arr, int fromIndex, int toIndex)
+        {
+            if(checkBounds(arr.length, fromIndex, toIndex)) return;
+            try
+            {
+                sorter.sortRange(minCharsToSort, arr, null, null, fromIndex, toIndex, charIndex);
+            }
+            finally
+            {
+                //Don't keep the sorted strings reachable through the working copy
+                final String[] wc = sorter.wc;
+                if(wc != null)
+                    Arrays.fill(wc, 0, Math.min(wc.length, toIndex - fromIndex), null);
+            }
+        }
+        
+        /**
+         * Lets go of all the scratch space held by this context.
+         * Useful after an unusually large sort, so that the scratch space for it is not held onto forever.
+         */
+        public void trim()
+        {
+            sorter.wc = null;
+            sorter.charCountBuffer = new int[DEFAULT_CHAR_STORAGE_PRE_ALLOC];
+            sorter.indexes = new int[DEFAULT_CHAR_STORAGE_PRE_ALLOC];
+            sorter.indexesOrig = new int[DEFAULT_CHAR_STORAGE_PRE_ALLOC];
+            sorter.charMaxLenBuffer = new int[DEFAULT_CHAR_STORAGE_PRE_ALLOC];
+            sorter.charNextCharBuffer = new int[DEFAULT_CHAR_STORAGE_PRE_ALLOC];
+            sorter.keyCache = EMPTY_KEY_CACHE;
+            sorter.compactedKeyCache = EMPTY_COMPACTED_KEY_CACHE;
+            sorter.compactedLenCache = EMPTY_COMPACTED_KEY_CACHE;
+            sorter.compactedCounts = EMPTY_COMPACTED_KEY_CACHE;
+            sorter.compactedMaxLens = EMPTY_COMPACTED_KEY_CACHE;
+            sorter.sparseOrder = EMPTY_COMPACTED_KEY_CACHE;
+            sorter.sparseOrderBuffer = EMPTY_COMPACTED_KEY_CACHE;
+            sorter.freeStates = new SortState[16];
+            sorter.freeStateCount = 0;
+        }
+    }
+    
+    //One bucket (or the whole input) of a parallel sort.
+    //Sorts its range just like the sequential sort does, except any sub-bucket larger than the sequential cutoff is forked off.
+    private static final class ParallelSortTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+        
+        private final String[] arr;
+        private final String[] wc;
+        private final int wcOffset;
+        private final int start;
+        private final int end;
+        private final int index;
+        private final int maxIndex;
+        private final int sequentialCutoff;
+        //A starting guess for the character range, so a new task doesn't have to rediscover the alphabet its parent already found 
+        private final int maxCharValueSeen;
+        private final SorterTuning tuning;
+        //Links the tasks forked by the same parent, so they can be joined without having to allocate a list
+        private ParallelSortTask nextForked;
+
+        ParallelSortTask(final String[] arr, final String[] wc, final int wcOffset, final int start, final int end, final int index,
+            final int maxIndex, final int sequentialCutoff, final int maxCharValueSeen, final SorterTuning tuning)
+        {
+            this.arr = arr;
+            this.wc = wc;
+            this.wcOffset = wcOffset;
+            this.start = start;
+            this.end = end;
+            this.index = index;
+            this.maxIndex = maxIndex;
+            this.sequentialCutoff = sequentialCutoff;
+            this.maxCharValueSeen = maxCharValueSeen;
+            this.tuning = tuning;
+        }
+
+        @Override
+        protected void compute()
+        {
+            final Deque<SortState> stack = new java.util.ArrayDeque<SortState>();
+            final MSDStringSorter sorter = new MSDStringSorter(stack, tuning, arr, wc, wcOffset);
+            sorter.maxCharValueSeen = maxCharValueSeen;
+            sorter.parallelism = getPool().getParallelism();
+            sorter.push(sorter.obtainState(start, end, index, maxIndex));
+            ParallelSortTask forked = null;
+            SortState current;
+            while((current = stack.pollFirst()) != null)
+            {
+                //Always keep the last part for ourselves; there is no point in forking if we would just sit and wait for it
+                if(current.length() > sequentialCutoff && !stack.isEmpty())
+                {
+                    ParallelSortTask task = new ParallelSortTask(arr, wc, wcOffset, current.start, current.end, current.index,
+                        current.maxIndex, sequentialCutoff, sorter.maxCharValueSeen, tuning);
+                    sorter.releaseState(current);
+                    task.nextForked = forked;
+                    forked = task;
+                    task.fork();
+                }
+                else
+                {
+                    // "Recurse"
+                    sorter.processPartAndRecycle(current);
+                }
+            }
+            //Join in the reverse order of forking, as the most recently forked are the most likely to not have been stolen
+            for(; forked != null; forked = forked.nextForked)
+            {
+                forked.join();
+            }
+        }
+    }
+    
+    //One thread's share of a single pass over a large range in a parallel sort.
+    //The same chunks are reused for each phase of the pass.
+    private static final class ParallelBucketPassChunk extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+        
+        static final int COUNT = 0;
+        static final int COUNT_AND_MAX_LEN = 1;
+        static final int SCATTER = 2;
+        static final int COPY_BACK = 3;
+        static final int SHARED_PREFIX = 4;
+        
+        private final String[] arr;
+        private final String[] wc;
+        private final int wcOffset;
+        private final int start;
+        private final int end;
+        private final int charIndex;
+        private int phase;
+        
+        //After counting, how many of each character this chunk has. Before scattering, where in wc this chunk writes each character to next.
+        int[] charCountBuffer;
+        int minCharSeen = Integer.MAX_VALUE;
+        int maxCharSeen = Integer.MIN_VALUE;
+        //For the shared prefix phase, this is instead the index of the first character that doesn't match toTestAgainst
+        int maxSeenSize;
+        String toTestAgainst;
+        
+        private ParallelBucketPassChunk(final String[] arr, final String[] wc, final int wcOffset, final int start, final int end,
+            final int charIndex, final int initialCharCountSize)
+        {
+            this.arr = arr;
+            this.wc = wc;
+            this.wcOffset = wcOffset;
+            this.start = start;
+            this.end = end;
+            this.charIndex = charIndex;
+            this.charCountBuffer = new int[initialCharCountSize];
+        }
+        
+        static ParallelBucketPassChunk[] split(final String[] arr, final String[] wc, final int wcOffset, final int fromIndex, final int toIndex,
+            final int charIndex, final int parallelism, final int initialCharCountSize)
+        {
+            final int len = toIndex - fromIndex;
+            //A few more chunks than threads, so one slow chunk doesn't leave all the other threads idle
+            int numChunks = Math.min(parallelism * 2, len / MIN_PARALLEL_BUCKET_PASS_CHUNK);
+            numChunks = numChunks < 1 ? 1 : numChunks;
+            final ParallelBucketPassChunk[] chunks = new ParallelBucketPassChunk[numChunks];
+            for(int i = 0; i < numChunks; ++i)
+            {
+                chunks[i] = new ParallelBucketPassChunk(arr, wc, wcOffset,
+                    fromIndex + (int)((long)len * i / numChunks), fromIndex + (int)((long)len * (i + 1) / numChunks),
+                    charIndex, initialCharCountSize);
+            }
+            return chunks;
+        }
+        
+        static void runPhase(final ParallelBucketPassChunk[] chunks, final int phase)
+        {
+            for(ParallelBucketPassChunk chunk : chunks)
+            {
+                chunk.reinitialize();
+                chunk.phase = phase;
+            }
+            invokeAll(chunks);
+        }
+
+        @Override
+        protected void compute()
+        {
+            @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+            final String[] arr = this.arr;
+            switch(phase)
+            {
+                case COUNT: case COUNT_AND_MAX_LEN:
+                {
+                    final boolean trackMaxLen = phase == COUNT_AND_MAX_LEN;
+                    @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+                    int[] charCountBuffer = this.charCountBuffer;
+                    int minCharSeen = Integer.MAX_VALUE;
+                    int maxCharSeen = Integer.MIN_VALUE;
+                    int maxSeenSize = 0;
+                    for(int i = start; i < end; ++i)
+                    {
+                        final char c = charAt(arr[i], charIndex);
+                        minCharSeen = c < minCharSeen ? c :  minCharSeen;
+                        if(c > maxCharSeen)
+                        {
+                            maxCharSeen = c;
+                            charCountBuffer = (charCountBuffer.length <= c) ?
+                                Arrays.copyOf(charCountBuffer, c + (charCountBuffer.length >> 3) + 1) :
+                                charCountBuffer;
+                        }
+                        ++charCountBuffer[c];
+                        if(trackMaxLen && arr[i].length() > maxSeenSize) maxSeenSize = arr[i].length();
+                    }
+                    this.charCountBuffer = charCountBuffer;
+                    this.minCharSeen = minCharSeen;
+                    this.maxCharSeen = maxCharSeen;
+                    this.maxSeenSize = maxSeenSize;
+                    break;
+                }
+                case SCATTER:
+                {
+                    @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+                    final int[] charCountBuffer = this.charCountBuffer;
+                    @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+                    final String[] wc = this.wc;
+                    for(int i = start; i < end; ++i)
+                    {
+                        wc[charCountBuffer[charAt(arr[i], charIndex)]++] = arr[i];
+                    }
+                    break;
+                }
+                case COPY_BACK:
+                {
+                    System.arraycopy(wc, start - wcOffset, arr, start, end - start);
+                    break;
+                }
+                case SHARED_PREFIX:
+                {
+                    @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+                    final String toTestAgainst = this.toTestAgainst;
+                    //Going string by string, like findSharedPrefixLen
+                    int sharedPrefixEnd = maxSeenSize;
+                    for(int i = start; i < end && sharedPrefixEnd > charIndex; ++i)
+                        sharedPrefixEnd = mismatchBefore(toTestAgainst, arr[i], charIndex, sharedPrefixEnd);
+                    maxSeenSize = sharedPrefixEnd;
+                    break;
+                }
+                default:
+                    throw new AssertionError("Unknown phase: " + phase);
+            }
+        }
+    }
+
     //Higher values mean more for higher input sizes
     private static final int NUM_TIMES_WARMUP_RATIO = 4_000_000;
     private static final int NUM_TIMES_RUN_SORT_RATIO = 10_000_000;
@@ -4,73 +4,41 @@ import java.util.BitSet;
 import java.util.Deque;
 import java.util.Arrays;
 
-// TODO DOCUMENTATION!
 // TODO Tuning so it can be on par with Arrays.sort
 // XXX See if something can be done about "midstring" null characters ('\0') without harming performance much
-// TODO Paralell versions of these methods, as this is a trivially parralizable sort
 /**
+ * The same most significant "digit" radix sort as {@link MSDStringSorter}, but without copying the working copy
+ * back into the array being sorted after every bucket sort pass.
+ * <p>
+ * Instead, each bucket sort pass scatters from whichever of the two arrays currently holds a range into the other one,
+ * and which of the two holds each element is tracked as one bit per element.
+ * Once every range is sorted, only the runs of elements that ended up in the working copy are copied back, in one pass.
+ * This roughly halves the number of references moved per element per level compared to {@link MSDStringSorter},
+ * at the cost of that one bit per element of tracking.
+ * <p>
+ * Everything said about when MSD radix sort is a good choice in {@link MSDStringSorter} applies here as well.
+ * The savings here grow with the number of bucket sort passes each element goes through,
+ * so this works best for large inputs with long strings that do not share long prefixes.
  * 
  * @author C. Sean Young
  * 
  */
 public final class MSDStringSorterWithCopyAvoidance
 {
-    // XXX Empirically determine a good estimate for these constants, based on common
-    // usage cases
-    //XXX This should be 16 or so on Java 7, but 7 on Java 6
-    //NOTE Keep in mind that when this triggers, *up to* all of the remaining characters will be looked at for each comparison
-    //Thus, setting this too high negates the advantages of MSD sort.
-    //This number was chosen based on some extremely rough "back of the envelope" theoritcal calculations and verfied loosly
-    //to be decent with very non-rigourous tests.
-    //The advantage is that once a chunk gets sorted by this, that chunk will never have to be looked at again.
-    private static final int MAX_INSERTION_SORT = 16;
-    //Set to MAX_INSERTION_SORT to effectively disable this optimization
-    //NOTE Keep in mind, if the Arrays.sort only on the current index is used
-    //then we have to loop through that segment AGAIN to find the next layer of "chunks".
-    //Thus, this needs to be kept somewhat low.
-    //But not too low, as MSD sorting does involve a lot of overhead
-    private static final int MAX_ARRAYS_INDEX_SORT = 51;
-    private static final int MAX_ARRAYS_FULL_SORT = 59;
-    
-    @SuppressWarnings("unused") //One of these cases will always be marked as "dead"
-    private static final int ARRAYS_SORT_CHECK = (MAX_ARRAYS_FULL_SORT > MAX_ARRAYS_INDEX_SORT) ? MAX_ARRAYS_FULL_SORT : MAX_ARRAYS_INDEX_SORT;
-    
-    //This causes a few extra loops to be run, and makes other loops gain extra operations, thus keep it somewhat low
-    //However, the savings from a correctly computed max length can be rather large, so thus you don't need to be too conservative with it.
-    private static final int _MAX_UPDATE_MAX_LENGTH_COMPUTE = (int)(ARRAYS_SORT_CHECK * 1.8);
-    private static final int _MAX_MAX_UPDATE_MAX_LENGTH = 120;
-    @SuppressWarnings("unused") //One of these cases will always be marked as "dead"
-    private static final int MAX_UPDATE_MAX_LENGTH = _MAX_UPDATE_MAX_LENGTH_COMPUTE > _MAX_MAX_UPDATE_MAX_LENGTH ? _MAX_MAX_UPDATE_MAX_LENGTH : _MAX_UPDATE_MAX_LENGTH_COMPUTE;
+    //The cutoffs for when to stop bucket sorting and comparison sort instead (and the like) are in SorterTuning,
+    //shared with MSDStringSorter, so they can be calibrated for the machine the sort runs on.
     
     //Set this to the minimum that there isn't a specific n-way sort method for.
     private static final int MIN_BLOCK_LEN_TO_MERGE = 4;
     
-    //Blocks of size less than this we don't binary search over to find the guess for the end character. It is usually not worth it in these cases.
-    private static final int MIN_BINARY_SEARCH = 28;
-    
-    //If this is false, then bucket sort will be used even if length < MAX_ARRAYS_INDEX_SORT but not close enough to the end to trigger a full sort
-    //(Except for length < MAX_INSERTION_SORT, which will always fully sort)
+    //If this is false, then bucket sort will be used even if length < maxArraysIndexSort but not close enough to the end to trigger a full sort
+    //(Except for length < maxInsertionSort, which will always fully sort)
     private static final boolean DO_NON_FULL_ARRAYS_SORT = true;
-
-    // For these two values, SMALLER numbers mean MORE hesistant to trigger the optimization
-    //Merging is a rather expensive operation, just to save a few method calls. Thus, be conservative with this number. 
-    private static final int MAX_REMAINING_BEFORE_MERGING_RANGES = 2;
-    //Be conservative with this number, as not only will it trigger more aggressive merges, but also cause a non-insertion call to
-    //arrays sort to look at all of the remaining characters, which could get expensive.
-    private static final int MAX_REMAINING_BEFORE_FULL_ARRAYS_SORT = 4;
-    
-    private static final int MAX_DIFF_BETWEEN_MAX_INDEX_GUESS_AND_REAL_MAX = 30;
-    
-    /*
-    static
-    {
-        assert MAX_INSERTION_SORT <= MAX_ARRAYS_SORT;
-    }
-*/
     
-    private MSDStringSorterWithCopyAvoidance(Deque<SortState> stack, String[] arr, String[] wc, BitSet flippedTracker)
+    private MSDStringSorterWithCopyAvoidance(Deque<SortState> stack, SorterTuning tuning, String[] arr, String[] wc, BitSet flippedTracker)
     {
         this.stack = stack;
+        this.tuning = tuning;
         this.arr_local = arr;
         this.wc_local = wc;
         this.isArrAndWcFlipped = flippedTracker;
@@ -91,8 +59,30 @@ public final class MSDStringSorterWithCopyAvoidance
         sortPartially(minCharsToSort, arr, 0, arr.length);
     }
     
-    public static void sortPartially(int minCharsToSort, String[] arr, int fromIndex, int toIndex)
+    public static final void sortPartially(int minCharsToSort, String[] arr, int fromIndex, int toIndex)
     {
+        sortPartially(minCharsToSort, arr, fromIndex, toIndex, SorterTuning.getDefault());
+    }
+    
+    public static final void sort(String[] arr, SorterTuning tuning)
+    {
+        sortPartially(Integer.MAX_VALUE, arr, 0, arr.length, tuning);
+    }
+    
+    /**
+     * Sorts the given range on at least its first {@code minCharsToSort} characters, with the given cutoffs
+     * for when to stop bucket sorting and switch to a comparison sort.
+     * The other sorting methods of this class use {@link SorterTuning#getDefault()}.
+     * 
+     * @param minCharsToSort the minimum number of characters from the start of each string to sort on
+     * @param arr the array to sort
+     * @param fromIndex the index of the first element to sort (inclusive)
+     * @param toIndex the index of the last element to sort (exclusive)
+     * @param tuning the cutoffs to use
+     */
+    public static void sortPartially(int minCharsToSort, String[] arr, int fromIndex, int toIndex, SorterTuning tuning)
+    {
+        if(tuning == null) throw new NullPointerException("tuning");
         // XXX For large strings (greater than about 80 characters), dumping to char[] using toCharArray() is faster
         if(checkBounds(arr.length, fromIndex, toIndex)) return;
         final int len = toIndex - fromIndex;
@@ -106,7 +96,7 @@ public final class MSDStringSorterWithCopyAvoidance
             sortThreeItems(arr, fromIndex, fromIndex + 1, fromIndex + 2, 0);
             return;
         }
-        if(len <= MAX_ARRAYS_FULL_SORT)
+        if(len <= tuning.maxArraysFullSort)
         {
             Arrays.sort(arr, fromIndex, toIndex);
             return;
@@ -121,12 +111,15 @@ public final class MSDStringSorterWithCopyAvoidance
             Math.max(15, (int)(1.5 * com.google.common.math.IntMath.log2(len, java.math.RoundingMode.UP))));
         stack.addFirst(new SortState(fromIndex, toIndex, 0, minCharsToSort, false));
         //The thing that will hold our sort progress
-        new MSDStringSorterWithCopyAvoidance(stack, arr, wc, new BitSet(toIndex - fromIndex)).doSort();
+        //Indexed the same as arr, so size it to the end of the range to keep it from having to grow
+        new MSDStringSorterWithCopyAvoidance(stack, tuning, arr, wc, new BitSet(toIndex)).doSort();
     }
 
     private final Deque<SortState> stack;
+    private final SorterTuning tuning;
     private final String[] arr_local;
     private final String[] wc_local;
+    //A set bit means the element at that index currently lives in wc_local, instead of arr_local
     private final BitSet isArrAndWcFlipped;
     private SortState tempHolder;
     private SortState mergeHolder = null;
@@ -162,20 +155,10 @@ public final class MSDStringSorterWithCopyAvoidance
         }
         if(len2 <= index) return 1;
         
-        //Pretty much ripped from String#compareTo(String)
-        int lim = Math.min(len1, len2);
-    
-        int k = index;
-        while (k < lim)
-        {
-            char c1 = s1.charAt(k);
-            char c2 = s2.charAt(k);
-            if (c1 != c2)
-            {
-                return c1 - c2;
-            }
-            k++;
-        }
+        //Pretty much ripped from String#compareTo(String), with the search for the first differing character done by StringMismatch
+        final int lim = Math.min(len1, len2);
+        final int k = StringMismatch.mismatch(s1, s2, index, lim);
+        if(k < lim) return s1.charAt(k) - s2.charAt(k);
         //Even if the count doesn't start from the beginning, it doesn't matter, as cutting off the same number of characters still preserves ordering
         return len1 - len2;
     }
@@ -191,21 +174,10 @@ public final class MSDStringSorterWithCopyAvoidance
         }
         if(len2 <= index) return 1;
         
-        //Pretty much ripped from String#compareTo(String)
-        int lim = Math.min(len1, len2);
-        lim = Math.min(lim, maxIndex);
-    
-        int k = index;
-        while (k < lim)
-        {
-            char c1 = s1.charAt(k);
-            char c2 = s2.charAt(k);
-            if (c1 != c2)
-            {
-                return c1 - c2;
-            }
-            k++;
-        }
+        //Pretty much ripped from String#compareTo(String), with the search for the first differing character done by StringMismatch
+        final int lim = Math.min(Math.min(len1, len2), maxIndex);
+        final int k = StringMismatch.mismatch(s1, s2, index, lim);
+        if(k < lim) return s1.charAt(k) - s2.charAt(k);
         //Even if the count doesn't start from the beginning, it doesn't matter, as cutting off the same number of characters still preserves ordering
         return k == maxIndex ? 0 : len1 - len2;
     }
@@ -218,7 +190,7 @@ public final class MSDStringSorterWithCopyAvoidance
             processPart(stack.pollFirst());
         }
         //Now, for each region that has the final result written into the working copy, copy that back over to the real array.
-        for(int i = isArrAndWcFlipped.nextSetBit(0), max = isArrAndWcFlipped.length(); i < max && i > 0;)
+        for(int i = isArrAndWcFlipped.nextSetBit(0); i >= 0;)
         {
             //Alright, find the end of this "block"
             int end = isArrAndWcFlipped.nextClearBit(i);
@@ -242,19 +214,21 @@ public final class MSDStringSorterWithCopyAvoidance
         if(maxIndex <= 0) return;
         //Skip if we went past the "end" of the character range we want to sort 
         if(index >= maxIndex) return;
-        boolean needMaxIndexUpdate = maxIndex == Integer.MAX_VALUE || end - start <= MAX_UPDATE_MAX_LENGTH;
+        boolean needMaxIndexUpdate = maxIndex == Integer.MAX_VALUE || end - start <= tuning.maxUpdateMaxLength;
         int[] buckets = doSortOnPart(start, end, index, maxIndex, needMaxIndexUpdate, isFlipped);
+        if(buckets == FULLY_SORTED) return;
         if(buckets != INDEX_SORTED_NO_BUCKETS)
         {
-            //If bucket sort was used, then we are now flipped
+            //If bucket sort was used, then this range now lives in the other array.
+            //Every other way of sorting is done in place, and the bits for this range were already set when the range containing it was processed,
+            //so only a bucket sort needs to update the tracking.
             isFlipped = !isFlipped;
+            isArrAndWcFlipped.set(start, end, isFlipped);
         }
-        isArrAndWcFlipped.set(start, end, isFlipped);
-        if(buckets == FULLY_SORTED) return;
         if(maxIndexTempTrack != -1)
         {
             maxIndex = Math.min(maxIndexTempTrack, maxIndex);
-            needMaxIndexUpdate = end - start < MAX_UPDATE_MAX_LENGTH;
+            needMaxIndexUpdate = end - start < tuning.maxUpdateMaxLength;
         }
         
         @SuppressWarnings("hiding")
@@ -305,9 +279,9 @@ public final class MSDStringSorterWithCopyAvoidance
         // Warning: Whatever range this may be, it MUST be small enough such that merged
         // range WILL fall under a complete sort, not a current index only sort
         final int remainingCharsToProcess = maxIndex - index;
-        final boolean shouldMerge = remainingCharsToProcess < MAX_REMAINING_BEFORE_MERGING_RANGES;
-        final int maxMergedRangeSize = remainingCharsToProcess < MAX_REMAINING_BEFORE_FULL_ARRAYS_SORT ? MAX_ARRAYS_FULL_SORT : MAX_INSERTION_SORT;
-        boolean atStartOfBlock = end - start >= MIN_BINARY_SEARCH;
+        final boolean shouldMerge = remainingCharsToProcess < tuning.maxRemainingBeforeMergingRanges;
+        final int maxMergedRangeSize = remainingCharsToProcess < tuning.maxRemainingBeforeFullArraysSort ? tuning.maxArraysFullSort : tuning.maxInsertionSort;
+        boolean atStartOfBlock = end - start >= tuning.minBinarySearch;
         char curChar2 = curChar;
         if(atStartOfBlock) //Skip the longer form of the loop if we are not binary searching
         {
@@ -403,8 +377,8 @@ public final class MSDStringSorterWithCopyAvoidance
         // Warning: Whatever range this may be, it MUST be small enough such that merged
         // range WILL fall under a complete sort, not a current index only sort
         final int remainingCharsToProcess = maxIndex - index;
-        final boolean shouldMerge = remainingCharsToProcess < MAX_REMAINING_BEFORE_MERGING_RANGES;
-        final int maxMergedRangeSize = remainingCharsToProcess < MAX_REMAINING_BEFORE_FULL_ARRAYS_SORT ? MAX_ARRAYS_FULL_SORT : MAX_INSERTION_SORT;
+        final boolean shouldMerge = remainingCharsToProcess < tuning.maxRemainingBeforeMergingRanges;
+        final int maxMergedRangeSize = remainingCharsToProcess < tuning.maxRemainingBeforeFullArraysSort ? tuning.maxArraysFullSort : tuning.maxInsertionSort;
         // curChar MUST be the min char seen
         for(int i = 0; i < buckets.length - 1; ++i)
         {
@@ -534,7 +508,7 @@ public final class MSDStringSorterWithCopyAvoidance
         // If this is a tiny block, try to see if we can accumulate with the next block
         if(shouldMerge)
         {
-            if(newSize < MAX_INSERTION_SORT && newSize >= MIN_BLOCK_LEN_TO_MERGE)
+            if(newSize < tuning.maxInsertionSort && newSize >= MIN_BLOCK_LEN_TO_MERGE)
             {
                 assert mergeHolder != toUseState;
                 //We might get a clash between the temp state holder and the state to reuse
@@ -649,14 +623,14 @@ public final class MSDStringSorterWithCopyAvoidance
             {
                 if(len < 0)
                     return FULLY_SORTED;
-                if(len <= MAX_INSERTION_SORT)
+                if(len <= tuning.maxInsertionSort)
                 {
                     insertionSort(arr, fromIndex, toIndex, charIndex, maxIndex);
                     return FULLY_SORTED;
                 }
-                if(len <= ARRAYS_SORT_CHECK)
+                if(len <= tuning.maxArraysFullSort || len <= tuning.maxArraysIndexSort)
                 {
-                    if(maxIndex - charIndex <= MAX_REMAINING_BEFORE_FULL_ARRAYS_SORT && len <= MAX_ARRAYS_FULL_SORT)
+                    if(maxIndex - charIndex <= tuning.maxRemainingBeforeFullArraysSort && len <= tuning.maxArraysFullSort)
                     {
                         final java.util.Comparator<String> comp = getRemainingCharSortComparator(arr, fromIndex, toIndex, charIndex, maxIndex);
                         Arrays.sort(arr, fromIndex, toIndex, comp);
@@ -664,7 +638,7 @@ public final class MSDStringSorterWithCopyAvoidance
                     }
                     if(DO_NON_FULL_ARRAYS_SORT)
                     {
-                        if(len <= MAX_ARRAYS_INDEX_SORT)
+                        if(len <= tuning.maxArraysIndexSort)
                         {
                             Arrays.sort(arr, fromIndex, toIndex, new NaturalCharComparatorAtIndex(charIndex));
                             return INDEX_SORTED_NO_BUCKETS;
@@ -676,12 +650,12 @@ public final class MSDStringSorterWithCopyAvoidance
         return bucketSort(fromIndex, toIndex, charIndex, tryTrackMaxIndex, isFlipped);
     }
 
-    private static final java.util.Comparator<String> getRemainingCharSortComparator(final String[] arr, final int fromIndex,
+    private final java.util.Comparator<String> getRemainingCharSortComparator(final String[] arr, final int fromIndex,
         final int toIndex, final int charIndex, final int maxIndex)
     {
         //This is to try to avoid sorting on a bunch of characters past the number the user asked for
         final int maxIndexRealGuess = Math.max(Math.max(arr[fromIndex].length(), arr[toIndex - 1].length()), arr[(toIndex + fromIndex) >> 1].length());
-        return maxIndexRealGuess - maxIndex > MAX_DIFF_BETWEEN_MAX_INDEX_GUESS_AND_REAL_MAX ?
+        return maxIndexRealGuess - maxIndex > tuning.maxDiffBetweenMaxIndexGuessAndRealMax ?
             new NaturalSubstringComparator(charIndex, maxIndex) :
             new NaturalSuffixComparator(charIndex);
     }
@@ -786,7 +760,7 @@ public final class MSDStringSorterWithCopyAvoidance
     }
     
 
-    private static final void
+    private final void
         insertionSort(final String[] arr, final int fromIndex, final int toIndex, final int charIndex, final int maxIndex)
     {
         final java.util.Comparator<String> comp = getRemainingCharSortComparator(arr, fromIndex, toIndex, charIndex, maxIndex);
@@ -844,12 +818,11 @@ public final class MSDStringSorterWithCopyAvoidance
     }
 
     //This is where the "magic" happens
-    //XXX O(3n + 2m), ugly :(
+    //XXX O(2n + 2c), still ugly, but better than the O(3n + 2c) of the version that copies back every pass
+    //(c in this case is the number of distinct characters at the index in the given range)
     private int[] bucketSort(final int fromIndex, final int toIndex,
         final int charIndex, final boolean trackMaxLen, final boolean isFlipped)
     {
-        //Note The SortState is not given for from, to, etc, but rather for updating the max seen character 
-        final int len = toIndex - fromIndex;
         @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance 
         final String[] arr = getArr(isFlipped);
         @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
@@ -872,7 +845,7 @@ public final class MSDStringSorterWithCopyAvoidance
                 if(c > maxCharSeen)
                 {
                     maxCharSeen = c;
-                    charCountBuffer = (charCountBuffer.length < c) ?
+                    charCountBuffer = (charCountBuffer.length <= c) ?
                         Arrays.copyOf(charCountBuffer, c + (charCountBuffer.length >> 3) + 1) :
                         charCountBuffer;
                 }
@@ -891,7 +864,7 @@ public final class MSDStringSorterWithCopyAvoidance
                 if(c > maxCharSeen)
                 {
                     maxCharSeen = c;
-                    charCountBuffer = (charCountBuffer.length < c) ?
+                    charCountBuffer = (charCountBuffer.length <= c) ?
                         Arrays.copyOf(charCountBuffer, c + (charCountBuffer.length >> 3) + 1) :
                         charCountBuffer;
                 }
@@ -931,11 +904,8 @@ public final class MSDStringSorterWithCopyAvoidance
             wc[(indexes[c - minCharSeen]++) + fromIndex] = arr[i];
         }
 
-        // XXX Find a way to do that thing where you swap the working copy and the real array each iteration
-        // This is tricky though, as the number of iterations is not fixed, or even consistent among all
-        // subsets of the array to be sorted
-        // Copy back over into the real array
-        //System.arraycopy(wc, fromIndex, arr, fromIndex, len);
+        // No copy back here; the caller tracks that this range now lives in the other array,
+        // and doSort copies back whatever ended up in the working copy once everything is sorted
         return indexesOrig;
     }
 
@@ -0,0 +1,507 @@
+package local.techsy730.util.sort;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+// NOTE Throughout the various comments, n is used as the total number of keys to sort,
+// and m is the maximum number of bytes remaining any one key has left to be sorted on
+
+/**
+ * A class providing methods to sort keys that live outside of the heap (typically in a memory mapped file)
+ * according to the most significant "digit" radix sort, where each byte acts as the "digit".
+ * <p>
+ * Keys are never copied onto the heap. Instead, each key is described by an index entry of a {@code long} position and an {@code int} length,
+ * and only these two primitive arrays are permuted, so sorting takes only about 12 bytes of heap per key no matter how long the keys are.
+ * The permuting is done in place ("American flag" sort), so unlike {@link MSDByteArraySorter} not even a working copy of the index is needed.
+ * <p>
+ * As a single {@link ByteBuffer} can be at most 2GB, keys may be spread over several buffers (segments).
+ * A key's position holds both which segment it is in (the upper 32 bits) and where in that segment it starts (the lower 32 bits);
+ * see {@link #position(int, int)}. A key may not span more than one segment.
+ * <p>
+ * Keys are ordered the same way {@link MSDByteArraySorter} orders them;
+ * lexicographically, with each byte treated as unsigned, and with a key that is a prefix of another sorting first.
+ * <p>
+ * {@link LineIndex} takes care of mapping and indexing newline delimited files, as well as writing the keys back out in sorted order.
+ *
+ * @author C. Sean Young
+ *
+ */
+public final class MappedKeySorter
+{
+    // XXX Empirically determine a good estimate for these constants, based on common usage cases
+    //Ranges at most this long are finished off with a binary insertion sort over all of the remaining bytes.
+    //Each byte read here goes through a ByteBuffer, and the keys are likely scattered over a much larger area than the heap based sorters,
+    //so this is kept lower than in MSDByteArraySorter.
+    //For this value, SMALLER numbers mean MORE hesitant to trigger the optimization
+    private static final int MAX_INSERTION_SORT = 16;
+
+    //The bucket for keys that end before the current index; always sorts first, and never needs to be looked at again
+    private static final int END_OF_KEY = 0;
+    //One bucket for the end of a key, and then one for each possible byte
+    private static final int BUCKET_COUNT = 256 + 1;
+
+    private MappedKeySorter(ByteBuffer[] segments, long[] positions, int[] lengths)
+    {
+        this.segments = segments;
+        this.positions = positions;
+        this.lengths = lengths;
+    }
+
+    /**
+     * Gives the position of a key for the index arrays passed to the methods of this class.
+     *
+     * @param segment the index of the segment the key is in
+     * @param offsetInSegment the offset of the first byte of the key in that segment
+     * @return the position to put in the index for that key
+     */
+    public static long position(int segment, int offsetInSegment)
+    {
+        return ((long)segment << 32) | (offsetInSegment & 0xFFFFFFFFL);
+    }
+
+    public static final void sort(ByteBuffer[] segments, long[] positions, int[] lengths)
+    {
+        sort(segments, positions, lengths, 0, positions.length);
+    }
+
+    public static final void sort(ByteBuffer[] segments, long[] positions, int[] lengths, int fromIndex, int toIndex)
+    {
+        sortPartially(Integer.MAX_VALUE, segments, positions, lengths, fromIndex, toIndex);
+    }
+
+    /**
+     * Sorts the given range of the index on at least the first {@code minBytesToSort} bytes of each key.
+     * Only the positions and lengths are moved; the segments themselves are only ever read from.
+     * Keys that are equal over that many bytes may end up in any order relative to each other.
+     *
+     * @param minBytesToSort the minimum number of bytes from the start of each key to sort on
+     * @param segments the buffers the keys are in; only their contents are used, not their positions or limits
+     * @param positions the position of each key, as given by {@link #position(int, int)}
+     * @param lengths the length of each key
+     * @param fromIndex the index of the first key to sort (inclusive)
+     * @param toIndex the index of the last key to sort (exclusive)
+     */
+    public static void sortPartially(int minBytesToSort, ByteBuffer[] segments, long[] positions, int[] lengths, int fromIndex, int toIndex)
+    {
+        if(lengths.length < toIndex) throw new ArrayIndexOutOfBoundsException(toIndex + " > " + lengths.length);
+        if(checkBounds(positions.length, fromIndex, toIndex)) return;
+        if(minBytesToSort <= 0) return;
+        MappedKeySorter sorter = new MappedKeySorter(segments, positions, lengths);
+        if(toIndex - fromIndex <= MAX_INSERTION_SORT)
+            sorter.binaryInsertionSort(fromIndex, toIndex, 0, minBytesToSort);
+        else
+            sorter.sortRange(fromIndex, toIndex, minBytesToSort);
+    }
+
+    private final ByteBuffer[] segments;
+    private final long[] positions;
+    private final int[] lengths;
+
+    //Thanks to how long keys can get, we cannot use recursion. As such, we must maintain our own stack of
+    //(start, end, index) triples for the ranges left to sort
+    private int[] stack = new int[3 * 16];
+    private int stackSize = 0;
+
+    //Fixed size, and all zeros between passes
+    private final int[] counts = new int[BUCKET_COUNT];
+    private final int[] bucketStarts = new int[BUCKET_COUNT + 1];
+    private final int[] bucketNext = new int[BUCKET_COUNT];
+
+    private void sortRange(final int fromIndex, final int toIndex, final int maxIndex)
+    {
+        push(fromIndex, toIndex, 0);
+        while(stackSize != 0)
+        {
+            stackSize -= 3;
+            // "Recurse"
+            processPart(stack[stackSize], stack[stackSize + 1], stack[stackSize + 2], maxIndex);
+        }
+    }
+
+    private void push(final int start, final int end, final int index)
+    {
+        if(stackSize == stack.length)
+            stack = Arrays.copyOf(stack, stackSize << 1);
+        stack[stackSize] = start;
+        stack[stackSize + 1] = end;
+        stack[stackSize + 2] = index;
+        stackSize += 3;
+    }
+
+    private void processPart(final int start, final int end, int index, final int maxIndex)
+    {
+        //Skip if we went past the "end" of the byte range we want to sort
+        if(index >= maxIndex) return;
+        if(end - start <= MAX_INSERTION_SORT)
+        {
+            binaryInsertionSort(start, end, index, maxIndex);
+            return;
+        }
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        final int[] counts = this.counts;
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        final long[] positions = this.positions;
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        final int[] lengths = this.lengths;
+
+        // Count how often each byte appears
+        int minBucket = BUCKET_COUNT;
+        int maxBucket = -1;
+        for(int i = start; i < end; ++i)
+        {
+            final int b = bucketOf(positions[i], lengths[i], index);
+            ++counts[b];
+            minBucket = b < minBucket ? b : minBucket;
+            maxBucket = b > maxBucket ? b : maxBucket;
+        }
+
+        if(minBucket == maxBucket)
+        {
+            counts[minBucket] = 0;
+            //Every key has ended, so they are all equal
+            if(minBucket == END_OF_KEY) return;
+            // Common case, all the bytes at this level were the same, just
+            // immediately move on, skipping any further bytes they all share as well
+            push(start, end, index + 1 + findSharedPrefixLen(start, end, index + 1, maxIndex));
+            return;
+        }
+
+        // Compute index where each "section" will start
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        final int[] bucketStarts = this.bucketStarts;
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        final int[] bucketNext = this.bucketNext;
+        {
+            int currentIndex = start;
+            for(int b = minBucket; b <= maxBucket; ++b)
+            {
+                bucketStarts[b] = currentIndex;
+                bucketNext[b] = currentIndex;
+                currentIndex += counts[b];
+                counts[b] = 0;
+            }
+            bucketStarts[maxBucket + 1] = currentIndex;
+        }
+
+        // Now, move each key into its bucket in place. Each bucket is filled in turn; whatever key is in the way is
+        // swapped into its own bucket, and then whatever key was in the way there, and so on until a key that belongs in this bucket turns up.
+        // Keys that are already in their bucket are never moved.
+        // The last bucket is skipped, as every key left in it by then must belong there.
+        for(int b = minBucket; b < maxBucket; ++b)
+        {
+            final int bucketEnd = bucketStarts[b + 1];
+            int i = bucketNext[b];
+            while(i < bucketEnd)
+            {
+                long position = positions[i];
+                int length = lengths[i];
+                int dest = bucketOf(position, length, index);
+                while(dest != b)
+                {
+                    final int swapWith = bucketNext[dest]++;
+                    final long tempPosition = positions[swapWith];
+                    final int tempLength = lengths[swapWith];
+                    positions[swapWith] = position;
+                    lengths[swapWith] = length;
+                    position = tempPosition;
+                    length = tempLength;
+                    dest = bucketOf(position, length, index);
+                }
+                positions[i] = position;
+                lengths[i] = length;
+                ++i;
+            }
+            bucketNext[b] = i;
+        }
+
+        // Now, sort each bucket on the next byte
+        // Keys in the END_OF_KEY bucket are all equal, so that bucket (if any) is skipped
+        ++index;
+        for(int b = minBucket == END_OF_KEY ? END_OF_KEY + 1 : minBucket; b <= maxBucket; ++b)
+        {
+            final int regionStart = bucketStarts[b];
+            final int regionEnd = bucketStarts[b + 1];
+            final int newSize = regionEnd - regionStart;
+            if(newSize <= 1) continue; //Don't even bother with a push if our size is zero or one
+            if(newSize <= MAX_INSERTION_SORT)
+                binaryInsertionSort(regionStart, regionEnd, index, maxIndex);
+            else
+                push(regionStart, regionEnd, index);
+        }
+    }
+
+    private final int byteAt(final long position, final int index)
+    {
+        return segments[(int)(position >>> 32)].get((int)position + index) & 0xFF;
+    }
+
+    private final int bucketOf(final long position, final int length, final int index)
+    {
+        return index < length ? byteAt(position, index) + 1 : END_OF_KEY;
+    }
+
+    //Assumes every key in the range has the same byte at index - 1 (so none of them have ended before index)
+    private final int findSharedPrefixLen(final int fromIndex, final int toIndex, final int index, final int maxIndex)
+    {
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        final long[] positions = this.positions;
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        final int[] lengths = this.lengths;
+        // It doesn't really matter which element we choose, it will give the same result, and the same average running time
+        final long toTestAgainst = positions[fromIndex];
+        final int testLength = lengths[fromIndex];
+        final int len = Math.min(maxIndex, testLength);
+        final int lastIndex = toIndex - 1;
+        for(int i = index; i < len; ++i)
+        {
+            final int current = bucketOf(toTestAgainst, testLength, i);
+            //First off, check the last key of this block, as if there are mismatches, that is a very likely place to find one of them
+            if(bucketOf(positions[lastIndex], lengths[lastIndex], i) != current)
+                return i - index;
+            //Then, check the rest
+            for(int j = fromIndex + 1; j < lastIndex; ++j)
+            {
+                if(bucketOf(positions[j], lengths[j], i) != current)
+                    return i - index;
+            }
+        }
+        // If we made it all the way through, the whole key matched (or we hit the max index)
+        return len > index ? len - index : 0;
+    }
+
+    //Compares the bytes in [index, maxIndex) of each key
+    private final int compareFrom(final long aPosition, final int aLength, final long bPosition, final int bLength,
+        final int index, final int maxIndex)
+    {
+        final ByteBuffer aSegment = segments[(int)(aPosition >>> 32)];
+        final ByteBuffer bSegment = segments[(int)(bPosition >>> 32)];
+        final int aStart = (int)aPosition;
+        final int bStart = (int)bPosition;
+        final int aLen = Math.min(aLength, maxIndex);
+        final int bLen = Math.min(bLength, maxIndex);
+        final int len = Math.min(aLen, bLen);
+        for(int i = index; i < len; ++i)
+        {
+            final int diff = (aSegment.get(aStart + i) & 0xFF) - (bSegment.get(bStart + i) & 0xFF);
+            if(diff != 0) return diff;
+        }
+        return aLen - bLen;
+    }
+
+    //Stable, as each element is moved back to just after the last element that is not greater than it.
+    private final void binaryInsertionSort(final int fromIndex, final int toIndex, final int index, final int maxIndex)
+    {
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        final long[] positions = this.positions;
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        final int[] lengths = this.lengths;
+        for(int i = fromIndex + 1; i < toIndex; ++i)
+        {
+            final long pivotPosition = positions[i];
+            final int pivotLength = lengths[i];
+            //Already in place, common for partially sorted input
+            if(compareFrom(positions[i - 1], lengths[i - 1], pivotPosition, pivotLength, index, maxIndex) <= 0) continue;
+            //We already know the element before the pivot is greater than it, so no need to search it
+            int left = fromIndex;
+            int right = i - 1;
+            while(left < right)
+            {
+                final int mid = (left + right) >>> 1;
+                if(compareFrom(pivotPosition, pivotLength, positions[mid], lengths[mid], index, maxIndex) < 0)
+                    right = mid;
+                else
+                    left = mid + 1;
+            }
+            System.arraycopy(positions, left, positions, left + 1, i - left);
+            System.arraycopy(lengths, left, lengths, left + 1, i - left);
+            positions[left] = pivotPosition;
+            lengths[left] = pivotLength;
+        }
+    }
+
+    private static final boolean checkBounds(int length, int fromIndex, int toIndex)
+    {
+        if(fromIndex < 0) throw new ArrayIndexOutOfBoundsException(fromIndex + " < 0");
+        if(toIndex > length) throw new ArrayIndexOutOfBoundsException(toIndex + " > " + length);
+        if(fromIndex > toIndex)
+            throw new IllegalArgumentException("start position: " + fromIndex +
+                " > end position: " + toIndex);
+        if(toIndex - fromIndex <= 1) return true; // Trivial case, flag to skip
+        return false;
+    }
+
+    /**
+     * An index of the lines of a newline delimited file, mapped into memory in segments of at most 2GB each
+     * (each cut at a line boundary, so no line spans two segments).
+     * The line terminators ({@code '\n'}, or {@code "\r\n"}) are not part of the keys.
+     * <p>
+     * Typical use:
+     * <pre>
+     * LineIndex index = LineIndex.map(inChannel);
+     * index.sort();
+     * index.writeTo(out);
+     * </pre>
+     *
+     * @author C. Sean Young
+     *
+     */
+    public static final class LineIndex
+    {
+        //Largest a single mapping can be
+        private static final int MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+        private ByteBuffer[] segments;
+        private long[] positions;
+        private int[] lengths;
+        private int size;
+
+        private LineIndex()
+        {
+        }
+
+        /**
+         * Maps the whole of the given file into memory (read only) and indexes each of its lines.
+         * The file must not be changed while the index is in use.
+         *
+         * @param channel the file to index
+         * @return the index of the lines of the file, in the order they are in in the file
+         * @throws IOException if the file could not be mapped, or has a line longer than 2GB
+         */
+        public static LineIndex map(FileChannel channel) throws IOException
+        {
+            return map(channel, MAX_SEGMENT_SIZE);
+        }
+
+        //Smaller segment sizes are only really useful for testing
+        static LineIndex map(FileChannel channel, int maxSegmentSize) throws IOException
+        {
+            LineIndex index = new LineIndex();
+            index.segments = new ByteBuffer[4];
+            index.positions = new long[1024];
+            index.lengths = new int[1024];
+            final long fileSize = channel.size();
+            int segmentCount = 0;
+            long segmentStart = 0;
+            while(segmentStart < fileSize)
+            {
+                final long remaining = fileSize - segmentStart;
+                final boolean last = remaining <= maxSegmentSize;
+                final ByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, last ? remaining : maxSegmentSize);
+                final int segmentEnd = index.indexLines(segment, segmentCount, last);
+                if(segmentEnd == 0)
+                    throw new IOException("Line at " + segmentStart + " is longer than " + maxSegmentSize + " bytes");
+                if(segmentCount == index.segments.length)
+                    index.segments = Arrays.copyOf(index.segments, segmentCount << 1);
+                index.segments[segmentCount++] = segment;
+                segmentStart += segmentEnd;
+            }
+            index.segments = Arrays.copyOf(index.segments, segmentCount);
+            return index;
+        }
+
+        //Adds every line that ends in the given segment (or every line, if this is the last segment) to the index
+        //Returns the offset just past the last line that was added
+        private int indexLines(final ByteBuffer segment, final int segmentNumber, final boolean last)
+        {
+            final int limit = segment.limit();
+            int lineStart = 0;
+            for(int i = 0; i < limit; ++i)
+            {
+                if(segment.get(i) == '\n')
+                {
+                    addLine(segment, segmentNumber, lineStart, i);
+                    lineStart = i + 1;
+                }
+            }
+            if(last && lineStart < limit)
+            {
+                addLine(segment, segmentNumber, lineStart, limit);
+                lineStart = limit;
+            }
+            return lineStart;
+        }
+
+        private void addLine(final ByteBuffer segment, final int segmentNumber, final int lineStart, int lineEnd)
+        {
+            if(lineEnd > lineStart && segment.get(lineEnd - 1) == '\r')
+                --lineEnd;
+            if(size == positions.length)
+            {
+                //Grow by half instead of doubling, as this is likely to be most of the heap used by a sort
+                final int newSize = size + (size >> 1);
+                positions = Arrays.copyOf(positions, newSize);
+                lengths = Arrays.copyOf(lengths, newSize);
+            }
+            positions[size] = position(segmentNumber, lineStart);
+            lengths[size] = lineEnd - lineStart;
+            ++size;
+        }
+
+        public int size()
+        {
+            return size;
+        }
+
+        public void sort()
+        {
+            MappedKeySorter.sort(segments, positions, lengths, 0, size);
+        }
+
+        public void sortPartially(int minBytesToSort)
+        {
+            MappedKeySorter.sortPartially(minBytesToSort, segments, positions, lengths, 0, size);
+        }
+
+        /**
+         * Copies the bytes of the line now at the given place in the index into the given array.
+         *
+         * @param i the place in the index of the line
+         * @return the bytes of the line, without its line terminator
+         */
+        public byte[] get(int i)
+        {
+            if(i < 0 || i >= size) throw new ArrayIndexOutOfBoundsException(i);
+            final ByteBuffer segment = segments[(int)(positions[i] >>> 32)].duplicate();
+            final byte[] line = new byte[lengths[i]];
+            segment.position((int)positions[i]);
+            segment.get(line);
+            return line;
+        }
+
+        /**
+         * Writes out each line, in the order they are now in in the index, each followed by a {@code '\n'}.
+         *
+         * @param out where to write the lines to; it is not closed
+         * @throws IOException if writing to the stream fails
+         */
+        public void writeTo(OutputStream out) throws IOException
+        {
+            //Our own views, so the positions of the segments themselves are left alone
+            final ByteBuffer[] views = new ByteBuffer[segments.length];
+            for(int i = 0; i < views.length; ++i)
+                views[i] = segments[i].duplicate();
+            byte[] buffer = new byte[8192];
+            int buffered = 0;
+            for(int i = 0; i < size; ++i)
+            {
+                final int length = lengths[i];
+                if(buffered + length + 1 > buffer.length)
+                {
+                    out.write(buffer, 0, buffered);
+                    buffered = 0;
+                    if(length + 1 > buffer.length)
+                        buffer = new byte[length + 1];
+                }
+                final ByteBuffer view = views[(int)(positions[i] >>> 32)];
+                view.position((int)positions[i]);
+                view.get(buffer, buffered, length);
+                buffered += length;
+                buffer[buffered++] = '\n';
+            }
+            out.write(buffer, 0, buffered);
+        }
+    }
+}
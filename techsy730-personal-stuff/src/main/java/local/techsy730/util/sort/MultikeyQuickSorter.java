@@ -0,0 +1,248 @@
+package local.techsy730.util.sort;
+
+/**
+ * A class providing methods to sort strings with Bentley and Sedgewick's multikey quicksort (also known as three-way radix quicksort).
+ * Each range is split three ways on the character at the current index, into the strings with a smaller character there,
+ * the strings with the same character there (which go on to be split on the next character), and the strings with a larger character there.
+ * <p>
+ * Two changes are made from the textbook version, after Karkkainen and Rantala's "Engineering radix sort for strings".
+ * The split is done on a few characters at a time, packed into a long, rather than on one, so there are fewer levels to go through.
+ * And the packed characters for a range are read from the strings once, into a cache next to the array, when that range gets to a new index;
+ * the parts with smaller and larger characters are at the same index as the range they came from, and are split using the cache alone,
+ * so the strings themselves (and the pointer chasing to get to their characters) are only touched once per index, not once per split.
+ * <p>
+ * Unlike {@link MSDStringSorter}, no count table is kept per character index, so there is nothing to build or walk through
+ * that depends on the size of the alphabet, and a range of duplicates costs one pass per character, not one bucket sort per character.
+ * This makes it the better choice when there are only a few distinct characters per index
+ * (DNA, hex IDs, status codes, and the like), or when the input is heavy with duplicates.
+ * For wide alphabets with many distinct characters per index, each character needs about log2(distinct characters) passes
+ * instead of one, so {@link MSDStringSorter} is usually faster there.
+ * <p>
+ * Like {@link java.util.Arrays#sort(Object[])} on Strings, the order is the natural (lexicographic by char) order. The sort is not stable.
+ * {@link StringSorts#sort(String[])} will pick this sort on its own for the inputs it is suited for.
+ *
+ * @author C. Sean Young
+ *
+ */
+public final class MultikeyQuickSorter
+{
+    //How many characters are packed into each key split on, and how many bits each one takes up.
+    //Each character is stored as its value + 1, with 0 for past the end of the string, so it needs one more bit than a char has.
+    private static final int CHARS_PER_KEY = 3;
+    private static final int BITS_PER_CHAR = Character.SIZE + 1;
+    //The last character of a key; if it is past the end of the string, so is the rest of the string
+    private static final long LAST_CHAR_MASK = (1L << BITS_PER_CHAR) - 1;
+
+    //Ranges at least this long pick their pivot as the median of three medians of three (Tukey's ninther), instead of just the median of three
+    //For this value, HIGHER numbers mean MORE hesitant to trigger the optimization
+    private static final int MIN_NINTHER = 40;
+
+    private final String[] arr;
+    //The packed key of each string of arr at the index its range is being split on, offset by keysOffset
+    private final long[] keys;
+    private final int keysOffset;
+    private final int maxInsertionSort;
+    private final MSDStringSorter.NaturalSuffixComparator comp = new MSDStringSorter.NaturalSuffixComparator(0);
+
+    private MultikeyQuickSorter(String[] arr, int fromIndex, int toIndex, SorterTuning tuning)
+    {
+        this.arr = arr;
+        this.keys = new long[toIndex - fromIndex];
+        this.keysOffset = fromIndex;
+        //At least 2, as a split always needs at least that to be of use
+        this.maxInsertionSort = Math.max(tuning.maxInsertionSort, 2);
+    }
+
+    public static final void sort(String[] arr)
+    {
+        sort(arr, 0, arr.length);
+    }
+
+    public static final void sort(String[] arr, int fromIndex, int toIndex)
+    {
+        sort(arr, fromIndex, toIndex, SorterTuning.getDefault());
+    }
+
+    public static final void sort(String[] arr, SorterTuning tuning)
+    {
+        sort(arr, 0, arr.length, tuning);
+    }
+
+    /**
+     * Sorts the given range, handing ranges of at most {@link SorterTuning#getMaxInsertionSort()} strings to an insertion sort.
+     *
+     * @param arr the array to sort
+     * @param fromIndex the index of the first element to sort (inclusive)
+     * @param toIndex the index of the last element to sort (exclusive)
+     * @param tuning the cutoffs to use
+     */
+    public static void sort(String[] arr, int fromIndex, int toIndex, SorterTuning tuning)
+    {
+        checkBounds(arr.length, fromIndex, toIndex);
+        if(toIndex - fromIndex < 2) return;
+        new MultikeyQuickSorter(arr, fromIndex, toIndex, tuning).sortRange(fromIndex, toIndex, 0, false);
+    }
+
+    //Only the two smaller of the three parts of each split are recursed into, the largest is looped on.
+    //Each of the smaller two is at most half of the range, so the recursion is at most log2(n) deep,
+    //no matter how long the strings (and so how many characters deep the sort has to go) are.
+    //If keysLoaded is true, keys already holds the keys at charIndex for this range.
+    private void sortRange(int fromIndex, int toIndex, int charIndex, boolean keysLoaded)
+    {
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        final String[] arr = this.arr;
+        @SuppressWarnings("hiding")
+        final long[] keys = this.keys;
+        @SuppressWarnings("hiding")
+        final int keysOffset = this.keysOffset;
+        @SuppressWarnings("hiding")
+        final int maxInsertionSort = this.maxInsertionSort;
+        while(toIndex - fromIndex > maxInsertionSort)
+        {
+            if(!keysLoaded)
+            {
+                for(int i = fromIndex; i < toIndex; ++i)
+                    keys[i - keysOffset] = packedKey(arr[i], charIndex);
+                keysLoaded = true;
+            }
+            final long pivot = choosePivot(fromIndex - keysOffset, toIndex - keysOffset);
+
+            //Bentley and McIlroy's split end partition, as in the original multikey quicksort.
+            //Keys equal to the pivot are first swapped out to the ends, [lo, a) and (d, hi], while the rest are split into [a, b) < pivot and (c, d] > pivot,
+            //and then swapped back into the middle. Only the keys out of place get swapped, unlike in Dijkstra's partition.
+            final int lo = fromIndex - keysOffset;
+            final int hi = toIndex - 1 - keysOffset;
+            int a = lo;
+            int b = lo;
+            int c = hi;
+            int d = hi;
+            while(true)
+            {
+                long key;
+                while(b <= c && (key = keys[b]) <= pivot)
+                {
+                    if(key == pivot) swap(arr, keys, keysOffset, a++, b);
+                    ++b;
+                }
+                while(b <= c && (key = keys[c]) >= pivot)
+                {
+                    if(key == pivot) swap(arr, keys, keysOffset, c, d--);
+                    --c;
+                }
+                if(b > c) break;
+                swap(arr, keys, keysOffset, b++, c--);
+            }
+            vecSwap(arr, keys, keysOffset, lo, b - Math.min(a - lo, b - a), Math.min(a - lo, b - a));
+            vecSwap(arr, keys, keysOffset, b, hi + 1 - Math.min(d - c, hi - d), Math.min(d - c, hi - d));
+            final int lt = fromIndex + (b - a);
+            final int eqEnd = toIndex - (d - c);
+
+            final int lessLen = lt - fromIndex;
+            final int greaterLen = toIndex - eqEnd;
+            //If the strings of the middle part end within the key, they are all equal to each other, and so already sorted
+            final int equalLen = (pivot & LAST_CHAR_MASK) == 0 ? 0 : eqEnd - lt;
+            //If the whole range went to the middle part, it likely shares a longer prefix, like URLs or keys with a common namespace do;
+            //skip past all of it, rather than going through it one key at a time.
+            //Otherwise the next key will sort things out, so this isn't worth the extra pass.
+            final int nextCharIndex = equalLen == toIndex - fromIndex ?
+                charIndex + CHARS_PER_KEY + MSDStringSorter.findSharedPrefixLen(arr, lt, eqEnd, charIndex + CHARS_PER_KEY, Integer.MAX_VALUE) :
+                charIndex + CHARS_PER_KEY;
+
+            if(equalLen > 0 && equalLen >= lessLen && equalLen >= greaterLen)
+            {
+                sortPart(fromIndex, lt, charIndex, true);
+                sortPart(eqEnd, toIndex, charIndex, true);
+                fromIndex = lt;
+                toIndex = eqEnd;
+                charIndex = nextCharIndex;
+                keysLoaded = false;
+            }
+            else if(lessLen >= greaterLen)
+            {
+                if(equalLen > 0) sortPart(lt, eqEnd, nextCharIndex, false);
+                sortPart(eqEnd, toIndex, charIndex, true);
+                toIndex = lt;
+            }
+            else
+            {
+                sortPart(fromIndex, lt, charIndex, true);
+                if(equalLen > 0) sortPart(lt, eqEnd, nextCharIndex, false);
+                fromIndex = eqEnd;
+            }
+        }
+        if(toIndex - fromIndex > 1)
+            MSDStringSorter.binaryInsertionSort(arr, null, fromIndex, toIndex, comp.at(charIndex));
+    }
+
+    private final void sortPart(final int fromIndex, final int toIndex, final int charIndex, final boolean keysLoaded)
+    {
+        if(toIndex - fromIndex > maxInsertionSort)
+            sortRange(fromIndex, toIndex, charIndex, keysLoaded);
+        else if(toIndex - fromIndex > 1)
+            MSDStringSorter.binaryInsertionSort(arr, null, fromIndex, toIndex, comp.at(charIndex));
+    }
+
+    //Like MSDStringSorter.charAt, but for CHARS_PER_KEY characters at once, and with the end of the string as its own value below every character,
+    //as the end of the string is what stops the middle part of a split from being split further.
+    //Comparing two keys as longs compares those characters of the two strings the same way String.compareTo would.
+    private static final long packedKey(final String s, final int index)
+    {
+        final int len = s.length();
+        long key = 0;
+        for(int k = index; k < index + CHARS_PER_KEY; ++k)
+        {
+            key <<= BITS_PER_CHAR;
+            if(k < len) key |= s.charAt(k) + 1;
+        }
+        return key;
+    }
+
+    //For these, the indexes are into keys, and every move made to keys is made to arr as well
+    private static final void swap(final String[] arr, final long[] keys, final int keysOffset, final int index1, final int index2)
+    {
+        final long tempKey = keys[index1];
+        keys[index1] = keys[index2];
+        keys[index2] = tempKey;
+        final String temp = arr[index1 + keysOffset];
+        arr[index1 + keysOffset] = arr[index2 + keysOffset];
+        arr[index2 + keysOffset] = temp;
+    }
+
+    private static final void vecSwap(final String[] arr, final long[] keys, final int keysOffset, int index1, int index2, final int len)
+    {
+        for(int k = 0; k < len; ++k)
+            swap(arr, keys, keysOffset, index1++, index2++);
+    }
+
+    private final long choosePivot(final int fromIndex, final int toIndex)
+    {
+        @SuppressWarnings("hiding")
+        final long[] keys = this.keys;
+        final int len = toIndex - fromIndex;
+        final int mid = (fromIndex + toIndex) >>> 1;
+        final int last = toIndex - 1;
+        if(len < MIN_NINTHER)
+            return median(keys[fromIndex], keys[mid], keys[last]);
+        final int step = len >>> 3;
+        return median(
+            median(keys[fromIndex], keys[fromIndex + step], keys[fromIndex + 2 * step]),
+            median(keys[mid - step], keys[mid], keys[mid + step]),
+            median(keys[last - 2 * step], keys[last - step], keys[last]));
+    }
+
+    private static final long median(final long a, final long b, final long c)
+    {
+        if(a < b)
+            return b < c ? b : (a < c ? c : a);
+        return a < c ? a : (b < c ? c : b);
+    }
+
+    private static final void checkBounds(int length, int fromIndex, int toIndex)
+    {
+        if(fromIndex < 0) throw new ArrayIndexOutOfBoundsException(fromIndex + " < 0");
+        if(toIndex > length) throw new ArrayIndexOutOfBoundsException(toIndex + " > " + length);
+        if(fromIndex > toIndex)
+            throw new IllegalArgumentException("start position: " + fromIndex +
+                " > end position: " + toIndex);
+    }
+}
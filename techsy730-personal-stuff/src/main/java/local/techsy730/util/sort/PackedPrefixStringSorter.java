@@ -0,0 +1,306 @@
+package local.techsy730.util.sort;
+
+import java.util.Arrays;
+
+/**
+ * A class providing methods to sort strings by first sorting packed copies of their leading characters,
+ * and only going back to the strings themselves for the ones those characters don't tell apart.
+ * <p>
+ * Most of the time {@link MSDStringSorter} spends is on pointer chasing; from the array to each string, and from the string to its characters,
+ * once per character index, for every string still in a range at that index. The strings are wherever they happened to be allocated,
+ * so for large inputs, nearly each of those is a cache miss.
+ * This sort instead reads the next few characters of each string once, packed into a {@code long}
+ * (8 characters if they are all Latin-1, otherwise 4), and radix sorts those keys along with an {@code int} permutation.
+ * Both are plain primitive arrays, so the radix sort goes through them in order, with every cache line read being fully used.
+ * Only then are the strings moved, once, to where the permutation says they go.
+ * <p>
+ * The keys start past the prefix shared by every string in the range (found the same way {@link MSDStringSorter} skips shared prefixes).
+ * Strings whose keys are equal share all of the characters that were packed; large runs of them are sorted the same way again,
+ * starting past those characters (and whatever more they share), while smaller runs are finished off by {@link MSDStringSorter}.
+ * <p>
+ * This does best when the first several characters past the shared prefix tell most of the strings apart, so that few of them need
+ * to be looked at again. The sort is not stable, and the order is the natural (lexicographic by char) order.
+ *
+ * @author C. Sean Young
+ *
+ */
+public final class PackedPrefixStringSorter
+{
+    //Ranges (and runs of equal keys) smaller than this are given to MSDStringSorter instead of being packed.
+    //Packing needs a pass over the strings, a radix sort pass for every byte of the keys that isn't the same for all of them,
+    //and a pass to move the strings, which doesn't pay for itself over only a few strings.
+    //For this value, HIGHER numbers mean MORE hesitant to trigger the optimization
+    private static final int MIN_PACKED_SORT = 1 << 8;
+
+    //How many characters fit in a key; Latin-1 characters take a byte each, the rest take 2.
+    //The characters are packed with the first one in the highest bits, and any past the end of the string are 0,
+    //so comparing two keys as unsigned longs never disagrees with comparing their strings
+    //(though a string ending within the key and one with '\0' characters there can have equal keys).
+    private static final int LATIN1_CHARS_PER_KEY = 8;
+    private static final int WIDE_CHARS_PER_KEY = 4;
+
+    //The keys are radix sorted a byte at a time, least significant first
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+    private static final int RADIX_PASSES = Long.SIZE / RADIX_BITS;
+
+    private final MSDStringSorter.Context leafSorter;
+    private final int minCharsToSort;
+    private final String[] arr;
+    private final int offset;
+    //Each of these is indexed by the index into arr, minus offset
+    private long[] keys;
+    private int[] perm;
+    private long[] keysBuffer;
+    private int[] permBuffer;
+    private final String[] strings;
+    private final int[] counts = new int[RADIX_PASSES * RADIX];
+    //The runs of equal keys left to be sorted again; from, to, and the index their keys start at, for each
+    private int[] pending = new int[3 * 16];
+    private int pendingCount = 0;
+
+    private PackedPrefixStringSorter(int minCharsToSort, String[] arr, int fromIndex, int toIndex, SorterTuning tuning)
+    {
+        final int len = toIndex - fromIndex;
+        this.leafSorter = new MSDStringSorter.Context(tuning);
+        this.minCharsToSort = minCharsToSort;
+        this.arr = arr;
+        this.offset = fromIndex;
+        this.keys = new long[len];
+        this.perm = new int[len];
+        this.keysBuffer = new long[len];
+        this.permBuffer = new int[len];
+        this.strings = new String[len];
+    }
+
+    public static final void sort(String[] arr)
+    {
+        sort(arr, 0, arr.length);
+    }
+
+    public static final void sort(String[] arr, int fromIndex, int toIndex)
+    {
+        sortPartially(Integer.MAX_VALUE, arr, fromIndex, toIndex);
+    }
+
+    public static final void sortPartially(int minCharsToSort, String[] arr)
+    {
+        sortPartially(minCharsToSort, arr, 0, arr.length);
+    }
+
+    public static final void sortPartially(int minCharsToSort, String[] arr, int fromIndex, int toIndex)
+    {
+        sortPartially(minCharsToSort, arr, fromIndex, toIndex, SorterTuning.getDefault());
+    }
+
+    public static final void sort(String[] arr, SorterTuning tuning)
+    {
+        sortPartially(Integer.MAX_VALUE, arr, 0, arr.length, tuning);
+    }
+
+    /**
+     * Sorts the given range on at least its first {@code minCharsToSort} characters,
+     * with the strings the packed keys don't tell apart being finished off by {@link MSDStringSorter} with the given cutoffs.
+     *
+     * @param minCharsToSort the minimum number of characters from the start of each string to sort on
+     * @param arr the array to sort
+     * @param fromIndex the index of the first element to sort (inclusive)
+     * @param toIndex the index of the last element to sort (exclusive)
+     * @param tuning the cutoffs to use
+     */
+    public static void sortPartially(int minCharsToSort, String[] arr, int fromIndex, int toIndex, SorterTuning tuning)
+    {
+        if(tuning == null) throw new NullPointerException("tuning");
+        checkBounds(arr.length, fromIndex, toIndex);
+        if(toIndex - fromIndex < MIN_PACKED_SORT || minCharsToSort <= 0)
+        {
+            MSDStringSorter.sortPartially(minCharsToSort, arr, fromIndex, toIndex, tuning);
+            return;
+        }
+        new PackedPrefixStringSorter(minCharsToSort, arr, fromIndex, toIndex, tuning).sortAll(fromIndex, toIndex);
+    }
+
+    //Our own stack of runs is kept instead of recursing, as with enough strings sharing long prefixes, there can be a lot of levels
+    private final void sortAll(final int fromIndex, final int toIndex)
+    {
+        push(fromIndex, toIndex, 0);
+        while(pendingCount > 0)
+        {
+            pendingCount -= 3;
+            sortRange(pending[pendingCount], pending[pendingCount + 1], pending[pendingCount + 2]);
+        }
+    }
+
+    private final void push(final int fromIndex, final int toIndex, final int charIndex)
+    {
+        if(pendingCount == pending.length)
+            pending = Arrays.copyOf(pending, pending.length * 2);
+        pending[pendingCount++] = fromIndex;
+        pending[pendingCount++] = toIndex;
+        pending[pendingCount++] = charIndex;
+    }
+
+    //Every string in the range is already known to share their first charIndex characters
+    private final void sortRange(final int fromIndex, final int toIndex, int charIndex)
+    {
+        @SuppressWarnings("hiding") //We are trying to shift from a instance member lookup to a local variable lookup for performance
+        final String[] arr = this.arr;
+        @SuppressWarnings("hiding")
+        final int offset = this.offset;
+        @SuppressWarnings("hiding")
+        final int minCharsToSort = this.minCharsToSort;
+        charIndex += MSDStringSorter.findSharedPrefixLen(arr, fromIndex, toIndex, charIndex, minCharsToSort);
+        if(charIndex >= minCharsToSort) return;
+
+        final int charsPerKey = packKeys(fromIndex, toIndex, charIndex);
+        radixSortKeys(fromIndex - offset, toIndex - offset);
+
+        //Now move the strings to where the permutation says they go; the one pass over them that isn't in order
+        @SuppressWarnings("hiding")
+        final String[] strings = this.strings;
+        @SuppressWarnings("hiding")
+        final int[] perm = this.perm;
+        System.arraycopy(arr, fromIndex, strings, fromIndex - offset, toIndex - fromIndex);
+        for(int i = fromIndex; i < toIndex; ++i)
+            arr[i] = strings[perm[i - offset]];
+        Arrays.fill(strings, fromIndex - offset, toIndex - offset, null);
+
+        //And sort each run of equal keys past the characters that were packed
+        @SuppressWarnings("hiding")
+        final long[] keys = this.keys;
+        final int nextCharIndex = charIndex + charsPerKey;
+        final long lastCharMask = charsPerKey == LATIN1_CHARS_PER_KEY ? 0xFFL : 0xFFFFL;
+        int runStart = fromIndex;
+        while(runStart < toIndex)
+        {
+            final long key = keys[runStart - offset];
+            int runEnd = runStart + 1;
+            while(runEnd < toIndex && keys[runEnd - offset] == key)
+                ++runEnd;
+            if(runEnd - runStart > 1)
+            {
+                if((key & lastCharMask) == 0)
+                {
+                    //Some of these may have ended within the key, and can't be told apart from ones with '\0' characters there.
+                    //Without any '\0' characters, they are all equal, so this is just one pass over them.
+                    Arrays.sort(arr, runStart, runEnd);
+                }
+                else if(nextCharIndex < minCharsToSort)
+                {
+                    if(runEnd - runStart < MIN_PACKED_SORT)
+                        leafSorter.sortPartiallyFrom(nextCharIndex, minCharsToSort, arr, runStart, runEnd);
+                    else
+                        push(runStart, runEnd, nextCharIndex);
+                }
+            }
+            runStart = runEnd;
+        }
+    }
+
+    //Packs the characters starting at charIndex of each string in the range into keys, and starts off perm as the identity.
+    //Returns how many characters each key holds; if every one of those characters is Latin-1, twice as many fit.
+    private final int packKeys(final int fromIndex, final int toIndex, final int charIndex)
+    {
+        @SuppressWarnings("hiding")
+        final String[] arr = this.arr;
+        @SuppressWarnings("hiding")
+        final long[] keys = this.keys;
+        @SuppressWarnings("hiding")
+        final int[] perm = this.perm;
+        @SuppressWarnings("hiding")
+        final int offset = this.offset;
+        //Assume Latin-1 to start with, as it is by far the most common, and start over if that turns out to be wrong
+        int seen = 0;
+        for(int i = fromIndex; i < toIndex; ++i)
+        {
+            final String s = arr[i];
+            final int end = Math.min(s.length(), charIndex + LATIN1_CHARS_PER_KEY);
+            long key = 0;
+            for(int k = charIndex; k < end; ++k)
+            {
+                final char c = s.charAt(k);
+                seen |= c;
+                key = (key << Byte.SIZE) | c;
+            }
+            keys[i - offset] = key << (Byte.SIZE * (charIndex + LATIN1_CHARS_PER_KEY - Math.max(end, charIndex)));
+            perm[i - offset] = i - offset;
+        }
+        if(seen <= 0xFF) return LATIN1_CHARS_PER_KEY;
+        for(int i = fromIndex; i < toIndex; ++i)
+        {
+            final String s = arr[i];
+            final int end = Math.min(s.length(), charIndex + WIDE_CHARS_PER_KEY);
+            long key = 0;
+            for(int k = charIndex; k < end; ++k)
+                key = (key << Character.SIZE) | s.charAt(k);
+            keys[i - offset] = key << (Character.SIZE * (charIndex + WIDE_CHARS_PER_KEY - Math.max(end, charIndex)));
+        }
+        return WIDE_CHARS_PER_KEY;
+    }
+
+    //An LSD radix sort of the keys in [from, to) (indexes into keys), moving perm along with them.
+    //The counts for every byte are taken in one pass up front, and the passes for bytes that are the same for every key are skipped;
+    //for ASCII text packed 2 bytes a character, that is every other pass.
+    private final void radixSortKeys(final int from, final int to)
+    {
+        @SuppressWarnings("hiding")
+        final int[] counts = this.counts;
+        Arrays.fill(counts, 0);
+        long[] src = keys;
+        int[] srcPerm = perm;
+        long[] dest = keysBuffer;
+        int[] destPerm = permBuffer;
+        for(int i = from; i < to; ++i)
+        {
+            final long key = src[i];
+            for(int pass = 0; pass < RADIX_PASSES; ++pass)
+                ++counts[(pass << RADIX_BITS) + (int)((key >>> (pass * RADIX_BITS)) & (RADIX - 1))];
+        }
+        final int len = to - from;
+        for(int pass = 0; pass < RADIX_PASSES; ++pass)
+        {
+            final int base = pass << RADIX_BITS;
+            final int shift = pass * RADIX_BITS;
+            //Skip the pass if every key has the same byte here
+            if(counts[base + (int)((src[from] >>> shift) & (RADIX - 1))] == len) continue;
+            //Turn the counts into where each byte's keys start
+            int pos = from;
+            for(int b = base; b < base + RADIX; ++b)
+            {
+                final int count = counts[b];
+                counts[b] = pos;
+                pos += count;
+            }
+            for(int i = from; i < to; ++i)
+            {
+                final long key = src[i];
+                final int dst = counts[base + (int)((key >>> shift) & (RADIX - 1))]++;
+                dest[dst] = key;
+                destPerm[dst] = srcPerm[i];
+            }
+            final long[] tempKeys = src;
+            src = dest;
+            dest = tempKeys;
+            final int[] tempPerm = srcPerm;
+            srcPerm = destPerm;
+            destPerm = tempPerm;
+        }
+        //Keep the sorted keys where the rest of the sort expects them; the buffers only ever hold anything of use during a sort
+        if(src != keys)
+        {
+            keysBuffer = keys;
+            permBuffer = perm;
+            keys = src;
+            perm = srcPerm;
+        }
+    }
+
+    private static final void checkBounds(int length, int fromIndex, int toIndex)
+    {
+        if(fromIndex < 0) throw new ArrayIndexOutOfBoundsException(fromIndex + " < 0");
+        if(toIndex > length) throw new ArrayIndexOutOfBoundsException(toIndex + " > " + length);
+        if(fromIndex > toIndex)
+            throw new IllegalArgumentException("start position: " + fromIndex +
+                " > end position: " + toIndex);
+    }
+}
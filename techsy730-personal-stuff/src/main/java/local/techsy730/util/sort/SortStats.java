@@ -0,0 +1,162 @@
+package local.techsy730.util.sort;
+
+import java.util.Arrays;
+
+/**
+ * What went on in a single {@link MSDStringSorter} sort; how many bucket passes it took, how many strings they moved,
+ * how often each of the fallbacks for small ranges got used, and so on.
+ * <p>
+ * These are gathered as the sort goes, and handed to a {@link SortStatsListener} (or returned) once it is done.
+ * They are meant to explain why one sort took longer than another; a sort with many more passes or fallbacks per string
+ * than usual is one whose input doesn't suit an MSD sort (like long shared prefixes, or many small buckets).
+ *
+ * @author C. Sean Young
+ *
+ */
+public final class SortStats
+{
+    private final int strings;
+    //Filled in by MSDStringSorter as it goes
+    long bucketPasses;
+    long stringsScattered;
+    long stringsCopied;
+    long countTableGrowths;
+    long twoItemSorts;
+    long threeItemSorts;
+    long insertionSorts;
+    long comparatorSorts;
+    long rangeMerges;
+    int maxStackDepth;
+    //Bucket sizes by the highest one bit of the size; [i] counts the buckets of size [2^i, 2^(i+1))
+    final long[] bucketSizes = new long[Integer.SIZE];
+
+    SortStats(int strings)
+    {
+        this.strings = strings;
+    }
+
+    //Called for each bucket of more than one string a range is split into, that still needs sorting
+    final void bucket(int size)
+    {
+        ++bucketSizes[Integer.SIZE - 1 - Integer.numberOfLeadingZeros(size)];
+    }
+
+    /**
+     * @return how many strings were sorted
+     */
+    public int getStrings()
+    {
+        return strings;
+    }
+
+    /**
+     * @return how many times a range got bucket sorted on its next character(s)
+     */
+    public long getBucketPasses()
+    {
+        return bucketPasses;
+    }
+
+    /**
+     * @return how many strings were moved to their buckets, over all of the bucket passes;
+     *         divided by the number of strings, roughly how many characters deep the sort had to go
+     */
+    public long getStringsScattered()
+    {
+        return stringsScattered;
+    }
+
+    /**
+     * @return how many strings were copied back from the working copy to the array being sorted, with {@link System#arraycopy};
+     *         the bytes copied are this times the size of a reference (usually 4, with compressed references, or 8).
+     *         Always 0 for the in place sorts.
+     */
+    public long getStringsCopied()
+    {
+        return stringsCopied;
+    }
+
+    /**
+     * @return how many times the per character count tables had to grow to fit a larger character than any seen so far
+     */
+    public long getCountTableGrowths()
+    {
+        return countTableGrowths;
+    }
+
+    /**
+     * @return how many ranges of 2 strings were sorted by comparing them
+     */
+    public long getTwoItemSorts()
+    {
+        return twoItemSorts;
+    }
+
+    /**
+     * @return how many ranges of 3 strings were sorted by comparing them
+     */
+    public long getThreeItemSorts()
+    {
+        return threeItemSorts;
+    }
+
+    /**
+     * @return how many small ranges were finished off with an insertion sort comparing the rest of the strings
+     */
+    public long getInsertionSorts()
+    {
+        return insertionSorts;
+    }
+
+    /**
+     * @return how many ranges were sorted with a comparator instead; on the character being sorted on, on the rest of the strings,
+     *         or (for the in place sorts, and ranges with a very wide alphabet) with {@link Arrays#sort(Object[], java.util.Comparator)}
+     */
+    public long getComparatorSorts()
+    {
+        return comparatorSorts;
+    }
+
+    /**
+     * @return how many times a small range was merged with the one before it, to be sorted together
+     */
+    public long getRangeMerges()
+    {
+        return rangeMerges;
+    }
+
+    /**
+     * @return the most ranges that were waiting to be sorted at any one time
+     */
+    public int getMaxStackDepth()
+    {
+        return maxStackDepth;
+    }
+
+    /**
+     * The sizes of the buckets the ranges were split into by their next character, by the bucket passes
+     * (or by sorting small ranges on just that character), counting only the buckets of more than one string
+     * that still had to be sorted further (so not those whose strings were all equal).
+     * 
+     * @return the number of buckets of each size, by powers of 2; element i is how many buckets had at least 2^i strings,
+     *         but less than 2^(i+1). Changing it doesn't change these statistics.
+     */
+    public long[] getBucketSizeHistogram()
+    {
+        return bucketSizes.clone();
+    }
+
+    @Override
+    public String toString()
+    {
+        //Only up to the largest bucket size seen
+        int sizes = bucketSizes.length;
+        while(sizes > 0 && bucketSizes[sizes - 1] == 0)
+            --sizes;
+        return "SortStats[strings=" + strings + ", bucketPasses=" + bucketPasses + ", stringsScattered=" + stringsScattered +
+            ", stringsCopied=" + stringsCopied + ", countTableGrowths=" + countTableGrowths + ", twoItemSorts=" + twoItemSorts +
+            ", threeItemSorts=" + threeItemSorts + ", insertionSorts=" + insertionSorts + ", comparatorSorts=" + comparatorSorts +
+            ", rangeMerges=" + rangeMerges + ", maxStackDepth=" + maxStackDepth +
+            ", bucketSizeHistogram=" + Arrays.toString(Arrays.copyOf(bucketSizes, sizes)) + "]";
+    }
+}
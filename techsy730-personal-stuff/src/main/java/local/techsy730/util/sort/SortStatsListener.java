@@ -0,0 +1,21 @@
+package local.techsy730.util.sort;
+
+/**
+ * Told what went on in a sort, once it is done.
+ * <p>
+ * Given to the {@link MSDStringSorter} sorts that take one, to find out why some sorts take much longer than others.
+ * Gathering the statistics costs a little, so the usual thing to do is to only pass a listener to a sample of the sorts,
+ * and {@code null} (which costs nothing beyond a check per pass and per small range) to the rest.
+ *
+ * @author C. Sean Young
+ *
+ */
+public interface SortStatsListener
+{
+    /**
+     * Called once the sort is done, in the thread that ran it.
+     * 
+     * @param stats what went on in the sort; belongs to the listener from here on
+     */
+    void sortFinished(SortStats stats);
+}
@@ -0,0 +1,454 @@
+package local.techsy730.util.sort;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * The cutoffs {@link MSDStringSorter} and {@link MSDStringSorterWithCopyAvoidance} use to decide when to stop bucket sorting a range
+ * and finish it off with a comparison sort instead, and how hard to work at tracking how many characters are left to sort on.
+ * <p>
+ * Where these crossovers fall depends on the JVM and the hardware it runs on (how fast comparisons are compared to
+ * the counting and scattering of a bucket pass), so {@link #DEFAULT} is only ever a rough guess.
+ * {@link #calibrate()} times the crossovers on the current JVM and CPU to find a better one.
+ * Calibrating takes a few seconds, so the usual thing to do is to calibrate once per kind of machine, save the result
+ * (either with Java serialization, or as {@link #toProperties() properties}), and load that at startup into {@link #setDefault(SorterTuning)}.
+ * <p>
+ * Instances are immutable; the {@code with} methods return a copy with the one cutoff changed.
+ * Any values are safe to use, in that the sorts will still sort correctly; only how fast they do so changes.
+ *
+ * @author C. Sean Young
+ *
+ */
+public final class SorterTuning implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    // XXX Empirically determine a good estimate for these constants, based on common usage cases
+    //XXX This should be 16 or so on Java 7, but 7 on Java 6
+    //NOTE Keep in mind that when this triggers, *up to* all of the remaining characters will be looked at for each comparison
+    //Thus, setting this too high negates the advantages of MSD sort.
+    //This number was chosen based on some extremely rough "back of the envelope" theoretical calculations and verified loosely
+    //to be decent with very non-rigourous tests.
+    //The advantage is that once a chunk gets sorted by this, that chunk will never have to be looked at again.
+    //For this value, SMALLER numbers mean MORE hesitant to trigger the optimization
+    //XXX May be a tad high, but not by much
+    private static final int DEFAULT_MAX_INSERTION_SORT = 16;
+    //Set to the max insertion sort to effectively disable this optimization
+    //NOTE Keep in mind, if the Arrays.sort only on the current index is used
+    //then we have to loop through that segment AGAIN to find the next layer of "chunks".
+    //Thus, this needs to be kept somewhat low.
+    //But not too low, as MSD sorting does involve a lot of overhead
+    //For these two values, SMALLER numbers mean MORE hesitant to trigger the optimization
+    //XXX These seem a bit high in the 50-60 range...
+    private static final int DEFAULT_MAX_ARRAYS_INDEX_SORT = 51;
+    private static final int DEFAULT_MAX_ARRAYS_FULL_SORT = 59;
+
+    //This causes a few extra loops to be run, and makes other loops gain extra operations, thus keep it somewhat low
+    //However, the savings from a correctly computed max length can be rather large, so thus you don't need to be too conservative with it.
+    //XXX This value seems a bit high
+    private static final int DEFAULT_MAX_UPDATE_MAX_LENGTH = Math.min((int)(Math.max(DEFAULT_MAX_ARRAYS_FULL_SORT, DEFAULT_MAX_ARRAYS_INDEX_SORT) * 2.2), 120);
+
+    //Blocks of size less than this we don't binary search over to find the guess for the end character. It is usually not worth it in these cases.
+    //For this value, HIGHER numbers mean MORE hesitant to trigger the optimization
+    //XXX This seems a tad high for the common case of only 2 or 3 characters, even though it may be good for another common case of 9 or 10 characters
+    private static final int DEFAULT_MIN_BINARY_SEARCH = 28;
+
+    // For these two values, SMALLER numbers mean MORE hesitant to trigger the optimization
+    //Merging is a rather expensive operation, just to save a few method calls. Thus, be conservative with this number.
+    //XXX This seems a tad low, but not by much
+    private static final int DEFAULT_MAX_REMAINING_BEFORE_MERGING_RANGES = 2;
+    //Be conservative with this number, as not only will it trigger more aggressive merges, but also cause a non-insertion call to
+    //arrays sort to look at all of the remaining characters, which could get expensive.
+    //XXX This seems a tad low, but not by much
+    private static final int DEFAULT_MAX_REMAINING_BEFORE_FULL_ARRAYS_SORT = 4;
+
+    //If there "seems" to be more characters than this value after the request max index to sort,
+    //then instead of trying to sort the "rest of" the string, the various, normal "total sorting" fallbacks
+    //(like insertion sort) will instead use a comparator that only using a substring.
+    //For this value, LOWER numbers mean MORE hesitant to trigger the optimization
+    private static final int DEFAULT_MAX_DIFF_BETWEEN_MAX_INDEX_GUESS_AND_REAL_MAX = 30;
+
+    /**
+     * The built in guesses, which are what the sorters have always used.
+     */
+    public static final SorterTuning DEFAULT = new SorterTuning(DEFAULT_MAX_INSERTION_SORT, DEFAULT_MAX_ARRAYS_INDEX_SORT,
+        DEFAULT_MAX_ARRAYS_FULL_SORT, DEFAULT_MAX_UPDATE_MAX_LENGTH, DEFAULT_MIN_BINARY_SEARCH, DEFAULT_MAX_REMAINING_BEFORE_MERGING_RANGES,
+        DEFAULT_MAX_REMAINING_BEFORE_FULL_ARRAYS_SORT, DEFAULT_MAX_DIFF_BETWEEN_MAX_INDEX_GUESS_AND_REAL_MAX);
+
+    private static volatile SorterTuning currentDefault = DEFAULT;
+
+    //Kept package private and final, so the sorters can read them directly
+    final int maxInsertionSort;
+    final int maxArraysIndexSort;
+    final int maxArraysFullSort;
+    final int maxUpdateMaxLength;
+    final int minBinarySearch;
+    final int maxRemainingBeforeMergingRanges;
+    final int maxRemainingBeforeFullArraysSort;
+    final int maxDiffBetweenMaxIndexGuessAndRealMax;
+
+    private SorterTuning(int maxInsertionSort, int maxArraysIndexSort, int maxArraysFullSort, int maxUpdateMaxLength,
+        int minBinarySearch, int maxRemainingBeforeMergingRanges, int maxRemainingBeforeFullArraysSort, int maxDiffBetweenMaxIndexGuessAndRealMax)
+    {
+        this.maxInsertionSort = checkNonNegative("maxInsertionSort", maxInsertionSort);
+        this.maxArraysIndexSort = checkNonNegative("maxArraysIndexSort", maxArraysIndexSort);
+        this.maxArraysFullSort = checkNonNegative("maxArraysFullSort", maxArraysFullSort);
+        this.maxUpdateMaxLength = checkNonNegative("maxUpdateMaxLength", maxUpdateMaxLength);
+        this.minBinarySearch = checkNonNegative("minBinarySearch", minBinarySearch);
+        this.maxRemainingBeforeMergingRanges = checkNonNegative("maxRemainingBeforeMergingRanges", maxRemainingBeforeMergingRanges);
+        this.maxRemainingBeforeFullArraysSort = checkNonNegative("maxRemainingBeforeFullArraysSort", maxRemainingBeforeFullArraysSort);
+        this.maxDiffBetweenMaxIndexGuessAndRealMax = checkNonNegative("maxDiffBetweenMaxIndexGuessAndRealMax", maxDiffBetweenMaxIndexGuessAndRealMax);
+    }
+
+    private static final int checkNonNegative(String name, int value)
+    {
+        if(value < 0) throw new IllegalArgumentException(name + ": " + value + " < 0");
+        return value;
+    }
+
+    /**
+     * @return the tuning the sorting methods that don't take one use
+     */
+    public static SorterTuning getDefault()
+    {
+        return currentDefault;
+    }
+
+    /**
+     * Sets the tuning the sorting methods that don't take one use from now on.
+     * Sorts already running, and {@link MSDStringSorter.Context}s already made, keep using the tuning they started with.
+     *
+     * @param tuning the new default
+     */
+    public static void setDefault(SorterTuning tuning)
+    {
+        if(tuning == null) throw new NullPointerException("tuning");
+        currentDefault = tuning;
+    }
+
+    /** @return the largest range that is finished off with an insertion sort over all of its remaining characters */
+    public int getMaxInsertionSort()
+    {
+        return maxInsertionSort;
+    }
+
+    public SorterTuning withMaxInsertionSort(int value)
+    {
+        return new SorterTuning(value, maxArraysIndexSort, maxArraysFullSort, maxUpdateMaxLength, minBinarySearch,
+            maxRemainingBeforeMergingRanges, maxRemainingBeforeFullArraysSort, maxDiffBetweenMaxIndexGuessAndRealMax);
+    }
+
+    /** @return the largest range that is comparison sorted on only its current character, instead of being bucket sorted on it */
+    public int getMaxArraysIndexSort()
+    {
+        return maxArraysIndexSort;
+    }
+
+    public SorterTuning withMaxArraysIndexSort(int value)
+    {
+        return new SorterTuning(maxInsertionSort, value, maxArraysFullSort, maxUpdateMaxLength, minBinarySearch,
+            maxRemainingBeforeMergingRanges, maxRemainingBeforeFullArraysSort, maxDiffBetweenMaxIndexGuessAndRealMax);
+    }
+
+    /**
+     * @return the largest range that is comparison sorted on all of its remaining characters,
+     * if there are few enough characters left to sort on (see {@link #getMaxRemainingBeforeFullArraysSort()})
+     */
+    public int getMaxArraysFullSort()
+    {
+        return maxArraysFullSort;
+    }
+
+    public SorterTuning withMaxArraysFullSort(int value)
+    {
+        return new SorterTuning(maxInsertionSort, maxArraysIndexSort, value, maxUpdateMaxLength, minBinarySearch,
+            maxRemainingBeforeMergingRanges, maxRemainingBeforeFullArraysSort, maxDiffBetweenMaxIndexGuessAndRealMax);
+    }
+
+    /** @return the largest range that keeps track of the length of its longest string, to cut down on the number of characters left to sort on */
+    public int getMaxUpdateMaxLength()
+    {
+        return maxUpdateMaxLength;
+    }
+
+    public SorterTuning withMaxUpdateMaxLength(int value)
+    {
+        return new SorterTuning(maxInsertionSort, maxArraysIndexSort, maxArraysFullSort, value, minBinarySearch,
+            maxRemainingBeforeMergingRanges, maxRemainingBeforeFullArraysSort, maxDiffBetweenMaxIndexGuessAndRealMax);
+    }
+
+    /** @return the smallest sorted range that is binary searched for where each character's block ends, rather than scanned */
+    public int getMinBinarySearch()
+    {
+        return minBinarySearch;
+    }
+
+    public SorterTuning withMinBinarySearch(int value)
+    {
+        return new SorterTuning(maxInsertionSort, maxArraysIndexSort, maxArraysFullSort, maxUpdateMaxLength, value,
+            maxRemainingBeforeMergingRanges, maxRemainingBeforeFullArraysSort, maxDiffBetweenMaxIndexGuessAndRealMax);
+    }
+
+    /** @return neighbouring tiny blocks are merged into one range to sort only when fewer than this many characters are left to sort on */
+    public int getMaxRemainingBeforeMergingRanges()
+    {
+        return maxRemainingBeforeMergingRanges;
+    }
+
+    public SorterTuning withMaxRemainingBeforeMergingRanges(int value)
+    {
+        return new SorterTuning(maxInsertionSort, maxArraysIndexSort, maxArraysFullSort, maxUpdateMaxLength, minBinarySearch,
+            value, maxRemainingBeforeFullArraysSort, maxDiffBetweenMaxIndexGuessAndRealMax);
+    }
+
+    /** @return ranges up to {@link #getMaxArraysFullSort()} long are fully comparison sorted when at most this many characters are left to sort on */
+    public int getMaxRemainingBeforeFullArraysSort()
+    {
+        return maxRemainingBeforeFullArraysSort;
+    }
+
+    public SorterTuning withMaxRemainingBeforeFullArraysSort(int value)
+    {
+        return new SorterTuning(maxInsertionSort, maxArraysIndexSort, maxArraysFullSort, maxUpdateMaxLength, minBinarySearch,
+            maxRemainingBeforeMergingRanges, value, maxDiffBetweenMaxIndexGuessAndRealMax);
+    }
+
+    /**
+     * @return for partial sorts, if the strings of a range look to be more than this many characters longer than what is left to sort on,
+     * the comparison sorts compare substrings instead of whole suffixes
+     */
+    public int getMaxDiffBetweenMaxIndexGuessAndRealMax()
+    {
+        return maxDiffBetweenMaxIndexGuessAndRealMax;
+    }
+
+    public SorterTuning withMaxDiffBetweenMaxIndexGuessAndRealMax(int value)
+    {
+        return new SorterTuning(maxInsertionSort, maxArraysIndexSort, maxArraysFullSort, maxUpdateMaxLength, minBinarySearch,
+            maxRemainingBeforeMergingRanges, maxRemainingBeforeFullArraysSort, value);
+    }
+
+    //The names the values go by, in the properties form, and in toString
+    private static final String[] NAMES = {"maxInsertionSort", "maxArraysIndexSort", "maxArraysFullSort", "maxUpdateMaxLength",
+        "minBinarySearch", "maxRemainingBeforeMergingRanges", "maxRemainingBeforeFullArraysSort", "maxDiffBetweenMaxIndexGuessAndRealMax"};
+
+    private int[] values()
+    {
+        return new int[]{maxInsertionSort, maxArraysIndexSort, maxArraysFullSort, maxUpdateMaxLength, minBinarySearch,
+            maxRemainingBeforeMergingRanges, maxRemainingBeforeFullArraysSort, maxDiffBetweenMaxIndexGuessAndRealMax};
+    }
+
+    private static SorterTuning fromValues(int[] v)
+    {
+        return new SorterTuning(v[0], v[1], v[2], v[3], v[4], v[5], v[6], v[7]);
+    }
+
+    /**
+     * @return this tuning as properties, one per cutoff, named after the cutoff (for example {@code maxInsertionSort=16})
+     */
+    public Properties toProperties()
+    {
+        final Properties props = new Properties();
+        final int[] values = values();
+        for(int i = 0; i < NAMES.length; ++i)
+            props.setProperty(NAMES[i], Integer.toString(values[i]));
+        return props;
+    }
+
+    /**
+     * Reads a tuning back from the form {@link #toProperties()} gives.
+     * Any cutoff not given keeps its value from {@link #DEFAULT}, so a properties file only needs to list the cutoffs it changes.
+     *
+     * @param props the properties to read
+     * @return the tuning they describe
+     * @throws IllegalArgumentException if any of the values given is not a non negative integer
+     */
+    public static SorterTuning fromProperties(Properties props)
+    {
+        final int[] values = DEFAULT.values();
+        for(int i = 0; i < NAMES.length; ++i)
+        {
+            final String value = props.getProperty(NAMES[i]);
+            if(value == null) continue;
+            try
+            {
+                values[i] = Integer.parseInt(value.trim());
+            }
+            catch(NumberFormatException e)
+            {
+                throw new IllegalArgumentException(NAMES[i] + ": not an integer: " + value, e);
+            }
+        }
+        return fromValues(values);
+    }
+
+    //Deserialization skips the constructor, so the checks it does have to be done again
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        try
+        {
+            fromValues(values());
+        }
+        catch(IllegalArgumentException e)
+        {
+            final InvalidObjectException toThrow = new InvalidObjectException(e.getMessage());
+            toThrow.initCause(e);
+            throw toThrow;
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if(this == obj) return true;
+        if(!(obj instanceof SorterTuning)) return false;
+        return Arrays.equals(values(), ((SorterTuning)obj).values());
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Arrays.hashCode(values());
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder sb = new StringBuilder("SorterTuning[");
+        final int[] values = values();
+        for(int i = 0; i < NAMES.length; ++i)
+        {
+            if(i != 0) sb.append(", ");
+            sb.append(NAMES[i]).append('=').append(values[i]);
+        }
+        return sb.append(']').toString();
+    }
+
+    // Calibration
+
+    //The values each cutoff is tried at, in the order the cutoffs are calibrated in.
+    //The cutoffs that decide the most ranges go first, so the later ones are tuned against them.
+    private static final int[][] CANDIDATES = {
+        {4, 6, 8, 10, 12, 16, 20, 24, 32},                  //maxInsertionSort
+        {16, 24, 32, 40, 51, 64, 80, 96},                   //maxArraysIndexSort
+        {16, 24, 32, 40, 48, 59, 72, 88, 104},              //maxArraysFullSort
+        {0, 30, 60, 90, 120, 180, 240},                     //maxUpdateMaxLength
+        {8, 12, 16, 20, 28, 40, 56, 80},                    //minBinarySearch
+        {0, 1, 2, 3, 4},                                    //maxRemainingBeforeMergingRanges
+        {0, 1, 2, 3, 4, 6, 8},                              //maxRemainingBeforeFullArraysSort
+    };
+    //maxDiffBetweenMaxIndexGuessAndRealMax only matters for partial sorts, which the calibration doesn't time, so it is left alone
+
+    //How many times each candidate is timed; the best time is the one used, as that is the one least disturbed by everything else running
+    private static final int CALIBRATION_TRIALS = 5;
+    //A candidate has to beat the current value by at least this fraction to replace it, so noise doesn't make the cutoffs wander
+    private static final double MIN_IMPROVEMENT = 0.02;
+    private static final int CALIBRATION_INPUT_SIZE = 20000;
+
+    /**
+     * Finds the cutoffs that sort fastest on the current JVM and CPU, starting from {@link #DEFAULT},
+     * by timing {@link MSDStringSorter} over a few generated inputs (short and long random strings, strings with long shared prefixes,
+     * and strings with many duplicates) with each cutoff varied in turn.
+     * <p>
+     * This takes a few seconds, and is only as good as the timings it gets; run it on an otherwise idle machine.
+     *
+     * @return the fastest tuning found
+     */
+    public static SorterTuning calibrate()
+    {
+        final Random rand = new Random(0x5EED);
+        final String[][] inputs = new String[4][CALIBRATION_INPUT_SIZE];
+        final String[] prefixes = {"http://www.example.com/", "http://www.example.com/images/", "https://cdn.example.org/static/"};
+        for(int i = 0; i < CALIBRATION_INPUT_SIZE; ++i)
+        {
+            inputs[0][i] = randomString(rand, 1 + rand.nextInt(12), 'a', 26);
+            inputs[1][i] = randomString(rand, 20 + rand.nextInt(60), ' ', 95);
+            inputs[2][i] = prefixes[rand.nextInt(prefixes.length)] + randomString(rand, rand.nextInt(16), 'a', 26);
+            inputs[3][i] = "key" + rand.nextInt(CALIBRATION_INPUT_SIZE / 50);
+        }
+        return calibrate(inputs);
+    }
+
+    /**
+     * Finds the cutoffs that sort the given inputs fastest on the current JVM and CPU, starting from {@link #DEFAULT}.
+     * Each cutoff is varied in turn over a range of values, keeping the others at the best found so far,
+     * with {@link MSDStringSorter} timed sorting copies of every one of the inputs for each value.
+     * <p>
+     * Calibrating against a sample of what will actually be sorted gives a tuning fit for that kind of data;
+     * a few thousand to a few tens of thousands of strings per input is plenty.
+     * The time this takes grows with the total size of the inputs; with 100 thousand strings in all, it is a few seconds.
+     *
+     * @param inputs the arrays to time sorting; they are not modified
+     * @return the fastest tuning found
+     */
+    public static SorterTuning calibrate(String[]... inputs)
+    {
+        final String[][] scratch = new String[inputs.length][];
+        for(int i = 0; i < inputs.length; ++i)
+            scratch[i] = new String[inputs[i].length];
+
+        //Warm up, so the first candidates aren't timed against code that hasn't been compiled yet
+        final long warmupEnd = System.nanoTime() + 500L * 1000 * 1000;
+        do
+        {
+            time(DEFAULT, inputs, scratch);
+        }
+        while(System.nanoTime() < warmupEnd);
+
+        final int[] best = DEFAULT.values();
+        long bestTime = time(fromValues(best), inputs, scratch);
+        for(int param = 0; param < CANDIDATES.length; ++param)
+        {
+            final int current = best[param];
+            int bestValue = current;
+            for(int candidate : CANDIDATES[param])
+            {
+                if(candidate == current) continue;
+                best[param] = candidate;
+                final long candidateTime = time(fromValues(best), inputs, scratch);
+                if(candidateTime < bestTime * (1 - MIN_IMPROVEMENT))
+                {
+                    bestTime = candidateTime;
+                    bestValue = candidate;
+                }
+            }
+            best[param] = bestValue;
+            //Time the pick again, so the bar for the next cutoff isn't a lucky outlier
+            bestTime = time(fromValues(best), inputs, scratch);
+        }
+        return fromValues(best);
+    }
+
+    //The best of a few timings of sorting all of the inputs with the given tuning
+    private static long time(SorterTuning tuning, String[][] inputs, String[][] scratch)
+    {
+        long best = Long.MAX_VALUE;
+        for(int trial = 0; trial < CALIBRATION_TRIALS; ++trial)
+        {
+            long total = 0;
+            for(int i = 0; i < inputs.length; ++i)
+            {
+                System.arraycopy(inputs[i], 0, scratch[i], 0, inputs[i].length);
+                final long start = System.nanoTime();
+                MSDStringSorter.sort(scratch[i], tuning);
+                total += System.nanoTime() - start;
+            }
+            best = Math.min(best, total);
+        }
+        return best;
+    }
+
+    private static String randomString(Random rand, int len, char base, int alphabet)
+    {
+        final char[] chars = new char[len];
+        for(int i = 0; i < len; ++i)
+            chars[i] = (char)(base + rand.nextInt(alphabet));
+        return new String(chars);
+    }
+}
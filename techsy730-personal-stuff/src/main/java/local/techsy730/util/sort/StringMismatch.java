@@ -0,0 +1,43 @@
+package local.techsy730.util.sort;
+
+/**
+ * Finds where two strings (or char arrays) first differ, for the comparisons and shared prefix scans of the string sorters.
+ * <p>
+ * This is the version for Java 7 and 8, going one character at a time.
+ * The multi-release JAR has another version of this class for Java 9 and up (from {@code src/main/java9}),
+ * which goes through long runs of equal characters with {@link java.util.Arrays#mismatch}, many characters at a time.
+ * Both versions must have the same methods, with the same behavior.
+ *
+ * @author C. Sean Young
+ *
+ */
+final class StringMismatch
+{
+    private StringMismatch()
+    {
+    }
+
+    /**
+     * Finds the first index in [{@code from}, {@code end}) where the two strings differ, or where either of them ends.
+     *
+     * @return that index, or {@code end} if there is no such index, or {@code from} if it is already past either string (or {@code end})
+     */
+    static final int mismatch(final String s1, final String s2, int from, int end)
+    {
+        end = Math.min(end, Math.min(s1.length(), s2.length()));
+        while(from < end && s1.charAt(from) == s2.charAt(from))
+            ++from;
+        return from;
+    }
+
+    /**
+     * Same as {@link #mismatch(String, String, int, int)}, for the first {@code aLen} and {@code bLen} characters of the given arrays.
+     */
+    static final int mismatch(final char[] a, final int aLen, final char[] b, final int bLen, int from, int end)
+    {
+        end = Math.min(end, Math.min(aLen, bLen));
+        while(from < end && a[from] == b[from])
+            ++from;
+        return from;
+    }
+}
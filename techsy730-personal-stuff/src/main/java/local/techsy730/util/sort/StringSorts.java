@@ -0,0 +1,462 @@
+package local.techsy730.util.sort;
+
+import java.util.Arrays;
+
+/**
+ * A front end to the string sorts in this package that picks which one to use for each input, so callers don't have to.
+ * <p>
+ * The notes in {@link MSDStringSorter} on when MSD radix sort beats {@link Arrays#sort(Object[])} are about the input,
+ * which callers sorting whatever shows up in a request can't know ahead of time. Instead, this takes a small sample of the input
+ * (a few hundred strings at most, regardless of the input size) and looks at
+ * <ul>
+ * <li>how presorted it is, from how many neighbours in a few short windows are already in order (or in reverse order)</li>
+ * <li>how wide the alphabet is, from the largest character seen near the start of the sampled strings</li>
+ * <li>how small the alphabet is, from how many distinct characters are seen at each of the first few positions of the sampled strings</li>
+ * <li>the entropy of the early characters of the sampled strings (how many bits each MSD pass gets to resolve), and their lengths</li>
+ * <li>how many of the sampled strings are duplicates of each other</li>
+ * </ul>
+ * and from that, picks one of the {@link Algorithm}s. The choice, along with what was measured, is returned as a {@link Decision}
+ * so it can be logged.
+ *
+ * @author C. Sean Young
+ *
+ */
+public final class StringSorts
+{
+    // XXX Empirically determine a good estimate for these constants, based on common usage cases
+    //The current values were picked from timing each of the sorts against each other over the corpora in the benchmarks module
+    //(and a few more adversarial ones), and then leaning towards Arrays.sort where the choice was close.
+
+    //Inputs smaller than this are always given to Arrays.sort, without even sampling them.
+    //At this size the sample would be a noticeable part of the time of the sort, and the radix sorts only ever win by a few microseconds.
+    //For this value, HIGHER numbers mean MORE hesitant to trigger the optimization
+    private static final int MIN_SAMPLED = 256;
+    //Inputs smaller than this are given to Arrays.sort unless they are heavy with duplicates.
+    //For this value, HIGHER numbers mean MORE hesitant to trigger the optimization
+    private static final int MIN_RADIX_SORT = 512;
+    //The fraction of the sample that has to be duplicates of another sampled string for small inputs to still go to a radix sort
+    private static final double MIN_DUPLICATE_RATIO_FOR_SMALL = 0.5;
+
+    //The most strings the sample will look at, and the fraction of the input that will be sampled until then
+    private static final int MAX_SAMPLE_SIZE = 256;
+    private static final int SAMPLE_FRACTION_SHIFT = 3;
+    //Runs are looked for in this many evenly spaced windows of (up to) this many neighbouring strings each
+    private static final int RUN_WINDOWS = 8;
+    private static final int MAX_RUN_WINDOW_LENGTH = 32;
+    //If at least this fraction of neighbours in the run windows are in order (or all in reverse order), the input is treated as presorted.
+    //Arrays.sort (being TimSort) is close to linear for these, while the radix sorts still have to go through every character.
+    //For this value, HIGHER numbers mean MORE hesitant to trigger the optimization
+    private static final double MIN_PRESORTED_FRACTION = 0.9;
+
+    //How many characters from the start of each sampled string are looked at for the alphabet width and entropy
+    private static final int EARLY_CHARS = 16;
+    //The count tables of the radix sorts are as large as the largest character seen, and have to be walked through for every range bucket sorted.
+    //Past this, that is expensive enough that the radix sorts only win for large inputs.
+    private static final int MIN_WIDE_ALPHABET_CHAR = 0x1000;
+    //Inputs with a wide alphabet smaller than this are given to Arrays.sort
+    //For this value, HIGHER numbers mean MORE hesitant to trigger the optimization
+    private static final int MIN_WIDE_ALPHABET_RADIX_SORT = 1 << 13;
+    //If no early character position has more distinct characters than this, the count tables of the radix sorts are nearly all empty,
+    //and each bucket pass only splits the input a few ways; multikey quicksort does better there, as it has no count tables at all.
+    private static final int MAX_SMALL_ALPHABET = 4;
+    //Unless this fraction of the sample or more are duplicates; the radix sorts keep the duplicates in their original order as they go,
+    //so the pointer chasing to get to their characters stays close to sequential, while the splits of multikey quicksort scatter them.
+    private static final double MAX_DUPLICATE_RATIO_FOR_SMALL_ALPHABET = 0.5;
+    //If no early character position has more entropy than this (in bits), each bucket pass only splits the input a little.
+    //Such inputs (strings that are mostly one character, with a few others sprinkled in) take about log2(n) / entropy passes to sort,
+    //so long enough strings of them are given to Arrays.sort, up to MAX_LOW_ENTROPY_TIM_SORT strings.
+    private static final double MAX_LOW_ENTROPY_BITS = 1.25;
+    //For this value, SMALLER numbers mean MORE hesitant to trigger the optimization
+    private static final int MAX_LOW_ENTROPY_TIM_SORT = 1 << 15;
+
+    //c * log2(c) for every count the sample can have (with 0 * log2(0) taken as 0), so the entropy doesn't need a logarithm per symbol
+    private static final double[] C_LOG2_C = new double[MAX_SAMPLE_SIZE + 1];
+
+    static
+    {
+        for(int c = 1; c <= MAX_SAMPLE_SIZE; ++c)
+            C_LOG2_C[c] = c * Math.log(c) / Math.log(2);
+    }
+
+    private StringSorts()
+    {
+    }
+
+    /**
+     * The sorts {@link StringSorts} can pick from.
+     */
+    public static enum Algorithm
+    {
+        /** {@link MSDStringSorter} */
+        MSD
+        {
+            @Override
+            public void sort(String[] arr, int fromIndex, int toIndex)
+            {
+                MSDStringSorter.sort(arr, fromIndex, toIndex);
+            }
+        },
+        /** {@link MSDStringSorterWithCopyAvoidance} */
+        MSD_COPY_AVOIDANCE
+        {
+            @Override
+            public void sort(String[] arr, int fromIndex, int toIndex)
+            {
+                MSDStringSorterWithCopyAvoidance.sort(arr, fromIndex, toIndex);
+            }
+        },
+        /** {@link MultikeyQuickSorter} */
+        MULTIKEY_QUICKSORT
+        {
+            @Override
+            public void sort(String[] arr, int fromIndex, int toIndex)
+            {
+                MultikeyQuickSorter.sort(arr, fromIndex, toIndex);
+            }
+        },
+        /** {@link Arrays#sort(Object[], int, int)}, which is TimSort as of Java 7 */
+        TIM_SORT
+        {
+            @Override
+            public void sort(String[] arr, int fromIndex, int toIndex)
+            {
+                Arrays.sort(arr, fromIndex, toIndex);
+            }
+        };
+
+        /**
+         * Sorts the given range with this algorithm.
+         *
+         * @param arr the array to sort
+         * @param fromIndex the index of the first element to sort (inclusive)
+         * @param toIndex the index of the last element to sort (exclusive)
+         */
+        public abstract void sort(String[] arr, int fromIndex, int toIndex);
+    }
+
+    /**
+     * Why an {@link Algorithm} was picked.
+     */
+    public static enum Reason
+    {
+        /** The input was too small for the radix sorts' overhead to pay off */
+        SMALL_INPUT,
+        /** Most of the sampled neighbours were already in order, or in reverse order */
+        PRESORTED,
+        /** Characters far up in the character space were seen, which makes the count tables of the radix sorts large */
+        WIDE_ALPHABET,
+        /** Only a few distinct characters were seen at each of the early positions, like in DNA or bit strings */
+        SMALL_ALPHABET,
+        /** The early characters had so little entropy that each radix sort pass would only split the input a little */
+        LOW_ENTROPY,
+        /** Nothing about the input stood out against radix sorting it */
+        RADIX_FRIENDLY
+    }
+
+    /**
+     * Which sort was picked for an input, why, and what the sample of the input looked like.
+     * Anything not measured (as the input was too small to sample, or was found to be presorted before the rest of the sample was taken) is zero.
+     */
+    public static final class Decision
+    {
+        private final Algorithm algorithm;
+        private final Reason reason;
+        private final int size;
+        private final int sampleSize;
+        private final double averageLength;
+        private final double presortedFraction;
+        private final char maxEarlyChar;
+        private final int earlyAlphabetSize;
+        private final double earlyCharEntropy;
+        private final double duplicateRatio;
+
+        Decision(Algorithm algorithm, Reason reason, int size, int sampleSize, double averageLength, double presortedFraction,
+            char maxEarlyChar, int earlyAlphabetSize, double earlyCharEntropy, double duplicateRatio)
+        {
+            this.algorithm = algorithm;
+            this.reason = reason;
+            this.size = size;
+            this.sampleSize = sampleSize;
+            this.averageLength = averageLength;
+            this.presortedFraction = presortedFraction;
+            this.maxEarlyChar = maxEarlyChar;
+            this.earlyAlphabetSize = earlyAlphabetSize;
+            this.earlyCharEntropy = earlyCharEntropy;
+            this.duplicateRatio = duplicateRatio;
+        }
+
+        public Algorithm getAlgorithm()
+        {
+            return algorithm;
+        }
+
+        public Reason getReason()
+        {
+            return reason;
+        }
+
+        /** @return the number of strings in the range being sorted */
+        public int getSize()
+        {
+            return size;
+        }
+
+        /** @return the number of strings sampled for the length, alphabet, entropy and duplicate measures */
+        public int getSampleSize()
+        {
+            return sampleSize;
+        }
+
+        public double getAverageLength()
+        {
+            return averageLength;
+        }
+
+        /**
+         * @return the fraction of neighbours in the run windows that were in order, or that were in reverse order, whichever is larger
+         */
+        public double getPresortedFraction()
+        {
+            return presortedFraction;
+        }
+
+        /** @return the largest character seen in the first few characters of the sampled strings */
+        public char getMaxEarlyChar()
+        {
+            return maxEarlyChar;
+        }
+
+        /** @return the most distinct characters seen at any one of the first few character positions over the sampled strings */
+        public int getEarlyAlphabetSize()
+        {
+            return earlyAlphabetSize;
+        }
+
+        /** @return the largest entropy (in bits) of any one of the first few character positions over the sampled strings */
+        public double getEarlyCharEntropy()
+        {
+            return earlyCharEntropy;
+        }
+
+        /** @return the fraction of the sampled strings that were equal to another sampled string */
+        public double getDuplicateRatio()
+        {
+            return duplicateRatio;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s (%s) for %d strings [sample %d, average length %.1f, presorted %.2f, max early char U+%04X," +
+                " early alphabet %d, early char entropy %.2f bits, duplicates %.2f]",
+                algorithm, reason, size, sampleSize, averageLength, presortedFraction, (int)maxEarlyChar, earlyAlphabetSize,
+                earlyCharEntropy, duplicateRatio);
+        }
+    }
+
+    public static final Decision sort(String[] arr)
+    {
+        return sort(arr, 0, arr.length);
+    }
+
+    /**
+     * Sorts the given range with whichever sort {@link #choose(String[], int, int)} picks for it.
+     *
+     * @param arr the array to sort
+     * @param fromIndex the index of the first element to sort (inclusive)
+     * @param toIndex the index of the last element to sort (exclusive)
+     * @return the sort that was used, and why
+     */
+    public static Decision sort(String[] arr, int fromIndex, int toIndex)
+    {
+        final Decision decision = choose(arr, fromIndex, toIndex);
+        decision.getAlgorithm().sort(arr, fromIndex, toIndex);
+        return decision;
+    }
+
+    public static final Decision choose(String[] arr)
+    {
+        return choose(arr, 0, arr.length);
+    }
+
+    /**
+     * Picks the sort to use for the given range, without sorting it.
+     * The range is only sampled, so this takes about the same (small) time regardless of how large the range is.
+     *
+     * @param arr the array that would be sorted
+     * @param fromIndex the index of the first element that would be sorted (inclusive)
+     * @param toIndex the index of the last element that would be sorted (exclusive)
+     * @return the sort to use, and why
+     */
+    public static Decision choose(String[] arr, int fromIndex, int toIndex)
+    {
+        checkBounds(arr.length, fromIndex, toIndex);
+        final int len = toIndex - fromIndex;
+        if(len < MIN_SAMPLED)
+            return new Decision(Algorithm.TIM_SORT, Reason.SMALL_INPUT, len, 0, 0, 0, '\0', 0, 0, 0);
+
+        final double presortedFraction = presortedFraction(arr, fromIndex, toIndex);
+        // Nothing else would change the decision, and TimSort is fast enough on these that the rest of the sample would be a noticeable cost
+        if(presortedFraction >= MIN_PRESORTED_FRACTION)
+            return new Decision(Algorithm.TIM_SORT, Reason.PRESORTED, len, 0, 0, presortedFraction, '\0', 0, 0, 0);
+
+        // Evenly spaced, rather than random, so the same input always gets the same decision
+        final int sampleSize = Math.min(MAX_SAMPLE_SIZE, len >>> SAMPLE_FRACTION_SHIFT);
+        final String[] sample = new String[sampleSize];
+        long totalLength = 0;
+        for(int k = 0; k < sampleSize; ++k)
+        {
+            sample[k] = arr[fromIndex + (int)((long)k * len / sampleSize)];
+            totalLength += sample[k].length();
+        }
+        final double averageLength = (double)totalLength / sampleSize;
+        final double duplicateRatio = (double)countDuplicates(sample) / sampleSize;
+
+        // Look at the sampled characters one position at a time.
+        // The characters are only told apart by their low byte; this can only merge symbols (so underestimate the entropy),
+        // and that only matters for the wide alphabets that are decided on by maxEarlyChar before the entropy (or alphabet size) is even looked at.
+        final int[] counts = new int[1 << 8];
+        final int[] seen = new int[Math.min(sampleSize, 1 << 8)];
+        char maxEarlyChar = '\0';
+        int earlyAlphabetSize = 0;
+        double earlyCharEntropy = 0;
+        for(int p = 0; p < EARLY_CHARS; ++p)
+        {
+            int present = 0;
+            int seenCount = 0;
+            for(int k = 0; k < sampleSize; ++k)
+            {
+                final String s = sample[k];
+                if(p < s.length())
+                {
+                    final char c = s.charAt(p);
+                    maxEarlyChar = c > maxEarlyChar ? c : maxEarlyChar;
+                    if(counts[c & 0xFF]++ == 0)
+                        seen[seenCount++] = c & 0xFF;
+                    ++present;
+                }
+            }
+            if(present == 0) break;
+            earlyAlphabetSize = Math.max(earlyAlphabetSize, seenCount);
+            // The strings that already ended count as one more symbol.
+            // The entropy of symbols seen c_i times out of N is log2(N) - sum(c_i * log2(c_i)) / N
+            double weighted = C_LOG2_C[sampleSize - present];
+            for(int i = 0; i < seenCount; ++i)
+            {
+                weighted += C_LOG2_C[counts[seen[i]]];
+                counts[seen[i]] = 0;
+            }
+            earlyCharEntropy = Math.max(earlyCharEntropy, (C_LOG2_C[sampleSize] - weighted) / sampleSize);
+        }
+
+        final Algorithm algorithm;
+        final Reason reason;
+        if(len < MIN_RADIX_SORT && duplicateRatio < MIN_DUPLICATE_RATIO_FOR_SMALL)
+        {
+            algorithm = Algorithm.TIM_SORT;
+            reason = Reason.SMALL_INPUT;
+        }
+        else if(maxEarlyChar >= MIN_WIDE_ALPHABET_CHAR)
+        {
+            // The copy avoiding sort does more bucket passes over smaller ranges, which is exactly what gets expensive here
+            algorithm = len < MIN_WIDE_ALPHABET_RADIX_SORT ? Algorithm.TIM_SORT : Algorithm.MSD;
+            reason = Reason.WIDE_ALPHABET;
+        }
+        else if(earlyAlphabetSize <= MAX_SMALL_ALPHABET && duplicateRatio < MAX_DUPLICATE_RATIO_FOR_SMALL_ALPHABET)
+        {
+            algorithm = Algorithm.MULTIKEY_QUICKSORT;
+            reason = Reason.SMALL_ALPHABET;
+        }
+        //Only if the strings are long enough to still have characters left after the log2(n) / entropy passes it would take to sort them
+        //(taking the entropy as no less than half a bit, as the sample is too small to measure much less than that)
+        else if(len <= MAX_LOW_ENTROPY_TIM_SORT && earlyCharEntropy < MAX_LOW_ENTROPY_BITS &&
+            averageLength * Math.max(earlyCharEntropy, 0.5) >= log2(len))
+        {
+            algorithm = Algorithm.TIM_SORT;
+            reason = Reason.LOW_ENTROPY;
+        }
+        else
+        {
+            algorithm = Algorithm.MSD_COPY_AVOIDANCE;
+            reason = Reason.RADIX_FRIENDLY;
+        }
+        return new Decision(algorithm, reason, len, sampleSize, averageLength, presortedFraction,
+            maxEarlyChar, earlyAlphabetSize, earlyCharEntropy, duplicateRatio);
+    }
+
+    //The larger of the fraction of neighbours in order and the fraction in reverse order, over a few evenly spaced windows
+    private static final double presortedFraction(final String[] arr, final int fromIndex, final int toIndex)
+    {
+        final int len = toIndex - fromIndex;
+        //Keep the number of comparisons to a small fraction of the input
+        final int windowLength = Math.min(MAX_RUN_WINDOW_LENGTH, (len >>> SAMPLE_FRACTION_SHIFT) / RUN_WINDOWS);
+        int ascending = 0;
+        int descending = 0;
+        for(int w = 0; w < RUN_WINDOWS; ++w)
+        {
+            final int start = fromIndex + (int)((long)w * (len - windowLength) / (RUN_WINDOWS - 1));
+            final int end = start + windowLength;
+            for(int i = start + 1; i < end; ++i)
+            {
+                // Equal neighbours are a run either way as far as TimSort is concerned, so only count them once
+                if(arr[i - 1].compareTo(arr[i]) <= 0)
+                    ++ascending;
+                else
+                    ++descending;
+            }
+        }
+        return (double)Math.max(ascending, descending) / (RUN_WINDOWS * (windowLength - 1));
+    }
+
+    //The number of strings in the sample that are equal to an earlier one, found with a small open addressed hash table of sample indexes
+    private static final int countDuplicates(final String[] sample)
+    {
+        //At most half full, so probe sequences stay short
+        final int mask = Integer.highestOneBit(sample.length) * 4 - 1;
+        final int[] table = new int[mask + 1];
+        int duplicates = 0;
+        for(int k = 0; k < sample.length; ++k)
+        {
+            final String s = sample[k];
+            // Stored as index + 1, so that 0 means empty
+            int slot = mix(s.hashCode()) & mask;
+            while(true)
+            {
+                final int other = table[slot];
+                if(other == 0)
+                {
+                    table[slot] = k + 1;
+                    break;
+                }
+                if(sample[other - 1].equals(s))
+                {
+                    ++duplicates;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+        return duplicates;
+    }
+
+    //Spreads the bits of a string hash code, as the low bits of them are not very random for short strings
+    private static final int mix(final int h)
+    {
+        final int x = h * 0x9E3779B9;
+        return x ^ (x >>> 16);
+    }
+
+    private static final int log2(final int n)
+    {
+        return 31 - Integer.numberOfLeadingZeros(n);
+    }
+
+    private static final void checkBounds(int length, int fromIndex, int toIndex)
+    {
+        if(fromIndex < 0) throw new ArrayIndexOutOfBoundsException(fromIndex + " < 0");
+        if(toIndex > length) throw new ArrayIndexOutOfBoundsException(toIndex + " > " + length);
+        if(fromIndex > toIndex)
+            throw new IllegalArgumentException("start position: " + fromIndex +
+                " > end position: " + toIndex);
+    }
+}
@@ -0,0 +1,77 @@
+package local.techsy730.util.sort;
+
+import java.util.Arrays;
+
+/**
+ * Finds where two strings (or char arrays) first differ, for the comparisons and shared prefix scans of the string sorters.
+ * <p>
+ * This is the version for Java 9 and up, put in the multi-release JAR in place of the one in {@code src/main/java}.
+ * {@link Arrays#mismatch} is compiled down to vector instructions, comparing many characters at a time, but only takes arrays,
+ * and the characters of a string can't be gotten to without copying them out.
+ * So the first characters are still compared one at a time, as most strings being compared differ well before copying them out would pay off,
+ * and only past that are the characters copied out a chunk at a time (growing as the run of equal characters does) to compare with it.
+ * Both versions must have the same methods, with the same behavior.
+ *
+ * @author C. Sean Young
+ *
+ */
+final class StringMismatch
+{
+    //The characters of strings are compared one at a time for at least this many characters before copying them out to compare them.
+    //For this value, HIGHER numbers mean MORE hesitant to trigger the optimization
+    private static final int SCALAR_MISMATCH_CHARS = 64;
+    //The chunks copied out start out this long, and double for each one after, up to MAX_MISMATCH_CHUNK,
+    //so a mismatch shortly after SCALAR_MISMATCH_CHARS doesn't have to copy much, but long runs don't need many copies.
+    private static final int FIRST_MISMATCH_CHUNK = 64;
+    private static final int MAX_MISMATCH_CHUNK = 1024;
+
+    //The chunks are copied to these, kept for each thread, as the sorters may be running in several
+    private static final ThreadLocal<char[][]> CHUNK_BUFFERS = ThreadLocal.withInitial(
+        () -> new char[][]{new char[MAX_MISMATCH_CHUNK], new char[MAX_MISMATCH_CHUNK]});
+
+    private StringMismatch()
+    {
+    }
+
+    /**
+     * Finds the first index in [{@code from}, {@code end}) where the two strings differ, or where either of them ends.
+     *
+     * @return that index, or {@code end} if there is no such index, or {@code from} if it is already past either string (or {@code end})
+     */
+    static final int mismatch(final String s1, final String s2, int from, int end)
+    {
+        end = Math.min(end, Math.min(s1.length(), s2.length()));
+        final int scalarEnd = end - from > SCALAR_MISMATCH_CHARS ? from + SCALAR_MISMATCH_CHARS : end;
+        while(from < scalarEnd && s1.charAt(from) == s2.charAt(from))
+            ++from;
+        if(from < scalarEnd || from >= end) return from;
+
+        final char[][] buffers = CHUNK_BUFFERS.get();
+        final char[] chunk1 = buffers[0];
+        final char[] chunk2 = buffers[1];
+        int chunkLen = FIRST_MISMATCH_CHUNK;
+        while(from < end)
+        {
+            final int len = Math.min(chunkLen, end - from);
+            s1.getChars(from, from + len, chunk1, 0);
+            s2.getChars(from, from + len, chunk2, 0);
+            final int found = Arrays.mismatch(chunk1, 0, len, chunk2, 0, len);
+            if(found >= 0) return from + found;
+            from += len;
+            if(chunkLen < MAX_MISMATCH_CHUNK) chunkLen <<= 1;
+        }
+        return end;
+    }
+
+    /**
+     * Same as {@link #mismatch(String, String, int, int)}, for the first {@code aLen} and {@code bLen} characters of the given arrays.
+     */
+    static final int mismatch(final char[] a, final int aLen, final char[] b, final int bLen, final int from, int end)
+    {
+        end = Math.min(end, Math.min(aLen, bLen));
+        if(from >= end) return from;
+        //No copying needed for these
+        final int found = Arrays.mismatch(a, from, end, b, from, end);
+        return found < 0 ? end : from + found;
+    }
+}
@@ -0,0 +1,103 @@
+package local.techsy730.util.sort;
+
+import java.util.Arrays;
+import java.util.Random;
+
+//Checks BurstStringSorter against Arrays.sort, over inputs large enough to burst plenty of buckets.
+//The prefixes make buckets that burst into nodes skipping past a shared prefix, and the mutated copies of them
+//then have to go in the before and after buckets of those nodes.
+public class BurstStringSorterTestRun
+{
+    private static final int[] SIZES = {0, 1, 100, 20000, 100000};
+    private static final int[] PREFIX_LENGTHS = {1, 2, 3, 10, 30};
+
+    public static void main(String[] args)
+    {
+        final Random rand = new Random(0x5EED);
+        int checks = 0;
+        for(int size : SIZES)
+        {
+            //No '\0' characters, as the buckets are finished off by MSDStringSorter, which doesn't handle them
+            for(char[] alphabet : new char[][]{{'a', 'b', 'c'}, {'x', (char)0xFF, (char)0x100, (char)0x4E00}})
+            {
+                final String[] original = randomStrings(rand, size, alphabet);
+                final String name = "size " + size + " alphabet " + Arrays.toString(alphabet);
+                String[] arr = original.clone();
+                BurstStringSorter.sort(arr);
+                checkSorted(name, original, arr, Integer.MAX_VALUE);
+                ++checks;
+                for(int minChars : PREFIX_LENGTHS)
+                {
+                    arr = original.clone();
+                    BurstStringSorter.sortPartially(minChars, arr);
+                    checkSorted(name + " sortPartially(" + minChars + ")", original, arr, minChars);
+                    ++checks;
+                }
+
+                //Only part of the array
+                if(size > 4)
+                {
+                    arr = original.clone();
+                    BurstStringSorter.sort(arr, 1, size - 1);
+                    if(arr[0] != original[0] || arr[size - 1] != original[size - 1])
+                        throw new AssertionError("Elements outside of the range were moved, " + name);
+                    checkSorted(name + " sub range", Arrays.copyOfRange(original, 1, size - 1), Arrays.copyOfRange(arr, 1, size - 1),
+                        Integer.MAX_VALUE);
+                    ++checks;
+                }
+            }
+        }
+        System.out.println("All " + checks + " checks passed");
+    }
+
+    //Checks that sorted is a permutation of original, sorted on at least the first minChars characters
+    private static void checkSorted(String name, String[] original, String[] sorted, int minChars)
+    {
+        final String[] expected = original.clone();
+        Arrays.sort(expected);
+        final String[] got = sorted.clone();
+        Arrays.sort(got);
+        if(!Arrays.equals(expected, got))
+            throw new AssertionError("Not a permutation of the input, " + name);
+        for(int i = 1; i < sorted.length; ++i)
+        {
+            if(comparePrefix(sorted[i - 1], sorted[i], minChars) > 0)
+                throw new AssertionError("Not sorted at " + i + ", " + name);
+        }
+    }
+
+    private static int comparePrefix(String a, String b, int len)
+    {
+        return a.substring(0, Math.min(len, a.length())).compareTo(b.substring(0, Math.min(len, b.length())));
+    }
+
+    //A few long shared prefixes, some with a character changed or cut short partway through, followed by a short random suffix
+    private static String[] randomStrings(Random rand, int size, char[] alphabet)
+    {
+        final String[] prefixes = new String[4];
+        for(int i = 0; i < prefixes.length; ++i)
+            prefixes[i] = randomString(rand, 20 + rand.nextInt(20), alphabet);
+        final String[] arr = new String[size];
+        for(int i = 0; i < size; ++i)
+        {
+            final StringBuilder sb = new StringBuilder(prefixes[rand.nextInt(prefixes.length)]);
+            switch(rand.nextInt(20))
+            {
+                case 0: sb.setCharAt(rand.nextInt(sb.length()), alphabet[rand.nextInt(alphabet.length)]); break;
+                case 1: sb.setLength(rand.nextInt(sb.length())); break;
+                default: break;
+            }
+            sb.append(randomString(rand, rand.nextInt(6), alphabet));
+            arr[i] = sb.toString();
+        }
+        return arr;
+    }
+
+    private static String randomString(Random rand, int len, char[] alphabet)
+    {
+        final char[] chars = new char[len];
+        for(int i = 0; i < len; ++i)
+            chars[i] = alphabet[rand.nextInt(alphabet.length)];
+        return new String(chars);
+    }
+}
@@ -0,0 +1,215 @@
+package local.techsy730.util.sort;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+//Checks ExternalMSDStringSorter against Arrays.sort, with memory budgets small enough that runs hold only a few strings each
+//(or just one), and a fan in as low as 2, so the runs go through many levels of merging before the last merge into the output.
+//Each sort gets its own temporary directory, which has to be empty again afterwards, including when writing the output fails.
+public class ExternalMSDStringSorterTestRun
+{
+    //A budget of 1 puts every string in its own run
+    private static final long[] MEMORY_BUDGETS = {1, 300, 2000, 1L << 30};
+    private static final int[] FAN_INS = {2, 3, 64};
+    private static final int[] SIZES = {0, 1, 2, 50, 400};
+
+    private static int checks = 0;
+
+    public static void main(String[] args) throws IOException
+    {
+        final Random rand = new Random(0x5EED);
+        for(int size : SIZES)
+        {
+            //Shared prefixes, so the merge gets to skip over them; also characters that take 2 and 3 bytes in a run file,
+            //a surrogate pair, and empty strings.
+            //No '\0', as MSDStringSorter takes one to be the end of the string, and so doesn't sort strings with them in them right
+            final String[] prefixes = {"", "shared/prefix/", "shared/prefix/longer/", "\u00E9\u4E00"};
+            final char[] alphabet = {'a', 'b', '\u007F', '\u0080', '\u07FF', '\u0800', '\uD834', '\uDD1E', '\uFFFF'};
+            final String[] original = new String[size];
+            for(int i = 0; i < size; ++i)
+            {
+                final StringBuilder sb = new StringBuilder(prefixes[rand.nextInt(prefixes.length)]);
+                for(int j = rand.nextInt(6); j > 0; --j)
+                    sb.append(alphabet[rand.nextInt(alphabet.length)]);
+                original[i] = sb.toString();
+            }
+            checkAll("size " + size, original);
+        }
+        checkFailedWrite();
+        System.out.println("All " + checks + " checks passed");
+    }
+
+    private static void checkAll(String name, String[] original) throws IOException
+    {
+        for(long memoryBudget : MEMORY_BUDGETS)
+        {
+            for(int fanIn : FAN_INS)
+            {
+                final String sortName = name + ", budget " + memoryBudget + ", fan in " + fanIn;
+                checkSort(sortName, original, memoryBudget, fanIn, Integer.MAX_VALUE);
+                checkSort(sortName, original, memoryBudget, fanIn, 1);
+                checkSort(sortName, original, memoryBudget, fanIn, 15);
+            }
+        }
+    }
+
+    private static void checkSort(String name, String[] original, long memoryBudget, int fanIn, int minChars) throws IOException
+    {
+        final File tempDir = Files.createTempDirectory("ExternalMSDStringSorterTestRun").toFile();
+        try
+        {
+            final ExternalMSDStringSorter sorter = new ExternalMSDStringSorter(memoryBudget, tempDir, fanIn);
+            final String sortName = name + (minChars == Integer.MAX_VALUE ? "" : ", sortPartially(" + minChars + ")");
+
+            //From an iterator
+            CheckingWriter out = new CheckingWriter(tempDir, fanIn);
+            sorter.sortPartially(minChars, Arrays.asList(original).iterator(), out);
+            checkOutput(sortName + ", iterator", original, out.toString(), minChars);
+            checkEmpty(sortName + ", iterator", tempDir);
+
+            //From a reader, with both kinds of line endings
+            for(String terminator : new String[]{"\n", "\r\n"})
+            {
+                final StringBuilder text = new StringBuilder();
+                for(String s : original)
+                    text.append(s).append(terminator);
+                out = new CheckingWriter(tempDir, fanIn);
+                sorter.sortPartially(minChars, new StringReader(text.toString()), out);
+                final String readerName = sortName + ", reader, " + (terminator.length() == 1 ? "\\n" : "\\r\\n");
+                checkOutput(readerName, original, out.toString(), minChars);
+                checkEmpty(readerName, tempDir);
+            }
+            checks += 3;
+        }
+        finally
+        {
+            tempDir.delete();
+        }
+    }
+
+    //Writing the output fails partway through the last merge, which must still leave no run files behind
+    private static void checkFailedWrite() throws IOException
+    {
+        final File tempDir = Files.createTempDirectory("ExternalMSDStringSorterTestRun").toFile();
+        try
+        {
+            final String[] original = new String[500];
+            for(int i = 0; i < original.length; ++i)
+                original[i] = Integer.toString(i * 7919 % 1000);
+            final Writer failing = new StringWriter()
+            {
+                @Override
+                public void write(String str)
+                {
+                    throw new IllegalStateException("Failing on purpose");
+                }
+
+                @Override
+                public void write(char[] cbuf, int off, int len)
+                {
+                    throw new IllegalStateException("Failing on purpose");
+                }
+            };
+            try
+            {
+                new ExternalMSDStringSorter(1, tempDir, 2).sort(Arrays.asList(original).iterator(), failing);
+                throw new AssertionError("Failed write not passed on");
+            }
+            catch(IllegalStateException e)
+            {
+                //What should happen
+            }
+            checkEmpty("failed write", tempDir);
+            ++checks;
+        }
+        finally
+        {
+            tempDir.delete();
+        }
+    }
+
+    private static void checkOutput(String name, String[] original, String output, int minChars)
+    {
+        final String[] expected = original.clone();
+        Arrays.sort(expected);
+        //Every string, each followed by a '\n', so one more piece than strings when split on them, the last one empty
+        final String[] lines = output.split("\n", -1);
+        if(lines.length != original.length + 1 || !lines[original.length].isEmpty())
+            throw new AssertionError(name + ": wrote " + (lines.length - 1) + " lines, expected " + original.length);
+        final String[] got = Arrays.copyOf(lines, original.length);
+        if(minChars == Integer.MAX_VALUE)
+        {
+            if(!Arrays.equals(expected, got))
+                throw new AssertionError(name + ": not sorted");
+            return;
+        }
+        final String[] gotSorted = got.clone();
+        Arrays.sort(gotSorted);
+        if(!Arrays.equals(expected, gotSorted))
+            throw new AssertionError(name + ": not a permutation of the input");
+        for(int i = 1; i < got.length; ++i)
+        {
+            final String a = got[i - 1].substring(0, Math.min(minChars, got[i - 1].length()));
+            final String b = got[i].substring(0, Math.min(minChars, got[i].length()));
+            if(a.compareTo(b) > 0)
+                throw new AssertionError(name + ": not sorted at " + i);
+        }
+    }
+
+    private static void checkEmpty(String name, File tempDir)
+    {
+        final String[] left = tempDir.list();
+        if(left.length != 0)
+            throw new AssertionError(name + ": temporary files left behind: " + Arrays.toString(left));
+    }
+
+    //Collects the output, and on the first write checks that the runs have been merged down to at most the fan in
+    private static final class CheckingWriter extends StringWriter
+    {
+        private final File tempDir;
+        private final int fanIn;
+        private boolean checked = false;
+
+        CheckingWriter(File tempDir, int fanIn)
+        {
+            this.tempDir = tempDir;
+            this.fanIn = fanIn;
+        }
+
+        private void checkRuns()
+        {
+            if(checked) return;
+            checked = true;
+            final int runs = tempDir.list().length;
+            if(runs > fanIn)
+                throw new AssertionError(runs + " runs left for the last merge, with a fan in of " + fanIn);
+        }
+
+        @Override
+        public void write(String str)
+        {
+            checkRuns();
+            super.write(str);
+        }
+
+        @Override
+        public void write(int c)
+        {
+            checkRuns();
+            super.write(c);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len)
+        {
+            checkRuns();
+            super.write(cbuf, off, len);
+        }
+    }
+}
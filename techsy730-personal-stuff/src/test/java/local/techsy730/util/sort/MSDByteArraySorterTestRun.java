@@ -0,0 +1,145 @@
+package local.techsy730.util.sort;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+//Checks MSDByteArraySorter against Arrays.sort with an unsigned lexicographic comparator written out here,
+//over keys built from 0x00, 0xFF and the bytes either side of the sign bit, with empty keys and keys that are prefixes of each other.
+public class MSDByteArraySorterTestRun
+{
+    private static final Comparator<byte[]> UNSIGNED_ORDER = new Comparator<byte[]>()
+    {
+        @Override
+        public int compare(byte[] a, byte[] b)
+        {
+            final int len = Math.min(a.length, b.length);
+            for(int i = 0; i < len; ++i)
+            {
+                final int ca = a[i] & 0xFF;
+                final int cb = b[i] & 0xFF;
+                if(ca != cb)
+                    return ca - cb;
+            }
+            return a.length - b.length;
+        }
+    };
+
+    //0x00 and 0xFF are the first and last buckets, and 0x7F and 0x80 are where a signed comparison would wrap around
+    private static final byte[] EDGE_BYTES = {0x00, 0x01, 0x7F, (byte)0x80, (byte)0xFE, (byte)0xFF};
+    //Either side of MSDByteArraySorter's insertion sort cutoff, and large enough for several bucket passes
+    private static final int[] SIZES = {0, 1, 2, 3, 24, 25, 100, 5000, 50000};
+
+    public static void main(String[] args)
+    {
+        final Random rand = new Random(0x5EED);
+        int checks = 0;
+
+        //The order itself, on a few keys where signed bytes would go wrong
+        final byte[][] fixed = {{(byte)0x80}, {0x7F}, {}, {(byte)0xFF, 0x00}, {(byte)0xFF}, {0x00}, {0x00, 0x00}, {}, {0x7F, (byte)0xFF}};
+        final byte[][] fixedExpected = {{}, {}, {0x00}, {0x00, 0x00}, {0x7F}, {0x7F, (byte)0xFF}, {(byte)0x80}, {(byte)0xFF}, {(byte)0xFF, 0x00}};
+        final byte[][] fixedSorted = fixed.clone();
+        MSDByteArraySorter.sort(fixedSorted);
+        if(!Arrays.deepEquals(fixedExpected, fixedSorted))
+            throw new AssertionError("Fixed keys sorted to " + Arrays.deepToString(fixedSorted));
+        ++checks;
+
+        for(int size : SIZES)
+        {
+            //Short keys from the edge bytes, so there are many empty keys, duplicates and keys that are prefixes of each other
+            checks += checkAll("edge bytes, size " + size, randomKeys(rand, size, 0, 4, EDGE_BYTES, null));
+            //Every byte value
+            checks += checkAll("all bytes, size " + size, randomKeys(rand, size, 0, 12, null, null));
+            //A long shared prefix, which ends partway through some of the keys
+            final byte[] prefix = new byte[40];
+            Arrays.fill(prefix, (byte)0xFF);
+            prefix[20] = 0x00;
+            checks += checkAll("shared prefix, size " + size, randomKeys(rand, size, 0, 5, EDGE_BYTES, prefix));
+        }
+
+        //Only empty keys
+        final byte[][] empties = new byte[100][];
+        for(int i = 0; i < empties.length; ++i)
+            empties[i] = new byte[0];
+        checks += checkAll("only empty keys", empties);
+
+        //compare itself
+        final byte[][] keys = randomKeys(rand, 2000, 0, 4, EDGE_BYTES, null);
+        for(int i = 1; i < keys.length; ++i)
+        {
+            if(Integer.signum(MSDByteArraySorter.compare(keys[i - 1], keys[i])) != Integer.signum(UNSIGNED_ORDER.compare(keys[i - 1], keys[i])))
+                throw new AssertionError("compare(" + Arrays.toString(keys[i - 1]) + ", " + Arrays.toString(keys[i]) + ") is wrong");
+        }
+        ++checks;
+
+        System.out.println("All " + checks + " checks passed");
+    }
+
+    //Checks sort, a sub range, and sortPartially; returns the number of checks made
+    private static int checkAll(String name, byte[][] original)
+    {
+        final byte[][] expected = original.clone();
+        Arrays.sort(expected, UNSIGNED_ORDER);
+
+        final byte[][] arr = original.clone();
+        MSDByteArraySorter.sort(arr);
+        checkSortedOn(name, expected, arr, Integer.MAX_VALUE);
+
+        final byte[] sentinel = {0x42};
+        final byte[][] padded = new byte[original.length + 2][];
+        padded[0] = sentinel;
+        padded[padded.length - 1] = sentinel;
+        System.arraycopy(original, 0, padded, 1, original.length);
+        MSDByteArraySorter.sort(padded, 1, padded.length - 1);
+        if(padded[0] != sentinel || padded[padded.length - 1] != sentinel)
+            throw new AssertionError(name + ": sub range sort moved elements outside of the range");
+        checkSortedOn(name + ", sub range", expected, Arrays.copyOfRange(padded, 1, padded.length - 1), Integer.MAX_VALUE);
+
+        for(int minBytes : new int[]{1, 2})
+        {
+            final byte[][] partial = original.clone();
+            MSDByteArraySorter.sortPartially(minBytes, partial);
+            checkSortedOn(name + ", sortPartially(" + minBytes + ")", expected, partial, minBytes);
+        }
+        return 4;
+    }
+
+    //Checks that sorted holds the same keys as expected, sorted on at least their first minBytes bytes
+    private static void checkSortedOn(String name, byte[][] expected, byte[][] sorted, int minBytes)
+    {
+        if(sorted.length != expected.length)
+            throw new AssertionError(name + ": length changed");
+        final byte[][] got = sorted.clone();
+        Arrays.sort(got, UNSIGNED_ORDER);
+        for(int i = 0; i < got.length; ++i)
+        {
+            if(!Arrays.equals(expected[i], got[i]))
+                throw new AssertionError(name + ": not a permutation of the input");
+        }
+        for(int i = 1; i < sorted.length; ++i)
+        {
+            final byte[] a = Arrays.copyOf(sorted[i - 1], Math.min(minBytes, sorted[i - 1].length));
+            final byte[] b = Arrays.copyOf(sorted[i], Math.min(minBytes, sorted[i].length));
+            if(UNSIGNED_ORDER.compare(a, b) > 0)
+                throw new AssertionError(name + ": not sorted at " + i + ", " + Arrays.toString(sorted[i - 1]) + " before " + Arrays.toString(sorted[i]));
+        }
+    }
+
+    //Keys of minLen to maxLen bytes after the prefix (if any), each byte from alphabet, or any byte if alphabet is null
+    private static byte[][] randomKeys(Random rand, int size, int minLen, int maxLen, byte[] alphabet, byte[] prefix)
+    {
+        final byte[][] arr = new byte[size][];
+        for(int i = 0; i < size; ++i)
+        {
+            //Some keys stop partway through the prefix
+            final int prefixLen = prefix == null ? 0 : rand.nextInt(8) == 0 ? rand.nextInt(prefix.length) : prefix.length;
+            final byte[] key = new byte[prefixLen + minLen + rand.nextInt(maxLen - minLen + 1)];
+            if(prefix != null)
+                System.arraycopy(prefix, 0, key, 0, prefixLen);
+            for(int j = prefixLen; j < key.length; ++j)
+                key[j] = alphabet == null ? (byte)rand.nextInt(256) : alphabet[rand.nextInt(alphabet.length)];
+            arr[i] = key;
+        }
+        return arr;
+    }
+}
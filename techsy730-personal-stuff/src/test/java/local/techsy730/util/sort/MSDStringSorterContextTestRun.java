@@ -0,0 +1,167 @@
+package local.techsy730.util.sort;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+//Checks that one MSDStringSorter.Context gives the same results as Arrays.sort over a run of different inputs:
+//ASCII, then CJK (which grows the character counting buffers well past the ASCII range), then smaller inputs again,
+//which have to sort right with the larger buffers (and whatever the last sort left in them) still around.
+//The same goes again after trim() lets go of the buffers.
+//Once a context has grown to fit, sorting with it must not allocate anything at all; that is checked where the JVM can count
+//the bytes a thread allocates.
+public class MSDStringSorterContextTestRun
+{
+    private static int checks = 0;
+
+    public static void main(String[] args)
+    {
+        final Random rand = new Random(0x5EED);
+        final MSDStringSorter.Context context = new MSDStringSorter.Context();
+        for(int round = 0; round < 2; ++round)
+        {
+            final String when = round == 0 ? "" : ", after trim";
+            check("ascii, 20000" + when, context, randomStrings(rand, 20000, 'a', 'z', 12));
+            check("CJK, 20000" + when, context, randomStrings(rand, 20000, '\u4E00', '\u4FFF', 8));
+            //Wider still, so the buffers grow again, then back down
+            check("CJK and ascii, 5000" + when, context, mixed(rand, 5000));
+            check("ascii, 1000" + when, context, randomStrings(rand, 1000, 'a', 'd', 6));
+            check("ascii, 100" + when, context, randomStrings(rand, 100, 'a', 'z', 4));
+            check("ascii, 10" + when, context, randomStrings(rand, 10, 'a', 'z', 4));
+            check("CJK, 50" + when, context, randomStrings(rand, 50, '\u4E00', '\u9FFF', 3));
+            check("empty" + when, context, new String[0]);
+            check("one" + when, context, new String[]{"\u4E00"});
+            check("ascii, 300" + when, context, randomStrings(rand, 300, 'a', 'c', 10));
+            context.trim();
+        }
+        //A context with its own tuning sorts the same as one with the default
+        final MSDStringSorter.Context tuned = new MSDStringSorter.Context(SorterTuning.getDefault());
+        check("CJK, 3000, own tuning", tuned, randomStrings(rand, 3000, '\u4E00', '\u4FFF', 8));
+        check("ascii, 3000, own tuning", tuned, randomStrings(rand, 3000, 'a', 'z', 8));
+        checkNoAllocation(rand);
+        System.out.println("All " + checks + " checks passed");
+    }
+
+    //Sorts the same inputs over and over with one context, after warming it up (and giving the JIT time to settle),
+    //and checks that the sorts allocate nothing
+    private static void checkNoAllocation(Random rand)
+    {
+        if(!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean))
+        {
+            System.out.println("Counting allocated bytes is not supported by this JVM; skipping the allocation check");
+            return;
+        }
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        if(!threads.isThreadAllocatedMemorySupported())
+        {
+            System.out.println("Counting allocated bytes is not supported by this JVM; skipping the allocation check");
+            return;
+        }
+        if(!threads.isThreadAllocatedMemoryEnabled())
+            threads.setThreadAllocatedMemoryEnabled(true);
+        final long thread = Thread.currentThread().getId();
+
+        final String[][] inputs = {randomStrings(rand, 50, 'a', 'z', 8), randomStrings(rand, 5000, 'a', 'z', 12),
+            randomStrings(rand, 50000, 'a', 'd', 16), randomStrings(rand, 5000, '\u4E00', '\u4FFF', 8), mixed(rand, 5000)};
+        final String[][] work = new String[inputs.length][];
+        for(int i = 0; i < inputs.length; ++i)
+            work[i] = new String[inputs[i].length];
+        final MSDStringSorter.Context context = new MSDStringSorter.Context();
+        for(int round = 0; round < 50; ++round)
+            sortAll(context, inputs, work);
+
+        //Whatever asking for the count itself costs
+        final long first = threads.getThreadAllocatedBytes(thread);
+        final long overhead = threads.getThreadAllocatedBytes(thread) - first;
+        final long before = threads.getThreadAllocatedBytes(thread);
+        for(int round = 0; round < 20; ++round)
+            sortAll(context, inputs, work);
+        final long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        if(allocated > overhead)
+            throw new AssertionError("Sorting with a warmed up context allocated " + (allocated - overhead) + " bytes over 20 rounds");
+        ++checks;
+    }
+
+    //Sorts a fresh copy of each input, then sorts each partially, without allocating anything here
+    private static void sortAll(MSDStringSorter.Context context, String[][] inputs, String[][] work)
+    {
+        for(int i = 0; i < inputs.length; ++i)
+        {
+            System.arraycopy(inputs[i], 0, work[i], 0, inputs[i].length);
+            context.sort(work[i]);
+            System.arraycopy(inputs[i], 0, work[i], 0, inputs[i].length);
+            context.sortPartially(2, work[i]);
+            System.arraycopy(inputs[i], 0, work[i], 0, inputs[i].length);
+            context.sort(work[i], 1, work[i].length - 1);
+        }
+    }
+
+    //Checks sort, a sub range, and sortPartially, all with the given context, one after the other
+    private static void check(String name, MSDStringSorter.Context context, String[] original)
+    {
+        final String[] expected = original.clone();
+        Arrays.sort(expected);
+
+        final String[] arr = original.clone();
+        context.sort(arr);
+        if(!Arrays.equals(expected, arr))
+            throw new AssertionError(name + ": not sorted");
+        ++checks;
+
+        if(original.length > 2)
+        {
+            final String[] sub = original.clone();
+            context.sort(sub, 1, sub.length - 1);
+            if(sub[0] != original[0] || sub[sub.length - 1] != original[original.length - 1])
+                throw new AssertionError(name + ": sub range sort moved elements outside of the range");
+            final String[] subExpected = Arrays.copyOfRange(original, 1, original.length - 1);
+            Arrays.sort(subExpected);
+            if(!Arrays.equals(subExpected, Arrays.copyOfRange(sub, 1, sub.length - 1)))
+                throw new AssertionError(name + ": sub range not sorted");
+            ++checks;
+        }
+
+        final String[] partial = original.clone();
+        context.sortPartially(2, partial);
+        final String[] partialSorted = partial.clone();
+        Arrays.sort(partialSorted);
+        if(!Arrays.equals(expected, partialSorted))
+            throw new AssertionError(name + ": sortPartially(2) gave something other than a permutation of the input");
+        for(int i = 1; i < partial.length; ++i)
+        {
+            final String a = partial[i - 1].substring(0, Math.min(2, partial[i - 1].length()));
+            final String b = partial[i].substring(0, Math.min(2, partial[i].length()));
+            if(a.compareTo(b) > 0)
+                throw new AssertionError(name + ": sortPartially(2) not sorted at " + i);
+        }
+        ++checks;
+    }
+
+    //Strings of 0 to maxLen characters from first to last (inclusive)
+    private static String[] randomStrings(Random rand, int size, char first, char last, int maxLen)
+    {
+        final String[] arr = new String[size];
+        for(int i = 0; i < size; ++i)
+        {
+            final char[] chars = new char[rand.nextInt(maxLen + 1)];
+            for(int j = 0; j < chars.length; ++j)
+                chars[j] = (char)(first + rand.nextInt(last - first + 1));
+            arr[i] = new String(chars);
+        }
+        return arr;
+    }
+
+    //Each character either ASCII, or anywhere in the CJK block
+    private static String[] mixed(Random rand, int size)
+    {
+        final String[] arr = new String[size];
+        for(int i = 0; i < size; ++i)
+        {
+            final char[] chars = new char[rand.nextInt(7)];
+            for(int j = 0; j < chars.length; ++j)
+                chars[j] = rand.nextBoolean() ? (char)('a' + rand.nextInt(26)) : (char)('\u4E00' + rand.nextInt(0x9FFF - 0x4E00 + 1));
+            arr[i] = new String(chars);
+        }
+        return arr;
+    }
+}
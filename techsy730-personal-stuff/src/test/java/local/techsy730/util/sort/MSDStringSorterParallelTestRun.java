@@ -0,0 +1,109 @@
+package local.techsy730.util.sort;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+//Checks MSDStringSorter.parallelSort and parallelSortPartially against Arrays.sort, for several pool sizes.
+//The small sequential cutoffs make nearly every bucket its own task, and the large sizes go past the point
+//where a single bucket pass gets split among the threads as well.
+public class MSDStringSorterParallelTestRun
+{
+    private static final int[] POOL_SIZES = {1, 2, 3, 4, 8};
+    private static final int[] SIZES = {0, 1, 2, 100, 5000, 100000, 300000};
+    private static final int[] CUTOFFS = {1, 16, 1000};
+    private static final int[] PREFIX_LENGTHS = {1, 2, 5};
+
+    public static void main(String[] args)
+    {
+        final Random rand = new Random(0x5EED);
+        int checks = 0;
+        for(int poolSize : POOL_SIZES)
+        {
+            final ForkJoinPool pool = new ForkJoinPool(poolSize);
+            try
+            {
+                for(int size : SIZES)
+                {
+                    //Wide characters too, as each task tracks the largest character it has seen on its own
+                    for(char[] alphabet : new char[][]{{'a', 'b', 'c', 'd'}, {'x', (char)0xFF, (char)0x100, (char)0x4E00, (char)0xFFFF}})
+                    {
+                        final String[] original = randomStrings(rand, size, alphabet);
+                        final String name = "pool " + poolSize + " size " + size + " alphabet " + Arrays.toString(alphabet);
+                        for(int cutoff : CUTOFFS)
+                        {
+                            final String[] arr = original.clone();
+                            MSDStringSorter.parallelSortPartially(Integer.MAX_VALUE, arr, 0, size, pool, cutoff);
+                            checkSortedOn(name + " cutoff " + cutoff, original, arr, Integer.MAX_VALUE);
+                            ++checks;
+                        }
+                        for(int minChars : PREFIX_LENGTHS)
+                        {
+                            final String[] arr = original.clone();
+                            MSDStringSorter.parallelSortPartially(minChars, arr, 0, size, pool, 16);
+                            checkSortedOn(name + " parallelSortPartially(" + minChars + ")", original, arr, minChars);
+                            ++checks;
+                        }
+                        //Only part of the array
+                        if(size > 4)
+                        {
+                            final String[] arr = original.clone();
+                            MSDStringSorter.parallelSortPartially(Integer.MAX_VALUE, arr, 1, size - 1, pool, 16);
+                            if(arr[0] != original[0] || arr[size - 1] != original[size - 1])
+                                throw new AssertionError("Elements outside of the range were moved, " + name);
+                            checkSortedOn(name + " sub range", Arrays.copyOfRange(original, 1, size - 1), Arrays.copyOfRange(arr, 1, size - 1),
+                                Integer.MAX_VALUE);
+                            ++checks;
+                        }
+                    }
+                }
+            }
+            finally
+            {
+                pool.shutdown();
+            }
+        }
+        //The default pool
+        final String[] original = randomStrings(rand, 100000, new char[]{'a', 'b', 'c', 'd'});
+        final String[] arr = original.clone();
+        MSDStringSorter.parallelSort(arr);
+        checkSortedOn("parallelSort", original, arr, Integer.MAX_VALUE);
+        ++checks;
+        System.out.println("All " + checks + " checks passed");
+    }
+
+    //Checks that sorted is a permutation of original, sorted on at least the first minChars characters
+    private static void checkSortedOn(String name, String[] original, String[] sorted, int minChars)
+    {
+        final String[] expected = original.clone();
+        Arrays.sort(expected);
+        final String[] got = sorted.clone();
+        Arrays.sort(got);
+        if(!Arrays.equals(expected, got))
+            throw new AssertionError("Not a permutation of the input, " + name);
+        for(int i = 1; i < sorted.length; ++i)
+        {
+            if(comparePrefix(sorted[i - 1], sorted[i], minChars) > 0)
+                throw new AssertionError("Not sorted at " + i + ", " + name);
+        }
+    }
+
+    private static int comparePrefix(String a, String b, int len)
+    {
+        return a.substring(0, Math.min(len, a.length())).compareTo(b.substring(0, Math.min(len, b.length())));
+    }
+
+    //Random lengths from 0 to 12, so that buckets of every depth end up being forked
+    private static String[] randomStrings(Random rand, int size, char[] alphabet)
+    {
+        final String[] arr = new String[size];
+        for(int i = 0; i < size; ++i)
+        {
+            final char[] chars = new char[rand.nextInt(13)];
+            for(int j = 0; j < chars.length; ++j)
+                chars[j] = alphabet[rand.nextInt(alphabet.length)];
+            arr[i] = new String(chars);
+        }
+        return arr;
+    }
+}
@@ -0,0 +1,561 @@
+package local.techsy730.util.sort;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import local.techsy730.function.AbstractFunction1;
+import local.techsy730.function.Function1;
+
+//Checks the stability guarantees (and shared prefix lengths) of MSDStringSorter over duplicate heavy inputs.
+//Every string is its own object, so strings that are equal can still be told apart by where they started out.
+public class MSDStringSorterTestRun
+{
+    //Sizes picked to go through each of the small range fallbacks, as well as the bucket passes
+    private static final int[] SIZES = {2, 3, 4, 5, 16, 17, 51, 52, 59, 60, 61, 200, 1000, 20000};
+    private static final int[] PREFIX_LENGTHS = {0, 1, 2, 3, 5, Integer.MAX_VALUE};
+
+    public static void main(String[] args)
+    {
+        final Random rand = new Random(0x5EED);
+        int checks = 0;
+        for(int size : SIZES)
+        {
+            for(int alphabet : new int[]{1, 2, 4, 26})
+            {
+                final String[] original = duplicateHeavy(rand, size, alphabet);
+                for(int minChars : PREFIX_LENGTHS)
+                {
+                    String[] arr = original.clone();
+                    MSDStringSorter.sortPartiallyStable(minChars, arr);
+                    checkStablySorted("sortPartiallyStable(" + minChars + ") size " + size + " alphabet " + alphabet, original, arr, minChars);
+                    ++checks;
+                }
+                String[] arr = original.clone();
+                MSDStringSorter.sortStable(arr);
+                checkStablySorted("sortStable size " + size + " alphabet " + alphabet, original, arr, Integer.MAX_VALUE);
+
+                //Only part of the array
+                if(size > 4)
+                {
+                    arr = original.clone();
+                    MSDStringSorter.sortPartiallyStable(2, arr, 1, size - 1);
+                    if(arr[0] != original[0] || arr[size - 1] != original[size - 1])
+                        throw new AssertionError("sortPartiallyStable moved elements outside of the range, size " + size);
+                    checkStablySorted("sortPartiallyStable(2) of a sub range, size " + size + " alphabet " + alphabet,
+                        Arrays.copyOfRange(original, 1, size - 1), Arrays.copyOfRange(arr, 1, size - 1), 2);
+                }
+
+                final int[] indices = MSDStringSorter.sortIndices(original);
+                for(int i = 1; i < indices.length; ++i)
+                {
+                    final int c = original[indices[i - 1]].compareTo(original[indices[i]]);
+                    if(c > 0 || (c == 0 && indices[i - 1] > indices[i]))
+                        throw new AssertionError("sortIndices not stably sorted at " + i + ", size " + size + " alphabet " + alphabet);
+                }
+                checkLcp("sortWithLcp size " + size + " alphabet " + alphabet, original);
+                checkSelection("size " + size + " alphabet " + alphabet, original);
+                checkInPlace("size " + size + " alphabet " + alphabet, original);
+                checkDistinct("size " + size + " alphabet " + alphabet, original);
+                checkCanonical("size " + size + " alphabet " + alphabet, original);
+                checkMerge("size " + size + " alphabet " + alphabet, original);
+                checkKeyExtractor("size " + size + " alphabet " + alphabet, original);
+                checks += 9;
+            }
+            checkMultiKey(rand, size);
+            ++checks;
+        }
+        checks += checkAlphabetEdges(rand);
+        checks += checkNulChars(rand);
+        checks += checkKeyExtractorEdges(rand);
+        System.out.println("All " + checks + " checks passed");
+    }
+
+    //Sorting on the secondary key, and then stably on the primary key, must give the same result as sorting on both at once
+    private static void checkMultiKey(Random rand, int size)
+    {
+        final int primaryLen = 3;
+        final String[] arr = new String[size];
+        for(int i = 0; i < size; ++i)
+            arr[i] = randomString(rand, primaryLen, 2) + randomString(rand, 1 + rand.nextInt(4), 3);
+        final String[] expected = arr.clone();
+        Arrays.sort(expected);
+
+        //Sort on the secondary key (everything after the primary key) first
+        final String[] secondaryKeys = new String[size];
+        for(int i = 0; i < size; ++i)
+            secondaryKeys[i] = arr[i].substring(primaryLen);
+        final int[] bySecondary = MSDStringSorter.sortIndices(secondaryKeys);
+        final String[] got = new String[size];
+        for(int i = 0; i < size; ++i)
+            got[i] = arr[bySecondary[i]];
+        MSDStringSorter.sortPartiallyStable(primaryLen, got);
+        if(!Arrays.equals(expected, got))
+            throw new AssertionError("Multi key sort does not match a full sort, size " + size + ": " + Arrays.toString(got));
+    }
+
+    //Large ranges over small alphabets are bucket sorted several characters at a time, with the characters ranked.
+    //Checks alphabets right at and past the most that can be ranked, as well as ones with characters past Latin-1 (which can't be ranked at all).
+    //The widest ones (CJK, and nearly all of the chars) are far wider than most of the buckets they get split into, so those are counted sparsely.
+    private static int checkAlphabetEdges(Random rand)
+    {
+        int checks = 0;
+        for(int[] alphabet : new int[][]{{'!', 63}, {'!', 64}, {0xC0, 40}, {0xE0, 0x21}, {0x4E00, 0x5200}, {'a', 0xFFFF - 'a'}})
+        {
+            final String[] original = new String[20000];
+            for(int i = 0; i < original.length; ++i)
+            {
+                final char[] chars = new char[rand.nextInt(10)];
+                for(int j = 0; j < chars.length; ++j)
+                    chars[j] = (char)(alphabet[0] + rand.nextInt(alphabet[1]));
+                //Its own object even when empty, as concatenating to an empty result can give back the interned ""
+                original[i] = new String((rand.nextBoolean() ? "shared/" : "") + new String(chars));
+            }
+            final String name = alphabet[1] + " characters from " + Integer.toHexString(alphabet[0]);
+            for(int minChars : PREFIX_LENGTHS)
+            {
+                final String[] arr = original.clone();
+                MSDStringSorter.sortPartiallyStable(minChars, arr);
+                checkStablySorted("sortPartiallyStable(" + minChars + "), " + name, original, arr, minChars);
+                ++checks;
+            }
+            final String[] arr = original.clone();
+            MSDStringSorter.sort(arr);
+            final String[] expected = original.clone();
+            Arrays.sort(expected);
+            if(!Arrays.equals(expected, arr))
+                throw new AssertionError("Not sorted, " + name);
+            checkLcp(name, original);
+            checkSelection(name, original);
+            checkInPlace(name, original);
+            checkDistinct(name, original);
+            checkCanonical(name, original);
+            checkMerge(name, original);
+            checks += 7;
+        }
+        return checks;
+    }
+
+    private static void checkLcp(String name, String[] original)
+    {
+        final String[] arr = original.clone();
+        final int[] lcp = new int[arr.length];
+        MSDStringSorter.sortWithLcp(arr, lcp);
+        final String[] expected = original.clone();
+        Arrays.sort(expected);
+        if(!Arrays.equals(expected, arr))
+            throw new AssertionError(name + ": not sorted");
+        if(lcp[0] != 0)
+            throw new AssertionError(name + ": first LCP is not 0");
+        for(int i = 1; i < arr.length; ++i)
+        {
+            int shared = 0;
+            while(shared < arr[i - 1].length() && shared < arr[i].length() && arr[i - 1].charAt(shared) == arr[i].charAt(shared))
+                ++shared;
+            if(lcp[i] != shared)
+                throw new AssertionError(name + ": wrong LCP at " + i + ": " + lcp[i] + " != " + shared);
+        }
+
+        //Only part of the array, with an LCP array only as long as the end of the range
+        if(original.length > 2)
+        {
+            final String[] sub = original.clone();
+            final int[] subLcp = new int[sub.length - 1];
+            MSDStringSorter.sortWithLcp(sub, 1, sub.length - 1, subLcp);
+            if(sub[0] != original[0] || sub[sub.length - 1] != original[sub.length - 1])
+                throw new AssertionError(name + ": sortWithLcp moved elements outside of the range");
+            for(int i = 2; i < sub.length - 1; ++i)
+            {
+                if(sub[i - 1].compareTo(sub[i]) > 0)
+                    throw new AssertionError(name + ": sub range not sorted at " + i);
+                int shared = 0;
+                while(shared < sub[i - 1].length() && shared < sub[i].length() && sub[i - 1].charAt(shared) == sub[i].charAt(shared))
+                    ++shared;
+                if(subLcp[i] != shared)
+                    throw new AssertionError(name + ": wrong LCP in the sub range at " + i + ": " + subLcp[i] + " != " + shared);
+            }
+        }
+    }
+
+    //The sorts take a '\0' to be the end of the string, so they can leave strings with them out of order,
+    //but sortDistinct, sortAndCount and sortAndCanonicalize must still get them right, without losing any or taking different strings to be the same
+    private static int checkNulChars(Random rand)
+    {
+        int checks = 0;
+        for(int size : new int[]{20, 200, 20000})
+        {
+            final String[] alternating = new String[size];
+            for(int i = 0; i < size; ++i)
+                alternating[i] = new String(i % 2 == 0 ? "a\0" : "a");
+            checkDistinct("alternating \"a\\0\" and \"a\", size " + size, alternating);
+            checkCanonical("alternating \"a\\0\" and \"a\", size " + size, alternating);
+            checks += 2;
+        }
+        final char[] alphabet = {'\0', 'a', 'b'};
+        for(int size : new int[]{100, 5000})
+        {
+            //Short enough for plenty of duplicates, with '\0' characters at the ends of strings and inside them
+            final String[] original = new String[size];
+            for(int i = 0; i < size; ++i)
+            {
+                final char[] chars = new char[rand.nextInt(5)];
+                for(int j = 0; j < chars.length; ++j)
+                    chars[j] = alphabet[rand.nextInt(alphabet.length)];
+                original[i] = new String(chars);
+            }
+            checkDistinct("'\\0' characters, size " + size, original);
+            checkCanonical("'\\0' characters, size " + size, original);
+            checks += 2;
+        }
+        return checks;
+    }
+
+    //Sorting items by key must give the same order as a stable sort on the keys; the items are the indexes of their keys in original
+    private static void checkKeyExtractor(String name, String[] original)
+    {
+        final Integer[] items = new Integer[original.length];
+        for(int i = 0; i < items.length; ++i)
+            items[i] = i;
+        final Function1<String, Integer> keys = keysOf(original);
+        final Integer[] expected = items.clone();
+        Arrays.sort(expected, byKey(keys));
+        final Integer[] got = items.clone();
+        MSDStringSorter.sort(got, keys);
+        if(!Arrays.equals(expected, got))
+            throw new AssertionError("Sort by key, " + name + ": not the same as a stable sort on the keys");
+
+        //Only part of the array
+        if(items.length > 4)
+        {
+            final Integer[] sub = items.clone();
+            MSDStringSorter.sort(sub, 1, sub.length - 1, keys);
+            if(sub[0] != items[0] || sub[sub.length - 1] != items[items.length - 1])
+                throw new AssertionError("Sort by key, " + name + ": moved items outside of the range");
+            final Integer[] subExpected = Arrays.copyOfRange(items, 1, items.length - 1);
+            Arrays.sort(subExpected, byKey(keys));
+            if(!Arrays.equals(subExpected, Arrays.copyOfRange(sub, 1, sub.length - 1)))
+                throw new AssertionError("Sort by key of a sub range, " + name + ": not the same as a stable sort on the keys");
+        }
+    }
+
+    //Null items (given empty keys by the key extractor), empty keys, every key the same, and a key extractor that gives null
+    private static int checkKeyExtractorEdges(Random rand)
+    {
+        int checks = 0;
+        for(int size : new int[]{1, 2, 20, 1000, 20000})
+        {
+            final String[] keyOfItem = new String[size];
+            final Integer[] items = new Integer[size];
+            for(int i = 0; i < size; ++i)
+            {
+                keyOfItem[i] = rand.nextInt(4) == 0 ? "" : randomString(rand, 1 + rand.nextInt(3), 2);
+                items[i] = rand.nextInt(4) == 0 ? null : Integer.valueOf(i);
+            }
+            final Function1<String, Integer> keys = keysOf(keyOfItem);
+            final Integer[] expected = items.clone();
+            Arrays.sort(expected, byKey(keys));
+            final Integer[] got = items.clone();
+            MSDStringSorter.sort(got, keys);
+            if(!Arrays.equals(expected, got))
+                throw new AssertionError("Sort by key with null items and empty keys, size " + size + ": not the same as a stable sort on the keys");
+            ++checks;
+
+            //Every key the same (or empty), so nothing should move at all
+            for(final String only : new String[]{"", "same"})
+            {
+                final Integer[] same = items.clone();
+                MSDStringSorter.sort(same, new AbstractFunction1<String, Integer>()
+                {
+                    @Override
+                    public String call(Integer item)
+                    {
+                        return only;
+                    }
+                });
+                if(!Arrays.equals(items, same))
+                    throw new AssertionError("Sort by key, every key \"" + only + "\", size " + size + ": items moved");
+                ++checks;
+            }
+
+            //A null key must be refused, whatever the size of the range, without moving anything.
+            //A single item is never sorted, so its key is never asked for
+            if(size < 2) continue;
+            final Integer[] withNullKey = new Integer[size];
+            for(int i = 0; i < size; ++i)
+                withNullKey[i] = size - i;
+            final Integer[] before = withNullKey.clone();
+            final Integer nullKeyItem = withNullKey[rand.nextInt(size)];
+            try
+            {
+                MSDStringSorter.sort(withNullKey, new AbstractFunction1<String, Integer>()
+                {
+                    @Override
+                    public String call(Integer item)
+                    {
+                        return item.equals(nullKeyItem) ? null : item.toString();
+                    }
+                });
+                throw new AssertionError("Sort by key, size " + size + ": a null key was not refused");
+            }
+            catch(NullPointerException e)
+            {
+                //What should happen
+            }
+            if(!Arrays.equals(before, withNullKey))
+                throw new AssertionError("Sort by key, size " + size + ": items moved even though a key was null");
+            ++checks;
+        }
+        return checks;
+    }
+
+    //The key of each (Integer) item is the string at that index, and null items have empty keys
+    private static Function1<String, Integer> keysOf(final String[] keyOfItem)
+    {
+        return new AbstractFunction1<String, Integer>()
+        {
+            @Override
+            public String call(Integer item)
+            {
+                return item == null ? "" : keyOfItem[item];
+            }
+        };
+    }
+
+    //Compares items by their keys; Arrays.sort with this is stable, so it gives the order a stable sort by key must give
+    private static Comparator<Integer> byKey(final Function1<String, Integer> keys)
+    {
+        return new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer a, Integer b)
+            {
+                return keys.call(a).compareTo(keys.call(b));
+            }
+        };
+    }
+
+    //sortDistinct and sortAndCount must give the distinct strings in order, with the duplicates left after them, and the right counts
+    private static void checkDistinct(String name, String[] original)
+    {
+        final TreeMap<String, Integer> expected = new TreeMap<String, Integer>();
+        for(String s : original)
+        {
+            final Integer count = expected.get(s);
+            expected.put(s, count == null ? 1 : count + 1);
+        }
+        final String[] sortedOriginal = original.clone();
+        Arrays.sort(sortedOriginal);
+        String[] arr = original.clone();
+        int distinct = MSDStringSorter.sortDistinct(arr);
+        checkPermutation("sortDistinct, " + name, sortedOriginal, arr);
+        if(!Arrays.equals(expected.keySet().toArray(new String[0]), Arrays.copyOf(arr, distinct)))
+            throw new AssertionError("sortDistinct, " + name + ": not the distinct strings in order");
+
+        arr = original.clone();
+        final int[] counts = new int[arr.length];
+        distinct = MSDStringSorter.sortAndCount(arr, counts);
+        checkPermutation("sortAndCount, " + name, sortedOriginal, arr);
+        if(distinct != expected.size())
+            throw new AssertionError("sortAndCount, " + name + ": " + distinct + " distinct strings, not " + expected.size());
+        int i = 0;
+        for(Map.Entry<String, Integer> entry : expected.entrySet())
+        {
+            if(!arr[i].equals(entry.getKey()) || counts[i] != entry.getValue())
+                throw new AssertionError("sortAndCount, " + name + ": got " + arr[i] + " x" + counts[i] + " at " + i +
+                    ", not " + entry.getKey() + " x" + entry.getValue());
+            ++i;
+        }
+
+        //Only part of the array
+        if(original.length > 2)
+        {
+            arr = original.clone();
+            distinct = MSDStringSorter.sortDistinct(arr, 1, arr.length - 1);
+            if(arr[0] != original[0] || arr[arr.length - 1] != original[arr.length - 1])
+                throw new AssertionError("sortDistinct, " + name + ": moved elements outside of the range");
+            for(int j = 2; j < 1 + distinct; ++j)
+            {
+                if(arr[j - 1].compareTo(arr[j]) >= 0)
+                    throw new AssertionError("sortDistinct of a sub range, " + name + ": not distinct and in order at " + j);
+            }
+        }
+    }
+
+    //sortAndCanonicalize must sort, with every equal string being the same instance; the one given by the interner, if there is one
+    private static void checkCanonical(String name, String[] original)
+    {
+        final String[] expected = original.clone();
+        Arrays.sort(expected);
+        String[] arr = original.clone();
+        MSDStringSorter.sortAndCanonicalize(arr);
+        if(!Arrays.equals(expected, arr))
+            throw new AssertionError("sortAndCanonicalize, " + name + ": not sorted");
+        final IdentityHashMap<String, Boolean> originals = new IdentityHashMap<String, Boolean>();
+        for(String s : original)
+            originals.put(s, Boolean.TRUE);
+        for(int i = 0; i < arr.length; ++i)
+        {
+            if(!originals.containsKey(arr[i]))
+                throw new AssertionError("sortAndCanonicalize, " + name + ": not one of the original instances at " + i);
+            if(i > 0 && arr[i - 1].equals(arr[i]) && arr[i - 1] != arr[i])
+                throw new AssertionError("sortAndCanonicalize, " + name + ": equal strings are not the same instance at " + i);
+        }
+
+        //Interning copies first means every string should come out as one of those copies
+        final Interner<String> interner = Interners.newStrongInterner();
+        final IdentityHashMap<String, Boolean> interned = new IdentityHashMap<String, Boolean>();
+        for(String s : original)
+            interned.put(interner.intern(new String(s)), Boolean.TRUE);
+        arr = original.clone();
+        MSDStringSorter.sortAndCanonicalize(arr, interner);
+        if(!Arrays.equals(expected, arr))
+            throw new AssertionError("sortAndCanonicalize with an interner, " + name + ": not sorted");
+        for(int i = 0; i < arr.length; ++i)
+        {
+            if(!interned.containsKey(arr[i]))
+                throw new AssertionError("sortAndCanonicalize with an interner, " + name + ": not the interned instance at " + i);
+        }
+    }
+
+    //mergeSorted must give the same as sorting everything, for batches from nothing up to the whole input
+    private static void checkMerge(String name, String[] original)
+    {
+        final String[] expected = original.clone();
+        Arrays.sort(expected);
+        final int size = original.length;
+        for(int batchLen : new int[]{0, 1, 2, Math.min(17, size), size / 2, size})
+        {
+            final String[] base = Arrays.copyOf(original, size - batchLen);
+            Arrays.sort(base);
+            final String[] batch = Arrays.copyOfRange(original, size - batchLen, size);
+            String[] merged = MSDStringSorter.mergeSorted(base, batch.clone());
+            if(!Arrays.equals(expected, merged))
+                throw new AssertionError("mergeSorted of a batch of " + batchLen + ", " + name + ": not sorted");
+
+            //In place, with a batch range, and more room than needed
+            merged = Arrays.copyOf(base, size + 1);
+            final String[] paddedBatch = new String[batchLen + 2];
+            System.arraycopy(batch, 0, paddedBatch, 1, batchLen);
+            final int mergedLen = MSDStringSorter.mergeSorted(merged, base.length, paddedBatch, 1, batchLen + 1);
+            if(mergedLen != size || merged[size] != null || !Arrays.equals(expected, Arrays.copyOf(merged, size)))
+                throw new AssertionError("mergeSorted in place of a batch of " + batchLen + ", " + name + ": not sorted");
+        }
+    }
+
+    //selectTopK must put the smallest strings in order at the start, and nthElement the right string at its index, splitting the rest around it
+    private static void checkSelection(String name, String[] original)
+    {
+        final String[] expected = original.clone();
+        Arrays.sort(expected);
+        final int size = original.length;
+        for(int k : new int[]{0, 1, size / 3, size - 1, size})
+        {
+            final String[] arr = original.clone();
+            MSDStringSorter.selectTopK(arr, k);
+            checkPermutation("selectTopK(" + k + "), " + name, expected, arr);
+            if(!Arrays.equals(Arrays.copyOf(expected, k), Arrays.copyOf(arr, k)))
+                throw new AssertionError("selectTopK(" + k + "), " + name + ": not the smallest strings in order");
+        }
+        for(int n : new int[]{0, size / 2, size - 1})
+        {
+            final String[] arr = original.clone();
+            final String nth = MSDStringSorter.nthElement(arr, n);
+            checkPermutation("nthElement(" + n + "), " + name, expected, arr);
+            if(nth != arr[n] || !nth.equals(expected[n]))
+                throw new AssertionError("nthElement(" + n + "), " + name + ": " + nth + " != " + expected[n]);
+            for(int i = 0; i < size; ++i)
+            {
+                if(i < n ? arr[i].compareTo(nth) > 0 : arr[i].compareTo(nth) < 0)
+                    throw new AssertionError("nthElement(" + n + "), " + name + ": " + arr[i] + " is on the wrong side, at " + i);
+            }
+        }
+    }
+    
+    //The in place sorts aren't stable, so only check that they sort
+    private static void checkInPlace(String name, String[] original)
+    {
+        final String[] expected = original.clone();
+        Arrays.sort(expected);
+        String[] arr = original.clone();
+        MSDStringSorter.sortInPlace(arr);
+        if(!Arrays.equals(expected, arr))
+            throw new AssertionError("sortInPlace, " + name + ": not sorted");
+        for(int minChars : PREFIX_LENGTHS)
+        {
+            arr = original.clone();
+            MSDStringSorter.sortPartiallyInPlace(minChars, arr, 0, arr.length);
+            checkPermutation("sortPartiallyInPlace(" + minChars + "), " + name, expected, arr);
+            for(int i = 1; i < arr.length; ++i)
+            {
+                if(comparePrefix(arr[i - 1], arr[i], minChars) > 0)
+                    throw new AssertionError("sortPartiallyInPlace(" + minChars + "), " + name + ": not sorted at " + i);
+            }
+        }
+    }
+    
+    private static void checkPermutation(String name, String[] sortedOriginal, String[] arr)
+    {
+        final String[] got = arr.clone();
+        Arrays.sort(got);
+        if(!Arrays.equals(sortedOriginal, got))
+            throw new AssertionError(name + ": not a permutation of the input");
+    }
+
+    private static void checkStablySorted(String name, String[] original, String[] sorted, int minChars)
+    {
+        if(original.length != sorted.length)
+            throw new AssertionError(name + ": length changed");
+        final IdentityHashMap<String, Integer> position = new IdentityHashMap<String, Integer>();
+        for(int i = 0; i < original.length; ++i)
+            position.put(original[i], i);
+        for(int i = 0; i < sorted.length; ++i)
+        {
+            if(!position.containsKey(sorted[i]))
+                throw new AssertionError(name + ": not a permutation of the input");
+        }
+        if(position.size() != original.length)
+            throw new AssertionError(name + ": test input was not all distinct objects");
+        for(int i = 1; i < sorted.length; ++i)
+        {
+            final int c = comparePrefix(sorted[i - 1], sorted[i], minChars);
+            if(c > 0)
+                throw new AssertionError(name + ": not sorted at " + i + ": " + sorted[i - 1] + " > " + sorted[i]);
+            if(c == 0 && position.get(sorted[i - 1]) > position.get(sorted[i]))
+                throw new AssertionError(name + ": not stable at " + i + ": " + sorted[i - 1] + ", " + sorted[i]);
+        }
+    }
+
+    private static int comparePrefix(String a, String b, int len)
+    {
+        return a.substring(0, Math.min(len, a.length())).compareTo(b.substring(0, Math.min(len, b.length())));
+    }
+
+    //Short strings over a tiny alphabet, so nearly every string has many others equal to it, or sharing a prefix with it
+    private static String[] duplicateHeavy(Random rand, int size, int alphabet)
+    {
+        final String[] arr = new String[size];
+        for(int i = 0; i < size; ++i)
+        {
+            //Every so often, reuse the value (but not the object) of an earlier string
+            if(i > 0 && rand.nextInt(3) == 0)
+                arr[i] = new String(arr[rand.nextInt(i)]);
+            else
+                arr[i] = randomString(rand, rand.nextInt(8), alphabet);
+        }
+        return arr;
+    }
+
+    private static String randomString(Random rand, int len, int alphabet)
+    {
+        final char[] chars = new char[len];
+        for(int i = 0; i < len; ++i)
+            chars[i] = (char)('a' + rand.nextInt(alphabet));
+        return new String(chars);
+    }
+}
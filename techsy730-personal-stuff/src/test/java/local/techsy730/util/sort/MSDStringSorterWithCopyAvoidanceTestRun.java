@@ -0,0 +1,132 @@
+package local.techsy730.util.sort;
+
+import java.util.Arrays;
+import java.util.Random;
+
+//Checks MSDStringSorterWithCopyAvoidance against Arrays.sort, with the strings built so that every range gets bucket sorted
+//a fixed number of times before the strings run out. Each bucket sort pass moves a range to the other array,
+//so odd numbers of passes leave the sorted strings in the working copy, to be copied back, and even numbers leave them where they started.
+//Also checks that copying back never touches anything outside of the range being sorted.
+public class MSDStringSorterWithCopyAvoidanceTestRun
+{
+    //Large enough for every bucket to still be bucket sorted, at each of the depths
+    private static final int COPIES_PER_KEY = 100;
+    private static final int MAX_DEPTH = 6;
+
+    public static void main(String[] args)
+    {
+        final Random rand = new Random(0x5EED);
+        int checks = 0;
+        for(int depth = 1; depth <= MAX_DEPTH; ++depth)
+        {
+            //Every string of length depth over 2 characters, each many times over; each bucket splits in two, once per character
+            final String[] original = allStrings(depth, COPIES_PER_KEY);
+            shuffle(rand, original);
+            checkSort("depth " + depth, original);
+            ++checks;
+            //The same, in the middle of a larger array, so copying back has to stay inside the range
+            checkSubRange("depth " + depth, original, 7, 5);
+            ++checks;
+            //Stopping before the strings run out
+            for(int minChars = 1; minChars < depth; ++minChars)
+            {
+                final String[] arr = original.clone();
+                MSDStringSorterWithCopyAvoidance.sortPartially(minChars, arr);
+                checkSortedOn("sortPartially(" + minChars + "), depth " + depth, original, arr, minChars);
+                ++checks;
+            }
+        }
+        //Mixed lengths, so ranges go through different numbers of passes, and some end partway through
+        for(int size : new int[]{0, 1, 2, 3, 60, 1000, 20000})
+        {
+            final String[] original = new String[size];
+            for(int i = 0; i < size; ++i)
+            {
+                final char[] chars = new char[rand.nextInt(8)];
+                for(int j = 0; j < chars.length; ++j)
+                    chars[j] = (char)('a' + rand.nextInt(3));
+                original[i] = new String(chars);
+            }
+            checkSort("mixed lengths, size " + size, original);
+            checkSubRange("mixed lengths, size " + size, original, 1, 3);
+            checks += 2;
+        }
+        System.out.println("All " + checks + " checks passed");
+    }
+
+    private static void checkSort(String name, String[] original)
+    {
+        final String[] arr = original.clone();
+        MSDStringSorterWithCopyAvoidance.sort(arr);
+        checkSortedOn(name, original, arr, Integer.MAX_VALUE);
+    }
+
+    private static void checkSubRange(String name, String[] original, int before, int after)
+    {
+        final String[] arr = new String[before + original.length + after];
+        Arrays.fill(arr, "untouched");
+        System.arraycopy(original, 0, arr, before, original.length);
+        MSDStringSorterWithCopyAvoidance.sort(arr, before, before + original.length);
+        for(int i = 0; i < before; ++i)
+        {
+            if(arr[i] != "untouched")
+                throw new AssertionError("Sub range, " + name + ": changed " + i + ", before the range");
+        }
+        for(int i = before + original.length; i < arr.length; ++i)
+        {
+            if(arr[i] != "untouched")
+                throw new AssertionError("Sub range, " + name + ": changed " + i + ", after the range");
+        }
+        checkSortedOn("sub range, " + name, original, Arrays.copyOfRange(arr, before, before + original.length), Integer.MAX_VALUE);
+    }
+
+    //Checks that sorted is a permutation of original, sorted on at least the first minChars characters
+    private static void checkSortedOn(String name, String[] original, String[] sorted, int minChars)
+    {
+        final String[] expected = original.clone();
+        Arrays.sort(expected);
+        final String[] got = sorted.clone();
+        Arrays.sort(got);
+        if(!Arrays.equals(expected, got))
+            throw new AssertionError(name + ": not a permutation of the input");
+        if(minChars == Integer.MAX_VALUE)
+        {
+            if(!Arrays.equals(expected, sorted))
+                throw new AssertionError(name + ": not sorted");
+            return;
+        }
+        for(int i = 1; i < sorted.length; ++i)
+        {
+            final String a = sorted[i - 1].substring(0, Math.min(minChars, sorted[i - 1].length()));
+            final String b = sorted[i].substring(0, Math.min(minChars, sorted[i].length()));
+            if(a.compareTo(b) > 0)
+                throw new AssertionError(name + ": not sorted at " + i);
+        }
+    }
+
+    private static String[] allStrings(int len, int copies)
+    {
+        final int count = 1 << len;
+        final String[] arr = new String[count * copies];
+        for(int k = 0; k < count; ++k)
+        {
+            final char[] chars = new char[len];
+            for(int j = 0; j < len; ++j)
+                chars[j] = (k & (1 << (len - 1 - j))) != 0 ? 'y' : 'x';
+            for(int c = 0; c < copies; ++c)
+                arr[k * copies + c] = new String(chars);
+        }
+        return arr;
+    }
+
+    private static void shuffle(Random rand, String[] arr)
+    {
+        for(int i = arr.length - 1; i > 0; --i)
+        {
+            final int j = rand.nextInt(i + 1);
+            final String t = arr[i];
+            arr[i] = arr[j];
+            arr[j] = t;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package local.techsy730.util.sort;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+//Checks MappedKeySorter.LineIndex over files written out here, mapped with segment sizes small enough
+//that most lines end up crossing where a segment would have been cut, so the segments have to be cut short at the line before.
+//Also covers files without a trailing newline, "\r\n" line endings, empty lines, an empty file, and a line too long for a segment.
+public class MappedKeySorterTestRun
+{
+    private static final Comparator<byte[]> UNSIGNED_ORDER = new Comparator<byte[]>()
+    {
+        @Override
+        public int compare(byte[] a, byte[] b)
+        {
+            final int len = Math.min(a.length, b.length);
+            for(int i = 0; i < len; ++i)
+            {
+                final int ca = a[i] & 0xFF;
+                final int cb = b[i] & 0xFF;
+                if(ca != cb)
+                    return ca - cb;
+            }
+            return a.length - b.length;
+        }
+    };
+
+    //Each line, with its terminator, has to fit in a segment, so the longest line is kept to MAX_LINE_LENGTH
+    private static final int MAX_LINE_LENGTH = 6;
+    private static final int[] SEGMENT_SIZES = {MAX_LINE_LENGTH + 2, 9, 13, 64, 4096, Integer.MAX_VALUE};
+    //Bytes to build lines out of; '\r' only ever shows up as part of a line terminator
+    private static final byte[] LINE_BYTES = {0x00, 'a', 'b', 'z', 0x7F, (byte)0x80, (byte)0xFF};
+
+    public static void main(String[] args) throws IOException
+    {
+        final Random rand = new Random(0x5EED);
+        final Path file = Files.createTempFile("MappedKeySorterTestRun", ".txt");
+        int checks = 0;
+        try
+        {
+            for(int lineCount : new int[]{1, 2, 5, 100, 3000})
+            {
+                final byte[][] lines = new byte[lineCount][];
+                for(int i = 0; i < lineCount; ++i)
+                {
+                    lines[i] = new byte[rand.nextInt(MAX_LINE_LENGTH + 1)];
+                    for(int j = 0; j < lines[i].length; ++j)
+                        lines[i][j] = LINE_BYTES[rand.nextInt(LINE_BYTES.length)];
+                }
+                for(boolean crlf : new boolean[]{false, true})
+                {
+                    for(boolean trailingNewline : new boolean[]{true, false})
+                    {
+                        //Without a trailing newline, an empty last line just isn't there
+                        final byte[][] expected = !trailingNewline && lines[lineCount - 1].length == 0 ?
+                            Arrays.copyOf(lines, lineCount - 1) : lines;
+                        write(file, lines, crlf, trailingNewline);
+                        for(int segmentSize : SEGMENT_SIZES)
+                        {
+                            final String name = lineCount + " lines, " + (crlf ? "\\r\\n" : "\\n") +
+                                (trailingNewline ? "" : ", no trailing newline") + ", segments of " + segmentSize;
+                            checkIndex(name, file, segmentSize, expected);
+                            ++checks;
+                        }
+                    }
+                }
+            }
+
+            //Lines that fill a segment exactly, terminator and all, so every cut is right on a line boundary
+            final byte[][] exact = new byte[50][];
+            for(int i = 0; i < exact.length; ++i)
+            {
+                exact[i] = new byte[MAX_LINE_LENGTH + 1];
+                Arrays.fill(exact[i], (byte)('a' + rand.nextInt(26)));
+            }
+            write(file, exact, false, true);
+            checkIndex("lines filling each segment", file, MAX_LINE_LENGTH + 2, exact);
+            ++checks;
+
+            //Only empty lines
+            final byte[][] empties = new byte[20][0];
+            write(file, empties, false, true);
+            checkIndex("only empty lines", file, 4, empties);
+            ++checks;
+
+            //An empty file
+            write(file, new byte[0][], false, false);
+            for(int segmentSize : SEGMENT_SIZES)
+            {
+                checkIndex("empty file, segments of " + segmentSize, file, segmentSize, new byte[0][]);
+                ++checks;
+            }
+
+            //A line that doesn't fit in a segment
+            final byte[] tooLong = new byte[20];
+            Arrays.fill(tooLong, (byte)'x');
+            write(file, new byte[][]{"short".getBytes("US-ASCII"), tooLong, "short".getBytes("US-ASCII")}, false, true);
+            final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            try
+            {
+                MappedKeySorter.LineIndex.map(channel, 10);
+                throw new AssertionError("A line longer than a segment was indexed");
+            }
+            catch(IOException expectedException)
+            {
+                //What should happen
+            }
+            finally
+            {
+                channel.close();
+            }
+            ++checks;
+        }
+        finally
+        {
+            Files.delete(file);
+        }
+        System.out.println("All " + checks + " checks passed");
+    }
+
+    //Checks the lines of the index in file order, then sorted, and what it writes out
+    private static void checkIndex(String name, Path file, int segmentSize, byte[][] expected) throws IOException
+    {
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try
+        {
+            final MappedKeySorter.LineIndex index = MappedKeySorter.LineIndex.map(channel, segmentSize);
+            checkLines(name + ", in file order", index, expected);
+
+            final byte[][] sorted = expected.clone();
+            Arrays.sort(sorted, UNSIGNED_ORDER);
+            index.sortPartially(1);
+            for(int i = 1; i < index.size(); ++i)
+            {
+                final byte[] a = index.get(i - 1);
+                final byte[] b = index.get(i);
+                if(a.length != 0 && (b.length == 0 || (a[0] & 0xFF) > (b[0] & 0xFF)))
+                    throw new AssertionError(name + ": sortPartially(1) not sorted at " + i);
+            }
+            index.sort();
+            checkLines(name + ", sorted", index, sorted);
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            index.writeTo(out);
+            final ByteArrayOutputStream expectedOut = new ByteArrayOutputStream();
+            for(byte[] line : sorted)
+            {
+                expectedOut.write(line, 0, line.length);
+                expectedOut.write('\n');
+            }
+            if(!Arrays.equals(expectedOut.toByteArray(), out.toByteArray()))
+                throw new AssertionError(name + ": writeTo wrote the wrong bytes");
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    private static void checkLines(String name, MappedKeySorter.LineIndex index, byte[][] expected)
+    {
+        if(index.size() != expected.length)
+            throw new AssertionError(name + ": " + index.size() + " lines, expected " + expected.length);
+        for(int i = 0; i < expected.length; ++i)
+        {
+            if(!Arrays.equals(expected[i], index.get(i)))
+                throw new AssertionError(name + ": line " + i + " is " + Arrays.toString(index.get(i)) + ", expected " + Arrays.toString(expected[i]));
+        }
+    }
+
+    private static void write(Path file, byte[][] lines, boolean crlf, boolean trailingNewline) throws IOException
+    {
+        final ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        for(int i = 0; i < lines.length; ++i)
+        {
+            contents.write(lines[i], 0, lines[i].length);
+            if(trailingNewline || i < lines.length - 1)
+            {
+                if(crlf)
+                    contents.write('\r');
+                contents.write('\n');
+            }
+        }
+        Files.write(file, contents.toByteArray());
+    }
+}
@@ -0,0 +1,79 @@
+package local.techsy730.util.sort;
+
+import java.util.Arrays;
+import java.util.Random;
+
+//Checks MultikeyQuickSorter against Arrays.sort, including over the edge cases of its packed keys:
+//'\0' characters (which must still sort after the end of the string), characters at the very top of the char range,
+//strings ending partway through a key, and long shared prefixes.
+public class MultikeyQuickSorterTestRun
+{
+    private static final int[] SIZES = {0, 1, 2, 3, 16, 17, 40, 41, 200, 1000, 20000};
+    private static final char[][] ALPHABETS = {
+        {'A', 'C', 'G', 'T'},
+        {'0', '1'},
+        {'\0', 'a'},
+        {'\0', '\uFFFE', '\uFFFF'},
+        {'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i', 'j', 'k', 'l', 'm', 'n', 'o', 'p', 'q', 'r', 's', 't', 'u', 'v', 'w', 'x', 'y', 'z'},
+    };
+
+    public static void main(String[] args)
+    {
+        final Random rand = new Random(0x5EED);
+        final SorterTuning noInsertionSort = SorterTuning.DEFAULT.withMaxInsertionSort(0);
+        int checks = 0;
+        for(int size : SIZES)
+        {
+            for(char[] alphabet : ALPHABETS)
+            {
+                for(String prefix : new String[]{"", "http://www.example.com/"})
+                {
+                    final String[] original = randomStrings(rand, size, prefix, alphabet);
+                    final String name = "size " + size + " alphabet " + Arrays.toString(alphabet) + " prefix \"" + prefix + "\"";
+                    String[] arr = original.clone();
+                    MultikeyQuickSorter.sort(arr);
+                    checkSorted(name, original, arr);
+                    arr = original.clone();
+                    MultikeyQuickSorter.sort(arr, noInsertionSort);
+                    checkSorted(name + " without insertion sort", original, arr);
+                    checks += 2;
+
+                    //Only part of the array
+                    if(size > 4)
+                    {
+                        arr = original.clone();
+                        MultikeyQuickSorter.sort(arr, 1, size - 1);
+                        if(arr[0] != original[0] || arr[size - 1] != original[size - 1])
+                            throw new AssertionError("Elements outside of the range were moved, " + name);
+                        checkSorted(name + " sub range", Arrays.copyOfRange(original, 1, size - 1), Arrays.copyOfRange(arr, 1, size - 1));
+                        ++checks;
+                    }
+                }
+            }
+        }
+        System.out.println("All " + checks + " checks passed");
+    }
+
+    private static void checkSorted(String name, String[] original, String[] sorted)
+    {
+        final String[] expected = original.clone();
+        Arrays.sort(expected);
+        if(!Arrays.equals(expected, sorted))
+            throw new AssertionError("Not sorted, " + name);
+    }
+
+    //Lengths from 0 to 12, short enough for plenty of duplicates with the small alphabets, and to end at each position of a key
+    private static String[] randomStrings(Random rand, int size, String prefix, char[] alphabet)
+    {
+        final String[] arr = new String[size];
+        for(int i = 0; i < size; ++i)
+        {
+            final StringBuilder sb = new StringBuilder(prefix);
+            final int len = rand.nextInt(13);
+            for(int j = 0; j < len; ++j)
+                sb.append(alphabet[rand.nextInt(alphabet.length)]);
+            arr[i] = sb.toString();
+        }
+        return arr;
+    }
+}
@@ -0,0 +1,88 @@
+package local.techsy730.util.sort;
+
+import java.util.Arrays;
+import java.util.Random;
+
+//Checks that sorting with statistics (or a listener) still sorts, and that the statistics add up.
+public class SortStatsTestRun
+{
+    public static void main(String[] args)
+    {
+        final Random rand = new Random(0x5EED);
+        int checks = 0;
+
+        //The smallest sizes only go through the small range fallbacks
+        SortStats stats = MSDStringSorter.sortWithStats(new String[]{"b", "a"});
+        if(stats.getStrings() != 2 || stats.getTwoItemSorts() != 1 || stats.getBucketPasses() != 0)
+            throw new AssertionError("Two strings: " + stats);
+        stats = MSDStringSorter.sortWithStats(new String[]{"c", "b", "a"});
+        if(stats.getThreeItemSorts() != 1 || stats.getBucketPasses() != 0)
+            throw new AssertionError("Three strings: " + stats);
+        stats = MSDStringSorter.sortWithStats(new String[0]);
+        if(stats.getStrings() != 0 || !stats.toString().contains("bucketPasses=0"))
+            throw new AssertionError("No strings: " + stats);
+        checks += 3;
+
+        for(int size : new int[]{100, 1000, 20000, 100000})
+        {
+            for(int alphabet : new int[]{4, 26, 0x5000})
+            {
+                final String[] original = new String[size];
+                for(int i = 0; i < size; ++i)
+                {
+                    final char[] chars = new char[1 + rand.nextInt(12)];
+                    for(int j = 0; j < chars.length; ++j)
+                        chars[j] = (char)('a' + rand.nextInt(alphabet));
+                    original[i] = new String(chars);
+                }
+                final String name = "size " + size + " alphabet " + alphabet;
+                final String[] expected = original.clone();
+                Arrays.sort(expected);
+
+                final String[] arr = original.clone();
+                stats = MSDStringSorter.sortWithStats(arr);
+                if(!Arrays.equals(expected, arr))
+                    throw new AssertionError("sortWithStats, " + name + ": not sorted");
+                if(stats.getStrings() != size || stats.getBucketPasses() < 1 || stats.getStringsScattered() < size ||
+                    stats.getStringsCopied() > stats.getStringsScattered() || stats.getMaxStackDepth() < 1)
+                    throw new AssertionError("sortWithStats, " + name + ": " + stats);
+                //There must be some buckets, and none larger than what was sorted
+                final long[] histogram = stats.getBucketSizeHistogram();
+                long buckets = 0;
+                for(int i = 0; i < histogram.length; ++i)
+                {
+                    buckets += histogram[i];
+                    if(histogram[i] != 0 && (1 << i) >= size)
+                        throw new AssertionError("sortWithStats, " + name + ": a bucket of at least " + (1 << i) + " strings, " + stats);
+                }
+                if(buckets == 0)
+                    throw new AssertionError("sortWithStats, " + name + ": no buckets, " + stats);
+                histogram[0] = -1;
+                if(stats.getBucketSizeHistogram()[0] == -1)
+                    throw new AssertionError("The bucket size histogram can be changed from outside");
+
+                final String[] listened = original.clone();
+                final SortStats[] told = new SortStats[2];
+                MSDStringSorter.sortPartially(Integer.MAX_VALUE, listened, 0, size, SorterTuning.getDefault(), new SortStatsListener()
+                {
+                    @Override
+                    public void sortFinished(SortStats s)
+                    {
+                        told[told[0] == null ? 0 : 1] = s;
+                    }
+                });
+                if(!Arrays.equals(expected, listened))
+                    throw new AssertionError("sortPartially with a listener, " + name + ": not sorted");
+                if(told[0] == null || told[1] != null || !told[0].toString().equals(stats.toString()))
+                    throw new AssertionError("sortPartially with a listener, " + name + ": told " + Arrays.toString(told) + ", expected " + stats);
+
+                final String[] unlistened = original.clone();
+                MSDStringSorter.sortPartially(Integer.MAX_VALUE, unlistened, 0, size, SorterTuning.getDefault(), null);
+                if(!Arrays.equals(expected, unlistened))
+                    throw new AssertionError("sortPartially with no listener, " + name + ": not sorted");
+                checks += 3;
+            }
+        }
+        System.out.println("All " + checks + " checks passed");
+    }
+}
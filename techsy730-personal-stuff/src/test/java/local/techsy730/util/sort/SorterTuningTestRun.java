@@ -0,0 +1,91 @@
+package local.techsy730.util.sort;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+//Checks that a SorterTuning survives being stored and loaded, and that the sorters stay correct under tunings far from the defaults.
+public class SorterTuningTestRun
+{
+    public static void main(String[] args) throws IOException, ClassNotFoundException
+    {
+        final Random rand = new Random(0x7E57);
+        int checks = 0;
+
+        final SorterTuning custom = SorterTuning.DEFAULT.withMaxInsertionSort(8).withMinBinarySearch(40).withMaxUpdateMaxLength(200);
+        if(!custom.equals(SorterTuning.fromProperties(custom.toProperties())))
+            throw new AssertionError("Properties round trip changed " + custom);
+        if(!custom.equals(roundTrip(custom)))
+            throw new AssertionError("Serialization round trip changed " + custom);
+        checks += 2;
+
+        final SorterTuning[] tunings = {
+            SorterTuning.DEFAULT,
+            SorterTuning.DEFAULT.withMaxInsertionSort(0).withMaxArraysIndexSort(0).withMaxArraysFullSort(0).withMaxUpdateMaxLength(0)
+                .withMinBinarySearch(0).withMaxRemainingBeforeMergingRanges(0).withMaxRemainingBeforeFullArraysSort(0),
+            SorterTuning.DEFAULT.withMaxInsertionSort(1000).withMaxArraysIndexSort(1000).withMaxArraysFullSort(1000)
+                .withMaxUpdateMaxLength(5000).withMinBinarySearch(1000).withMaxRemainingBeforeMergingRanges(100)
+                .withMaxRemainingBeforeFullArraysSort(100),
+        };
+        for(SorterTuning tuning : tunings)
+        {
+            for(int size : new int[]{0, 1, 50, 3000})
+            {
+                final String[] original = randomStrings(rand, size);
+                final String[] expected = original.clone();
+                Arrays.sort(expected);
+                final String[] msd = original.clone();
+                MSDStringSorter.sort(msd, tuning);
+                if(!Arrays.equals(expected, msd))
+                    throw new AssertionError("MSDStringSorter not sorted with " + tuning);
+                final String[] ca = original.clone();
+                MSDStringSorterWithCopyAvoidance.sort(ca, tuning);
+                if(!Arrays.equals(expected, ca))
+                    throw new AssertionError("MSDStringSorterWithCopyAvoidance not sorted with " + tuning);
+                checks += 2;
+            }
+        }
+
+        final SorterTuning calibrated = SorterTuning.calibrate(randomStrings(rand, 2000), randomStrings(rand, 2000));
+        if(!calibrated.equals(roundTrip(calibrated)))
+            throw new AssertionError("Calibrated tuning not valid: " + calibrated);
+        ++checks;
+
+        System.out.println("All " + checks + " checks passed");
+    }
+
+    private static SorterTuning roundTrip(SorterTuning tuning) throws IOException, ClassNotFoundException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(tuning);
+        out.close();
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        try
+        {
+            return (SorterTuning)in.readObject();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static String[] randomStrings(Random rand, int size)
+    {
+        final String[] arr = new String[size];
+        for(int i = 0; i < size; ++i)
+        {
+            //Small alphabet and mostly short strings, so there are plenty of shared prefixes and duplicates
+            final char[] chars = new char[rand.nextInt(rand.nextInt(8) == 0 ? 40 : 6)];
+            for(int j = 0; j < chars.length; ++j)
+                chars[j] = (char)('a' + rand.nextInt(4));
+            arr[i] = new String(chars);
+        }
+        return arr;
+    }
+}
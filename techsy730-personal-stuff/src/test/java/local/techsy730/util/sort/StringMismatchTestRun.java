@@ -0,0 +1,72 @@
+package local.techsy730.util.sort;
+
+import java.util.Random;
+
+//Checks StringMismatch against the obvious character by character loop.
+//Run from the multi-release jar on Java 9 or later, this checks the version that compares chunks at a time, so the runs of equal characters
+//go well past where it starts copying them out, and past several of its chunks, ending just before, at, and just after the chunk boundaries.
+public class StringMismatchTestRun
+{
+    private static final int[] RUN_LENGTHS = {0, 1, 63, 64, 65, 127, 128, 129, 191, 192, 193, 1000, 4000};
+
+    public static void main(String[] args)
+    {
+        final Random rand = new Random(0x5EED);
+        int checks = 0;
+        for(char base : new char[]{'a', (char)0x4E00})
+        {
+            for(int run : RUN_LENGTHS)
+            {
+                for(int from : new int[]{0, 1, 5, 70})
+                {
+                    final char[] chars = new char[run + from + 20];
+                    for(int i = 0; i < chars.length; ++i)
+                        chars[i] = (char)(base + rand.nextInt(26));
+                    final String s1 = new String(chars);
+                    //Differing right after the run from from, one that ends right there, and one equal all the way
+                    chars[from + run] ^= 1;
+                    final String differs = new String(chars);
+                    final String ends = s1.substring(0, from + run);
+                    for(String s2 : new String[]{differs, ends, new String(s1)})
+                    {
+                        for(int end : new int[]{Integer.MAX_VALUE, from + run, from + run + 1, from + run / 2})
+                        {
+                            check(s1, s2, from, end);
+                            check(s2, s1, from, end);
+                            checks += 2;
+                        }
+                    }
+                }
+            }
+        }
+        //Starting at or past the end
+        check("abc", "abd", 3, 10);
+        check("abc", "abd", 5, 10);
+        check("abc", "abd", 2, 1);
+        checks += 3;
+        System.out.println("All " + checks + " checks passed");
+    }
+
+    private static void check(String s1, String s2, int from, int end)
+    {
+        final int expected = naiveMismatch(s1, s2, from, end);
+        final int got = StringMismatch.mismatch(s1, s2, from, end);
+        if(got != expected)
+            throw new AssertionError("mismatch from " + from + " to " + end + " of strings of length " + s1.length() + " and " + s2.length() +
+                ": " + got + " != " + expected);
+        final char[] a = (s1 + "junk past the length").toCharArray();
+        final char[] b = (s2 + "other junk").toCharArray();
+        final int gotChars = StringMismatch.mismatch(a, s1.length(), b, s2.length(), from, end);
+        if(gotChars != expected)
+            throw new AssertionError("char[] mismatch from " + from + " to " + end + " of strings of length " + s1.length() + " and " + s2.length() +
+                ": " + gotChars + " != " + expected);
+    }
+
+    private static int naiveMismatch(String s1, String s2, int from, int end)
+    {
+        final int lim = Math.min(end, Math.min(s1.length(), s2.length()));
+        while(from < lim && s1.charAt(from) == s2.charAt(from))
+            ++from;
+        return from;
+    }
+}
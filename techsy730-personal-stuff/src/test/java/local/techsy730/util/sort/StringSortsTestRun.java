@@ -0,0 +1,93 @@
+package local.techsy730.util.sort;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+//Checks that StringSorts picks the expected sort for inputs that clearly call for one, and that whichever it picks sorts correctly.
+public class StringSortsTestRun
+{
+    public static void main(String[] args)
+    {
+        final Random rand = new Random(0x5EED);
+        int checks = 0;
+
+        check("small", randomStrings(rand, 100, 1, 10, 'a', 26), StringSorts.Algorithm.TIM_SORT, StringSorts.Reason.SMALL_INPUT);
+        ++checks;
+
+        final String[] sorted = randomStrings(rand, 5000, 1, 10, 'a', 26);
+        Arrays.sort(sorted);
+        check("sorted", sorted, StringSorts.Algorithm.TIM_SORT, StringSorts.Reason.PRESORTED);
+        final String[] reversed = sorted.clone();
+        Collections.reverse(Arrays.asList(reversed));
+        check("reverse sorted", reversed, StringSorts.Algorithm.TIM_SORT, StringSorts.Reason.PRESORTED);
+        final String[] allEqual = new String[5000];
+        Arrays.fill(allEqual, "same");
+        check("all equal", allEqual, StringSorts.Algorithm.TIM_SORT, StringSorts.Reason.PRESORTED);
+        checks += 3;
+
+        check("random ASCII", randomStrings(rand, 20000, 1, 20, 'a', 26), StringSorts.Algorithm.MSD_COPY_AVOIDANCE, StringSorts.Reason.RADIX_FRIENDLY);
+        check("small CJK", randomStrings(rand, 2000, 1, 8, (char)0x4E00, 3000), StringSorts.Algorithm.TIM_SORT, StringSorts.Reason.WIDE_ALPHABET);
+        check("large CJK", randomStrings(rand, 20000, 1, 8, (char)0x4E00, 3000), StringSorts.Algorithm.MSD, StringSorts.Reason.WIDE_ALPHABET);
+        check("bit strings", randomStrings(rand, 5000, 100, 100, '0', 2), StringSorts.Algorithm.MULTIKEY_QUICKSORT, StringSorts.Reason.SMALL_ALPHABET);
+        check("DNA like", randomStrings(rand, 20000, 20, 40, 'A', 4), StringSorts.Algorithm.MULTIKEY_QUICKSORT, StringSorts.Reason.SMALL_ALPHABET);
+        check("skewed", skewedStrings(rand, 5000, 100, 'a', 8), StringSorts.Algorithm.TIM_SORT, StringSorts.Reason.LOW_ENTROPY);
+        checks += 6;
+
+        //Only part of the array
+        final String[] original = randomStrings(rand, 20000, 1, 20, 'a', 26);
+        final String[] arr = original.clone();
+        final StringSorts.Decision decision = StringSorts.sort(arr, 100, 19900);
+        if(!decision.toString().equals(StringSorts.choose(original, 100, 19900).toString()))
+            throw new AssertionError("choose and sort disagree: " + decision);
+        if(!Arrays.equals(Arrays.copyOfRange(original, 0, 100), Arrays.copyOfRange(arr, 0, 100)) ||
+            !Arrays.equals(Arrays.copyOfRange(original, 19900, 20000), Arrays.copyOfRange(arr, 19900, 20000)))
+            throw new AssertionError("Elements outside of the range were moved");
+        final String[] expected = original.clone();
+        Arrays.sort(expected, 100, 19900);
+        if(!Arrays.equals(expected, arr))
+            throw new AssertionError("Sub range not sorted");
+        checks += 2;
+
+        System.out.println("All " + checks + " checks passed");
+    }
+
+    private static void check(String name, String[] original, StringSorts.Algorithm algorithm, StringSorts.Reason reason)
+    {
+        final String[] arr = original.clone();
+        final StringSorts.Decision decision = StringSorts.sort(arr);
+        if(decision.getAlgorithm() != algorithm || decision.getReason() != reason)
+            throw new AssertionError(name + ": expected " + algorithm + " (" + reason + "), got " + decision);
+        final String[] expected = original.clone();
+        Arrays.sort(expected);
+        if(!Arrays.equals(expected, arr))
+            throw new AssertionError(name + ": not sorted by " + decision);
+    }
+
+    //Mostly the base character, with each of the rest of the alphabet showing up one time in every 10 * (alphabet - 1) or so
+    private static String[] skewedStrings(Random rand, int size, int len, char base, int alphabet)
+    {
+        final String[] arr = new String[size];
+        for(int i = 0; i < size; ++i)
+        {
+            final char[] chars = new char[len];
+            for(int j = 0; j < len; ++j)
+                chars[j] = rand.nextInt(10) == 0 ? (char)(base + 1 + rand.nextInt(alphabet - 1)) : base;
+            arr[i] = new String(chars);
+        }
+        return arr;
+    }
+
+    private static String[] randomStrings(Random rand, int size, int minLen, int maxLen, char base, int alphabet)
+    {
+        final String[] arr = new String[size];
+        for(int i = 0; i < size; ++i)
+        {
+            final char[] chars = new char[minLen + rand.nextInt(maxLen - minLen + 1)];
+            for(int j = 0; j < chars.length; ++j)
+                chars[j] = (char)(base + rand.nextInt(alphabet));
+            arr[i] = new String(chars);
+        }
+        return arr;
+    }
+}